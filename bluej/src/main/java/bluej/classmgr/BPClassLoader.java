@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2015,2016,2018  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2015,2016,2018,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -43,6 +43,12 @@ import bluej.utility.Utility;
  */
 public final class BPClassLoader extends URLClassLoader
 {
+    static
+    {
+        // Classes are loaded in parallel when a package is opened:
+        ClassLoader.registerAsParallelCapable();
+    }
+
     /**
      * Constructructor.
      * @param parent the parent loader that is searched first to resolve classes.
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2014,2015,2016,2017,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2014,2015,2016,2017,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -560,7 +560,7 @@ public class DataCollector
     }
 
 
-    public static void editJava(Package pkg, File path, String source, boolean includeOneLineEdits)
+    public static void editJava(Package pkg, File path, CharSequence source, boolean includeOneLineEdits)
     {
         if (dontSend()) return;
         DataCollectorImpl.edit(pkg, Collections.singletonList(new EditedFileInfo("diff", path, source, includeOneLineEdits, null, null)));
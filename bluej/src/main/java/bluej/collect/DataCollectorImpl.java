@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2012,2013,2014,2015,2016,2017,2019,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2012,2013,2014,2015,2016,2017,2019,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -44,9 +44,6 @@ import bluej.pkgmgr.target.ClassTarget;
 import bluej.pkgmgr.target.ClassTarget.SourceFileInfo;
 import bluej.stride.generic.Frame;
 import bluej.utility.Utility;
-import difflib.Delta;
-import difflib.DiffUtils;
-import difflib.Patch;
 import org.apache.http.entity.mime.MultipartEntity;
 import threadchecker.OnThread;
 import threadchecker.Tag;
@@ -77,6 +74,14 @@ public class DataCollectorImpl
      */
     private static IdentityHashMap<Inspector, Package> inspectorPackages = new IdentityHashMap<Inspector, Package>();
 
+    /**
+     * The most recent edit event, and the event which was queued for it (so that a
+     * following edit to the same files can be merged into it).  Only accessed while
+     * synchronized on DataCollectorImpl.
+     */
+    private static EditEvent lastEdit;
+    private static Event lastEditQueued;
+
     /**
      * Submits an event with no extra data.  A useful short-hand for calling submitEvent
      * with no content in the event.
@@ -140,8 +145,9 @@ public class DataCollectorImpl
      * @param pkg       the associated package (may be null)
      * @param eventName  the name of the event type
      * @param evt       the event to be submitted
+     * @return          the event as queued for sending (with the expected fields added to evt)
      */
-    private static synchronized void submitEvent(final Project project, final Package pkg, final EventName eventName, final Event evt)
+    private static synchronized Event submitEvent(final Project project, final Package pkg, final EventName eventName, final Event evt)
     {
         final String projectName = project == null ? null : project.getProjectName();
         final String projectPathHash = project == null ? null : CollectUtility.md5Hash(project.getProjectDir().getAbsolutePath());
@@ -156,7 +162,7 @@ public class DataCollectorImpl
         /**
          * Wrap the Event we've been given to add the other normal expected fields:
          */
-        DataSubmitter.submitEvent(new Event() {
+        Event wrapped = new Event() {
             
             @Override public void success(Map<FileKey, List<String>> fileVersions)
             {
@@ -194,7 +200,9 @@ public class DataCollectorImpl
                 
                 return mpe;
             }
-        });
+        };
+        DataSubmitter.submitEvent(wrapped);
+        return wrapped;
     }
 
     public static void compiled(Project proj, Package pkg, CompileInputFile[] sources, List<DiagnosticWithShown> diagnostics, boolean success, CompileReason compileReason, int compileSequence)
@@ -431,21 +439,21 @@ public class DataCollectorImpl
         private final String editType;
         // Path to the relevant file
         private final File path;
-        // The complete original (unanonymised) source
-        private final String source;
+        // The complete original (unanonymised) source; turned into a String on the submitter thread
+        private final CharSequence source;
         // Should we send the edit if it's only one line?
-        private final boolean includeOneLineEdits;
+        private boolean includeOneLineEdits;
         // The file which this one was generated from (or null if N/A)
         private final File generatedFrom;
         // The reason for the Stride edit being generated (null if unknown or N/A)
-        private final StrideEditReason strideEditReason;
-        // These get set after constructor:
+        private StrideEditReason strideEditReason;
+        // These get set after constructor (anonSource on the submitter thread):
         private FileKey fileKey;
         private List<String> anonSource;
         // Keep track of whether we actually sent the edit or not:
         public boolean dontSend = false;
 
-        EditedFileInfo(String editType, File path, String source, boolean includeOneLineEdits, File generatedFrom, StrideEditReason strideEditReason)
+        EditedFileInfo(String editType, File path, CharSequence source, boolean includeOneLineEdits, File generatedFrom, StrideEditReason strideEditReason)
         {
             this.editType = editType;
             this.path = path;
@@ -457,120 +465,164 @@ public class DataCollectorImpl
     }
 
 
-    static void edit(final Package pkg, List<EditedFileInfo> editedFiles)
+    /**
+     * Records an edit to one or more files.  The (possibly large) work of anonymising
+     * and diffing the sources is done later, on the submitter thread.  If the last event
+     * waiting to be sent is an edit to the same files, it is updated to the new sources
+     * rather than adding another event, so that an edit doesn't cost a diff each time
+     * when the submitter is busy.
+     */
+    static synchronized void edit(final Package pkg, List<EditedFileInfo> editedFiles)
     {
         final Project proj = pkg.getProject();
         final ProjectDetails projDetails = new ProjectDetails(proj);
-        // Generate FileKeys and anonymous source for all the files:
+        // Generate FileKeys for all the files:
         for (EditedFileInfo editedFile : editedFiles)
         {
             editedFile.fileKey = new FileKey(projDetails, CollectUtility.toPath(projDetails, editedFile.path));
-            editedFile.anonSource = Arrays.asList(Utility.splitLines(CodeAnonymiser.anonymise(editedFile.source)));
         }
-                
-        submitEvent(proj, pkg, EventName.EDIT, new Event() {
-            
-            //Edit solely within one line
-            private boolean isOneLineDiff(Patch patch)
+
+        if (lastEdit != null && lastEdit.canCoalesce(editedFiles)
+                && DataSubmitter.updateLastEvent(lastEditQueued, () -> lastEdit.coalesce(editedFiles)))
+        {
+            return;
+        }
+
+        lastEdit = new EditEvent(projDetails, editedFiles);
+        lastEditQueued = submitEvent(proj, pkg, EventName.EDIT, lastEdit);
+    }
+
+    /**
+     * An edit to one or more files, sent as a diff against the last version sent.
+     */
+    private static class EditEvent implements Event
+    {
+        private final ProjectDetails projDetails;
+        // Replaced when edits are coalesced.  That only happens while the event is in the
+        // submitter's queue, so we don't need to synchronize to read it when making the data:
+        private List<EditedFileInfo> editedFiles;
+
+        EditEvent(ProjectDetails projDetails, List<EditedFileInfo> editedFiles)
+        {
+            this.projDetails = projDetails;
+            this.editedFiles = editedFiles;
+        }
+
+        /**
+         * Checks whether the given edit is to the same files (in the same way) as this one.
+         */
+        boolean canCoalesce(List<EditedFileInfo> newFiles)
+        {
+            // The file keys identify the project and file, so the package must be the same too:
+            if (newFiles.size() != editedFiles.size())
+                return false;
+            for (int i = 0; i < newFiles.size(); i++)
             {
-                if (patch.getDeltas().size() > 1)
+                EditedFileInfo oldFile = editedFiles.get(i);
+                EditedFileInfo newFile = newFiles.get(i);
+                if (!oldFile.fileKey.equals(newFile.fileKey) || !oldFile.editType.equals(newFile.editType)
+                        || !Objects.equals(oldFile.generatedFrom, newFile.generatedFrom))
                     return false;
-                Delta theDelta = patch.getDeltas().get(0);
-                return theDelta.getOriginal().size() == 1 && theDelta.getRevised().size() == 1;
             }
-            
-            @Override
-            @OnThread(Tag.Worker)
-            public MultipartEntity makeData(int sequenceNum, Map<FileKey, List<String>> fileVersions)
+            return true;
+        }
+
+        /**
+         * Replaces this edit with the given (later) edit to the same files.
+         */
+        void coalesce(List<EditedFileInfo> newFiles)
+        {
+            for (int i = 0; i < newFiles.size(); i++)
             {
-                MultipartEntity mpe = new MultipartEntity();
-                for (EditedFileInfo editedFile : editedFiles)
-                {
+                EditedFileInfo oldFile = editedFiles.get(i);
+                EditedFileInfo newFile = newFiles.get(i);
+                // If either edit would have been sent regardless, so is the combination:
+                newFile.includeOneLineEdits |= oldFile.includeOneLineEdits;
+                if (newFile.strideEditReason == null)
+                    newFile.strideEditReason = oldFile.strideEditReason;
+            }
+            editedFiles = newFiles;
+        }
 
-                    List<String> previousDoc = fileVersions.get(editedFile.fileKey);
+        //Edit solely within one line
+        private boolean isOneLineDiff(List<LineDiff.Hunk> hunks)
+        {
+            if (hunks.size() > 1)
+                return false;
+            LineDiff.Hunk theHunk = hunks.get(0);
+            return theHunk.originalSize == 1 && theHunk.revisedSize == 1;
+        }
+
+        @Override
+        @OnThread(Tag.Worker)
+        public MultipartEntity makeData(int sequenceNum, Map<FileKey, List<String>> fileVersions)
+        {
+            MultipartEntity mpe = new MultipartEntity();
+            for (EditedFileInfo editedFile : editedFiles)
+            {
+                editedFile.anonSource = Arrays.asList(Utility.splitLines(CodeAnonymiser.anonymise(editedFile.source.toString())));
+
+                String generatedFrom = editedFile.generatedFrom == null ? null : CollectUtility.toPath(projDetails, editedFile.generatedFrom);
+                List<String> previousDoc = fileVersions.get(editedFile.fileKey);
+                if (previousDoc == null && fileVersions.containsKey(editedFile.fileKey))
+                {
+                    // The version the server has couldn't be read back, so we can't diff
+                    // against it; send the complete file instead:
+                    addSourceHistoryItem(mpe, CollectUtility.toPath(projDetails, editedFile.path), "complete",
+                            String.join("\n", editedFile.anonSource), generatedFrom);
+                }
+                else
+                {
                     if (previousDoc == null)
                         previousDoc = new ArrayList<String>(); // Diff against empty file
 
+                    List<LineDiff.Hunk> hunks = LineDiff.diff(previousDoc, editedFile.anonSource);
 
-                    Patch patch = DiffUtils.diff(previousDoc, editedFile.anonSource);
-
-                    if (patch.getDeltas().isEmpty() || (isOneLineDiff(patch) && !editedFile.includeOneLineEdits))
+                    if (hunks.isEmpty() || (isOneLineDiff(hunks) && !editedFile.includeOneLineEdits))
                     {
                         editedFile.dontSend = true;
                         continue;
                     }
 
-                    String diff = makeDiff(patch);
-
-                    addSourceHistoryItem(mpe, CollectUtility.toPath(projDetails, editedFile.path), editedFile.editType, diff, editedFile.generatedFrom == null ? null : CollectUtility.toPath(projDetails, editedFile.generatedFrom));
+                    String diff = LineDiff.format(previousDoc, editedFile.anonSource, hunks);
 
-                    if (editedFile.strideEditReason != null && editedFile.strideEditReason.getText() != null)
-                    {
-                        mpe.addPart("source_histories[][reason]", CollectUtility.toBody(editedFile.strideEditReason.getText()));
-                    }
+                    addSourceHistoryItem(mpe, CollectUtility.toPath(projDetails, editedFile.path), editedFile.editType, diff, generatedFrom);
                 }
-                // If no files to send, cancel sending the whole edit event:
-                if (editedFiles.stream().allMatch(f -> f.dontSend))
-                {
-                    return null;
-                }
-                else
+
+                if (editedFile.strideEditReason != null && editedFile.strideEditReason.getText() != null)
                 {
-                    return mpe;
+                    mpe.addPart("source_histories[][reason]", CollectUtility.toBody(editedFile.strideEditReason.getText()));
                 }
             }
+            // If no files to send, cancel sending the whole edit event:
+            if (editedFiles.stream().allMatch(f -> f.dontSend))
+            {
+                return null;
+            }
+            else
+            {
+                return mpe;
+            }
+        }
 
-            @Override
-            public void success(Map<FileKey, List<String>> fileVersions)
+        @Override
+        public void success(Map<FileKey, List<String>> fileVersions)
+        {
+            for (EditedFileInfo editedFile : editedFiles)
             {
-                for (EditedFileInfo editedFile : editedFiles)
+                if (!editedFile.dontSend)
                 {
-                    if (!editedFile.dontSend)
-                    {
-                        fileVersions.put(editedFile.fileKey, editedFile.anonSource);
-                    }
+                    fileVersions.put(editedFile.fileKey, editedFile.anonSource);
                 }
             }
-        });
+        }
     }
     
-    @SuppressWarnings("unchecked")
     @OnThread(Tag.Any)
     // protected for testing purposes
-    protected static String makeDiff(Patch patch)
+    protected static String makeDiff(List<String> original, List<String> revised)
     {
-        StringBuilder diff = new StringBuilder();
-        // There is a DiffUtils.generateUnifiedDiff function, but don't use it
-        // It's broken in 1.2.1 for patches that purely add lines
-        
-        for (Delta delta: patch.getDeltas()) {
-            int srcLine, srcSize, destLine, destSize;
-            srcSize = delta.getOriginal().size();
-            destSize = delta.getRevised().size();
-            // It seems that the line numbers given back when the patch is a pure-insert
-            // (i.e. zero lines are modified in the original file) are off by one, so
-            // correct for this:
-            if (srcSize > 0)
-            {
-                srcLine = delta.getOriginal().getPosition() + 1;
-                destLine = delta.getRevised().getPosition() + 1;
-            }
-            else
-            {
-                srcLine = delta.getOriginal().getPosition();
-                destLine = delta.getRevised().getPosition();
-            }
-            diff.append("@@ -" + srcLine + "," + srcSize + " +" + destLine + "," + destSize + " @@\n");
-            for (String l : (List<String>)delta.getOriginal().getLines())
-            {
-                diff.append("-" + l + "\n");
-            }
-            for (String l : (List<String>)delta.getRevised().getLines())
-            {
-                diff.append("+" + l + "\n");
-            }
-        }
-        return diff.toString();
+        return LineDiff.format(original, revised, LineDiff.diff(original, revised));
     }
     
     
@@ -807,8 +859,7 @@ public class DataCollectorImpl
 
                 MultipartEntity mpe = new MultipartEntity();
 
-                Patch patch = DiffUtils.diff(previousDoc, anonJava);
-                String diff = makeDiff(patch);
+                String diff = makeDiff(previousDoc, anonJava);
                 mpe.addPart("source_histories[][content]", CollectUtility.toBody(diff));
 
                 // We need to change the fileVersions hash to remove/add Stride and alter Java:
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2013,2016,2018,2019,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 2013,2016,2018,2019,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -26,12 +26,14 @@ import bluej.Config;
 import bluej.extensions2.event.ApplicationEvent;
 import bluej.extmgr.ExtensionsManager;
 import bluej.pkgmgr.Project;
+import bluej.utility.Debug;
 import javafx.application.Platform;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.params.BasicHttpParams;
@@ -41,12 +43,21 @@ import org.apache.http.util.EntityUtils;
 import threadchecker.OnThread;
 import threadchecker.Tag;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This class that handles submitting compilation data to the remote server.
@@ -54,6 +65,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * The class has nothing to do with collecting the data, and deliberately
  * does not depend on any other BlueJ classes.  Package-visible.
  * 
+ * Events are processed in batches: all the events which have been queued are
+ * turned into records (compressed copies of the data to post) and appended to an
+ * {@link EventSpool} on disk together, and then everything in the spool is posted,
+ * one event per request, over a single connection.  If the server can't be reached,
+ * we try again later, waiting longer each time (but still recording any new events
+ * in the spool as soon as they are submitted); events still in the spool when
+ * BlueJ exits are sent the next time it starts.  We only give up if the server
+ * rejects an event.
+ * 
  * @author Davin McCall
  */
 class DataSubmitter
@@ -62,6 +82,23 @@ class DataSubmitter
         //For testing:
         //"http://localhost:3000/master_events";
 
+    /** The longest we wait between attempts to reach the server */
+    private static final long MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000;
+    /** If there are more than this many bytes waiting to be sent, we give up */
+    private static final long MAX_SPOOL_BYTES = 64 * 1024 * 1024;
+
+    /** The result of trying to post a record */
+    enum PostResult
+    {
+        /** The server accepted it */
+        SENT,
+        /** The server couldn't be reached, or had an error; try again later */
+        RETRY,
+        /** The server rejected it */
+        REJECTED,
+        /** The record couldn't be decoded, so can't be sent */
+        CORRUPT
+    }
     
     private static AtomicBoolean givenUp = new AtomicBoolean(false);
     
@@ -75,12 +112,21 @@ class DataSubmitter
     private static int sequenceNum;
 
     /**
-     * The versions of the files as we have last sent them to the server.
+     * The events which have been recorded but not yet sent.  Only accessed
+     * by the event-sending thread.
+     */
+    @OnThread(Tag.Worker)
+    private static EventSpool spool;
+
+    /**
+     * The versions of the files as we have last recorded them for sending
+     * to the server.
      * 
-     * Should only be accessed by the postData method, which is running on
+     * Should only be accessed by the spoolEvents method, which is running on
      * the event-sending thread
      */
-    private static Map<FileKey, List<String> > fileVersions = new HashMap<FileKey, List<String> >();
+    @OnThread(Tag.Worker)
+    private static Map<FileKey, List<String> > fileVersions;
     
     /**
      * Submit data to be posted to the server. The data is added to a queue which is processed by
@@ -96,17 +142,50 @@ class DataSubmitter
         
         synchronized (queue) {
             queue.add(evt);
-            
-            if (! isRunning) {
-                new Thread("Process Blackbox queue") {
-                    @OnThread(value = Tag.Worker, ignoreParent = true)
-                    public void run()
-                    {
-                        processQueue();
-                    }
-                }.start();
-                isRunning = true;
+            startProcessing();
+            // The submitter thread may be waiting to retry the server; wake it to record the event:
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * If the given event is the last one in the queue (so has not yet been processed, and
+     * no later event has been submitted), update it.  The update is made while holding the
+     * queue lock, so the submitter thread will see all of it.
+     * 
+     * Package-visible, only used by DataCollector
+     * 
+     * @return true if the event was updated, false if it was not the last event in the queue
+     */
+    static boolean updateLastEvent(Event evt, Runnable update)
+    {
+        synchronized (queue) {
+            if (!queue.isEmpty() && queue.get(queue.size() - 1) == evt) {
+                update.run();
+                return true;
             }
+            return false;
+        }
+    }
+
+    /**
+     * Start the thread which processes the queue, if it is not already running.
+     * Must be called while synchronized on queue.
+     */
+    private static void startProcessing()
+    {
+        if (! isRunning) {
+            Thread thread = new Thread("Process Blackbox queue") {
+                @OnThread(value = Tag.Worker, ignoreParent = true)
+                public void run()
+                {
+                    processQueue();
+                }
+            };
+            // Anything unsent is in the spool, so we needn't hold up exit:
+            thread.setDaemon(true);
+            thread.start();
+            isRunning = true;
         }
     }
     
@@ -116,94 +195,229 @@ class DataSubmitter
     @OnThread(Tag.Worker)
     private static void processQueue()
     {
+        if (spool == null) {
+            File blackboxDir = new File(Config.getUserConfigDir(), "blackbox");
+            spool = EventSpool.open(new File(blackboxDir, "events.spool"));
+        }
+        
+        HttpClient client = null;
+        int failures = 0;
+        // When to next try to reach the server, after failing to:
+        long retryTime = 0;
         while (true) {
-            Event evt;
+            List<Event> batch;
             synchronized (queue) {
-                if (queue.isEmpty()) {
+                if (queue.isEmpty() && (spool.isEmpty() || givenUp.get())) {
                     isRunning = false;
                     queue.notifyAll(); // in case anyone is waiting for us to finish
+                    if (client != null) {
+                        client.getConnectionManager().shutdown();
+                    }
                     return;
                 }
-                evt = queue.remove(0);
+                // Wait until it's time to retry, unless there are new events to record:
+                long delay;
+                while (queue.isEmpty() && !givenUp.get() && (delay = retryTime - System.currentTimeMillis()) > 0) {
+                    try {
+                        queue.wait(delay);
+                    }
+                    catch (InterruptedException e) {
+                        // Just try again now
+                        retryTime = 0;
+                    }
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
             }
             
-
-            if (!givenUp.get())
-            {
-                givenUp.set(!postData(evt));
-                // If we just gave up on this event:
-                if (givenUp.get())
-                {
-                    Platform.runLater(() ->
-                    {
-                        ExtensionsManager.getInstance().delegateEvent(new ApplicationEvent(ApplicationEvent.EventType.DATA_SUBMISSION_FAILED_EVENT));
-                        if (Boot.isTrialRecording()) {
-                            // If we just gave up, and we are specifically in a trial, show a dialog
-                            // to the user warning them of this:
-                            new DataSubmissionFailedDialog().show();
-                            Project.getProjects().forEach(project -> project.setAllEditorStatus(" - NOT RECORDING"));
-                        }
-                    });
+            if (givenUp.get()) {
+                continue; // Discard the batch
+            }
+            spoolEvents(batch);
+            if (System.currentTimeMillis() < retryTime) {
+                continue; // Recorded new events, but it's not yet time to retry
+            }
+            
+            if (client == null) {
+                client = makeClient();
+            }
+            PostResult result = PostResult.SENT;
+            byte[] record;
+            // Send everything we've recorded, but stop to record any new events first, so they are safe on disk:
+            while (!givenUp.get() && !hasQueuedEvents() && (record = spool.peek()) != null) {
+                result = postRecord(client, submitUrl, record);
+                if (result == PostResult.RETRY) {
+                    break;
+                }
+                else if (result == PostResult.REJECTED) {
+                    // The server won't be able to make sense of what follows:
+                    spool.clear();
+                    giveUp();
                 }
+                else {
+                    if (result == PostResult.CORRUPT) {
+                        Debug.message("Discarding unreadable Blackbox event");
+                    }
+                    spool.removeFirst();
+                    failures = 0;
+                }
+            }
+            
+            if (result == PostResult.RETRY) {
+                client.getConnectionManager().shutdown();
+                client = null;
+                failures += 1;
+                retryTime = System.currentTimeMillis() + Math.min(MAX_RETRY_DELAY_MILLIS, 1000L << Math.min(failures, 20));
             }
         }
     }
-    
+
+    private static boolean hasQueuedEvents()
+    {
+        synchronized (queue) {
+            return !queue.isEmpty();
+        }
+    }
+
     /**
-     * Actually post the data to the server.
-     * 
-     * Returns false if there was an error.
+     * Turn a batch of events into records, and add them to the spool.
      */
     @OnThread(Tag.Worker)
-    private static boolean postData(Event evt)
-    {   
-        HttpParams params = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
-        HttpConnectionParams.setSoTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
-        HttpClient client = new DefaultHttpClient(params);
+    private static void spoolEvents(List<Event> batch)
+    {
+        if (fileVersions == null) {
+            try {
+                fileVersions = new FileBaselines(Files.createTempDirectory("bluej-blackbox").toFile());
+            }
+            catch (IOException e) {
+                Debug.reportError("Could not create directory for Blackbox file versions", e);
+                fileVersions = new HashMap<>();
+            }
+        }
         
-        try {
-            HttpPost post = new HttpPost(submitUrl);
-
+        List<byte[]> records = new ArrayList<>();
+        for (Event evt : batch) {
             MultipartEntity mpe = evt.makeData(sequenceNum, fileVersions);
-            if (mpe == null)
-            {
-                return true; // nothing to send, no error
+            if (mpe == null) {
+                continue; // nothing to send
+            }
+            try {
+                records.add(encode(mpe));
+            }
+            catch (IOException e) {
+                Debug.reportError("Could not record Blackbox event", e);
+                continue;
             }
-            
             //Only increment sequence number if we actually send data:
             sequenceNum += 1;
-            post.setEntity(mpe);
+            // From here on, the event will be sent unless we give up entirely, so the
+            // next event can be diffed against this one:
+            evt.success(fileVersions);
+        }
+        
+        if (spool.getUnsentBytes() > MAX_SPOOL_BYTES) {
+            // The server has been unreachable for a very long time:
+            spool.clear();
+            giveUp();
+            return;
+        }
+        spool.append(records);
+    }
+
+    /**
+     * Give up on sending any more events, and let the user know.
+     */
+    @OnThread(Tag.Worker)
+    private static void giveUp()
+    {
+        givenUp.set(true);
+        Platform.runLater(() ->
+        {
+            ExtensionsManager.getInstance().delegateEvent(new ApplicationEvent(ApplicationEvent.EventType.DATA_SUBMISSION_FAILED_EVENT));
+            if (Boot.isTrialRecording()) {
+                // If we just gave up, and we are specifically in a trial, show a dialog
+                // to the user warning them of this:
+                new DataSubmissionFailedDialog().show();
+                Project.getProjects().forEach(project -> project.setAllEditorStatus(" - NOT RECORDING"));
+            }
+        });
+    }
+
+    @OnThread(Tag.Worker)
+    private static HttpClient makeClient()
+    {
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
+        HttpConnectionParams.setSoTimeout(params, Boot.isTrialRecording() ? 30000 : 10000);
+        // The client keeps its connection open between requests:
+        return new DefaultHttpClient(params);
+    }
+
+    /**
+     * Make a record of the data to post: a compressed copy of its content type
+     * and content.
+     */
+    @OnThread(Tag.Worker)
+    static byte[] encode(MultipartEntity mpe) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeUTF(mpe.getContentType().getValue());
+            mpe.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Actually post a record to the server.
+     * 
+     * @param client  The client to post with; it must have finished any previous request
+     * @param url     The URL to post to
+     * @param record  The record, as made by {@link #encode(MultipartEntity)}
+     */
+    @OnThread(Tag.Worker)
+    static PostResult postRecord(HttpClient client, String url, byte[] record)
+    {
+        ByteArrayEntity entity;
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(record)))) {
+            String contentType = in.readUTF();
+            entity = new ByteArrayEntity(in.readAllBytes());
+            entity.setContentType(contentType);
+        }
+        catch (IOException e) {
+            return PostResult.CORRUPT;
+        }
+        
+        try {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(entity);
             HttpResponse response = client.execute(post);
+            // Read the rest of the response, so that the connection can be re-used:
+            EntityUtils.consume(response.getEntity());
             
             for (Header h : response.getAllHeaders())
             {
                 if ("X-Status".equals(h.getName()) && !"Created".equals(h.getValue()))
                 {
-                    return false;
+                    return PostResult.REJECTED;
                 }
             }
             
-            if (response.getStatusLine().getStatusCode() != 200)
+            int status = response.getStatusLine().getStatusCode();
+            if (status == 200)
             {
-                return false;
+                return PostResult.SENT;
             }
-            
-            evt.success(fileVersions);
-                
-            EntityUtils.consume(response.getEntity());
+            // Server errors, timeouts and rate limiting may well be temporary:
+            return status >= 500 || status == 408 || status == 429 ? PostResult.RETRY : PostResult.REJECTED;
         }
         catch (ClientProtocolException cpe) {
-            return false;
+            return PostResult.REJECTED;
         }
         catch (IOException ioe) {
-            //For now:
-            ioe.printStackTrace();
-            
-            return false;
+            Debug.message("Could not reach Blackbox server: " + ioe);
+            return PostResult.RETRY;
         }
-        
-        return true;
     }
     
     /**
@@ -240,6 +454,10 @@ class DataSubmitter
     {
         sequenceNum = 1; //Server relies on it starting at 1, do not change
         
+        // Send anything left over from last time:
+        synchronized (queue) {
+            startProcessing();
+        }
     }
 
     public static boolean hasGivenUp()
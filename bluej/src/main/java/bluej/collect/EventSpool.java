@@ -0,0 +1,346 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import bluej.utility.Debug;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A first-in first-out queue of records (encoded events) waiting to be sent to the
+ * Blackbox server, kept in an append-only file so that events which have not been
+ * sent when BlueJ exits (e.g. because the network is down) are sent the next time
+ * BlueJ starts.
+ *
+ * The file begins with a header holding the offset of the first unsent record,
+ * followed by the records, each being its length followed by its bytes.  New records
+ * are appended; sending a record just moves the offset in the header on.  When every
+ * record has been sent, the file is truncated back to the header.
+ *
+ * If the file can't be used (for example, because another copy of BlueJ has it
+ * locked), records are kept in memory instead, and are lost if BlueJ exits before
+ * they are sent.  Package-visible.
+ */
+@OnThread(Tag.Worker)
+class EventSpool
+{
+    private static final int MAGIC = 0x424A4553; // "BJES"
+    private static final int FORMAT_VERSION = 1;
+    // Magic, format version, offset of first unsent record:
+    private static final int HEADER_SIZE = 16;
+    private static final int SENT_OFFSET_POSITION = 8;
+
+    private final File file;
+    private FileChannel channel; // null if we are keeping records in memory
+    private FileLock lock;
+    private long sentOffset;
+    private long size;
+    private int firstRecordLength = -1; // length of the record returned by peek, if any
+
+    private final ArrayDeque<byte[]> memoryRecords = new ArrayDeque<>();
+
+    private EventSpool(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Opens the spool file, creating it if necessary.  Never fails; if the file
+     * can't be opened, the returned spool keeps its records in memory.
+     */
+    public static EventSpool open(File file)
+    {
+        EventSpool spool = new EventSpool(file);
+        try
+        {
+            spool.openFile();
+        }
+        catch (IOException | OverlappingFileLockException e)
+        {
+            Debug.message("Could not open Blackbox spool " + file + ", keeping events in memory: " + e);
+            spool.closeFile();
+        }
+        return spool;
+    }
+
+    private void openFile() throws IOException
+    {
+        Files.createDirectories(file.getParentFile().toPath());
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        if (lock == null)
+        {
+            throw new IOException("spool is in use by another process");
+        }
+
+        size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        boolean valid = size >= HEADER_SIZE && channel.read(header, 0) == HEADER_SIZE;
+        header.flip();
+        if (valid && header.getInt() == MAGIC && header.getInt() == FORMAT_VERSION)
+        {
+            sentOffset = header.getLong();
+            valid = sentOffset >= HEADER_SIZE && sentOffset <= size;
+        }
+        else
+        {
+            valid = false;
+        }
+
+        if (!valid || sentOffset == size)
+        {
+            if (!valid && size != 0)
+            {
+                Debug.message("Discarding unreadable Blackbox spool " + file);
+            }
+            reset();
+        }
+    }
+
+    /**
+     * Add records to the end of the queue.  They are written to disk together.
+     */
+    public void append(List<byte[]> records)
+    {
+        if (records.isEmpty())
+        {
+            return;
+        }
+        if (channel != null)
+        {
+            int total = 0;
+            for (byte[] record : records)
+            {
+                total += 4 + record.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(total);
+            for (byte[] record : records)
+            {
+                buffer.putInt(record.length);
+                buffer.put(record);
+            }
+            buffer.flip();
+            try
+            {
+                long position = size;
+                while (buffer.hasRemaining())
+                {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+                size = position;
+                return;
+            }
+            catch (IOException e)
+            {
+                // Anything already on disk is left there, to be sent next time:
+                Debug.reportError("Could not write to Blackbox spool " + file, e);
+                closeFile();
+            }
+        }
+        memoryRecords.addAll(records);
+    }
+
+    /**
+     * Gets the first unsent record, without removing it.
+     *
+     * @return The record, or null if there are no unsent records.
+     */
+    public byte[] peek()
+    {
+        if (channel != null)
+        {
+            if (sentOffset == size)
+            {
+                return null;
+            }
+            try
+            {
+                ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+                readFully(lengthBuffer, sentOffset);
+                int length = lengthBuffer.getInt();
+                if (length < 0 || sentOffset + 4 + length > size)
+                {
+                    // Partly-written record from a crash; discard the rest of the file:
+                    Debug.message("Discarding truncated record in Blackbox spool " + file);
+                    reset();
+                    return null;
+                }
+                ByteBuffer record = ByteBuffer.allocate(length);
+                readFully(record, sentOffset + 4);
+                firstRecordLength = length;
+                return record.array();
+            }
+            catch (IOException e)
+            {
+                Debug.reportError("Could not read Blackbox spool " + file, e);
+                closeFile();
+                return null;
+            }
+        }
+        return memoryRecords.peekFirst();
+    }
+
+    /**
+     * Removes the record last returned by {@link #peek()}, once it has been sent.
+     */
+    public void removeFirst()
+    {
+        if (channel != null)
+        {
+            if (firstRecordLength == -1)
+            {
+                throw new IllegalStateException("No record has been peeked");
+            }
+            try
+            {
+                sentOffset += 4 + firstRecordLength;
+                firstRecordLength = -1;
+                if (sentOffset == size)
+                {
+                    reset();
+                }
+                else
+                {
+                    ByteBuffer offset = ByteBuffer.allocate(8);
+                    offset.putLong(sentOffset).flip();
+                    channel.write(offset, SENT_OFFSET_POSITION);
+                }
+            }
+            catch (IOException e)
+            {
+                // At worst, the record will be sent again next time:
+                Debug.reportError("Could not update Blackbox spool " + file, e);
+                closeFile();
+            }
+        }
+        else
+        {
+            memoryRecords.pollFirst();
+        }
+    }
+
+    /**
+     * Removes all records.
+     */
+    public void clear()
+    {
+        memoryRecords.clear();
+        if (channel != null)
+        {
+            try
+            {
+                reset();
+            }
+            catch (IOException e)
+            {
+                Debug.reportError("Could not clear Blackbox spool " + file, e);
+                closeFile();
+            }
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return channel != null ? sentOffset == size : memoryRecords.isEmpty();
+    }
+
+    /**
+     * Gets the approximate number of bytes of unsent records.
+     */
+    public long getUnsentBytes()
+    {
+        if (channel != null)
+        {
+            return size - sentOffset;
+        }
+        return memoryRecords.stream().mapToLong(r -> r.length).sum();
+    }
+
+    /**
+     * Releases the spool file.  Records kept in memory are lost.
+     */
+    public void close()
+    {
+        memoryRecords.clear();
+        closeFile();
+    }
+
+    /**
+     * Truncate the file to an empty header.
+     */
+    private void reset() throws IOException
+    {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(HEADER_SIZE).flip();
+        while (header.hasRemaining())
+        {
+            channel.write(header, header.position());
+        }
+        sentOffset = HEADER_SIZE;
+        size = HEADER_SIZE;
+        firstRecordLength = -1;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private void closeFile()
+    {
+        if (channel != null)
+        {
+            try
+            {
+                // Closing the channel also releases the lock:
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing more we can do
+            }
+        }
+        channel = null;
+        lock = null;
+        firstRecordLength = -1;
+    }
+}
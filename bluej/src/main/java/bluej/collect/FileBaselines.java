@@ -0,0 +1,226 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import bluej.utility.Debug;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The versions of the source files as last recorded for sending to the server (the
+ * baselines against which edits are diffed), kept in compressed files in a temporary
+ * directory rather than in memory.  The most recently used versions are also cached
+ * in memory, since edits tend to be to the same few files.
+ *
+ * This is a map from file to its lines, so that it can be passed to
+ * {@link Event#makeData} in place of an in-memory map.  The files are deleted when
+ * BlueJ exits; if a version can't be written to disk, it is kept in memory.
+ * Package-visible.
+ */
+@OnThread(Tag.Worker)
+class FileBaselines extends AbstractMap<FileKey, List<String>>
+{
+    private static final int MAX_CACHED = 8;
+
+    private final File dir;
+    private final Map<FileKey, File> files = new HashMap<>();
+    private final Map<FileKey, List<String>> unsaved = new HashMap<>();
+    private final LinkedHashMap<FileKey, List<String>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileKey, List<String>> eldest)
+        {
+            return size() > MAX_CACHED;
+        }
+    };
+    private int nextFileNumber = 1;
+
+    /**
+     * @param dir  The directory in which to keep the versions, which should be used by
+     *             nothing else.  It is deleted (along with its contents) when BlueJ exits.
+     */
+    public FileBaselines(File dir)
+    {
+        this.dir = dir;
+        // Files registered later are deleted first, so the directory will be empty by then:
+        dir.deleteOnExit();
+    }
+
+    @Override
+    public List<String> get(Object key)
+    {
+        List<String> lines = cache.get(key);
+        if (lines != null)
+        {
+            return lines;
+        }
+        if (unsaved.containsKey(key))
+        {
+            return unsaved.get(key);
+        }
+        File file = files.get(key);
+        if (file == null)
+        {
+            return null;
+        }
+        lines = read(file);
+        if (lines != null)
+        {
+            cache.put((FileKey) key, lines);
+        }
+        return lines;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return files.containsKey(key) || unsaved.containsKey(key);
+    }
+
+    @Override
+    public List<String> put(FileKey key, List<String> lines)
+    {
+        List<String> old = get(key);
+        unsaved.remove(key);
+        // Each file keeps the same name, so that we don't register ever more files to delete on exit:
+        File file = files.computeIfAbsent(key, k -> {
+            File f = new File(dir, "baseline" + nextFileNumber++ + ".gz");
+            f.deleteOnExit();
+            return f;
+        });
+        if (write(file, lines))
+        {
+            cache.put(key, lines);
+        }
+        else
+        {
+            files.remove(key);
+            cache.remove(key);
+            unsaved.put(key, lines);
+        }
+        return old;
+    }
+
+    @Override
+    public List<String> remove(Object key)
+    {
+        List<String> old = get(key);
+        cache.remove(key);
+        unsaved.remove(key);
+        File file = files.remove(key);
+        if (file != null)
+        {
+            file.delete();
+        }
+        return old;
+    }
+
+    @Override
+    public void clear()
+    {
+        files.values().forEach(File::delete);
+        files.clear();
+        unsaved.clear();
+        cache.clear();
+    }
+
+    @Override
+    public int size()
+    {
+        return files.size() + unsaved.size();
+    }
+
+    @Override
+    public Set<Entry<FileKey, List<String>>> entrySet()
+    {
+        // Not used in practice; loads every version:
+        Map<FileKey, List<String>> all = new HashMap<>(unsaved);
+        for (FileKey key : files.keySet())
+        {
+            all.put(key, get(key));
+        }
+        return all.entrySet().stream().collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static boolean write(File file, List<String> lines)
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file.toPath())))))
+        {
+            // The lines can't contain newlines, since they were split on them:
+            byte[] text = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(lines.size());
+            out.writeInt(text.length);
+            out.write(text);
+            return true;
+        }
+        catch (IOException e)
+        {
+            Debug.reportError("Could not save Blackbox file version " + file, e);
+            file.delete();
+            return false;
+        }
+    }
+
+    private static List<String> read(File file)
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath())))))
+        {
+            int lineCount = in.readInt();
+            byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            if (lineCount == 0)
+            {
+                return List.of();
+            }
+            List<String> lines = Arrays.asList(new String(text, StandardCharsets.UTF_8).split("\n", -1));
+            if (lines.size() != lineCount)
+            {
+                throw new IOException("Wrong number of lines");
+            }
+            return lines;
+        }
+        catch (IOException e)
+        {
+            // Shouldn't happen, since we wrote the file ourselves:
+            Debug.reportError("Could not read Blackbox file version " + file, e);
+            return null;
+        }
+    }
+}
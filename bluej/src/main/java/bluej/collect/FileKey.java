@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2012,2014  Michael Kolling and John Rosenberg 
+ Copyright (C) 2012,2014,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -33,7 +33,12 @@ class FileKey
     
     public FileKey(ProjectDetails proj, String path)
     {
-        this.projDir = proj.projectDir;
+        this(proj.projectDir, path);
+    }
+
+    FileKey(File projDir, String path)
+    {
+        this.projDir = projDir;
         this.file = path;
     }
     
@@ -0,0 +1,260 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * Calculates a line-based diff between two versions of a file, using Myers' algorithm
+ * in its linear-space form (recursively finding the "middle snake").  Lines are first
+ * replaced by integer identifiers, the same for equal lines, so that the algorithm
+ * itself only compares ints.  Package-visible.
+ */
+@OnThread(Tag.Any)
+class LineDiff
+{
+    /**
+     * A run of lines in the original version which was replaced by a run of lines in
+     * the revised version.  One of the runs may be empty (for a pure insertion or deletion).
+     */
+    static class Hunk
+    {
+        // Zero-based start lines, and numbers of lines:
+        final int originalStart;
+        final int originalSize;
+        final int revisedStart;
+        final int revisedSize;
+
+        Hunk(int originalStart, int originalSize, int revisedStart, int revisedSize)
+        {
+            this.originalStart = originalStart;
+            this.originalSize = originalSize;
+            this.revisedStart = revisedStart;
+            this.revisedSize = revisedSize;
+        }
+    }
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+    // Furthest-reaching paths on each diagonal, forwards and backwards; re-used at each level of recursion:
+    private final int[] forward;
+    private final int[] backward;
+
+    private LineDiff(int[] a, int[] b)
+    {
+        this.a = a;
+        this.b = b;
+        deleted = new boolean[a.length];
+        inserted = new boolean[b.length];
+        int size = (a.length + b.length + 1) / 2 * 2 + 3;
+        forward = new int[size];
+        backward = new int[size];
+    }
+
+    /**
+     * Calculate the differences between two versions of a file.
+     *
+     * @return The runs of lines which differ, in order.  Empty if the versions are the same.
+     */
+    static List<Hunk> diff(List<String> original, List<String> revised)
+    {
+        Map<String, Integer> ids = new HashMap<>();
+        LineDiff diff = new LineDiff(toIds(original, ids), toIds(revised, ids));
+        diff.compare(0, diff.a.length, 0, diff.b.length);
+        return diff.makeHunks();
+    }
+
+    /**
+     * Format the differences as the hunks of a unified diff (with no context lines).
+     */
+    static String format(List<String> original, List<String> revised, List<Hunk> hunks)
+    {
+        StringBuilder diff = new StringBuilder();
+        for (Hunk hunk : hunks)
+        {
+            // Line numbers are one-based, except that a pure insertion gives the line after which to insert:
+            int srcLine = hunk.originalSize > 0 ? hunk.originalStart + 1 : hunk.originalStart;
+            int destLine = hunk.originalSize > 0 ? hunk.revisedStart + 1 : hunk.revisedStart;
+            diff.append("@@ -").append(srcLine).append(",").append(hunk.originalSize)
+                .append(" +").append(destLine).append(",").append(hunk.revisedSize).append(" @@\n");
+            for (String l : original.subList(hunk.originalStart, hunk.originalStart + hunk.originalSize))
+            {
+                diff.append("-").append(l).append("\n");
+            }
+            for (String l : revised.subList(hunk.revisedStart, hunk.revisedStart + hunk.revisedSize))
+            {
+                diff.append("+").append(l).append("\n");
+            }
+        }
+        return diff.toString();
+    }
+
+    private static int[] toIds(List<String> lines, Map<String, Integer> ids)
+    {
+        int[] result = new int[lines.size()];
+        int i = 0;
+        for (String line : lines)
+        {
+            result[i++] = ids.computeIfAbsent(line, l -> ids.size());
+        }
+        return result;
+    }
+
+    /**
+     * Mark the lines which are deleted and inserted in getting from a[aLo..aHi) to b[bLo..bHi).
+     */
+    private void compare(int aLo, int aHi, int bLo, int bHi)
+    {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo])
+        {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1])
+        {
+            aHi--;
+            bHi--;
+        }
+
+        if (aLo == aHi)
+        {
+            for (int j = bLo; j < bHi; j++)
+            {
+                inserted[j] = true;
+            }
+        }
+        else if (bLo == bHi)
+        {
+            for (int i = aLo; i < aHi; i++)
+            {
+                deleted[i] = true;
+            }
+        }
+        else
+        {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    /**
+     * Find the middle snake (run of equal lines) of a shortest edit path between the two
+     * ranges, by searching forwards from the start and backwards from the end at once
+     * until the paths meet.
+     *
+     * @return The start and end of the snake: {aStart, bStart, aEnd, bEnd}
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi)
+    {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        // Backward paths are measured from the end, along diagonals numbered from the end:
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        for (int d = 0; d <= max; d++)
+        {
+            for (int k = -d; k <= d; k += 2)
+            {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                    ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y])
+                {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1 && x + backward[offset + c] >= n)
+                {
+                    return new int[] {aLo + startX, bLo + startY, aLo + x, bLo + y};
+                }
+            }
+
+            for (int c = -d; c <= d; c += 2)
+            {
+                int x = c == -d || (c != d && backward[offset + c - 1] < backward[offset + c + 1])
+                    ? backward[offset + c + 1] : backward[offset + c - 1] + 1;
+                int y = x - c;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y])
+                {
+                    x++;
+                    y++;
+                }
+                backward[offset + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d && x + forward[offset + k] >= n)
+                {
+                    return new int[] {aHi - x, bHi - y, aHi - startX, bHi - startY};
+                }
+            }
+        }
+        // Can't happen: the paths must meet by the time they have each made max edits
+        throw new IllegalStateException();
+    }
+
+    private List<Hunk> makeHunks()
+    {
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length)
+        {
+            if (i < a.length && j < b.length && !deleted[i] && !inserted[j])
+            {
+                i++;
+                j++;
+                continue;
+            }
+            int startI = i;
+            int startJ = j;
+            while (i < a.length && deleted[i])
+            {
+                i++;
+            }
+            while (j < b.length && inserted[j])
+            {
+                j++;
+            }
+            hunks.add(new Hunk(startI, i - startI, startJ, j - startJ));
+        }
+        return hunks;
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import bluej.Config;
+import bluej.utility.Debug;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * Calculates a hash of the part of a class which other classes can depend on when they
+ * are compiled (its "ABI"): the class's name, supertypes and modifiers, and the
+ * signatures of its non-private fields and methods, along with the values of any
+ * constant fields (which the compiler copies into classes using them).  Method bodies,
+ * private members and anonymous or local classes do not contribute, so if a class is
+ * recompiled and its hash is unchanged, classes which use it need not be recompiled.
+ *
+ * A second, stricter hash (the "shape") covers everything about a class except the code
+ * of its methods: all members including private and synthetic ones, anonymous and local
+ * classes, annotations, and nest membership.  If the shape is unchanged by recompiling,
+ * the loaded classes can be redefined in the debug VM with the new method code (which the
+ * VM does not allow for any other change), rather than being discarded and reloaded.
+ *
+ * The hashes are calculated by reading the class files directly rather than by loading
+ * the classes, which would risk running static initialisers in user code.
+ */
+@OnThread(Tag.Any)
+public class ClassFileAbi
+{
+    /** The property which controls whether incremental compilation is used */
+    public static final String INCREMENTAL_COMPILATION = "bluej.compiler.incremental";
+
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_Utf8 = 1;
+    private static final int CONSTANT_Integer = 3;
+    private static final int CONSTANT_Float = 4;
+    private static final int CONSTANT_Long = 5;
+    private static final int CONSTANT_Double = 6;
+    private static final int CONSTANT_Class = 7;
+    private static final int CONSTANT_String = 8;
+    private static final int CONSTANT_NameAndType = 12;
+    private static final int CONSTANT_MethodHandle = 15;
+
+    /**
+     * Check whether incremental compilation is enabled.  If it is, modifying a class does
+     * not immediately mark its dependents as needing compilation; instead, they are
+     * recompiled only if the ABI hash of the class changes when it is compiled.
+     */
+    public static boolean isIncrementalCompilationEnabled()
+    {
+        return Config.getPropBoolean(INCREMENTAL_COMPILATION, true);
+    }
+
+    /**
+     * Calculates the ABI hash of the given class files, which should be all the
+     * class files generated from a single source file.
+     *
+     * @return The hash, or null if any of the files could not be read (in which
+     *         case it should be assumed that the ABI has changed).
+     */
+    public static byte[] calculate(List<File> classFiles)
+    {
+        return calculate(classFiles, false);
+    }
+
+    /**
+     * Calculates the shape hash of the given class files, which should be all the
+     * class files generated from a single source file.
+     *
+     * @return The hash, or null if any of the files could not be read (in which
+     *         case it should be assumed that the shape has changed).
+     */
+    public static byte[] calculateShape(List<File> classFiles)
+    {
+        return calculate(classFiles, true);
+    }
+
+    private static byte[] calculate(List<File> classFiles, boolean shape)
+    {
+        List<String> items = new ArrayList<>();
+        try
+        {
+            for (File classFile : classFiles)
+            {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(classFile))))
+                {
+                    readClass(in, items, shape);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Missing or malformed class file; we can't tell what the ABI is:
+            return null;
+        }
+
+        // Sort, so that re-ordering members or files makes no difference:
+        Collections.sort(items);
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String item : items)
+            {
+                digest.update(item.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)'\n');
+            }
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            Debug.reportError(e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the given class name is that of an anonymous or local class
+     * (e.g. "Foo$1" or "Foo$1Local"), which cannot be referenced from other classes.
+     */
+    private static boolean isAnonymousOrLocal(String className)
+    {
+        int dollar = className.lastIndexOf('$');
+        return dollar != -1 && dollar + 1 < className.length()
+                && Character.isDigit(className.charAt(dollar + 1));
+    }
+
+    /**
+     * Reads a single class file, adding a string to the list for each ABI-relevant item
+     * (or, if shape is true, each item relevant to the class's shape).
+     */
+    private static void readClass(DataInputStream in, List<String> items, boolean shape) throws IOException
+    {
+        if (in.readInt() != 0xCAFEBABE)
+        {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        // The constant pool.  We keep the strings, and the values of numeric constants;
+        // for Class and String entries we keep the index of the referenced Utf8 entry:
+        int poolCount = in.readUnsignedShort();
+        Object[] pool = new Object[poolCount];
+        for (int i = 1; i < poolCount; i++)
+        {
+            int tag = in.readUnsignedByte();
+            switch (tag)
+            {
+                case CONSTANT_Utf8 -> pool[i] = in.readUTF();
+                case CONSTANT_Integer -> pool[i] = in.readInt();
+                case CONSTANT_Float -> pool[i] = in.readFloat();
+                case CONSTANT_Long -> { pool[i] = in.readLong(); i++; }
+                case CONSTANT_Double -> { pool[i] = in.readDouble(); i++; }
+                case CONSTANT_Class, CONSTANT_String -> pool[i] = in.readUnsignedShort();
+                case CONSTANT_NameAndType -> pool[i] = new int[] {in.readUnsignedShort(), in.readUnsignedShort()};
+                case CONSTANT_MethodHandle -> { in.readUnsignedByte(); in.readUnsignedShort(); }
+                // MethodType, Module, Package:
+                case 16, 19, 20 -> in.readUnsignedShort();
+                // Fieldref, Methodref, InterfaceMethodref, Dynamic, InvokeDynamic:
+                case 9, 10, 11, 17, 18 -> in.readInt();
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String className = classNameAt(pool, in.readUnsignedShort());
+        if (isAnonymousOrLocal(className) && !shape)
+        {
+            return;
+        }
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? "" : classNameAt(pool, superIndex);
+        items.add("class " + className + " " + (access & ~ACC_SUPER) + " " + superName);
+
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++)
+        {
+            items.add("implements " + className + " " + classNameAt(pool, in.readUnsignedShort()));
+        }
+
+        readMembers(in, pool, className, "field", items, shape);
+        readMembers(in, pool, className, "method", items, shape);
+
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++)
+        {
+            String attrName = (String) pool[in.readUnsignedShort()];
+            int length = in.readInt();
+            switch (attrName)
+            {
+                case "Signature" -> items.add("signature " + className + " " + pool[in.readUnsignedShort()]);
+                case "InnerClasses" -> {
+                    int count = in.readUnsignedShort();
+                    for (int c = 0; c < count; c++)
+                    {
+                        int innerIndex = in.readUnsignedShort();
+                        int outerIndex = in.readUnsignedShort();
+                        in.readUnsignedShort(); // simple name
+                        int innerAccess = in.readUnsignedShort();
+                        String innerName = classNameAt(pool, innerIndex);
+                        // Our own member classes only (other classes which we merely refer to are
+                        // listed too).  Their access (e.g. private, static) is only recorded here,
+                        // not in their own class file header:
+                        boolean ours = innerName.equals(className) || innerName.startsWith(className + "$");
+                        if (shape || (outerIndex != 0 && ours && !isAnonymousOrLocal(innerName)))
+                        {
+                            items.add("inner " + className + " " + innerName + " " + innerAccess);
+                        }
+                    }
+                }
+                case "PermittedSubclasses" -> {
+                    int count = in.readUnsignedShort();
+                    for (int c = 0; c < count; c++)
+                    {
+                        items.add("permits " + className + " " + classNameAt(pool, in.readUnsignedShort()));
+                    }
+                }
+                case "NestHost" -> {
+                    if (shape)
+                    {
+                        items.add("nesthost " + className + " " + classNameAt(pool, in.readUnsignedShort()));
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "NestMembers" -> {
+                    if (shape)
+                    {
+                        int count = in.readUnsignedShort();
+                        for (int c = 0; c < count; c++)
+                        {
+                            items.add("nestmember " + className + " " + classNameAt(pool, in.readUnsignedShort()));
+                        }
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "EnclosingMethod" -> {
+                    if (shape)
+                    {
+                        String outer = classNameAt(pool, in.readUnsignedShort());
+                        int methodIndex = in.readUnsignedShort();
+                        String method = methodIndex == 0 ? "" : nameAndTypeAt(pool, methodIndex);
+                        items.add("enclosed " + className + " " + outer + " " + method);
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "Record" -> {
+                    if (shape)
+                    {
+                        int count = in.readUnsignedShort();
+                        for (int c = 0; c < count; c++)
+                        {
+                            String name = (String) pool[in.readUnsignedShort()];
+                            String descriptor = (String) pool[in.readUnsignedShort()];
+                            StringBuilder item = new StringBuilder("record ").append(className).append(' ')
+                                    .append(name).append(' ').append(descriptor);
+                            readMemberAttributes(in, pool, descriptor, item, true);
+                            items.add(item.toString());
+                        }
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> {
+                    if (shape)
+                    {
+                        StringBuilder item = new StringBuilder("annotations ").append(className);
+                        readAnnotations(in, pool, item);
+                        items.add(item.toString());
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                default -> in.skipNBytes(length);
+            }
+        }
+    }
+
+    /**
+     * Reads the fields or methods of a class (the format is the same), adding an item for each
+     * non-private, non-synthetic member (or for every member, if shape is true).
+     */
+    private static void readMembers(DataInputStream in, Object[] pool, String className, String kind, List<String> items, boolean shape) throws IOException
+    {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++)
+        {
+            int access = in.readUnsignedShort();
+            String name = (String) pool[in.readUnsignedShort()];
+            String descriptor = (String) pool[in.readUnsignedShort()];
+            boolean relevant = shape || (access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0;
+            StringBuilder item = new StringBuilder(kind).append(' ').append(className).append(' ')
+                    .append(name).append(' ').append(descriptor).append(' ').append(access);
+
+            readMemberAttributes(in, pool, descriptor, item, shape);
+
+            if (relevant)
+            {
+                items.add(item.toString());
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of a field, method or record component, appending the relevant
+     * ones to the item.  The code of a method is never relevant.
+     */
+    private static void readMemberAttributes(DataInputStream in, Object[] pool, String descriptor, StringBuilder item, boolean shape) throws IOException
+    {
+        int attributeCount = in.readUnsignedShort();
+        for (int a = 0; a < attributeCount; a++)
+        {
+            String attrName = (String) pool[in.readUnsignedShort()];
+            int length = in.readInt();
+            switch (attrName)
+            {
+                case "Signature" -> item.append(" signature ").append(pool[in.readUnsignedShort()]);
+                case "ConstantValue" -> {
+                    Object value = pool[in.readUnsignedShort()];
+                    // String constants are stored as the index of the Utf8 entry:
+                    if (value instanceof Integer index && descriptor.equals("Ljava/lang/String;"))
+                    {
+                        value = "\"" + pool[index] + "\"";
+                    }
+                    item.append(" = ").append(value);
+                }
+                case "Exceptions" -> {
+                    int exceptionCount = in.readUnsignedShort();
+                    for (int e = 0; e < exceptionCount; e++)
+                    {
+                        item.append(" throws ").append(classNameAt(pool, in.readUnsignedShort()));
+                    }
+                }
+                case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> {
+                    if (shape)
+                    {
+                        item.append(' ').append(attrName);
+                        readAnnotations(in, pool, item);
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" -> {
+                    if (shape)
+                    {
+                        item.append(' ').append(attrName);
+                        int paramCount = in.readUnsignedByte();
+                        for (int p = 0; p < paramCount; p++)
+                        {
+                            item.append(" param");
+                            readAnnotations(in, pool, item);
+                        }
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "AnnotationDefault" -> {
+                    if (shape)
+                    {
+                        item.append(" default ");
+                        readElementValue(in, pool, item);
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                case "MethodParameters" -> {
+                    if (shape)
+                    {
+                        int paramCount = in.readUnsignedByte();
+                        for (int p = 0; p < paramCount; p++)
+                        {
+                            int nameIndex = in.readUnsignedShort();
+                            item.append(" param ").append(nameIndex == 0 ? "" : pool[nameIndex])
+                                    .append(' ').append(in.readUnsignedShort());
+                        }
+                    }
+                    else
+                    {
+                        in.skipNBytes(length);
+                    }
+                }
+                default -> {
+                    // Other attributes (e.g. type annotations) are not understood here, so
+                    // just record their presence:
+                    if (shape && !attrName.equals("Code"))
+                    {
+                        item.append(' ').append(attrName);
+                    }
+                    in.skipNBytes(length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a list of annotations (the contents of an annotations attribute, or the
+     * annotations of one parameter), appending them to the item.
+     */
+    private static void readAnnotations(DataInputStream in, Object[] pool, StringBuilder item) throws IOException
+    {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++)
+        {
+            item.append(' ');
+            readAnnotation(in, pool, item);
+        }
+    }
+
+    private static void readAnnotation(DataInputStream in, Object[] pool, StringBuilder item) throws IOException
+    {
+        item.append('@').append(pool[in.readUnsignedShort()]).append('(');
+        int pairCount = in.readUnsignedShort();
+        for (int p = 0; p < pairCount; p++)
+        {
+            item.append(pool[in.readUnsignedShort()]).append('=');
+            readElementValue(in, pool, item);
+            item.append(',');
+        }
+        item.append(')');
+    }
+
+    private static void readElementValue(DataInputStream in, Object[] pool, StringBuilder item) throws IOException
+    {
+        char tag = (char) in.readUnsignedByte();
+        item.append(tag);
+        switch (tag)
+        {
+            // Constants (including strings) and class literals refer directly to the value:
+            case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> item.append(pool[in.readUnsignedShort()]);
+            case 'e' -> item.append(pool[in.readUnsignedShort()]).append('.').append(pool[in.readUnsignedShort()]);
+            case '@' -> readAnnotation(in, pool, item);
+            case '[' -> {
+                int count = in.readUnsignedShort();
+                item.append('{');
+                for (int i = 0; i < count; i++)
+                {
+                    readElementValue(in, pool, item);
+                    item.append(',');
+                }
+                item.append('}');
+            }
+            default -> throw new IOException("Unknown annotation element tag " + tag);
+        }
+    }
+
+    private static String classNameAt(Object[] pool, int index)
+    {
+        return (String) pool[(Integer) pool[index]];
+    }
+
+    private static String nameAndTypeAt(Object[] pool, int index)
+    {
+        int[] nameAndType = (int[]) pool[index];
+        return pool[nameAndType[0]] + " " + pool[nameAndType[1]];
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2010,2011,2012,2016,2018  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2010,2011,2012,2016,2018,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -25,6 +25,8 @@ package bluej.compiler;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
  * Compiler class - an abstract interface to a source-to-bytecode compiler. This
@@ -44,6 +46,8 @@ abstract class Compiler
     private File[] bootClassPath;
     private boolean debug;
     private boolean deprecation;
+    /** Check for whether the current compilation has been cancelled - may be null */
+    private BooleanSupplier cancellationCheck;
     
     /**
      * Set the destination directory - the base directory for where the compiled class files
@@ -72,6 +76,17 @@ abstract class Compiler
         this.bootClassPath = bootClassPath;
     }
     
+    /**
+     * Specify a check for whether the compilation has been cancelled.  The compiler
+     * checks this periodically, and if it returns true, stops and reports failure.
+     * 
+     * @param cancellationCheck  The check, or null if compilation cannot be cancelled
+     */
+    public void setCancellationCheck(BooleanSupplier cancellationCheck)
+    {
+        this.cancellationCheck = cancellationCheck;
+    }
+    
     public void setDebug(boolean debug)
     {
         this.debug = debug;
@@ -106,6 +121,11 @@ abstract class Compiler
     {
         return bootClassPath;
     }
+    
+    public BooleanSupplier getCancellationCheck()
+    {
+        return cancellationCheck;
+    }
 
     /**
      * Compile some source files.
@@ -127,4 +147,37 @@ abstract class Compiler
     public abstract boolean compile(File[] sources, CompileObserver observer,
             boolean internal, List<String> options, Charset fileCharset, CompileType type);
 
+    /**
+     * Compile a single source held in memory, keeping the generated class files in
+     * memory rather than writing them to the destination directory.  This is used for
+     * BlueJ-generated code (shell files); see the "internal" parameter of compile.
+     * 
+     * @param sourceFile
+     *            The file which would hold the source.  It need not exist, but its
+     *            name must match the name of the class in the source.
+     * @param source
+     *            The source code
+     * @param classes
+     *            A map which receives the generated class files, keyed by binary class name
+     * @param observer
+     *            The compilation observer
+     * @param options
+     *            Option strings to pass to the compiler
+     * @param fileCharset
+     *            The character set used for other source files which are read
+     * 
+     * @return  true if the compilation was successful
+     */
+    public abstract boolean compileInMemory(File sourceFile, String source, Map<String, byte[]> classes,
+            CompileObserver observer, List<String> options, Charset fileCharset);
+
+    /**
+     * Release any resources (such as open class path jars) kept from one compilation
+     * to the next.  This may be called from any thread, including while a compilation
+     * is in progress; the compiler can still be used afterwards.
+     */
+    public void release()
+    {
+    }
+
 }
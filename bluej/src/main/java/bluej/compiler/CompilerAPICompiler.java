@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2018  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2018,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,37 +21,66 @@
  */
 package bluej.compiler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
 
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
 import bluej.Config;
 import bluej.compiler.Diagnostic.DiagnosticOrigin;
+import bluej.utility.Debug;
 
 /**
  * A compiler implementation using the Compiler API introduced in Java 6.
  * 
+ * <p>The compiler and its file manager are kept from one compilation to the next, so
+ * that the file manager's opened archives (class path jars and the platform classes)
+ * are reused rather than opened afresh for every compilation.  The file manager is
+ * only recreated if the charset, boot class path or a class path jar changes.  This
+ * means that an instance should only be used by one thread at a time (in practice,
+ * it is only used by the CompilerThread).  The file manager is closed by release(),
+ * for instance when a project is closed, so that its jars are no longer held open.
+ * 
  * @author Marion Zalk
  */
 public class CompilerAPICompiler extends Compiler
 {
     private static final AtomicInteger nextDiagnosticIdentifier = new AtomicInteger(1);
 
+    private JavaCompiler javaCompiler;
+    private StandardJavaFileManager fileManager;
+    // The settings which the current file manager was created for:
+    private List<Object> fileManagerKey;
+    // Whether a compilation is using the file manager, and whether the file manager
+    // should be closed when it has finished (both guarded by this):
+    private boolean compiling;
+    private boolean releaseRequested;
+
     public CompilerAPICompiler()
     {
         setDebug(true);
@@ -75,9 +104,36 @@ public class CompilerAPICompiler extends Compiler
     @Override
     public boolean compile(final File[] sources, final CompileObserver observer,
             final boolean internal, List<String> userOptions, Charset fileCharset, CompileType type)
+    {
+        return compile(sources, null, null, observer, internal, userOptions, fileCharset, type);
+    }
+
+    @Override
+    public boolean compileInMemory(File sourceFile, String source, Map<String, byte[]> classes,
+            CompileObserver observer, List<String> userOptions, Charset fileCharset)
+    {
+        return compile(new File[] {sourceFile}, source, classes, observer, true, userOptions,
+                fileCharset, CompileType.INTERNAL_COMPILE);
+    }
+
+    /**
+     * Compile, either from source files, or from a single source held in memory.
+     * 
+     * @param sources  The source files.  If memorySource is not null, this is the
+     *                 single file which would hold it (which need not exist).
+     * @param memorySource  The source to compile, or null to read the source files
+     * @param classes  If not null, receives the generated class files (which are then
+     *                 not written to disk), keyed by binary class name
+     */
+    private boolean compile(final File[] sources, String memorySource, Map<String, byte[]> classes,
+            final CompileObserver observer, final boolean internal, List<String> userOptions,
+            Charset fileCharset, CompileType type)
     {
         boolean result = true;
-        JavaCompiler jc = ToolProvider.getSystemJavaCompiler();
+        if (javaCompiler == null) {
+            javaCompiler = ToolProvider.getSystemJavaCompiler();
+        }
+        JavaCompiler jc = javaCompiler;
         List<String> optionsList = new ArrayList<String>();
         
         if (jc == null) {
@@ -91,6 +147,11 @@ public class CompilerAPICompiler extends Compiler
             @Override
             public void report(Diagnostic<? extends JavaFileObject> diag)
             {
+                BooleanSupplier cancellationCheck = getCancellationCheck();
+                if (cancellationCheck != null && cancellationCheck.getAsBoolean()) {
+                    // No-one wants to hear about errors in a cancelled compilation:
+                    return;
+                }
                 String src = null;
                 if (diag.getSource() != null)
                 {
@@ -184,33 +245,39 @@ public class CompilerAPICompiler extends Compiler
         try
         {  
             //setup the filemanager
-            StandardJavaFileManager sjfm = jc.getStandardFileManager(diagListener, null, fileCharset);
             List<File> pathList = new ArrayList<File>();
             List<File> outputList = new ArrayList<File>();
             outputList.add(getDestDir());
             pathList.addAll(getClassPath());
+            StandardJavaFileManager sjfm = getFileManager(jc, fileCharset, pathList, getBootClassPath());
             
             // In BlueJ, the destination directory and the source path are
             // always the same
             sjfm.setLocation(StandardLocation.SOURCE_PATH, outputList);
             sjfm.setLocation(StandardLocation.CLASS_PATH, pathList);
-            File tempDir = null;
-            if (type.keepClasses())
-            {
-                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, outputList);
-            }
-            else
-            {
-                // We could make a new file manager that memory-mapped the output files
-                // and discarded them... but creating a temporary dir is much more
-                // straightforward:
-                tempDir = Files.createTempDirectory("bluej").toFile();
-                sjfm.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(tempDir));
+            sjfm.setLocation(StandardLocation.CLASS_OUTPUT, outputList);
+            JavaFileManager taskFileManager = sjfm;
+            if (classes != null || !type.keepClasses()) {
+                taskFileManager = new ClassOutputFileManager(sjfm, classes);
             }
             
             //get the source files for compilation  
-            Iterable<? extends JavaFileObject> compilationUnits1 =
-                sjfm.getJavaFileObjectsFromFiles(Arrays.asList(sources));
+            Iterable<? extends JavaFileObject> compilationUnits1;
+            if (memorySource != null) {
+                compilationUnits1 = List.of(new SimpleJavaFileObject(sources[0].toURI(), JavaFileObject.Kind.SOURCE) {
+                    @Override
+                    public CharSequence getCharContent(boolean ignoreEncodingErrors)
+                    {
+                        return memorySource;
+                    }
+                });
+                // Other classes needed by the source should already be compiled; if any
+                // must be compiled from source, don't generate class files for them:
+                optionsList.add("-implicit:none");
+            }
+            else {
+                compilationUnits1 = sjfm.getJavaFileObjectsFromFiles(Arrays.asList(sources));
+            }
             //add any options
             if(isDebug()) {
                 optionsList.add("-g");
@@ -219,28 +286,190 @@ public class CompilerAPICompiler extends Compiler
                 optionsList.add("-deprecation");
             }
             
-            File[] bootClassPath = getBootClassPath();
-            if (bootClassPath != null && bootClassPath.length != 0) {
-                sjfm.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Arrays.asList(bootClassPath));
-            }
-            
             optionsList.addAll(userOptions);
             
             //compile
-            result = jc.getTask(null, sjfm, diagListener, optionsList, null, compilationUnits1).call();
-            sjfm.close();
-            if (tempDir != null)
-                tempDir.delete();
+            JavaCompiler.CompilationTask task = jc.getTask(null, taskFileManager, diagListener, optionsList, null, compilationUnits1);
+            BooleanSupplier cancellationCheck = getCancellationCheck();
+            if (cancellationCheck != null && task instanceof JavacTask javacTask) {
+                // javac has no direct way to stop a task, but an exception thrown from a
+                // listener aborts it; we check at the start of each phase for each file:
+                javacTask.addTaskListener(new TaskListener() {
+                    @Override
+                    public void started(TaskEvent e)
+                    {
+                        if (cancellationCheck.getAsBoolean()) {
+                            throw new CompilationCancelledException();
+                        }
+                    }
+                });
+            }
+            try {
+                result = task.call();
+            }
+            catch (RuntimeException e) {
+                // Exceptions from listeners are wrapped by the compiler:
+                if (e instanceof CompilationCancelledException || e.getCause() instanceof CompilationCancelledException) {
+                    return false;
+                }
+                throw e;
+            }
+            finally {
+                // Discard cached source file contents: a source file may be saved again
+                // within the resolution of its modification time, in which case the
+                // file manager would not notice the change.  Opened archives are kept.
+                sjfm.flush();
+            }
         }
         catch(IOException e)
         {
             e.printStackTrace(System.out);
             return false;
         }
+        finally {
+            synchronized (this) {
+                compiling = false;
+                if (releaseRequested) {
+                    closeFileManager();
+                }
+            }
+        }
 
         return result;
     }
 
+    /**
+     * Close the file manager, releasing the class path jars it has open.  If a
+     * compilation is in progress, the file manager is closed when it finishes.
+     * The next compilation creates a new file manager.
+     */
+    @Override
+    public synchronized void release()
+    {
+        if (compiling) {
+            releaseRequested = true;
+        }
+        else {
+            closeFileManager();
+        }
+    }
+
+    private synchronized void closeFileManager()
+    {
+        releaseRequested = false;
+        if (fileManager != null) {
+            try {
+                fileManager.close();
+            }
+            catch (IOException e) {
+                Debug.reportError("Error closing compiler file manager", e);
+            }
+            fileManager = null;
+            fileManagerKey = null;
+        }
+    }
+
+    /**
+     * Gets a file manager for the given settings, reusing the file manager from the
+     * last compilation if none of the settings (or the class path jars) have changed.
+     * The file manager is then in use until the compilation finishes.
+     */
+    private synchronized StandardJavaFileManager getFileManager(JavaCompiler jc, Charset fileCharset,
+            List<File> classPath, File[] bootClassPath) throws IOException
+    {
+        List<Object> key = new ArrayList<>();
+        key.add(fileCharset);
+        key.add(bootClassPath == null ? null : Arrays.asList(bootClassPath));
+        for (File entry : classPath) {
+            // The file manager keeps jars open, so must be recreated if one is replaced.
+            // Directories are listed afresh on each use, so we don't need to check them:
+            if (entry.isFile()) {
+                key.add(entry);
+                key.add(entry.lastModified());
+                key.add(entry.length());
+            }
+        }
+        
+        compiling = true;
+        if (fileManager == null || ! key.equals(fileManagerKey)) {
+            closeFileManager();
+            // Diagnostics are reported via the listener passed to each task, so we don't
+            // give the file manager a listener (which would be tied to one compilation):
+            fileManager = jc.getStandardFileManager(null, null, fileCharset);
+            if (bootClassPath != null && bootClassPath.length != 0) {
+                fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, Arrays.asList(bootClassPath));
+            }
+            fileManagerKey = key;
+        }
+        return fileManager;
+    }
+
+    /**
+     * A file manager which keeps all class files written by the compiler in memory,
+     * or discards them (used when we are only checking for errors).  Nothing is
+     * written to disk.
+     */
+    private static class ClassOutputFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        private final Map<String, byte[]> classes;
+
+        /**
+         * @param classes  The map to receive the class files, keyed by binary class name,
+         *                 or null to discard them.
+         */
+        public ClassOutputFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes)
+        {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className,
+                JavaFileObject.Kind kind, FileObject sibling) throws IOException
+        {
+            URI uri = URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    // Only class files are kept; anything else (such as a source file
+                    // generated by an annotation processor) is always discarded:
+                    if (classes == null || kind != JavaFileObject.Kind.CLASS) {
+                        return OutputStream.nullOutputStream();
+                    }
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close()
+                        {
+                            classes.put(className, toByteArray());
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public FileObject getFileForOutput(Location location, String packageName,
+                String relativeName, FileObject sibling) throws IOException
+        {
+            URI uri = URI.create("mem:///" + packageName.replace('.', '/') + "/" + relativeName);
+            return new SimpleJavaFileObject(uri, JavaFileObject.Kind.OTHER) {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    return OutputStream.nullOutputStream();
+                }
+            };
+        }
+    }
+
+    /**
+     * Thrown from a task listener to stop a compilation which has been cancelled.
+     */
+    private static class CompilationCancelledException extends RuntimeException
+    {
+    }
+
     /**
      * Processes messages returned from the compiler. This just slightly adjusts the format of some
      * messages.
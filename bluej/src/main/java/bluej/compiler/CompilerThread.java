@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2014  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2014,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,22 +21,38 @@
  */
 package bluej.compiler;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 import threadchecker.OnThread;
 import threadchecker.Tag;
 import bluej.Config;
-import bluej.utility.Queue;
 
 /**
  * The compiler thread. BlueJ uses exactly one thread for compilation. Jobs are
  * queued, and this thread processes tham one by one. If there is no job, this
  * thread just sleeps.
  * 
+ * <p>Jobs whose class files are kept (e.g. a compilation requested by the user) are
+ * processed before error-checking jobs, which only exist to show errors in the editor
+ * and so can wait; otherwise jobs are processed in the order they were added.  An
+ * error-checking job can also be cancelled, whether queued or running, if a source
+ * it includes is modified (see cancelErrorChecks), and a queued error-checking job is
+ * dropped when a job compiling all of its sources is added (see addJob).
+ * 
+ * <p>Only one thread is used, even though jobs for different packages are independent,
+ * because the compiler keeps state (its file manager) between compilations.
+ * 
  * @author Michael Cahill
  * @author Michael Kolling
  */
 class CompilerThread extends Thread
 {
-    private Queue jobs;
+    private final List<Job> jobs = new ArrayList<>();
+    // The job currently being compiled, if any:
+    private Job currentJob;
     private boolean busy = true;
 
     /**
@@ -45,7 +61,6 @@ class CompilerThread extends Thread
     public CompilerThread()
     {
         super(Config.getString("compiler.thread.title"));
-        jobs = new Queue();
     }
 
     /**
@@ -59,7 +74,8 @@ class CompilerThread extends Thread
         Job job;
         while (true) {
             synchronized (this) {
-                while ((job = (Job) jobs.dequeue()) == null) {
+                currentJob = null;
+                while ((job = nextJob()) == null) {
                     busy = false;
                     notifyAll();
                     try {
@@ -67,25 +83,79 @@ class CompilerThread extends Thread
                     }
                     catch (InterruptedException e) {}
                 }
+                currentJob = job;
             }
 
             job.compile();
         }
     }
 
+    /**
+     * Remove and return the next job to compile: the first which keeps its class files,
+     * or if there are none, the first error-checking job.  Returns null if there are no jobs.
+     */
+    private synchronized Job nextJob()
+    {
+        if (jobs.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < jobs.size(); i++) {
+            if (jobs.get(i).getType().keepClasses()) {
+                return jobs.remove(i);
+            }
+        }
+        return jobs.remove(0);
+    }
+
     /**
      * Add a new job to this thread's job queue. The job will be processed by
      * this thread some tim ein the near future. This method returns
      * immediately.
+     * 
+     * <p>Queued error-checking jobs whose sources are all included in the new job are
+     * removed, since the new job will report the same errors (from newer sources); the
+     * new job notifies their observers in their place.
      */
     @OnThread(Tag.Any)
     public synchronized void addJob(Job job)
     {
-        jobs.enqueue(job);
+        for (Iterator<Job> i = jobs.iterator(); i.hasNext(); ) {
+            Job queued = i.next();
+            if (job.supersedes(queued)) {
+                i.remove();
+                job.addSuperseded(queued);
+            }
+        }
+        jobs.add(job);
         busy = true;
         notifyAll();
     }
 
+    /**
+     * Cancel any error-checking jobs, queued or running, which include the given
+     * source file.  This should be called when the source is modified, as the
+     * results of such jobs are then out of date.  Jobs which keep their class
+     * files are never cancelled.
+     */
+    @OnThread(Tag.Any)
+    public synchronized void cancelErrorChecks(File javaSource)
+    {
+        for (Job job : jobs) {
+            cancelIfErrorCheck(job, javaSource);
+        }
+        if (currentJob != null) {
+            cancelIfErrorCheck(currentJob, javaSource);
+        }
+    }
+
+    @OnThread(Tag.Any)
+    private static void cancelIfErrorCheck(Job job, File javaSource)
+    {
+        if (!job.getType().keepClasses() && job.hasSource(javaSource)) {
+            job.cancel();
+        }
+    }
+
     @OnThread(Tag.Any)
     public boolean isBusy()
     {
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2016,2020,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2016,2020,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -24,11 +24,15 @@ package bluej.compiler;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import bluej.Config;
 import bluej.classmgr.BPClassLoader;
+import threadchecker.OnThread;
+import threadchecker.Tag;
 
 /**
  * A compiler "job". A list of filenames to compile + parameters.
@@ -51,6 +55,15 @@ class Job
     private Charset fileCharset;
     private CompileType type;
     private CompileReason reason;
+    // For a job compiling a single source held in memory, the source, and the map to
+    // receive the generated class files (otherwise both null):
+    private String memorySource;
+    private Map<String, byte[]> memoryClasses;
+    // Set (from any thread) if the results of this job are no longer wanted:
+    private volatile boolean cancelled;
+    // Queued jobs which this job has superseded (see supersedes()), and replaces in
+    // the queue; their observers are notified along with ours:
+    private final List<Job> superseded = new ArrayList<>();
 
     /**
      * Generator for unique ascending compilation identifiers.  It doesn't matter if it's shared between
@@ -58,7 +71,7 @@ class Job
      * 2 billion compilations in a single session, so integer is fine:
      */
     private static final AtomicInteger nextCompilationSequence = new AtomicInteger(1);
-    
+
     /**
      * Create a job with a set of sources.
      */
@@ -77,7 +90,99 @@ class Job
         this.type = type;
         this.reason = reason;
     }
+
+    /**
+     * Create a job which compiles a single source held in memory, keeping the generated
+     * class files in memory (see Compiler.compileInMemory).
+     * 
+     * @param sourceFile  The file which would hold the source (which need not exist)
+     * @param source      The source code
+     * @param classes     The map to receive the generated class files
+     */
+    public Job(CompileInputFile sourceFile, String source, Map<String, byte[]> classes, Compiler compiler,
+                        CompileObserver observer, BPClassLoader bpClassLoader, File destDir,
+                        List<String> userCompileOptions, Charset fileCharset, CompileReason reason)
+    {
+        this(new CompileInputFile[] {sourceFile}, compiler, observer, bpClassLoader, destDir, true,
+                userCompileOptions, fileCharset, CompileType.INTERNAL_COMPILE, reason);
+        this.memorySource = source;
+        this.memoryClasses = classes;
+    }
     
+    /**
+     * Cancel this job.  If it has not yet started, the compiler will not be run; if
+     * it is running, the compiler will be stopped at the next opportunity.  Either way,
+     * the observer still sees the compilation start and then end unsuccessfully.
+     */
+    @OnThread(Tag.Any)
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    @OnThread(Tag.Any)
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    @OnThread(Tag.Any)
+    public CompileType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Check whether this job includes the given source file.
+     */
+    @OnThread(Tag.Any)
+    public boolean hasSource(File javaSource)
+    {
+        for (CompileInputFile source : sources)
+        {
+            if (source.getJavaCompileInputFile().equals(javaSource))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether this job makes another, queued, job redundant: that is, whether the
+     * other job is an error check whose sources this job also compiles, so that this job
+     * reports the same errors.  A job which keeps its class files is never superseded,
+     * since its observers act on those class files.
+     */
+    @OnThread(Tag.Any)
+    public boolean supersedes(Job other)
+    {
+        if (other.type.keepClasses() || other.isCancelled())
+        {
+            return false;
+        }
+        for (CompileInputFile source : other.sources)
+        {
+            if (!hasSource(source.getJavaCompileInputFile()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Take the place of a job which this job supersedes (and which has been removed from
+     * the queue), including any jobs that job had itself superseded.  Their observers will
+     * see this job's compilation start and end.
+     */
+    @OnThread(Tag.Any)
+    public void addSuperseded(Job other)
+    {
+        superseded.add(other);
+        superseded.addAll(other.superseded);
+    }
+
     /**
      * Compile this job
      */
@@ -89,6 +194,11 @@ class Job
             if(observer != null) {
                 observer.startCompile(sources, reason, type, compilationSequence);
             }
+            for (Job job : superseded) {
+                if (job.observer != null) {
+                    job.observer.startCompile(job.sources, job.reason, job.type, compilationSequence);
+                }
+            }
 
             if(destDir != null) {
                 compiler.setDestDir(destDir);
@@ -98,22 +208,45 @@ class Job
 
             compiler.setBootClassPath(null);
 
+            compiler.setCancellationCheck(this::isCancelled);
+
             File[] actualSourceFiles = new File[sources.length];
             for (int i = 0; i < sources.length; i++)
             {
                 actualSourceFiles[i] = sources[i].getJavaCompileInputFile();
             }
 
-            boolean successful = compiler.compile(actualSourceFiles, observer, internal, userCompileOptions, fileCharset, type);
-
-            if(observer != null) {
-                observer.endCompile(sources, successful, type, compilationSequence);
+            boolean successful;
+            if (cancelled) {
+                successful = false;
+            }
+            else if (memorySource != null) {
+                successful = compiler.compileInMemory(actualSourceFiles[0], memorySource, memoryClasses,
+                        observer, userCompileOptions, fileCharset);
             }
+            else {
+                successful = compiler.compile(actualSourceFiles, observer, internal, userCompileOptions, fileCharset, type);
+            }
+
+            endCompile(successful, compilationSequence);
         } catch(Exception e) {
             System.err.println(Config.getString("compileException") + ": " + e);
             e.printStackTrace();
-            if (observer != null) {
-                observer.endCompile(sources, false, type, compilationSequence);
+            endCompile(false, compilationSequence);
+        }
+    }
+
+    /**
+     * Notify our observer, and those of the jobs we superseded, that compilation has ended.
+     */
+    private void endCompile(boolean successful, int compilationSequence)
+    {
+        if (observer != null) {
+            observer.endCompile(sources, successful, type, compilationSequence);
+        }
+        for (Job job : superseded) {
+            if (job.observer != null) {
+                job.observer.endCompile(job.sources, successful, job.type, compilationSequence);
             }
         }
     }
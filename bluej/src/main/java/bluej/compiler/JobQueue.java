@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2011,2012,2013,2016  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2011,2012,2013,2016,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -25,11 +25,14 @@ import java.io.File;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import bluej.Config;
 import bluej.classmgr.BPClassLoader;
 import bluej.utility.Debug;
 import bluej.utility.Utility;
+import threadchecker.OnThread;
+import threadchecker.Tag;
 
 /**
  * Reasonably generic interface between the BlueJ IDE and the Java compiler.
@@ -90,6 +93,57 @@ public class JobQueue
                 destDir, suppressUnchecked, options, fileCharset, type, reason));
     }
 
+    /**
+     * Compiles a shell class (the class generated for an interactive invocation) in memory.
+     * The compilation is queued behind any compilations which write class files (so that
+     * it sees their results), but ahead of error checks.  Neither the source nor the
+     * generated class files are written to disk.
+     * 
+     * @param sourceFile  The file which would hold the source; this is not written, but
+     *                    determines the class name expected by the compiler
+     * @param source      The source code of the shell class
+     * @param classes     A map which receives the generated class files, keyed by binary
+     *                    class name, before the observer is notified that compilation has ended
+     * @param observer    Observer to be notified when compilation begins,
+     *                    errors/warnings, completes
+     * @param bpClassLoader  The class loader giving the class path to compile against
+     * @param sourcePath  The directory containing the sources of the project
+     */
+    public void compileShell(File sourceFile, String source, Map<String, byte[]> classes, CompileObserver observer,
+            BPClassLoader bpClassLoader, File sourcePath, Charset fileCharset)
+    {
+        List<String> options = new ArrayList<String>();
+        String optionString = Config.getPropString(Compiler.COMPILER_OPTIONS, "");
+        options.addAll(Utility.dequoteCommandLine(optionString));
+        
+        thread.addJob(new Job(new CompileInputFile(sourceFile, sourceFile), source, classes, compiler,
+                observer, bpClassLoader, sourcePath, options, fileCharset, CompileReason.INVOKE));
+    }
+
+    /**
+     * Cancel any error-checking compilations (queued or in progress) which include
+     * the given source file, because it has been modified and so their results are
+     * out of date.  The observers of cancelled compilations see them end unsuccessfully.
+     * 
+     * @param javaSource  The Java source file (as passed to the compiler)
+     */
+    @OnThread(Tag.Any)
+    public void cancelErrorChecks(File javaSource)
+    {
+        thread.cancelErrorChecks(javaSource);
+    }
+
+    /**
+     * Release the resources which the compiler keeps between compilations, in
+     * particular the class path jars it holds open.  This should be called when
+     * a project is closed, so that its jars can then be modified or deleted.
+     */
+    @OnThread(Tag.Any)
+    public void releaseCompiler()
+    {
+        compiler.release();
+    }
+
     /**
      * Wait until the compiler job queue is empty, then return.
      */
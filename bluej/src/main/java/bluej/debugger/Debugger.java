@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2016,2017,2018,2019,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2016,2017,2018,2019,2020,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -26,6 +26,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import bluej.classmgr.BPClassLoader;
 import bluej.debugger.jdi.JdiDebugger;
@@ -145,6 +146,20 @@ public abstract class Debugger
      */
     public abstract void newClassLoader(BPClassLoader bpClassLoader);
 
+    /**
+     * Redefine classes which have already been loaded by the current class loader,
+     * replacing the code of their methods with that from new class files ("hot swap").
+     * Classes which have not yet been loaded are ignored, as they will be loaded from
+     * the new class files when needed.  Breakpoints in the redefined classes are
+     * removed, and should be set again by the caller.
+     *
+     * @param classFiles  the new class files, mapped from the binary class name
+     * @return  true if the classes were redefined; false if the virtual machine does
+     *          not support redefinition, or refused the new classes (e.g. because
+     *          they change more than method bodies).
+     */
+    public abstract boolean redefineClasses(Map<String, byte[]> classFiles);
+
     /**
      * Remove all breakpoints in the given class.
      */
@@ -219,6 +234,19 @@ public abstract class Debugger
      */
     @OnThread(Tag.Any)
     public abstract TestResultsWithRunTime runTestMethod(String className, String methodName);
+
+    /**
+     * Run all the test methods in several test classes, as a single test run. The classes
+     * may be run in parallel if so configured. Each test's result is passed to the given
+     * listener as soon as the test finishes, on an arbitrary thread.
+     * 
+     * @param  classNames  the fully qualified names of the classes (at least one)
+     * @param  resultListener  the listener to pass each test result to
+     * @return a TestResultsWithRunTime object that wraps the runtime, and any results which
+     *         were not passed to the listener (e.g. an error if the run failed)
+     */
+    @OnThread(Tag.Any)
+    public abstract TestResultsWithRunTime runTestClasses(List<String> classNames, Consumer<DebuggerTestResult> resultListener);
     
     /**
      * Dispose all top level windows in the remote machine.
@@ -228,9 +256,14 @@ public abstract class Debugger
 
     /**
      * "Run" a class (i.e. invoke its main method without arguments)
+     * 
+     * @param className  The class to run
+     * @param classDefinitions  Class files (keyed by binary class name) to be defined in the
+     *                          current class loader before the class is run; these are classes
+     *                          which have not been written to disk.  May be empty.
      */
     @OnThread(Tag.NOTVMEventHandler)
-    public abstract DebuggerResult runClassMain(String className)
+    public abstract DebuggerResult runClassMain(String className, Map<String, byte[]> classDefinitions)
         throws ClassNotFoundException;
 
     /**
@@ -252,6 +285,39 @@ public abstract class Debugger
     @OnThread(Tag.NOTVMEventHandler)
     public abstract DebuggerResult instantiateClass(String className, String [] paramTypes,
             DebuggerObject [] args);
+
+    /**
+     * Instantiate a class using a specific constructor for that class, where some of
+     * the arguments may be given as literal values rather than objects.
+     * 
+     * @param className  The name of the class to instantiate
+     * @param paramTypes The formal parameter types (class or primitive type names)
+     * @param args       The arguments; an element may be null if the corresponding
+     *                   literal argument is given, or if the argument is null
+     * @param literalArgs  The values of literal arguments (numbers, booleans, characters
+     *                     or strings), used where the element of args is null
+     * @return   The result of the constructor call
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    public abstract DebuggerResult instantiateClass(String className, String [] paramTypes,
+            DebuggerObject [] args, String [] literalArgs);
+
+    /**
+     * Invoke a method directly (without compiling a shell class). The result, if
+     * the method is not void, is wrapped in the same way that a shell class wraps
+     * its result: it is the value of field 0 of the returned object.
+     * 
+     * @param className  The name of the class which declares the method
+     * @param methodName The name of the method
+     * @param target     The object on which to invoke the method (null if static)
+     * @param paramTypes The formal parameter types (class or primitive type names)
+     * @param args       The arguments; as for instantiateClass
+     * @param literalArgs  The values of literal arguments; as for instantiateClass
+     * @return   The result of the method call
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    public abstract DebuggerResult invokeMethod(String className, String methodName, DebuggerObject target,
+            String [] paramTypes, DebuggerObject [] args, String [] literalArgs);
     
     /**
      * Get a class from the virtual machine, using the current classloader.
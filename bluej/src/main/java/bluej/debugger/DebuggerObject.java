@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2013,2018,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2013,2018,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -22,6 +22,7 @@
 package bluej.debugger;
 
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.List;
 
 import bluej.debugger.gentype.GenTypeClass;
@@ -128,6 +129,23 @@ public abstract class DebuggerObject
      */
     public abstract String getElementValueString(int index);
 
+    /**
+     * Return string representations (as per getElementValueString) of a range of
+     * array elements.  Implementations may fetch the elements together, which is
+     * much quicker than fetching them one at a time.
+     * 
+     * @param index  the index of the first element
+     * @param count  the number of elements
+     */
+    public List<String> getElementValueStrings(int index, int count)
+    {
+        List<String> strings = new ArrayList<>(count);
+        for (int i = index; i < index + count; i++) {
+            strings.add(getElementValueString(i));
+        }
+        return strings;
+    }
+
     /**
      * Return the JDI object. This exposes the JDI to Inspectors.
      * If JDI is not being used, it should return null.
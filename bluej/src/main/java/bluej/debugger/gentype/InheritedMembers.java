@@ -0,0 +1,107 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.debugger.gentype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * An index of the fields and methods of a type, including those inherited from its
+ * supertypes, so that looking up a member by name does not require searching the
+ * supertypes each time.
+ *
+ * <p>Supertypes are searched breadth-first, starting with the type itself, so that
+ * the fields with a given name are listed in the order in which such a search would
+ * find them.
+ */
+public class InheritedMembers
+{
+    private final List<Reflective> types = new ArrayList<Reflective>();
+    private final Map<String,List<FieldReflective>> fields = new HashMap<String,List<FieldReflective>>();
+    private final Set<String> methodNames = new HashSet<String>();
+
+    private InheritedMembers()
+    {
+    }
+
+    /**
+     * Calculate the members of the given type and all its supertypes.
+     */
+    @OnThread(Tag.FXPlatform)
+    public static InheritedMembers calculate(Reflective reflective)
+    {
+        InheritedMembers members = new InheritedMembers();
+        Set<String> typesDone = new HashSet<String>();
+        LinkedList<Reflective> typeQueue = new LinkedList<Reflective>();
+        typeQueue.add(reflective);
+
+        while (! typeQueue.isEmpty()) {
+            Reflective r = typeQueue.poll();
+            if (! typesDone.add(r.getName())) {
+                continue;
+            }
+            members.types.add(r);
+            for (FieldReflective field : r.getDeclaredFields().values()) {
+                members.fields.computeIfAbsent(field.getName(), n -> new ArrayList<FieldReflective>(1)).add(field);
+            }
+            members.methodNames.addAll(r.getDeclaredMethods().keySet());
+            typeQueue.addAll(r.getSuperTypesR());
+        }
+
+        return members;
+    }
+
+    /**
+     * Get the type and all its supertypes, in the order in which they were searched.
+     */
+    public List<Reflective> getTypes()
+    {
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * Get the fields with the given name declared in the type or its supertypes,
+     * in the order in which they are found (the type's own field, if any, first).
+     */
+    public List<FieldReflective> getFields(String name)
+    {
+        List<FieldReflective> rval = fields.get(name);
+        return rval == null ? Collections.emptyList() : Collections.unmodifiableList(rval);
+    }
+
+    /**
+     * Check whether the type or any of its supertypes declares a method with the given name.
+     */
+    public boolean hasMethod(String name)
+    {
+        return methodNames.contains(name);
+    }
+}
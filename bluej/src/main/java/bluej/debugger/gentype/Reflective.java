@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2012,2014,2015,2018,2019,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2012,2014,2015,2018,2019,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -208,6 +208,17 @@ public abstract class Reflective
     @OnThread(Tag.FXPlatform)
     abstract public Map<String,FieldReflective> getDeclaredFields();
 
+    /**
+     * Get the fields and methods of the type represented by this Reflective,
+     * including those declared in its supertypes. The default implementation
+     * calculates them afresh on each call; subclasses may cache them.
+     */
+    @OnThread(Tag.FXPlatform)
+    public InheritedMembers getInheritedMembers()
+    {
+        return InheritedMembers.calculate(this);
+    }
+
     /**
      * Get the module name of this type.  Returns null if not known or non-applicable.
      */
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2000-2009,2010,2011,2018,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 2000-2009,2010,2011,2018,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,6 +21,9 @@
  */
 package bluej.debugger.jdi;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import bluej.debugger.DebuggerObject;
 import bluej.debugger.gentype.GenTypeArray;
 import bluej.debugger.gentype.GenTypeArrayClass;
@@ -43,6 +46,9 @@ import threadchecker.Tag;
  */
 public class JdiArray extends JdiObject
 {
+    // The most elements to fetch from the remote VM in one request:
+    private static final int ELEMENT_PAGE_SIZE = 1000;
+
     private JavaType componentType;
 
     @OnThread(Tag.Any)
@@ -184,6 +190,19 @@ public class JdiArray extends JdiObject
         return JdiUtils.getJdiUtils().getValueString(val);
     }
 
+    @Override
+    public List<String> getElementValueStrings(int index, int count)
+    {
+        List<String> strings = new ArrayList<>(count);
+        for (int page = index; page < index + count; page += ELEMENT_PAGE_SIZE) {
+            int pageLength = Math.min(ELEMENT_PAGE_SIZE, index + count - page);
+            for (Value val : ((ArrayReference) obj).getValues(page, pageLength)) {
+                strings.add(JdiUtils.getJdiUtils().getValueString(val));
+            }
+        }
+        return strings;
+    }
+
     /*
      * Return the object in object field 'slot'.
      *
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2010,2011,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -74,8 +74,9 @@ public class JdiClass extends DebuggerClass
     {
         List<Field> visibleFields = remoteClass.visibleFields();
         List<DebuggerField> rlist = new ArrayList<DebuggerField>(staticFields.size());
+        JdiFieldValues values = new JdiFieldValues(remoteClass, staticFields);
         for (Field field : staticFields) {
-            rlist.add(new JdiField(field, null, ! visibleFields.contains(field)));
+            rlist.add(new JdiField(field, null, ! visibleFields.contains(field), values));
         }
         return rlist;
     }
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2014,2016,2017,2018,2019,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2014,2016,2017,2018,2019,2020,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import bluej.BlueJEvent;
 import bluej.BlueJEventListener;
@@ -62,6 +63,11 @@ import bluej.utility.JavaNames;
  * thread is created immediately so that any method calls/etc will execute on
  * the new machine (after waiting until it has loaded).
  * 
+ * <p>To make restarts quicker, a second VM can be launched in advance and kept on
+ * standby (see VMReference.activate()). When the current VM is restarted, the
+ * machine loader takes the standby VM rather than launching a new one, and another
+ * standby VM is then launched in the background.
+ * 
  * @author Michael Kolling
  * @author Andrew Patterson
  */
@@ -69,6 +75,15 @@ public class JdiDebugger extends Debugger
 {
     private static final int loaderPriority = Thread.NORM_PRIORITY - 2;
 
+    // Whether to keep a VM on standby; see launchStandbyVM():
+    private static final String STANDBY_VM_PROPERTY = "bluej.vm.standby";
+    // Whether to run test classes in parallel when running all tests; see runTestClasses():
+    private static final String PARALLEL_TESTS_PROPERTY = "bluej.junit.parallel";
+
+    // The listener for test results during runTestClasses(), if one is running:
+    @OnThread(Tag.Any)
+    private volatile TestResultListener testResultListener;
+
     // If false, specifies that a new VM should be started when the old one dies
     @OnThread(Tag.Any)
     private boolean autoRestart = true;
@@ -88,6 +103,16 @@ public class JdiDebugger extends Debugger
     // the thread that we spawn to load the current remote VM
     @OnThread(Tag.Any)
     private MachineLoaderThread machineLoader;
+
+    // A VM launched in advance, ready to replace the current VM when it restarts, and
+    // the libraries it was launched with.  Null if there is none:
+    @OnThread(value = Tag.Any, requireSynchronized = true)
+    private VMReference standbyVM;
+    @OnThread(value = Tag.Any, requireSynchronized = true)
+    private URL[] standbyLibraries;
+    // Whether a standby VM is currently being launched:
+    @OnThread(value = Tag.Any, requireSynchronized = true)
+    private boolean standbyLaunching = false;
     
     /** An object to provide a lock for server thread execution */
     @OnThread(Tag.Any)
@@ -160,6 +185,16 @@ public class JdiDebugger extends Debugger
     public void setUserLibraries(URL[] libraries)
     {
         this.libraries = libraries;
+        // A standby VM launched with different libraries is no use:
+        VMReference oldStandby;
+        synchronized (this) {
+            oldStandby = standbyVM;
+            if (oldStandby == null || sameLibraries(standbyLibraries, libraries)) {
+                return;
+            }
+            standbyVM = null;
+        }
+        oldStandby.close();
     }
     
     /**
@@ -253,6 +288,110 @@ public class JdiDebugger extends Debugger
             selfRestart = false;
             machineLoader = null;
         }
+
+        if (!restart && standbyVM != null) {
+            standbyVM.close();
+            standbyVM = null;
+        }
+    }
+
+    /**
+     * Launch a VM in the background to keep on standby, ready to replace the current VM
+     * when it is restarted, unless there is one already (or standby VMs are disabled).
+     * This avoids the user waiting for the VM to launch, at the cost of the memory used
+     * by the standby VM.
+     */
+    @OnThread(Tag.Any)
+    private void launchStandbyVM()
+    {
+        URL[] launchLibraries;
+        synchronized (this) {
+            if (!Config.getPropBoolean(STANDBY_VM_PROPERTY, false) || Config.isGreenfoot()
+                    || !autoRestart || standbyVM != null || standbyLaunching) {
+                return;
+            }
+            standbyLaunching = true;
+            launchLibraries = libraries;
+        }
+
+        Thread launcher = new Thread("Standby Machine Loader") {
+            @OnThread(value = Tag.Worker, ignoreParent = true)
+            public void run()
+            {
+                VMReference newVM = null;
+                try {
+                    newVM = new VMReference(JdiDebugger.this, terminal, startingDirectory, launchLibraries, true);
+                }
+                catch (JdiVmCreationException e) {
+                    Debug.message("Could not launch standby debug VM");
+                }
+
+                synchronized (JdiDebugger.this) {
+                    standbyLaunching = false;
+                    // The project may have been closed, or the libraries changed, meanwhile:
+                    if (newVM != null && autoRestart && standbyVM == null && sameLibraries(launchLibraries, libraries)) {
+                        standbyVM = newVM;
+                        standbyLibraries = launchLibraries;
+                        return;
+                    }
+                }
+                if (newVM != null) {
+                    newVM.close();
+                }
+            }
+        };
+        launcher.setPriority(loaderPriority);
+        launcher.start();
+    }
+
+    /**
+     * Take the standby VM for use as the current VM, if there is a suitable one.
+     *
+     * @return  the standby VM (not yet activated), or null.
+     */
+    @OnThread(Tag.Any)
+    private VMReference takeStandbyVM()
+    {
+        VMReference vm;
+        synchronized (this) {
+            vm = standbyVM;
+            standbyVM = null;
+            if (vm == null || sameLibraries(standbyLibraries, libraries)) {
+                return vm;
+            }
+        }
+        vm.close();
+        return null;
+    }
+
+    /**
+     * Called by VMReference when a VM on standby has been disconnected (possibly
+     * because we closed it).
+     */
+    @OnThread(Tag.Any)
+    synchronized void standbyVMDisconnected(VMReference vm)
+    {
+        if (standbyVM == vm) {
+            standbyVM = null;
+        }
+    }
+
+    /**
+     * Check whether two sets of libraries are the same (comparing as strings, to avoid
+     * the host name lookups of URL.equals).
+     */
+    @OnThread(Tag.Any)
+    private static boolean sameLibraries(URL[] a, URL[] b)
+    {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (!a[i].toExternalForm().equals(b[i].toExternalForm())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -384,6 +523,13 @@ public class JdiDebugger extends Debugger
         }
     }
 
+    @Override
+    public boolean redefineClasses(Map<String, byte[]> classFiles)
+    {
+        VMReference vmr = getVMNoWait();
+        return vmr != null && vmr.redefineClasses(classFiles);
+    }
+
     /**
      * Remove all breakpoints in the given class.
      */
@@ -590,90 +736,222 @@ public class JdiDebugger extends Debugger
     @OnThread(Tag.Any)
     public TestResultsWithRunTime runTestMethod(String className, String methodName) 
     {
-        ArrayReference arrayRef = null;
-        List<DebuggerTestResult> results = new ArrayList<>();
-        TestResultsWithRunTime testResultsWithRunTime = new TestResultsWithRunTime();
         try
         {
             VMReference vmr = getVM();
             synchronized (serverThreadLock)
             {
+                ArrayReference arrayRef = null;
                 if (vmr != null)
                 {
                     arrayRef = (ArrayReference) vmr.invokeRunTest(className, methodName);
                 }
-                
-                if (arrayRef == null || arrayRef.length() == 0)
-                {
-                    results.add(new JdiTestResultError(className, methodName, methodName,"VM returned unknown result",
-                            "", null, 0));
-                    testResultsWithRunTime.setResults(results);
-                    testResultsWithRunTime.setTotalRunTime(0);
-                    return testResultsWithRunTime;
-                }
-                
-                int runTimeMs = Integer.parseInt(((StringReference) arrayRef.getValue(0)).value());
-                int i = 1;
-                while (i < arrayRef.length())
+                return getTestResults(arrayRef, className, methodName);
+            }
+        }
+        catch (InvocationException ie) 
+        {
+            // what to do here??
+            return errorResult(className, methodName, "Internal invocation error");
+        }
+        catch (VMDisconnectedException vmde)
+        {
+            return errorResult(className, "", "VM restarted");
+        }
+    }
+
+    @Override
+    @OnThread(Tag.Any)
+    public TestResultsWithRunTime runTestClasses(List<String> classNames, Consumer<DebuggerTestResult> resultListener)
+    {
+        boolean parallel = Config.getPropBoolean(PARALLEL_TESTS_PROPERTY, false);
+        String firstClass = classNames.get(0);
+        try
+        {
+            VMReference vmr = getVM();
+            synchronized (serverThreadLock)
+            {
+                ArrayReference arrayRef = null;
+                int reported;
+                testResultListener = new TestResultListener(firstClass, resultListener);
+                try
                 {
-                    
-                    String actualMethodName = ((StringReference) arrayRef.getValue(i)).value();
-                    String displayTestName = ((StringReference) arrayRef.getValue(i + 1)).value();
-                    String failureType = ((StringReference) arrayRef.getValue(i + 8)).value();
-                    
-                    if (failureType.equals("success"))
+                    if (vmr != null)
                     {
-                        results.add(new JdiTestResult(className, actualMethodName, displayTestName, 0));
-                        
+                        arrayRef = (ArrayReference) vmr.invokeRunTestClasses(classNames, parallel);
                     }
-                    else
-                    {
-                        String exMsg = ((StringReference) arrayRef.getValue(i + 2)).value();
-                        String traceMsg = ((StringReference) arrayRef.getValue(i + 3)).value();
-                        String failureClass = ((StringReference) arrayRef.getValue(i + 4)).value();
-                        String failureSource = ((StringReference) arrayRef.getValue(i + 5)).value();
-                        String failureMethod = ((StringReference) arrayRef.getValue(i + 6)).value();
-                        int lineNo = Integer.parseInt(((StringReference) arrayRef.getValue(i + 7)).value());
-                        SourceLocation failPoint = new SourceLocation(failureClass, failureSource,
-                                failureMethod, lineNo);
-
-                        if (failureType.equals("failure"))
-                        {
-                            results.add(new JdiTestResultFailure(className, actualMethodName, displayTestName, exMsg, traceMsg,
-                                    failPoint, 0));
-                        }
-                        else
-                        {
-                            results.add(new JdiTestResultError(className, actualMethodName, displayTestName, exMsg, traceMsg,
-                                    failPoint, 0));
-                        }
-                    }
-
-                    i = i + 9;
                 }
-                testResultsWithRunTime.setTotalRunTime(runTimeMs);
-                testResultsWithRunTime.setResults(results);
-                return testResultsWithRunTime;
+                finally
+                {
+                    reported = testResultListener.getReportedCount();
+                    testResultListener = null;
+                }
+                TestResultsWithRunTime results = getTestResults(arrayRef, firstClass, null);
+                if (arrayRef != null && arrayRef.length() != 0)
+                {
+                    // Leave out the results which have already been reported (all of them,
+                    // normally); they are in the same order as they were reported:
+                    List<DebuggerTestResult> all = results.getResults();
+                    results.setResults(new ArrayList<>(all.subList(Math.min(reported, all.size()), all.size())));
+                }
+                return results;
             }
         }
-        catch (InvocationException ie) 
+        catch (InvocationException ie)
         {
-            // what to do here??
-            results.add(new JdiTestResultError(className, methodName, methodName, "Internal invocation error",
-                    "", null, 0));
-            testResultsWithRunTime.setResults(results);
-            testResultsWithRunTime.setTotalRunTime(0);
-            return testResultsWithRunTime;
+            return errorResult(firstClass, null, "Internal invocation error");
         }
         catch (VMDisconnectedException vmde)
         {
-            results.add(new JdiTestResultError(className, "", "", "VM restarted", "",
-                    null, 0));
-            testResultsWithRunTime.setResults(results);
-            testResultsWithRunTime.setTotalRunTime(0);
-            return testResultsWithRunTime;
+            return errorResult(firstClass, "", "VM restarted");
+        }
+    }
+
+    /**
+     * A test has finished during a call to runTestClasses; pass its result on to the listener.
+     * 
+     * @param testDetails  the details of the test, in the same form as each test's part of
+     *                     the array returned by ExecServer.runTestMethod
+     */
+    @OnThread(Tag.VMEventHandler)
+    void testFinished(ArrayReference testDetails)
+    {
+        TestResultListener listener = testResultListener;
+        if (listener != null)
+        {
+            List<String> values = getStringValues(testDetails);
+            listener.report(getTestResult(values, 0, listener.defaultClassName));
+        }
+    }
+
+    /**
+     * The listener for results during a call to runTestClasses, along with the number of
+     * results it has been given.
+     */
+    private static class TestResultListener
+    {
+        private final String defaultClassName;
+        private final Consumer<DebuggerTestResult> listener;
+        private int reportedCount = 0;
+
+        @OnThread(Tag.Any)
+        private TestResultListener(String defaultClassName, Consumer<DebuggerTestResult> listener)
+        {
+            this.defaultClassName = defaultClassName;
+            this.listener = listener;
+        }
+
+        @OnThread(Tag.Any)
+        private synchronized void report(DebuggerTestResult result)
+        {
+            reportedCount += 1;
+            listener.accept(result);
+        }
+
+        @OnThread(Tag.Any)
+        private synchronized int getReportedCount()
+        {
+            return reportedCount;
         }
     }
+
+    /**
+     * Convert the array returned from a test run in the debug VM (see ExecServer.runTestMethod)
+     * into test results.  The array elements are all fetched at once, rather than one by one.
+     * 
+     * @param arrayRef    the array returned from the debug VM (may be null)
+     * @param className   the test class, used for tests whose class isn't known, and for errors
+     * @param methodName  the test method, used for errors (may be null)
+     */
+    @OnThread(Tag.Any)
+    private static TestResultsWithRunTime getTestResults(ArrayReference arrayRef, String className, String methodName)
+    {
+        if (arrayRef == null || arrayRef.length() == 0)
+        {
+            return errorResult(className, methodName, "VM returned unknown result");
+        }
+
+        List<String> values = getStringValues(arrayRef);
+        List<DebuggerTestResult> results = new ArrayList<>();
+        int runTimeMs = Integer.parseInt(values.get(0));
+        for (int i = 1; i < values.size(); i += 10)
+        {
+            results.add(getTestResult(values, i, className));
+        }
+
+        TestResultsWithRunTime testResultsWithRunTime = new TestResultsWithRunTime();
+        testResultsWithRunTime.setTotalRunTime(runTimeMs);
+        testResultsWithRunTime.setResults(results);
+        return testResultsWithRunTime;
+    }
+
+    /**
+     * Get the values of an array of strings in the debug VM, all at once.
+     */
+    @OnThread(Tag.Any)
+    private static List<String> getStringValues(ArrayReference arrayRef)
+    {
+        List<String> values = new ArrayList<>(arrayRef.length());
+        for (Value value : arrayRef.getValues())
+        {
+            values.add(((StringReference) value).value());
+        }
+        return values;
+    }
+
+    /**
+     * Convert the details of a single test (ten values, starting at the given index) into
+     * a test result.
+     * 
+     * @param className   the test class, used if the test's class isn't known
+     */
+    @OnThread(Tag.Any)
+    private static DebuggerTestResult getTestResult(List<String> values, int i, String className)
+    {
+        String actualMethodName = values.get(i);
+        String displayTestName = values.get(i + 1);
+        String failureType = values.get(i + 8);
+        String testClassName = values.get(i + 9).isEmpty() ? className : values.get(i + 9);
+
+        if (failureType.equals("success"))
+        {
+            return new JdiTestResult(testClassName, actualMethodName, displayTestName, 0);
+        }
+
+        String exMsg = values.get(i + 2);
+        String traceMsg = values.get(i + 3);
+        String failureClass = values.get(i + 4);
+        String failureSource = values.get(i + 5);
+        String failureMethod = values.get(i + 6);
+        int lineNo = Integer.parseInt(values.get(i + 7));
+        SourceLocation failPoint = new SourceLocation(failureClass, failureSource,
+                failureMethod, lineNo);
+
+        if (failureType.equals("failure"))
+        {
+            return new JdiTestResultFailure(testClassName, actualMethodName, displayTestName, exMsg, traceMsg,
+                    failPoint, 0);
+        }
+        else
+        {
+            return new JdiTestResultError(testClassName, actualMethodName, displayTestName, exMsg, traceMsg,
+                    failPoint, 0);
+        }
+    }
+
+    /**
+     * Make a test run result consisting of a single error.
+     */
+    @OnThread(Tag.Any)
+    private static TestResultsWithRunTime errorResult(String className, String methodName, String message)
+    {
+        List<DebuggerTestResult> results = new ArrayList<>();
+        results.add(new JdiTestResultError(className, methodName, methodName, message, "", null, 0));
+        TestResultsWithRunTime testResultsWithRunTime = new TestResultsWithRunTime();
+        testResultsWithRunTime.setResults(results);
+        testResultsWithRunTime.setTotalRunTime(0);
+        return testResultsWithRunTime;
+    }
     
     /**
      * Dispose all top level windows in the remote machine.
@@ -698,16 +976,18 @@ public class JdiDebugger extends Debugger
      * 
      * @param className
      *            the class to start
+     * @param classDefinitions
+     *            class files to define in the remote VM before starting the class
      */
     @Override
     @OnThread(Tag.NOTVMEventHandler)
-    public DebuggerResult runClassMain(String className)
+    public DebuggerResult runClassMain(String className, Map<String, byte[]> classDefinitions)
         throws ClassNotFoundException
     {
         VMReference vmr = getVM();
         synchronized (serverThreadLock) {
             if (vmr != null) {
-                return vmr.runShellClass(className);
+                return vmr.runShellClass(className, classDefinitions);
             }
             else {
                 return new DebuggerResult(Debugger.TERMINATED_BY_BLUEJ);
@@ -778,23 +1058,56 @@ public class JdiDebugger extends Debugger
             return instantiateClass(className);
         }
         
+        return instantiateClass(className, paramTypes, args, null);
+    }
+
+    @Override
+    @OnThread(Tag.NOTVMEventHandler)
+    public DebuggerResult instantiateClass(String className, String[] paramTypes, DebuggerObject[] args, String[] literalArgs)
+    {
         VMReference vmr = getVM();
         if (vmr != null) {
-            // Convert the args array from DebuggerObject[] to ObjectReference[]
-            ObjectReference [] orArgs = new ObjectReference[args.length];
-            for (int i = 0; i < args.length; i++) {
-                JdiObject jdiObject = (JdiObject) args[i];
-                orArgs[i] = jdiObject.getObjectReference(); 
+            ObjectReference [] orArgs = getObjectReferences(args);
+            synchronized (serverThreadLock) {
+                return vmr.instantiateClass(className, paramTypes, orArgs, literalArgs);
             }
-            
+        }
+        else {
+            return new DebuggerResult(Debugger.TERMINATED_BY_BLUEJ);
+        }
+    }
+
+    @Override
+    @OnThread(Tag.NOTVMEventHandler)
+    public DebuggerResult invokeMethod(String className, String methodName, DebuggerObject target,
+            String[] paramTypes, DebuggerObject[] args, String[] literalArgs)
+    {
+        VMReference vmr = getVM();
+        if (vmr != null) {
+            ObjectReference targetRef = target == null ? null : ((JdiObject) target).getObjectReference();
+            ObjectReference [] orArgs = getObjectReferences(args);
             synchronized (serverThreadLock) {
-                return vmr.instantiateClass(className, paramTypes, orArgs);
+                return vmr.invokeMethod(className, methodName, targetRef, paramTypes, orArgs, literalArgs);
             }
         }
         else {
             return new DebuggerResult(Debugger.TERMINATED_BY_BLUEJ);
         }
     }
+
+    /**
+     * Convert an array of DebuggerObject (which may contain nulls) to an array of ObjectReference.
+     */
+    @OnThread(Tag.Any)
+    private static ObjectReference[] getObjectReferences(DebuggerObject[] args)
+    {
+        ObjectReference [] orArgs = new ObjectReference[args.length];
+        for (int i = 0; i < args.length; i++) {
+            JdiObject jdiObject = (JdiObject) args[i];
+            orArgs[i] = jdiObject == null ? null : jdiObject.getObjectReference(); 
+        }
+        return orArgs;
+    }
     
     /*
      * @see bluej.debugger.Debugger#getClass(java.lang.String, boolean)
@@ -1057,10 +1370,12 @@ public class JdiDebugger extends Debugger
                 
                 raiseStateChangeEvent(Debugger.NOTREADY);
 
-                launch();
-                
+                // Clear these before launching, as a standby VM may report its
+                // threads very quickly:
                 usedNames.clear();
                 threadListener.clearThreads();
+
+                launch();
             }
         }
     }
@@ -1144,7 +1459,15 @@ public class JdiDebugger extends Debugger
         public void run()
         {
             try {
-                VMReference newVM = new VMReference(JdiDebugger.this, terminal, startingDirectory, libraries);
+                VMReference newVM = takeStandbyVM();
+                if (newVM != null && !newVM.activate()) {
+                    // The standby VM has died; launch a new one instead:
+                    newVM.close();
+                    newVM = null;
+                }
+                if (newVM == null) {
+                    newVM = new VMReference(JdiDebugger.this, terminal, startingDirectory, libraries);
+                }
 
                 BPClassLoader lastLoader;
                 synchronized(JdiDebugger.this) {
@@ -1164,6 +1487,9 @@ public class JdiDebugger extends Debugger
                 synchronized(JdiDebugger.this) {
                     vmRef = newVM;
                 }
+
+                // Get the next VM ready for when this one is restarted:
+                launchStandbyVM();
             }
             catch (JdiVmCreationException e) {
                 launchFailed();
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2011,2018,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 2011,2018,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -44,13 +44,24 @@ public class JdiField extends DebuggerField
     @OnThread(Tag.Any)
     private final JdiObject object;
     private boolean hidden;
+    // The values of this field and the others listed with it, if they are to be fetched
+    // together (may be null):
+    @OnThread(Tag.Any)
+    private final JdiFieldValues values;
     
     @OnThread(Tag.Any)
     public JdiField(Field field, JdiObject object, boolean hidden)
+    {
+        this(field, object, hidden, null);
+    }
+
+    @OnThread(Tag.Any)
+    JdiField(Field field, JdiObject object, boolean hidden, JdiFieldValues values)
     {
         this.field = field;
         this.object = object;
         this.hidden = hidden;
+        this.values = values;
     }
 
     @Override
@@ -83,28 +94,14 @@ public class JdiField extends DebuggerField
     @SuppressWarnings("threadchecker")
     public String getValueString()
     {
-        Value value;
-        if (object != null) {
-            value = object.obj.getValue(field);
-        }
-        else {
-            value = field.declaringType().getValue(field);
-        }
-
-        return JdiUtils.getJdiUtils().getValueString(value);
+        return JdiUtils.getJdiUtils().getValueString(getValue());
     }
 
     @Override
     @OnThread(Tag.FXPlatform)
     public DebuggerObject getValueObject(JavaType expectedType)
     {
-        Value value;
-        if (object != null) {
-            value = object.obj.getValue(field);
-        }
-        else {
-            value = field.declaringType().getValue(field);
-        }
+        Value value = getValue();
         
         if (value == null) {
             return JdiObject.getDebuggerObject(null);
@@ -121,6 +118,23 @@ public class JdiField extends DebuggerField
         return null;
     }
 
+    /**
+     * Get the value of the field from the remote VM.
+     */
+    @OnThread(Tag.Any)
+    private Value getValue()
+    {
+        if (values != null) {
+            return values.getValue(field);
+        }
+        else if (object != null) {
+            return object.obj.getValue(field);
+        }
+        else {
+            return field.declaringType().getValue(field);
+        }
+    }
+
     @Override
     public DebuggerClass getDeclaringClass()
     {
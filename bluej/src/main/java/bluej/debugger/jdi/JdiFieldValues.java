@@ -0,0 +1,82 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.debugger.jdi;
+
+import java.util.List;
+import java.util.Map;
+
+import com.sun.jdi.Field;
+import com.sun.jdi.ObjectReference;
+import com.sun.jdi.ReferenceType;
+import com.sun.jdi.Value;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The values of a set of fields, either of an object or (for static fields) of a class,
+ * fetched from the remote VM in a single request when the first of them is needed.
+ * Fetching the fields one at a time instead requires a round trip to the remote VM
+ * for each field, which is slow for objects with many fields.
+ *
+ * <p>The values are a snapshot: a new set should be created each time the fields are
+ * listed, since the values may change whenever code runs in the remote VM.
+ */
+@OnThread(Tag.Any)
+class JdiFieldValues
+{
+    private final ObjectReference object;
+    private final ReferenceType type;
+    private final List<Field> fields;
+    private Map<Field, Value> values;
+
+    /**
+     * Create a set of values of fields of the given object.
+     */
+    JdiFieldValues(ObjectReference object, List<Field> fields)
+    {
+        this.object = object;
+        this.type = null;
+        this.fields = fields;
+    }
+
+    /**
+     * Create a set of values of static fields of the given class.
+     */
+    JdiFieldValues(ReferenceType type, List<Field> fields)
+    {
+        this.object = null;
+        this.type = type;
+        this.fields = fields;
+    }
+
+    /**
+     * Get the value of a field, fetching all the values from the remote VM if they have
+     * not been fetched already.
+     */
+    synchronized Value getValue(Field field)
+    {
+        if (values == null) {
+            values = object != null ? object.getValues(fields) : type.getValues(fields);
+        }
+        return values.get(field);
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2018,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2018,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -266,13 +266,19 @@ public class JdiObject extends DebuggerObject
     public List<DebuggerField> getFields()
     {
         List<Field> visibleFields = obj.referenceType().visibleFields();
-        List<DebuggerField> rlist = new ArrayList<DebuggerField>(fields.size());
+        List<Field> listedFields = new ArrayList<>(fields.size());
         for (Field field : fields) {
             if (! checkIgnoreField(field)) {
-                boolean visible = visibleFields.remove(field);
-                rlist.add(new JdiField(field, this, !visible));
+                listedFields.add(field);
             }
         }
+        // The values of all the fields are fetched together, when the first is needed:
+        JdiFieldValues values = new JdiFieldValues(obj, listedFields);
+        List<DebuggerField> rlist = new ArrayList<DebuggerField>(listedFields.size());
+        for (Field field : listedFields) {
+            boolean visible = visibleFields.remove(field);
+            rlist.add(new JdiField(field, this, !visible, values));
+        }
         return rlist;
     }
 
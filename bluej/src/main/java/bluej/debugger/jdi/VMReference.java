@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -148,6 +148,9 @@ public class VMReference
     // the name of the method used to show  the terminal on input
     public static final String SERVER_SHOW_TERMINAL_ON_INPUT_NAME = "showTerminalOnInput";
 
+    // the name of the method called when each test finishes, during a run of several test classes
+    static final String SERVER_TEST_FINISHED_NAME = "testFinished";
+
     // A map which can be used to map instances of VirtualMachine to VMReference 
     private static Map<VirtualMachine, VMReference> vmToReferenceMap = new HashMap<VirtualMachine, VMReference>();
     
@@ -194,6 +197,15 @@ public class VMReference
     // Boolean flag indicating if the VM is being closed by BlueJ internally.
     private boolean queuedForClose = false;
 
+    // Whether this VM is on standby: launched in advance by the owner, but not yet in use.
+    // While on standby, events are not passed on to the owner (the threads which start are
+    // remembered instead), and the terminal is not connected.
+    private boolean standby;
+    private final List<ThreadReference> standbyThreads = new ArrayList<>();
+    private ThreadReference standbyServerThread = null;
+    // Whether activate() has finished bringing us out of standby:
+    private boolean activated = false;
+
     /**
      * Launch a remote debug VM using a TCP/IP socket.
      * 
@@ -546,9 +558,22 @@ public class VMReference
     @OnThread(Tag.Any)
     public VMReference(JdiDebugger owner, DebuggerTerminal term, File initialDirectory, URL[] libraries)
         throws JdiVmCreationException
+    {
+        this(owner, term, initialDirectory, libraries, false);
+    }
+
+    /**
+     * Create the second virtual machine and start the execution server (class
+     * ExecServer) on that machine, optionally keeping it on standby until it is
+     * needed (see activate()).
+     */
+    @OnThread(Tag.Any)
+    public VMReference(JdiDebugger owner, DebuggerTerminal term, File initialDirectory, URL[] libraries, boolean standby)
+        throws JdiVmCreationException
     {
         this.owner = owner;
         this.term = term;
+        this.standby = standby;
         
         // machine will be suspended at startup
         machine = localhostSocketLaunch(initialDirectory, libraries, term, Bootstrap.virtualMachineManager());
@@ -592,6 +617,59 @@ public class VMReference
         }
     }
 
+    /**
+     * Bring this VM out of standby, so that it can be used as the owner's current VM.
+     * The threads which have started in the VM are reported to the owner, followed by
+     * the VM becoming idle, and the terminal is connected.
+     * 
+     * <p>This waits until the server thread is known and the VM is idle, so that the
+     * owner can use the VM as soon as this returns.
+     * 
+     * @return true if the VM was activated, or false if it is no longer running
+     */
+    @OnThread(Tag.Any)
+    boolean activate()
+    {
+        eventHandler.queueRunnable(() -> {
+            List<ThreadReference> threads;
+            synchronized (this) {
+                standby = false;
+                threads = new ArrayList<>(standbyThreads);
+                standbyThreads.clear();
+            }
+            for (ThreadReference thread : threads) {
+                owner.threadStart(thread);
+            }
+            synchronized (this) {
+                serverThread = owner.findThread(standbyServerThread);
+                owner.raiseStateChangeEvent(Debugger.IDLE);
+                activated = true;
+                notifyAll();
+            }
+        });
+
+        // Wait for the event handler to run the above.  If the VM has gone, the event
+        // handler will have stopped (possibly without telling us), hence the timeout:
+        synchronized (this) {
+            try {
+                while (!activated && eventHandler.isAlive()) {
+                    wait(500);
+                }
+            }
+            catch (InterruptedException ie) {}
+            if (!activated) {
+                return false;
+            }
+        }
+
+        for (IOHandlerThread redirector : new IOHandlerThread[] {errorStreamRedirector, outputStreamRedirector, inputStreamRedirector}) {
+            if (redirector != null) {
+                redirector.start();
+            }
+        }
+        return true;
+    }
+
     /**
      * Close I/O redirectors.
      */
@@ -696,6 +774,18 @@ public class VMReference
             serverBreakpoint.enable();
         }
 
+        // set a breakpoint in the testFinished method.  The thread is suspended
+        // (until we have read the test details) but then resumed:
+        {
+            BreakpointRequest testBreakpoint = erm.createBreakpointRequest(findMethodLocation(serverClass, SERVER_TEST_FINISHED_NAME));
+            testBreakpoint.setSuspendPolicy(EventRequest.SUSPEND_EVENT_THREAD);
+            // the presence of this property indicates to breakEvent that we are
+            // a special type of breakpoint
+            testBreakpoint.putProperty(SERVER_TEST_FINISHED_NAME, "yes");
+            testBreakpoint.putProperty(Debugger.PERSIST_BREAKPOINT_PROPERTY, "yes");
+            testBreakpoint.enable();
+        }
+
     }
 
     /**
@@ -717,7 +807,7 @@ public class VMReference
         // get our worker thread
         workerThread = (ThreadReference) getStaticFieldObject(serverClass, ExecServer.WORKER_THREAD_NAME);
 
-        if (serverThread == null || workerThread == null) {
+        if ((standby ? standbyServerThread : serverThread) == null || workerThread == null) {
             Debug.reportError("Cannot find fields on remote VM");
             return false;
         }
@@ -875,9 +965,11 @@ public class VMReference
      * 
      * @param className
      *            the class to start
+     * @param classDefinitions
+     *            class files to define in the remote VM before starting the class
      */
     @OnThread(Tag.NOTVMEventHandler)
-    public DebuggerResult runShellClass(String className)
+    public DebuggerResult runShellClass(String className, Map<String, byte[]> classDefinitions)
     {
         // Calls to this method are protected by serverThreadLock in JdiDebugger
         
@@ -890,6 +982,9 @@ public class VMReference
             
             // Store the class and method to call
             setStaticFieldObject(serverClass, ExecServer.CLASS_TO_RUN_NAME, className);
+            if (!classDefinitions.isEmpty()) {
+                setStaticFieldObject(serverClass, ExecServer.CLASSES_TO_DEFINE_NAME, ExecServer.encodeClasses(classDefinitions));
+            }
             setStaticFieldValue(serverClass, ExecServer.EXEC_ACTION_NAME, machine.mirrorOf(ExecServer.EXEC_SHELL));
             
             // Resume the thread, wait for it to finish and the new thread to start
@@ -976,11 +1071,30 @@ public class VMReference
      */
     @OnThread(Tag.NOTVMEventHandler)
     public DebuggerResult instantiateClass(String className, String [] paramTypes, ObjectReference [] args)
+    {
+        return instantiateClass(className, paramTypes, args, null);
+    }
+
+    /**
+     * Invoke a particular constructor with arguments, some of which may be given as
+     * the values of literals rather than as objects.
+     * 
+     * @param className  The name of the class to construct an instance of
+     * @param paramTypes The parameter types of the constructor (class names)
+     * @param args      The argument values to use in the constructor call
+     * @param literalArgs  The literal argument values, used where the corresponding
+     *                     element of args is null (may be null)
+     * 
+     * @return  The newly constructed object (or null if error/exception
+     *          occurs)
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    public DebuggerResult instantiateClass(String className, String [] paramTypes, ObjectReference [] args, String [] literalArgs)
     {
         ObjectReference obj = null;
         exitStatus = Debugger.NORMAL_EXIT;
         try {
-            obj = invokeConstructor(className, paramTypes, args);
+            obj = invokeConstructor(className, paramTypes, args, literalArgs);
         }
         catch (VMDisconnectedException e) {
             exitStatus = getDebuggerExitStatus();
@@ -1002,6 +1116,44 @@ public class VMReference
         }
     }
     
+    /**
+     * Invoke a method directly, without compiling a shell class. The result is
+     * wrapped as a shell class would wrap it (or is null for a void method).
+     * 
+     * @param className  The name of the class which declares the method
+     * @param methodName  The name of the method
+     * @param target     The object to invoke the method on (null for a static method)
+     * @param paramTypes The parameter types of the method (class or primitive type names)
+     * @param args      The argument values to use in the call
+     * @param literalArgs  The literal argument values, used where the corresponding
+     *                     element of args is null (may be null)
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    public DebuggerResult invokeMethod(String className, String methodName, ObjectReference target,
+            String [] paramTypes, ObjectReference [] args, String [] literalArgs)
+    {
+        exitStatus = Debugger.NORMAL_EXIT;
+        try {
+            ObjectReference rval = invokeMethodDirect(className, methodName, target, paramTypes, args, literalArgs);
+            if (exitStatus == Debugger.EXCEPTION) {
+                return new DebuggerResult(lastException);
+            }
+            return new DebuggerResult(JdiObject.getDebuggerObject(rval));
+        }
+        catch (VMDisconnectedException e) {
+            exitStatus = getDebuggerExitStatus();
+            return new DebuggerResult(exitStatus); // debugger state change handled elsewhere
+        }
+        catch (Exception e) {
+            // remote invocation failed
+            Debug.reportError("invoking method failed: " + e);
+            e.printStackTrace();
+            exitStatus = Debugger.EXCEPTION;
+            lastException = new ExceptionDescription("Internal BlueJ error: unexpected exception in remote VM\n" + e);
+        }
+        return new DebuggerResult(lastException);
+    }
+    
     /**
      * Emit a thread halted/resumed event for the given thread.
      */
@@ -1034,11 +1186,15 @@ public class VMReference
     @OnThread(Tag.VMEventHandler)
     public void vmDisconnectEvent()
     {
+        boolean wasStandby;
         synchronized (this) {
+            wasStandby = standby;
             // Do the owner disconnect first, because it is synchronized on
             // JdiDebugger. This allows machine loader thread to check the exit
             // status in a meaningful way.
-            owner.vmDisconnect();
+            if (!wasStandby) {
+                owner.vmDisconnect();
+            }
             
             // If VM disconnect occurs during invocation, the server thread won't
             // restart in this VM; the method waiting for it to start will hang
@@ -1059,6 +1215,10 @@ public class VMReference
         synchronized (vmToReferenceMap) {
             vmToReferenceMap.remove(machine);
         }
+
+        if (wasStandby) {
+            owner.standbyVMDisconnected(this);
+        }
     }
 
     /**
@@ -1067,6 +1227,12 @@ public class VMReference
     @OnThread(Tag.VMEventHandler)
     public void threadStartEvent(ThreadStartEvent tse)
     {
+        synchronized (this) {
+            if (standby) {
+                standbyThreads.add(tse.thread());
+                return;
+            }
+        }
         owner.threadStart(tse.thread());
     }
 
@@ -1077,6 +1243,12 @@ public class VMReference
     public void threadDeathEvent(ThreadDeathEvent tde)
     {
         ThreadReference tr = tde.thread();
+        synchronized (this) {
+            if (standby) {
+                standbyThreads.remove(tr);
+                return;
+            }
+        }
         owner.threadDeath(tr);
 
         // There appears to be a VM bug related to system.exit() being called
@@ -1220,8 +1392,14 @@ public class VMReference
             // wake up the waitForStartup() method
             synchronized (this) {
                 serverThreadStarted = true;
-                serverThread = owner.findThread(event.thread());
-                owner.raiseStateChangeEvent(Debugger.IDLE);
+                if (standby) {
+                    // The owner is told when we are activated:
+                    standbyServerThread = event.thread();
+                }
+                else {
+                    serverThread = owner.findThread(event.thread());
+                    owner.raiseStateChangeEvent(Debugger.IDLE);
+                }
                 notifyAll();
             }
         }
@@ -1245,6 +1423,19 @@ public class VMReference
         else if (event.request().getProperty(SERVER_SHOW_TERMINAL_ON_INPUT_NAME) != null) {
             this.term.showOnInput();
         }
+        // if the breakpoint is marked with the SERVER_TEST_FINISHED_NAME
+        // property, a test has finished; pass its details on to the owner
+        else if (event.request().getProperty(SERVER_TEST_FINISHED_NAME) != null) {
+            try {
+                Value testDetails = event.thread().frame(0).getArgumentValues().get(0);
+                if (testDetails instanceof ArrayReference) {
+                    owner.testFinished((ArrayReference) testDetails);
+                }
+            }
+            catch (IncompatibleThreadStateException itse) {
+                Debug.reportError(itse);
+            }
+        }
         else {
             // breakpoint set by user in user code
             if (serverThread.sameThread(event.thread())) {
@@ -1295,7 +1486,8 @@ public class VMReference
         for (String special : Arrays.asList(
                 SERVER_STARTED_METHOD_NAME, 
                 SERVER_SUSPEND_METHOD_NAME, 
-                SERVER_SHOW_TERMINAL_ON_INPUT_NAME))
+                SERVER_SHOW_TERMINAL_ON_INPUT_NAME,
+                SERVER_TEST_FINISHED_NAME))
         {
             if (props.get(special) != null)
             {
@@ -1562,6 +1754,48 @@ public class VMReference
         
         erm.deleteEventRequests(toDelete);
     }
+
+    /**
+     * Redefine the classes which have been loaded by the current class loader, using
+     * the given class files.  Breakpoints in the redefined classes are cleared.
+     *
+     * @param classFiles  the new class files, mapped from the binary class name
+     * @return  true if successful (including if none of the classes have been loaded),
+     *          false if the classes could not be redefined.
+     */
+    boolean redefineClasses(Map<String, byte[]> classFiles)
+    {
+        if (currentLoader == null || !machine.canRedefineClasses()) {
+            return false;
+        }
+
+        Map<ReferenceType, byte[]> definitions = new HashMap<>();
+        for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+            for (ReferenceType type : machine.classesByName(classFile.getKey())) {
+                if (currentLoader.equals(type.classLoader())) {
+                    definitions.put(type, classFile.getValue());
+                }
+            }
+        }
+        if (definitions.isEmpty()) {
+            return true;
+        }
+
+        try {
+            for (ReferenceType type : definitions.keySet()) {
+                clearBreakpointsForClass(type.name());
+            }
+            machine.redefineClasses(definitions);
+            return true;
+        }
+        catch (RuntimeException | LinkageError e) {
+            // e.g. UnsupportedOperationException if the classes have changed shape after
+            // all, or VMDisconnectedException:
+            Debug.message("Could not redefine classes: " + e);
+            return false;
+        }
+    }
+
     // -- support methods --
 
     /**
@@ -1730,20 +1964,48 @@ public class VMReference
      * @param className  The name of the class to construct an instance of
      * @param paramTypes The parameter types of the constructor (class names)
      * @param args      The argument values to use in the constructor call
+     * @param literalArgs  The literal argument values, used where the corresponding
+     *                     element of args is null (may be null)
      * 
      * @return  The newly constructed object
      */
     @OnThread(Tag.NOTVMEventHandler)
-    private ObjectReference invokeConstructor(String className, String [] paramTypes, ObjectReference [] args)
+    private ObjectReference invokeConstructor(String className, String [] paramTypes, ObjectReference [] args, String [] literalArgs)
     {
         // Calls to this method are serialized via serverThreadLock in JdiDebugger
-        
+        return invokeWithArguments(ExecServer.INSTANTIATE_CLASS_ARGS, className, null, null, paramTypes, args, literalArgs);
+    }
+
+    /**
+     * Invoke a method with arguments on the server thread, and return the wrapped result.
+     * See invokeWithArguments.
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    private ObjectReference invokeMethodDirect(String className, String methodName, ObjectReference target,
+            String [] paramTypes, ObjectReference [] args, String [] literalArgs)
+    {
+        // Calls to this method are serialized via serverThreadLock in JdiDebugger
+        return invokeWithArguments(ExecServer.INVOKE_METHOD, className, methodName, target, paramTypes, args, literalArgs);
+    }
+    
+    /**
+     * Perform a server thread action (constructor or method invocation) which takes
+     * arguments. The parameter types must be supplied (String[]) as well as the
+     * argument values (ObjectReference [], and optionally String [] for literal values).
+     * 
+     * @return  The return value of the action (null if an exception occurs, in which
+     *          case exitStatus is set to EXCEPTION)
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    private ObjectReference invokeWithArguments(int action, String className, String methodName, ObjectReference target,
+            String [] paramTypes, ObjectReference [] args, String [] literalArgs)
+    {
         serverThreadStartWait();
         boolean needsMachineResume = false;
         
         try {
             int length = paramTypes.length;
-            if (args.length != length) {
+            if (args.length != length || (literalArgs != null && literalArgs.length != length)) {
                 throw new IllegalArgumentException();
             }
 
@@ -1757,45 +2019,35 @@ public class VMReference
             // We suspend the machine which seems to help prevent GC from occurring.
             machine.suspend();
             needsMachineResume = true;
-            ArrayReference argsArray = objectArray.newInstance(length);
-            ArrayReference typesArray = stringArray.newInstance(length);
-            
-            // Even with a suspended virtual machine, these arrays have been known to be garbage collected.
-            // Force them to remain uncollected:
-            while (true) {
-                try {
-                    argsArray.disableCollection();
-                    break;
-                }
-                catch (ObjectCollectedException oce) {
-                    argsArray = objectArray.newInstance(length);
-                }
-            }
-            
-            while (true) {
-                try {
-                    typesArray.disableCollection();
-                    break;
-                }
-                catch (ObjectCollectedException oce) {
-                    typesArray = stringArray.newInstance(length);
-                }
-            }
+            ArrayReference argsArray = newUncollectedArray(objectArray, length);
+            ArrayReference typesArray = newUncollectedArray(stringArray, length);
+            ArrayReference literalsArray = literalArgs == null ? null : newUncollectedArray(stringArray, length);
             
             // Fill the arrays with the correct values
             for (int i = 0; i < length; i++) {
                 StringReference s = machine.mirrorOf(paramTypes[i]);
                 typesArray.setValue(i, s);
                 argsArray.setValue(i, args[i]);
+                if (literalArgs != null && literalArgs[i] != null) {
+                    literalsArray.setValue(i, machine.mirrorOf(literalArgs[i]));
+                }
             }
             
             setStaticFieldValue(serverClass, ExecServer.PARAMETER_TYPES_NAME, typesArray);
             setStaticFieldValue(serverClass, ExecServer.ARGUMENTS_NAME, argsArray);
+            setStaticFieldValue(serverClass, ExecServer.LITERAL_ARGUMENTS_NAME, literalsArray);
             typesArray.enableCollection();
             argsArray.enableCollection();
+            if (literalsArray != null) {
+                literalsArray.enableCollection();
+            }
 
             setStaticFieldObject(serverClass, ExecServer.CLASS_TO_RUN_NAME, className);
-            setStaticFieldValue(serverClass, ExecServer.EXEC_ACTION_NAME, machine.mirrorOf(ExecServer.INSTANTIATE_CLASS_ARGS));
+            if (methodName != null) {
+                setStaticFieldObject(serverClass, ExecServer.METHOD_TO_RUN_NAME, methodName);
+            }
+            setStaticFieldValue(serverClass, ExecServer.INVOCATION_TARGET_NAME, target);
+            setStaticFieldValue(serverClass, ExecServer.EXEC_ACTION_NAME, machine.mirrorOf(action));
             machine.resume();
             needsMachineResume = false;
             
@@ -1826,6 +2078,26 @@ public class VMReference
         
         return null;
     }
+
+    /**
+     * Create a new array in the remote VM, with garbage collection disabled (the caller
+     * should re-enable it once the array has been stored). The machine should be suspended.
+     */
+    private static ArrayReference newUncollectedArray(ArrayType arrayType, int length)
+    {
+        // Even with a suspended virtual machine, these arrays have been known to be garbage collected.
+        // Force them to remain uncollected:
+        while (true) {
+            ArrayReference array = arrayType.newInstance(length);
+            try {
+                array.disableCollection();
+                return array;
+            }
+            catch (ObjectCollectedException oce) {
+                // try again with a new array
+            }
+        }
+    }
     
     // Calls to this method are serialized via serverThreadLock in JdiDebugger
     public Value invokeTestSetup(String cl)
@@ -1899,6 +2171,66 @@ public class VMReference
         return rval;
     }
 
+    /**
+     * Run all the JUnit tests in several test classes, in a single test run.
+     * @param classNames  The test classes
+     * @param parallel    Whether the classes may be run in parallel
+     * @return  an ArrayReference of the same form as that returned by invokeRunTest,
+     *          or null if the run could not be started
+     * @throws InvocationException
+     */
+    @OnThread(Tag.NOTVMEventHandler)
+    public Value invokeRunTestClasses(List<String> classNames, boolean parallel)
+        throws InvocationException
+    {
+        // Calls to this method are serialized via serverThreadLock in JdiDebugger
+
+        serverThreadStartWait();
+        boolean needsMachineResume = false;
+
+        try {
+            ArrayType stringArray = (ArrayType) loadClass("[Ljava.lang.String;");
+
+            // Suspend the machine to prevent the array from being collected (see invokeWithArguments):
+            machine.suspend();
+            needsMachineResume = true;
+            ArrayReference namesArray = newUncollectedArray(stringArray, classNames.size());
+            for (int i = 0; i < classNames.size(); i++) {
+                namesArray.setValue(i, machine.mirrorOf(classNames.get(i)));
+            }
+
+            setStaticFieldValue(serverClass, ExecServer.CLASSES_TO_RUN_NAME, namesArray);
+            namesArray.enableCollection();
+            setStaticFieldValue(serverClass, ExecServer.PARALLEL_TESTS_NAME, machine.mirrorOf(parallel));
+            setStaticFieldValue(serverClass, ExecServer.EXEC_ACTION_NAME, machine.mirrorOf(ExecServer.TEST_RUN_CLASSES));
+            machine.resume();
+            needsMachineResume = false;
+        }
+        catch (ClassNotFoundException | ClassNotLoadedException | InvalidTypeException e) {
+            return null;
+        }
+        finally {
+            if (needsMachineResume) {
+                machine.resume();
+            }
+        }
+
+        // Resume the thread, wait for it to finish and the new thread to start
+        serverThreadStarted = false;
+        resumeServerThread();
+        serverThreadStartWait();
+
+        Value rval = getStaticFieldObject(serverClass, ExecServer.METHOD_RETURN_NAME);
+        if (rval == null) {
+            ObjectReference e = getStaticFieldObject(serverClass, ExecServer.EXCEPTION_NAME);
+            if (e != null) {
+                exceptionEvent(new InvocationException(e));
+                throw new InvocationException(e);
+            }
+        }
+        return rval;
+    }
+
     /**
      * Dispose of all gui windows opened from the debug vm.
      */
@@ -2124,7 +2456,10 @@ public class VMReference
 
         thr = new IOHandlerThread(reader, writer);
         thr.setPriority(Thread.MAX_PRIORITY - 1);
-        thr.start();
+        // A VM on standby is connected to the terminal when it is activated:
+        if (!standby) {
+            thr.start();
+        }
 
         return thr;
     }
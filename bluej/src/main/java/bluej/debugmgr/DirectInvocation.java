@@ -0,0 +1,322 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.debugmgr;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.TypeVariable;
+import java.util.regex.Pattern;
+
+import bluej.debugger.Debugger;
+import bluej.debugger.DebuggerObject;
+import bluej.debugger.DebuggerResult;
+import bluej.debugger.gentype.JavaType;
+import bluej.debugger.gentype.TextType;
+import bluej.debugmgr.objectbench.ObjectWrapper;
+import bluej.views.CallableView;
+import bluej.views.MethodView;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A constructor or method call which can be performed directly in the debug VM,
+ * without generating and compiling a shell class. This is possible when the meaning
+ * of the call is certain without the compiler: the member is not generic or varargs,
+ * no parameter type involves a type parameter, and each argument is either a simple
+ * literal (null, a boolean, a decimal number, a character or a string) which is directly
+ * convertible to the parameter type, or the name of an object on the object bench whose
+ * type is assignable to the parameter type. Anything else is left to a shell class.
+ *
+ * The call is made by reflection on the debug VM's server thread, in the same way
+ * that a shell class is run, so the result is wrapped as a shell class would wrap it.
+ */
+@OnThread(Tag.FXPlatform)
+class DirectInvocation
+{
+    private static final Pattern INT_LITERAL = Pattern.compile("-?(0|[1-9][0-9]*)");
+    private static final Pattern LONG_LITERAL = Pattern.compile("-?(0|[1-9][0-9]*)[lL]");
+    private static final Pattern FLOATING_LITERAL = Pattern.compile(
+            "-?([0-9]+\\.[0-9]*|\\.[0-9]+|[0-9]+)([eE][+-]?[0-9]+)?[fFdD]?");
+
+    @OnThread(Tag.Any)
+    private final String className;
+    @OnThread(Tag.Any)
+    private final String methodName; // null for a constructor
+    @OnThread(Tag.Any)
+    private final DebuggerObject target; // null for a constructor or static method
+    @OnThread(Tag.Any)
+    private final String[] paramTypes;
+    @OnThread(Tag.Any)
+    private final DebuggerObject[] args;
+    @OnThread(Tag.Any)
+    private final String[] literalArgs;
+
+    private DirectInvocation(String className, String methodName, DebuggerObject target,
+            String[] paramTypes, DebuggerObject[] args, String[] literalArgs)
+    {
+        this.className = className;
+        this.methodName = methodName;
+        this.target = target;
+        this.paramTypes = paramTypes;
+        this.args = args;
+        this.literalArgs = literalArgs;
+    }
+
+    /**
+     * Check whether a call can be performed directly, and if so, prepare it.
+     *
+     * @param member   The constructor or method to call
+     * @param args     The arguments, as Java expressions (may be null if there are none)
+     * @param typeParams  The type arguments for the call, as supplied by the user (may be null)
+     * @param instanceName  The name of the object on the bench to call the method on
+     *                      (null for a constructor or static method)
+     * @param objectBenchVars  The objects on the object bench
+     * @return  The prepared invocation, or null if the call must be made via a shell class.
+     */
+    static DirectInvocation prepare(CallableView member, String[] args, String[] typeParams,
+            String instanceName, ValueCollection objectBenchVars)
+    {
+        if (member.isGeneric() || member.isVarArgs() || (typeParams != null && typeParams.length != 0)) {
+            return null;
+        }
+
+        Class<?> declaringClass = member.getDeclaringView().getViewClass();
+        if (!isAccessible(declaringClass, member.getModifiers())) {
+            return null;
+        }
+
+        Class<?>[] paramClasses = member.getParameters();
+        int numArgs = args == null ? 0 : args.length;
+        if (numArgs != paramClasses.length) {
+            return null;
+        }
+        JavaType[] rawTypes = member.getParamTypes(true);
+        JavaType[] genericTypes = member.getParamTypes(false);
+
+        String[] paramTypes = new String[numArgs];
+        DebuggerObject[] argObjects = new DebuggerObject[numArgs];
+        String[] literalArgs = new String[numArgs];
+        for (int i = 0; i < numArgs; i++) {
+            paramTypes[i] = paramClasses[i].getName();
+            // The parameter type must not involve type parameters (of the class), as the
+            // arguments are only checked against its erasure here; e.g. for set(T) in a
+            // Box<Integer>, the compiler would reject a String, but the erasure is Object:
+            if (rawTypes[i] instanceof TextType || !rawTypes[i].toString().equals(genericTypes[i].toString())) {
+                return null;
+            }
+
+            String arg = args[i].strip();
+            NamedValue benchValue = objectBenchVars == null ? null : objectBenchVars.getNamedValue(arg);
+            if (benchValue instanceof ObjectWrapper wrapper) {
+                if (!rawTypes[i].isAssignableFrom(wrapper.getGenType())) {
+                    return null;
+                }
+                argObjects[i] = wrapper.getObject();
+            }
+            else if (arg.equals("null")) {
+                if (paramClasses[i].isPrimitive()) {
+                    return null;
+                }
+            }
+            else {
+                literalArgs[i] = getLiteralValue(arg, paramClasses[i]);
+                if (literalArgs[i] == null) {
+                    return null;
+                }
+            }
+        }
+
+        if (member instanceof MethodView methodView) {
+            Method method = methodView.getMethod();
+            // If the return type is a type parameter, a shell class knows the actual type
+            // (and wraps it accordingly) but we don't:
+            if (method.getGenericReturnType() instanceof TypeVariable) {
+                return null;
+            }
+            DebuggerObject target = null;
+            if (!Modifier.isStatic(method.getModifiers())) {
+                NamedValue targetValue = instanceName == null || objectBenchVars == null ? null
+                        : objectBenchVars.getNamedValue(instanceName);
+                if (!(targetValue instanceof ObjectWrapper targetWrapper)) {
+                    return null;
+                }
+                target = targetWrapper.getObject();
+            }
+            return new DirectInvocation(member.getClassName(), method.getName(), target, paramTypes, argObjects, literalArgs);
+        }
+        else {
+            // An inner class constructor needs an enclosing instance:
+            if (declaringClass.getEnclosingClass() != null && !Modifier.isStatic(declaringClass.getModifiers())) {
+                return null;
+            }
+            return new DirectInvocation(member.getClassName(), null, null, paramTypes, argObjects, literalArgs);
+        }
+    }
+
+    /**
+     * Perform the invocation. This may take an arbitrary length of time, so should not
+     * be called on the FX thread.
+     */
+    @OnThread(Tag.Worker)
+    DebuggerResult invoke(Debugger debugger)
+    {
+        if (methodName == null) {
+            return debugger.instantiateClass(className, paramTypes, args, literalArgs);
+        }
+        else {
+            return debugger.invokeMethod(className, methodName, target, paramTypes, args, literalArgs);
+        }
+    }
+
+    /**
+     * Check whether the member can be called by reflection. Classes in named modules
+     * (i.e. the JDK) don't allow access to non-public members or classes, even where a
+     * shell class could access them via a public subclass or interface.
+     */
+    @OnThread(Tag.Any)
+    private static boolean isAccessible(Class<?> declaringClass, int memberModifiers)
+    {
+        if (!declaringClass.getModule().isNamed()) {
+            return true;
+        }
+        for (Class<?> c = declaringClass; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return Modifier.isPublic(memberModifiers);
+    }
+
+    /**
+     * Get the value of a literal argument as text which the debug VM can convert to the
+     * parameter type, applying the same conversions that the compiler would for a method
+     * argument (widening of primitives, or boxing to exactly the wrapper type).
+     *
+     * @param arg  The argument expression
+     * @param paramClass  The parameter type
+     * @return  The value, or null if the argument is not a simple literal, or is not
+     *          convertible to the parameter type
+     */
+    @OnThread(Tag.Any)
+    static String getLiteralValue(String arg, Class<?> paramClass)
+    {
+        if (arg.equals("true") || arg.equals("false")) {
+            return paramClass == boolean.class || paramClass == Boolean.class ? arg : null;
+        }
+        else if (arg.length() >= 2 && arg.startsWith("\"") && arg.endsWith("\"")) {
+            String value = unescape(arg.substring(1, arg.length() - 1), '"');
+            return value != null && paramClass.isAssignableFrom(String.class) ? value : null;
+        }
+        else if (arg.length() >= 3 && arg.startsWith("'") && arg.endsWith("'")) {
+            String value = unescape(arg.substring(1, arg.length() - 1), '\'');
+            return value != null && value.length() == 1
+                    && (paramClass == char.class || paramClass == Character.class) ? value : null;
+        }
+
+        Number value = parseNumber(arg);
+        if (value == null) {
+            return null;
+        }
+        else if (value instanceof Integer && (paramClass == int.class || paramClass == Integer.class)) {
+            return value.toString();
+        }
+        else if ((value instanceof Integer || value instanceof Long)
+                && (paramClass == long.class || (value instanceof Long && paramClass == Long.class))) {
+            return Long.toString(value.longValue());
+        }
+        else if (!(value instanceof Double)
+                && (paramClass == float.class || (value instanceof Float && paramClass == Float.class))) {
+            return Float.toString(value.floatValue());
+        }
+        else if (paramClass == double.class || (value instanceof Double && paramClass == Double.class)) {
+            return Double.toString(value.doubleValue());
+        }
+        return null;
+    }
+
+    /**
+     * Parse a decimal numeric literal (optionally negated), returning an Integer, Long,
+     * Float or Double according to the type of the literal, or null if the text is not
+     * such a literal or its value is out of range.
+     */
+    @OnThread(Tag.Any)
+    private static Number parseNumber(String text)
+    {
+        try {
+            if (INT_LITERAL.matcher(text).matches()) {
+                return Integer.parseInt(text);
+            }
+            else if (LONG_LITERAL.matcher(text).matches()) {
+                return Long.parseLong(text.substring(0, text.length() - 1));
+            }
+            else if (FLOATING_LITERAL.matcher(text).matches()) {
+                char last = Character.toLowerCase(text.charAt(text.length() - 1));
+                boolean isFloat = last == 'f';
+                boolean hasSuffix = isFloat || last == 'd';
+                String digits = hasSuffix ? text.substring(0, text.length() - 1) : text;
+                if (!hasSuffix && digits.indexOf('.') == -1 && digits.indexOf('e') == -1 && digits.indexOf('E') == -1) {
+                    // e.g. "012", which is an octal integer
+                    return null;
+                }
+                double value = isFloat ? Float.parseFloat(digits) : Double.parseDouble(digits);
+                // The compiler rejects literals which are too large, or which round to zero:
+                String mantissa = digits.split("[eE]")[0];
+                if (Double.isInfinite(value) || (value == 0 && mantissa.matches(".*[1-9].*"))) {
+                    return null;
+                }
+                return isFloat ? (Number) (float) value : (Number) value;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Out of range
+        }
+        return null;
+    }
+
+    /**
+     * Translate the escape sequences in the body of a string or character literal.
+     * Returns null if the body contains an unescaped quote (so that it is not a
+     * single literal), a line break, a unicode escape or an invalid escape sequence.
+     */
+    @OnThread(Tag.Any)
+    private static String unescape(String body, char quote)
+    {
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                i++;
+                if (i < body.length() && body.charAt(i) == 'u') {
+                    return null;
+                }
+            }
+            else if (c == quote || c == '\n' || c == '\r') {
+                return null;
+            }
+        }
+        try {
+            return body.translateEscapes();
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
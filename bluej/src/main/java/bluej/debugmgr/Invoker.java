@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2014,2015,2016,2018,2019,2020,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2014,2015,2016,2018,2019,2020,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -62,23 +62,17 @@ import javafx.stage.Stage;
 import threadchecker.OnThread;
 import threadchecker.Tag;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FilenameFilter;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 /**
  * Debugger class that arranges invocation of constructors or methods. This
- * class constructs a "shell" java source file, compiles it, then loads the
- * resulting class file and executes a method in a new thread.
+ * class constructs the source of a "shell" class, compiles it in memory, then
+ * passes the resulting class files to the debug VM, which defines the class
+ * and executes a method in a new thread.
  * 
  * @author Michael Kolling
  */
@@ -106,6 +100,9 @@ public class Invoker
     private ResultWatcher watcher;
     private final CallableView member;
     private String shellName;
+    /** The compiled shell class and any inner classes, keyed by class name */
+    @OnThread(Tag.Any)
+    private final Map<String, byte[]> shellClasses = Collections.synchronizedMap(new HashMap<>());
     /** Name of the result object */
     @OnThread(Tag.Any)
     private String objName;
@@ -121,7 +118,6 @@ public class Invoker
     private String imports; // import statements to include in shell file
     private NameTransform nameTransform;
     private InvokerCompiler compiler;
-    private Charset sourceCharset;
     
     /** Name of the target object to which the call is applied */
     private final String instanceName;
@@ -172,16 +168,14 @@ public class Invoker
             }
         };
         compiler = new InvokerCompiler() {
-            public void compile(File[] files, CompileObserver observer)
+            public void compile(File shellFile, String source, Map<String, byte[]> classes, CompileObserver observer)
             {
                 Project project = pkg.getProject();
-                List<CompileInputFile> wrapped = Utility.mapList(Arrays.asList(files), f -> new CompileInputFile(f, f));
-                JobQueue.getJobQueue().addJob(wrapped.toArray(new CompileInputFile[0]), observer, project.getClassLoader(),
-                        project.getProjectDir(), true, project.getProjectCharset(), CompileReason.INVOKE, CompileType.INTERNAL_COMPILE);
+                JobQueue.getJobQueue().compileShell(shellFile, source, classes, observer, project.getClassLoader(),
+                        project.getProjectDir(), project.getProjectCharset());
             }
         };
         this.shellName = getShellName();
-        this.sourceCharset = pkg.getProject().getProjectCharset();
         this.typeMap = null;
     }
 
@@ -287,15 +281,13 @@ public class Invoker
         this.debugger = pkg.getProject().getDebugger();
         this.nameTransform = new CleverQualifyTypeNameTransform(pkg);
         compiler = new InvokerCompiler() {
-            public void compile(File[] files, CompileObserver observer)
+            public void compile(File shellFile, String source, Map<String, byte[]> classes, CompileObserver observer)
             {
                 Project project = pkg.getProject();
-                List<CompileInputFile> wrapped = Utility.mapList(Arrays.asList(files), f -> new CompileInputFile(f, f));
-                JobQueue.getJobQueue().addJob(wrapped.toArray(new CompileInputFile[0]), observer, project.getClassLoader(),
-                        project.getProjectDir(), true, project.getProjectCharset(), CompileReason.INVOKE, CompileType.INTERNAL_COMPILE);
+                JobQueue.getJobQueue().compileShell(shellFile, source, classes, observer, project.getClassLoader(),
+                        project.getProjectDir(), project.getProjectCharset());
             }
         };
-        this.sourceCharset = pmf.getProject().getProjectCharset();
     }
     
     /**
@@ -400,7 +392,8 @@ public class Invoker
      * Invocation here means: construct shell class and start compiling it.
      * 
      * The "endCompile" method is called when the compilation has completed. If
-     * successful, the shell class will then be executed.
+     * successful, the shell class will then be executed. Simple calls (see
+     * DirectInvocation) are instead executed directly, without a shell class.
      *  
      * @param args  The arguments to the method/constructor as they will appear
      *              in the generated source
@@ -438,6 +431,11 @@ public class Invoker
      */
     private void doInvocation(String[] args, String[] argTypes, String[] typeParams)
     {
+        if (!checkClassesCurrent())
+        {
+            return;
+        }
+
         int numArgs = (args == null ? 0 : args.length);
         final String className = member.getClassName();
 
@@ -511,8 +509,14 @@ public class Invoker
             }
         }
 
-        if (constructing && member.getParameterCount() == 0 && (typeParams == null || typeParams.length == 0)) {
-            // Special case for construction of a class using the default constructor.
+        boolean defaultConstructor = constructing && member.getParameterCount() == 0
+                && (typeParams == null || typeParams.length == 0);
+        DirectInvocation direct = defaultConstructor ? null
+                : DirectInvocation.prepare(member, args, typeParams, instanceName, objectBenchVars);
+
+        if (defaultConstructor || direct != null) {
+            // Special case for construction of a class using the default constructor,
+            // or for another call simple enough to be made directly (see DirectInvocation).
             // We can do this without writing and compiling a shell file.
             
             commandString = command + actualArgString;
@@ -526,7 +530,8 @@ public class Invoker
                 public void run() {
                     Platform.runLater(Invoker.this::closeCallDialog);
                     
-                    DebuggerResult result = debugger.instantiateClass(className);
+                    DebuggerResult result = direct != null ? direct.invoke(debugger)
+                            : debugger.instantiateClass(className);
 
                     Platform.runLater(() -> {
                         // the execution is completed, get the result if there was one
@@ -542,14 +547,9 @@ public class Invoker
                 argString += ';';
             
             watcher.beginCompile();
-            File shell = writeInvocationFile(paramInit, command + argString, isVoid, constype);
-            if (shell != null) {
-                commandString = command + actualArgString;
-                compileInvocationFile(shell);
-            }
-            else {
-                endCompile(new CompileInputFile[0], false, CompileType.INTERNAL_COMPILE, -1);
-            }
+            String shell = writeInvocationSource(paramInit, command + argString, isVoid, constype);
+            commandString = command + actualArgString;
+            compileInvocationSource(shell);
         }
     }
 
@@ -612,19 +612,18 @@ public class Invoker
      * 
      * <p>Invocation here means: construct shell class and compile. The execution
      * is done once we return from compilation (in method "endCompile").
-     * Compilation is done asynchronously by the CompilerThread.
+     * Compilation is done asynchronously, in memory (see JobQueue.compileShell).
      * 
-     * <p>This method is still executed in the interface thread, while "endCompile"
-     * will be executed by the CompilerThread.
+     * <p>This method is still executed in the interface thread, as is "endCompile"
+     * (via an EventqueueCompileObserverAdapter).
      * 
      * @param resultType   the type of the result expressed in Java (eg "int",
      *                     "java.util.ArrayList<String>"). An empty string means
      *                     the type is not known. A null value indicates that there
      *                     is no result (the invocation is a statement).
      * 
-     * @return true if successful, or false if there was a problem (the shell
-     * file couldn't be written). In case of failure, a dialog is displayed to
-     * alert the user.
+     * @return true if successful. Since the shell class is no longer written to
+     * a file, this cannot currently fail.
      */
     public boolean doFreeFormInvocation(String resultType)
     {
@@ -642,20 +641,20 @@ public class Invoker
             ir = new StatementInvokerRecord(commandString);
         }
 
-        File shell = writeInvocationFile("", commandString, !hasResult, resultType);
-        if (shell != null) {
-            compileInvocationFile(shell);
+        if (!checkClassesCurrent())
+        {
+            // The error has been reported to the watcher:
             return true;
         }
-        else {
-            return false;
-        }
+
+        String shell = writeInvocationSource("", commandString, !hasResult, resultType);
+        compileInvocationSource(shell);
+        return true;
     }
 
     /**
-     * Write a source file for a class (the 'shell file') to do the interactive
-     * invocation. Returns the written file, or null if the file cannot be written
-     * (an error dialog will be shown in this case).
+     * Generate the source for a class (the 'shell file') to do the interactive
+     * invocation. The source is compiled in memory; it is never written to disk.
      * 
      * <p>A shell file has, very roughly, the following form:
      * 
@@ -691,7 +690,7 @@ public class Invoker
      *                  cases to yield a more accurate result type (when generic types
      *                  are involved).
      */
-    private File writeInvocationFile(String paramInit, String callString,
+    private String writeInvocationSource(String paramInit, String callString,
             boolean isVoid, String constype)
     {
         // Create package specification line ("package xyz")
@@ -818,58 +817,40 @@ public class Invoker
         }
         String scopeSave = buffer.toString();
 
-        File shellFile = new File(pkgPath, shellName + ".java");
-        BufferedWriter shell = null;
-        try {
-            FileOutputStream fos = new FileOutputStream(shellFile);
-            shell = new BufferedWriter(new OutputStreamWriter(fos, sourceCharset));
-
-            shell.write(packageLine);
-            shell.newLine();
-            if (imports != null) {
-                shell.write(imports);
-                shell.newLine();
-            }
-            shell.write("public class ");
-            shell.write(shellName);
-            shell.write(" extends bluej.runtime.Shell {");
-            shell.newLine();
-            shell.write("public static ");
-            if (isVoid) {
-                shell.write("void");
-            }
-            else {
-                shell.write("java.lang.Object");
-            }
-            shell.write(" run() throws Throwable {");
-            shell.newLine();
-            shell.write(vardecl);
-            shell.newLine();
-            shell.write(invocation);
-            shell.write(scopeSave);
-            if (! isVoid) {
-                shell.write("}"); // end finally block
-                if (constype != null) {
-                    shell.write("} };"); // end block, anonymous inner object
-                }
-            }
-            shell.newLine();
-            shell.write("}}"); // end method, class
-            shell.newLine();
-            shell.close();
+        StringBuilder shell = new StringBuilder();
+        shell.append(packageLine);
+        shell.append(Config.nl);
+        if (imports != null) {
+            shell.append(imports);
+            shell.append(Config.nl);
         }
-        catch (IOException e) {
-            DialogManager.showErrorFX(parent, "could-not-write-shell-file");
-            if (shell != null) {
-                try {
-                    shell.close();
-                }
-                catch (IOException ioe) {}
+        shell.append("public class ");
+        shell.append(shellName);
+        shell.append(" extends bluej.runtime.Shell {");
+        shell.append(Config.nl);
+        shell.append("public static ");
+        if (isVoid) {
+            shell.append("void");
+        }
+        else {
+            shell.append("java.lang.Object");
+        }
+        shell.append(" run() throws Throwable {");
+        shell.append(Config.nl);
+        shell.append(vardecl);
+        shell.append(Config.nl);
+        shell.append(invocation);
+        shell.append(scopeSave);
+        if (! isVoid) {
+            shell.append("}"); // end finally block
+            if (constype != null) {
+                shell.append("} };"); // end block, anonymous inner object
             }
-            shellFile.delete();
-            return null;
         }
-        return shellFile;
+        shell.append(Config.nl);
+        shell.append("}}"); // end method, class
+        shell.append(Config.nl);
+        return shell.toString();
     }
     
     /**
@@ -1039,13 +1020,13 @@ public class Invoker
     }
 
     /**
-     * Start the compilation of a shell fine and register us as a watcher. After
+     * Start the compilation of a shell class and register us as a watcher. After
      * this, we just wait for the callback from the compiler.
      */
-    private void compileInvocationFile(File shellFile)
+    private void compileInvocationSource(String source)
     {
-        File[] files = {shellFile};
-        compiler.compile(files, new EventqueueCompileObserverAdapter(this));
+        File shellFile = new File(pkgPath, shellName + ".java");
+        compiler.compile(shellFile, source, shellClasses, new EventqueueCompileObserverAdapter(this));
     }
 
     // -- CompileObserver interface --
@@ -1071,6 +1052,34 @@ public class Invoker
         return false;
     }
     
+    /**
+     * Check that the classes in the debug VM are up to date, so that user code can be run.
+     * They are not while a compilation is in progress whose classes are yet to be reloaded
+     * or redefined (see Project.prepareForCompile); in that case, report an error.
+     * 
+     * @return true if user code can be run.
+     */
+    private boolean checkClassesCurrent()
+    {
+        if (pkg == null || !pkg.getProject().isClassReloadDeferred())
+        {
+            return true;
+        }
+
+        String message = Config.getString("pkgmgr.invokeWhileCompiling");
+        if (dialog != null)
+        {
+            dialog.setErrorMessage(message);
+        }
+        else if (!codepad)
+        {
+            // There's nowhere else to show it:
+            DialogManager.showErrorTextFX(parent, message);
+        }
+        watcher.putError(message, ir);
+        return false;
+    }
+
     /**
      * An error was detected during compilation of the shell class.
      */
@@ -1102,7 +1111,10 @@ public class Invoker
             }
         }
 
-        if (successful) {
+        if (successful && !checkClassesCurrent()) {
+            finishCall(false);
+        }
+        else if (successful) {
             watcher.beginExecution(ir);
             startClass();
         }
@@ -1122,7 +1134,7 @@ public class Invoker
      */
     private void finishCall(boolean successful)
     {
-        deleteShellFiles();
+        shellClasses.clear();
 
         if (!successful && dialog != null)
         {
@@ -1147,31 +1159,6 @@ public class Invoker
         }
     }
 
-    /**
-     * Remove the shell files that we created for this invocation.
-     */
-    private void deleteShellFiles()
-    {
-        File srcFile = new File(pkgPath, shellName + ".java");
-        srcFile.delete();
-
-        File classFile = new File(pkgPath, shellName + ".class");
-        classFile.delete();
-        
-        // Remove any inner class files
-        String [] innerClassFiles = pkgPath.list(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name)
-            {
-                return (name.startsWith(shellName + "$"));
-            }
-        });
-        
-        for (String innerClassFile : innerClassFiles) {
-            new File(pkgPath, innerClassFile).delete();
-        }
-    }
-
     // -- end of CompileObserver interface --
 
     /**
@@ -1185,7 +1172,7 @@ public class Invoker
         new Thread("Shell class runner") {
             public void run() {
                 try {
-                    DebuggerResult result = debugger.runClassMain(shellClassName);
+                    DebuggerResult result = debugger.runClassMain(shellClassName, shellClasses);
                     
                     Platform.runLater(new Runnable() {
                         public void run() {
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2010,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -22,6 +22,7 @@
 package bluej.debugmgr;
 
 import java.io.File;
+import java.util.Map;
 
 import bluej.compiler.CompileObserver;
 
@@ -32,5 +33,13 @@ import bluej.compiler.CompileObserver;
  */
 public interface InvokerCompiler
 {
-    void compile(File [] files, CompileObserver observer);
+    /**
+     * Compile a shell class, in memory.
+     * 
+     * @param shellFile  The file which would hold the shell class source (it is not written)
+     * @param source     The source of the shell class
+     * @param classes    A map which receives the compiled class files, keyed by class name
+     * @param observer   The observer to be notified of compilation messages and completion
+     */
+    void compile(File shellFile, String source, Map<String, byte[]> classes, CompileObserver observer);
 }
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2010,2011,2013,2014,2016,2017,2018,2019,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2010,2011,2013,2014,2016,2017,2018,2019,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -526,10 +526,13 @@ public class ObjectInspector extends Inspector
             // the destination list
             List<FieldInfo> newArray = new ArrayList<FieldInfo>(2 + VISIBLE_ARRAY_START + VISIBLE_ARRAY_TAIL);
             newArray.add(0, new FieldInfo("int length", "" + arrayTotalLength));
+            // Fetch the elements at each end together, rather than one at a time:
+            List<String> startValues = arrayObject.getElementValueStrings(0, VISIBLE_ARRAY_START + 1);
+            List<String> tailValues = arrayObject.getElementValueStrings(arrayTotalLength - VISIBLE_ARRAY_TAIL, VISIBLE_ARRAY_TAIL);
             for (int i = 0; i <= VISIBLE_ARRAY_START; i++)
             {
                 // first 40 elements are displayed as per normal
-                newArray.add(new FieldInfo("[" + i + "]", arrayObject.getElementValueString(i)));
+                newArray.add(new FieldInfo("[" + i + "]", startValues.get(i)));
                 indexToSlotList.add(i);
                 //set the list position index for the request slot
                 if(i == extraArraySlotIndex)
@@ -567,7 +570,7 @@ public class ObjectInspector extends Inspector
             {
                 // last 5 elements are displayed
                 int elNum = arrayTotalLength - i;
-                newArray.add(new FieldInfo("[" + elNum + "]", arrayObject.getElementValueString(elNum)));
+                newArray.add(new FieldInfo("[" + elNum + "]", tailValues.get(VISIBLE_ARRAY_TAIL - i)));
                 indexToSlotList.add(arrayTotalLength - i);
                 //set the list position index for the request slot
                 if((arrayTotalLength-i) == extraArraySlotIndex)
@@ -578,11 +581,12 @@ public class ObjectInspector extends Inspector
             return newArray;
         }
         else {
-            List<FieldInfo> fullArrayFieldList = new ArrayList<FieldInfo>(arrayObject.getElementCount() + 1);
-            fullArrayFieldList.add(0, new FieldInfo("int length", "" + arrayObject.getElementCount()));
+            List<FieldInfo> fullArrayFieldList = new ArrayList<FieldInfo>(arrayTotalLength + 1);
+            fullArrayFieldList.add(0, new FieldInfo("int length", "" + arrayTotalLength));
             
-            for (int i = 0; i < arrayObject.getElementCount(); i++) {
-                fullArrayFieldList.add(new FieldInfo("[" + i + "]", arrayObject.getElementValueString(i)));
+            List<String> values = arrayObject.getElementValueStrings(0, arrayTotalLength);
+            for (int i = 0; i < arrayTotalLength; i++) {
+                fullArrayFieldList.add(new FieldInfo("[" + i + "]", values.get(i)));
                 indexToSlotList.add(i);
             }
             return fullArrayFieldList;
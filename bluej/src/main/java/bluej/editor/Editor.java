@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2011,2013,2014,2015,2016,2017,2018,2019,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2011,2013,2014,2015,2016,2017,2018,2019,2020,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -56,6 +56,14 @@ public interface Editor
      */
     void reloadFile();
 
+    /**
+     * Notification that the file has been changed on disk, possibly by another program.
+     * The editor should reload it if it has no unsaved changes (and the user has not
+     * turned off checking for changes); otherwise the user will be asked when they
+     * next look at or save the file.
+     */
+    void fileChangedOnDisk();
+
     /**
      * Show the editor window. This includes whatever is necessary of the
      * following: make visible, de-iconify, bring to front of window stack.
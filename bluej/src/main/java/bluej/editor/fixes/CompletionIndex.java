@@ -0,0 +1,305 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.editor.fixes;
+
+import bluej.utility.Utility;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A precomputed index over the choices in a SuggestionList, used to find the
+ * eligible choices as the user types without re-examining every choice on every key.
+ *
+ * The choices are held lower-cased and sorted, so that direct (prefix) matches are
+ * a contiguous range found by binary search.  Each choice also has its word starts
+ * (see splitIdentLower) precomputed, along with a bit mask of the characters that
+ * follow each word start.  A similar match within edit distance d requires that at
+ * most d of the distinct characters typed are missing from the candidate, so the masks
+ * let us discard most candidates before calculating any edit distances.
+ *
+ * The index remembers the result of the last query, and if the prefix has only been
+ * extended since then, narrows down from the previous result rather than starting again.
+ */
+@OnThread(Tag.Any)
+public class CompletionIndex
+{
+    // The choices, and lower-cased versions, indexed by original choice index:
+    private final String[] choices;
+    private final String[] lowerChoices;
+    // Word starts for each choice, indexed by original choice index:
+    private final int[][] wordStarts;
+    // For each choice and word start, the mask of characters from the word start to the end of the choice:
+    private final long[][] wordStartMasks;
+    // Original choice indexes, sorted by lower-cased choice:
+    private final int[] sorted;
+
+    // The state from the last call to narrow:
+    private String lastPrefixLower;
+    private boolean lastAllowSimilar;
+    // Range in sorted of direct matches, start inclusive, end exclusive:
+    private int directStart;
+    private int directEnd;
+    // Indexes of choices which are not direct matches but might be similar matches:
+    private int[] similarCandidates = new int[0];
+
+    public CompletionIndex(List<String> choices)
+    {
+        int size = choices.size();
+        this.choices = choices.toArray(new String[0]);
+        lowerChoices = new String[size];
+        wordStarts = new int[size][];
+        wordStartMasks = new long[size][];
+        Integer[] sortedBoxed = new Integer[size];
+        for (int i = 0; i < size; i++)
+        {
+            String choice = choices.get(i);
+            lowerChoices[i] = choice.toLowerCase();
+            wordStarts[i] = splitIdentLower(choice).stream().mapToInt(Integer::intValue).toArray();
+            wordStartMasks[i] = new long[wordStarts[i].length];
+            for (int w = 0; w < wordStarts[i].length; w++)
+            {
+                wordStartMasks[i][w] = charMask(choice.substring(wordStarts[i][w]).toLowerCase(), 0);
+            }
+            sortedBoxed[i] = i;
+        }
+        Arrays.sort(sortedBoxed, Comparator.comparing(i -> lowerChoices[i]));
+        sorted = Arrays.stream(sortedBoxed).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Updates the direct matches and similar candidates for the given prefix.
+     */
+    public void narrow(String prefix, boolean allowSimilar)
+    {
+        String prefixLower = prefix.toLowerCase();
+        int maxDistance = allowSimilar ? maxSimilarDistance(prefixLower.length()) : -1;
+
+        // Can we narrow down from last time?  Only if the prefix has been extended, and the
+        // allowed distance has not grown (which could admit candidates we previously discarded):
+        boolean incremental = lastPrefixLower != null && allowSimilar == lastAllowSimilar
+            && prefixLower.startsWith(lastPrefixLower)
+            && maxDistance == (allowSimilar ? maxSimilarDistance(lastPrefixLower.length()) : -1);
+
+        int searchStart = incremental ? directStart : 0;
+        int searchEnd = incremental ? directEnd : sorted.length;
+        int newDirectStart = lowerBound(prefixLower, searchStart, searchEnd);
+        int newDirectEnd = newDirectStart;
+        while (newDirectEnd < searchEnd && lowerChoices[sorted[newDirectEnd]].startsWith(prefixLower))
+        {
+            newDirectEnd += 1;
+        }
+
+        int[] newSimilarCandidates;
+        if (maxDistance < 0)
+        {
+            newSimilarCandidates = new int[0];
+        }
+        else
+        {
+            long prefixMask = charMask(prefixLower, 0);
+            int[] toExamine;
+            if (incremental)
+            {
+                // Previous direct matches which no longer match directly may now be similar matches:
+                toExamine = Arrays.copyOf(similarCandidates, similarCandidates.length + (directEnd - directStart));
+                int n = similarCandidates.length;
+                for (int s = directStart; s < directEnd; s++)
+                {
+                    if (s < newDirectStart || s >= newDirectEnd)
+                        toExamine[n++] = sorted[s];
+                }
+                toExamine = Arrays.copyOf(toExamine, n);
+            }
+            else
+            {
+                toExamine = new int[sorted.length - (newDirectEnd - newDirectStart)];
+                int n = 0;
+                for (int s = 0; s < sorted.length; s++)
+                {
+                    if (s < newDirectStart || s >= newDirectEnd)
+                        toExamine[n++] = sorted[s];
+                }
+            }
+
+            int[] kept = new int[toExamine.length];
+            int n = 0;
+            for (int choice : toExamine)
+            {
+                if (mightBeSimilar(choice, prefixMask, maxDistance))
+                    kept[n++] = choice;
+            }
+            newSimilarCandidates = Arrays.copyOf(kept, n);
+        }
+
+        lastPrefixLower = prefixLower;
+        lastAllowSimilar = allowSimilar;
+        directStart = newDirectStart;
+        directEnd = newDirectEnd;
+        similarCandidates = newSimilarCandidates;
+    }
+
+    /**
+     * The original indexes of the choices which begin with the prefix (ignoring case)
+     * given to the last call to narrow.
+     */
+    public int[] getDirectMatches()
+    {
+        return Arrays.copyOfRange(sorted, directStart, directEnd);
+    }
+
+    /**
+     * The original indexes of the choices which are not direct matches for the prefix
+     * given to the last call to narrow, but which may be similar matches.  Always empty
+     * if similar matches were not allowed.
+     */
+    public int[] getSimilarCandidates()
+    {
+        return similarCandidates;
+    }
+
+    /**
+     * Gets the word starts of the given choice, as calculated by splitIdentLower
+     */
+    public int[] getWordStarts(int choice)
+    {
+        return wordStarts[choice];
+    }
+
+    /**
+     * Gets the edit distance between the prefix given to the last call to narrow, and the
+     * part of the given choice at the given offset.
+     */
+    public int distanceTo(int choice, int offset)
+    {
+        // We check, given a prefix (e.g. "abc"), whether the substring of the same length (e.g. 3)
+        // at the given point in the candidate is a closen enough match by edit distance
+        // An exact match is edit distance 0
+        String prefix = lastPrefixLower;
+        String candidate = choices[choice];
+        String partialLower = candidate.substring(offset, Math.min(candidate.length(), offset + prefix.length())).toLowerCase();
+
+        // We also check for the strings one longer and one shorter, as they might have better edit distance:
+        String partialLowerShort = candidate.substring(offset, Math.min(candidate.length(), offset + Math.max(1, prefix.length() - 1))).toLowerCase();
+        String partialLowerLong = candidate.substring(offset, Math.min(candidate.length(), offset + 1 + prefix.length())).toLowerCase();
+
+        return Math.min(
+                Utility.editDistance(partialLower, prefix),
+                Math.min(Utility.editDistance(partialLowerShort, prefix), Utility.editDistance(partialLowerLong, prefix))
+               );
+    }
+
+    /**
+     * The largest edit distance at which a similar match is shown for a prefix of the
+     * given length, or -1 if no similar matches are shown.  Must agree with
+     * SuggestionList.EligibleDetail.close()
+     */
+    private static int maxSimilarDistance(int prefixLength)
+    {
+        if (prefixLength >= 10)
+            return 2;
+        else if (prefixLength >= 3)
+            return 1;
+        else if (prefixLength >= 2)
+            return 0;
+        else
+            return -1;
+    }
+
+    private boolean mightBeSimilar(int choice, long prefixMask, int maxDistance)
+    {
+        for (long wordStartMask : wordStartMasks[choice])
+        {
+            // Each typed character missing from the candidate needs at least one edit:
+            if (Long.bitCount(prefixMask & ~wordStartMask) <= maxDistance)
+                return true;
+        }
+        return false;
+    }
+
+    // Finds the first index in sorted, within the given range, whose choice is not less than the prefix:
+    private int lowerBound(String prefixLower, int from, int to)
+    {
+        int low = from;
+        int high = to;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (lowerChoices[sorted[mid]].compareTo(prefixLower) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static long charMask(String s, int from)
+    {
+        long mask = 0;
+        for (int i = from; i < s.length(); i++)
+        {
+            // Shift only uses the bottom six bits, so characters share bits.  That
+            // only makes the check in mightBeSimilar more lenient, never stricter:
+            mask |= 1L << s.charAt(i);
+        }
+        return mask;
+    }
+
+    private static boolean hasCase(char c)
+    {
+        // It has case if one of these methods returns differently to the other:
+        return Character.isUpperCase(c) != Character.isLowerCase(c);
+    }
+
+    /**
+     * Splits an identifier into words, returning the offset at which each word starts.
+     */
+    public static List<Integer> splitIdentLower(String text)
+    {
+        int startCurWord = 0;
+        List<Integer> r = new ArrayList<>();
+        // We split on a change of case, or an underscore, or a dot (e.g. in Greenfoot.isKeyDown)
+        for (int i = 1 /* start at 2nd char */; i < text.length(); i++)
+        {
+            if ((hasCase(text.charAt(i)) && hasCase(text.charAt(i - 1))) &&
+               (Character.isUpperCase(text.charAt(i)) == Character.isLowerCase(text.charAt(i - 1))
+             || Character.isLowerCase(text.charAt(i)) == Character.isUpperCase(text.charAt(i - 1)))
+               && (startCurWord == 0 || i - startCurWord > 1))
+            {
+                // Case change:
+                r.add(startCurWord);
+                startCurWord = i;
+            }
+            else if ((text.charAt(i) == '_' || text.charAt(i) == '.') && startCurWord < i - 1)
+            {
+                r.add(startCurWord);
+                startCurWord = i + 1;
+            }
+        }
+        r.add(startCurWord);
+        return r;
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2014,2015,2016,2018,2019,2020,2021 Michael Kölling and John Rosenberg
+ Copyright (C) 2014,2015,2016,2018,2019,2020,2021,2026 Michael Kölling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -155,6 +155,10 @@ public class SuggestionList
      * List of choices available for the user.  Each entry represents a different item.
      */
     private final List<SuggestionDetails> choices;
+    /**
+     * Index over the choice strings, for quickly finding eligible choices.
+     */
+    private final CompletionIndex completionIndex;
     /**
      * This array contains two entries per choice.  There is one complete set from
      * 0 to choices.size() - 1 which are the direct suggestions, and a second
@@ -258,6 +262,7 @@ public class SuggestionList
             }
         }
 
+        // Note: CompletionIndex.maxSimilarDistance must be kept in line with this method.
         public boolean close()
         {
             if (distance == 0 && suggestionOffset == 0)
@@ -445,6 +450,7 @@ public class SuggestionList
 
         this.suggestionListId = nextSuggListId.getAndIncrement();
         this.choices = FXCollections.observableArrayList(choices);
+        this.completionIndex = new CompletionIndex(Utility.mapList(this.choices, c -> c.choice));
         this.shownState.set(startShown);
         this.listener = listener;
         this.highlightListener = highlightListener;
@@ -841,30 +847,34 @@ public class SuggestionList
         lastPrefix = prefix;
         lastAllowSimilar = allowSimilar;
         eligible.clear();
-        for (int i = 0; i < choices.size(); i++)
+        completionIndex.narrow(prefix, allowSimilar);
+        for (int i : completionIndex.getDirectMatches())
         {
-            String sugg = choices.get(i).choice;
-            if (choices.get(i).shown.compareTo(shown) > 0)
-            {
-                // Cannot put in eligible because it is rare and we are only showing common
-            }
-            else if (sugg.toLowerCase().startsWith(prefix.toLowerCase()))
+            // Cannot put in eligible if it is rare and we are only showing common:
+            if (choices.get(i).shown.compareTo(shown) <= 0)
             {
                 eligible.put(i, new EligibleDetail(0, 0, prefix.length()));
             }
-            else if (allowSimilar)
+        }
+        for (int i : completionIndex.getSimilarCandidates())
+        {
+            if (choices.get(i).shown.compareTo(shown) > 0)
+                continue;
+            
+            // Look if this text starts a word in the identifier, picking the closest (or earliest if equal):
+            EligibleDetail best = null;
+            for (int j : completionIndex.getWordStarts(i))
             {
-                // Look if this text starts a word in the identifier:
-                List<Integer> wordStarts = splitIdentLower(sugg);
-                Optional<EligibleDetail> me = wordStarts.stream().map(j -> new EligibleDetail(j, distanceTo(prefix, sugg, j), prefix.length()))
-                    .filter(EligibleDetail::close)
-                    .sorted() // Will put smallest distance first
-                    .findFirst();
-                if (me.isPresent())
+                EligibleDetail detail = new EligibleDetail(j, completionIndex.distanceTo(i, j), prefix.length());
+                if (detail.close() && (best == null || detail.compareTo(best) < 0))
                 {
-                    eligible.put(i + doubleSuggestions.size() / 2, me.get());
+                    best = detail;
                 }
             }
+            if (best != null)
+            {
+                eligible.put(i + doubleSuggestions.size() / 2, best);
+            }
         }
 
         if (eligible.isEmpty() && shown == SuggestionShown.COMMON && canChangeToRare)
@@ -875,56 +885,6 @@ public class SuggestionList
         }
     }
     
-    private static int distanceTo(String prefix, String candidate, int offset)
-    {
-        // We check, given a prefix (e.g. "abc"), whether the substring of the same length (e.g. 3)
-        // at the given point in the candidate is a closen enough match by edit distance
-        // An exact match is edit distance 0
-        prefix = prefix.toLowerCase();
-        String partialLower = candidate.substring(offset, Math.min(candidate.length(), offset + prefix.length())).toLowerCase();
-        
-        // We also check for the strings one longer and one shorter, as they might have better edit distance:
-        String partialLowerShort = candidate.substring(offset, Math.min(candidate.length(), offset + Math.max(1, prefix.length() - 1))).toLowerCase();
-        String partialLowerLong = candidate.substring(offset, Math.min(candidate.length(), offset + 1 + prefix.length())).toLowerCase();
-        
-        return Math.min(
-                Utility.editDistance(partialLower, prefix),
-                Math.min(Utility.editDistance(partialLowerShort, prefix), Utility.editDistance(partialLowerLong, prefix))
-               );
-    }
-    
-    private static boolean hasCase(char c)
-    {
-        // It has case if one of these methods returns differently to the other:
-        return Character.isUpperCase(c) != Character.isLowerCase(c);
-    }
-
-    private static List<Integer> splitIdentLower(String text)
-    {
-        int startCurWord = 0;
-        List<Integer> r = new ArrayList<>();
-        // We split on a change of case, or an underscore, or a dot (e.g. in Greenfoot.isKeyDown)
-        for (int i = 1 /* start at 2nd char */; i < text.length(); i++)
-        {
-            if ((hasCase(text.charAt(i)) && hasCase(text.charAt(i - 1))) && 
-               (Character.isUpperCase(text.charAt(i)) == Character.isLowerCase(text.charAt(i - 1))
-             || Character.isLowerCase(text.charAt(i)) == Character.isUpperCase(text.charAt(i - 1)))
-               && (startCurWord == 0 || i - startCurWord > 1))
-            {
-                // Case change:
-                r.add(startCurWord);
-                startCurWord = i;
-            }
-            else if ((text.charAt(i) == '_' || text.charAt(i) == '.') && startCurWord < i - 1)
-            {
-                r.add(startCurWord);
-                startCurWord = i + 1; 
-            }
-        }
-        r.add(startCurWord);
-        return r;
-    }
-
     /**
      * Updates the available options in the dropdown, restricting it to those
      * that are currently marked as eligible.  Thus this function only has a useful effect
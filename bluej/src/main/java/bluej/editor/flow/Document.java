@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2020,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2020,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -63,6 +63,13 @@ public interface Document
      */
     String getFullContent();
 
+    /**
+     * Get a copy of the full content of the document which will not change if the
+     * document is edited.  This is quicker to take than {@link #getFullContent()}, and
+     * can be passed to another thread to turn into a String.
+     */
+    CharSequence getContentSnapshot();
+
     /**
      * Gets the length of the document in characters.
      */
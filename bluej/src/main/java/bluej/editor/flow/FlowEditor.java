@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2020,2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2020,2021,2022,2023,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -1373,6 +1373,15 @@ public class FlowEditor extends ScopeColorsBorderPane implements TextEditor, Flo
         doReload();
     }
 
+    @Override
+    public void fileChangedOnDisk()
+    {
+        if (PrefMgr.getFlag(PrefMgr.CHECK_DISKFILECHANGES) && !saveState.isChanged())
+        {
+            checkForChangeOnDisk();
+        }
+    }
+
     private void read(Reader reader) throws IOException
     {
         document.replaceText(0, document.getLength(), CharStreams.toString(reader).replace("\r", ""));
@@ -1621,7 +1630,7 @@ public class FlowEditor extends ScopeColorsBorderPane implements TextEditor, Flo
     {
         if (watcher != null)
         {
-            watcher.recordJavaEdit(document.getFullContent(), includeOneLineEdits);
+            watcher.recordJavaEdit(document.getContentSnapshot(), includeOneLineEdits);
         }
     }
 
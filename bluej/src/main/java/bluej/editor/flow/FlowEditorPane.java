@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2020,2021,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2020,2021,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -97,7 +97,7 @@ public class FlowEditorPane extends BaseEditorPane implements JavaSyntaxView.Dis
     // Default is to apply no styles:
     private LineStyler lineStyler = (i, s) -> Collections.singletonList(new StyledSegment(Collections.emptyList(), s.toString()));
     
-    private ErrorQuery errorQuery = () -> Collections.emptyList();
+    private ErrorQuery errorQuery = (startPos, endPos) -> Collections.emptyList();
 
     private boolean editable = true;
     
@@ -259,9 +259,14 @@ public class FlowEditorPane extends BaseEditorPane implements JavaSyntaxView.Dis
     {
         super.updateRender(ensureCaretVisible);
 
-        if (errorQuery != null)
+        // errorQuery may be null if we are called during the superclass constructor:
+        int[] visibleLines = errorQuery == null ? null : lineDisplay.getLineRangeVisible();
+        if (visibleLines != null && visibleLines[1] >= visibleLines[0] && visibleLines[0] < document.getLineCount())
         {
-            for (IndexRange indexRange : errorQuery.getErrorUnderlines())
+            int lastVisibleLine = Math.min(visibleLines[1], document.getLineCount() - 1);
+            int visibleStart = document.getLineStart(visibleLines[0]);
+            int visibleEnd = document.getLineEnd(lastVisibleLine);
+            for (IndexRange indexRange : errorQuery.getErrorUnderlines(visibleStart, visibleEnd))
             {
                 addErrorUnderline(indexRange.getStart(), indexRange.getEnd());
             }
@@ -710,7 +715,10 @@ public class FlowEditorPane extends BaseEditorPane implements JavaSyntaxView.Dis
     
     public static interface ErrorQuery
     {
-        public List<IndexRange> getErrorUnderlines();
+        /**
+         * Gets the ranges of errors which start between the given document positions (inclusive).
+         */
+        public List<IndexRange> getErrorUnderlines(int startPos, int endPos);
     }
 
     @OnThread(Tag.FXPlatform)
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2020,2021,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2020,2021,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -70,6 +70,8 @@ import static bluej.utility.JavaUtils.blankCodeCommentsAndStringLiterals;
 public class FlowErrorManager implements ErrorQuery
 {
     private final ObservableList<ErrorDetails> errorInfos = FXCollections.observableArrayList();
+    // Index over errorInfos for position queries; null if it needs rebuilding after a change to errorInfos:
+    private IntervalIndex<ErrorDetails> errorIndex;
     private final FlowEditor editor;
 
     /**
@@ -80,6 +82,21 @@ public class FlowErrorManager implements ErrorQuery
     public FlowErrorManager(FlowEditor editor)
     {
         this.editor = editor;
+        errorInfos.addListener((ListChangeListener<? super ErrorDetails>) c -> errorIndex = null);
+    }
+
+    /**
+     * Gets the index over the current errors, building it if the errors have changed since
+     * it was last built.  Lines are rendered far more often than errors change, so this is
+     * much cheaper than scanning the error list for each query.
+     */
+    private IntervalIndex<ErrorDetails> getErrorIndex()
+    {
+        if (errorIndex == null)
+        {
+            errorIndex = new IntervalIndex<>(errorInfos, e -> e.startPos, e -> e.endPos);
+        }
+        return errorIndex;
     }
 
     /**
@@ -135,30 +152,9 @@ public class FlowErrorManager implements ErrorQuery
     // Returns null if there is no next error.
     public FlowErrorManager.ErrorDetails getNextErrorPos(int from)
     {
-        int lowestDist = Integer.MIN_VALUE; // Negative means before the given position
-        FlowErrorManager.ErrorDetails next = null;
-
-        for (FlowErrorManager.ErrorDetails err : errorInfos)
-        {
-            // If error is before the given position, it will be a negative distance
-            // If error is ahead, it will be a positive distance
-            // If we are within the error, the position will also show up negative,
-            // which means we will treat it as low priority, and advance to next error instead
-            final int dist = err.startPos - from;
-
-            if (next == null
-                    // If the current best is before the position, ours is better if either
-                    // it's after the position, or it's even further before
-                    || (lowestDist <= 0 && (dist > 0 || dist <= lowestDist))
-                    // If the current best is after the position, ours is better only if
-                    // we are earlier
-                    || (lowestDist > 0 && dist > 0 && dist <= lowestDist))
-            {
-                next = err;
-                lowestDist = dist;
-            }
-        }
-        return next;
+        // If we are within an error, we advance to the next error instead.  If there are
+        // no errors after the given position, we wrap around to the first error:
+        return getErrorIndex().getNextStartingAfter(from);
     }
 
     /**
@@ -168,10 +164,7 @@ public class FlowErrorManager implements ErrorQuery
      */
     public FlowErrorManager.ErrorDetails getErrorAtPosition(int pos)
     {
-        return errorInfos.stream()
-                .filter(e -> e.containsPosition(pos))
-                .reduce((first, second) -> second)
-                .orElse(null);
+        return getErrorIndex().getLastContaining(pos);
     }
 
     /**
@@ -180,20 +173,28 @@ public class FlowErrorManager implements ErrorQuery
     @OnThread(Tag.FXPlatform)
     public FlowErrorManager.ErrorDetails getErrorOnLine(int lineIndex)
     {
+        if (errorInfos.isEmpty())
+            return null;
+        
         final int lineStart = editor.getOffsetFromLineColumn(new SourceLocation(lineIndex + 1, 1));
         if (lineIndex + 1 >= editor.numberOfLines())
         {
-            return errorInfos.stream().filter(e -> e.endPos >= lineStart).findFirst().orElse(null);
+            return getErrorIndex().getFirstOverlapping(lineStart, Integer.MAX_VALUE);
         } else
         {
             int lineEnd = editor.getOffsetFromLineColumn(new SourceLocation(lineIndex + 2, 1));
-            return errorInfos.stream().filter(e -> e.startPos <= lineEnd && e.endPos >= lineStart).findFirst().orElse(null);
+            return getErrorIndex().getFirstOverlapping(lineStart, lineEnd);
         }
     }
 
-    public List<IndexRange> getErrorUnderlines()
+    @Override
+    public List<IndexRange> getErrorUnderlines(int startPos, int endPos)
     {
-        return Utility.mapList(errorInfos, e -> new IndexRange(e.startPos, e.endPos));
+        // Underlines are shown on the line where the error starts, so only errors starting in the range matter:
+        return getErrorIndex().getOverlapping(startPos, endPos).stream()
+            .filter(e -> e.startPos >= startPos)
+            .map(e -> new IndexRange(e.startPos, e.endPos))
+            .collect(Collectors.toList());
     }
 
     public boolean hasErrorHighlights()
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2020,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2020,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -27,6 +27,7 @@ import threadchecker.Tag;
 
 import java.io.Reader;
 import java.lang.ref.WeakReference;
+import java.nio.CharBuffer;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -176,6 +177,15 @@ public class HoleDocument implements Document
         return new String(content, 0, holeStart) + new String(content, holeEnd, content.length - holeEnd);
     }
 
+    @Override
+    public CharSequence getContentSnapshot()
+    {
+        char[] copy = new char[getLength()];
+        System.arraycopy(content, 0, copy, 0, holeStart);
+        System.arraycopy(content, holeEnd, copy, holeStart, content.length - holeEnd);
+        return CharBuffer.wrap(copy);
+    }
+
     @Override
     public int getLength()
     {
@@ -0,0 +1,199 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.editor.flow;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable index over a list of items which each occupy an interval of
+ * document positions (start and end both inclusive).  The items are sorted by
+ * start position and held as an implicit balanced binary tree, where each node
+ * records the maximum end position in its subtree.  This allows overlap queries
+ * in O(log n + k) time, where k is the number of matching items.
+ *
+ * Where several items match a query, the "first" and "last" refer to the order
+ * of the items in the original list given to the constructor.
+ */
+@OnThread(Tag.Any)
+public class IntervalIndex<T>
+{
+    // All arrays are indexed by sorted position:
+    private final List<T> items;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] originalIndexes;
+    // For the implicit subtree rooted at each index, the maximum end position within it:
+    private final int[] maxEnds;
+
+    /**
+     * Build an index from the given list of items.
+     *
+     * @param source The items to index.  The list is copied, so later changes to it are not reflected.
+     * @param getStart Gets the start position of an item (inclusive)
+     * @param getEnd Gets the end position of an item (inclusive)
+     */
+    public IntervalIndex(List<? extends T> source, ToIntFunction<? super T> getStart, ToIntFunction<? super T> getEnd)
+    {
+        int size = source.size();
+        List<Integer> sortedIndexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            sortedIndexes.add(i);
+        }
+        // Stable sort, so equal starts stay in original order:
+        sortedIndexes.sort(Comparator.comparingInt(i -> getStart.applyAsInt(source.get(i))));
+
+        items = new ArrayList<>(size);
+        starts = new int[size];
+        ends = new int[size];
+        originalIndexes = new int[size];
+        maxEnds = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            T item = source.get(sortedIndexes.get(i));
+            items.add(item);
+            starts[i] = getStart.applyAsInt(item);
+            ends[i] = getEnd.applyAsInt(item);
+            originalIndexes[i] = sortedIndexes.get(i);
+        }
+        calculateMaxEnds(0, size);
+    }
+
+    private int calculateMaxEnds(int from, int to)
+    {
+        if (from >= to)
+            return Integer.MIN_VALUE;
+        int mid = (from + to) >>> 1;
+        maxEnds[mid] = Math.max(ends[mid], Math.max(calculateMaxEnds(from, mid), calculateMaxEnds(mid + 1, to)));
+        return maxEnds[mid];
+    }
+
+    /**
+     * Gets all the items which overlap the range from low to high (both inclusive),
+     * in order of their start position.
+     */
+    public List<T> getOverlapping(int low, int high)
+    {
+        List<Integer> found = new ArrayList<>();
+        collectOverlapping(0, items.size(), low, high, found);
+        List<T> r = new ArrayList<>(found.size());
+        for (int index : found)
+        {
+            r.add(items.get(index));
+        }
+        return r;
+    }
+
+    /**
+     * Gets the item, earliest in the original list, which overlaps the range from
+     * low to high (both inclusive).  Returns null if there is no such item.
+     */
+    public T getFirstOverlapping(int low, int high)
+    {
+        List<Integer> found = new ArrayList<>();
+        collectOverlapping(0, items.size(), low, high, found);
+        int best = -1;
+        for (int index : found)
+        {
+            if (best == -1 || originalIndexes[index] < originalIndexes[best])
+                best = index;
+        }
+        return best == -1 ? null : items.get(best);
+    }
+
+    /**
+     * Gets the item, latest in the original list, which contains the given position.
+     * Returns null if there is no such item.
+     */
+    public T getLastContaining(int pos)
+    {
+        List<Integer> found = new ArrayList<>();
+        collectOverlapping(0, items.size(), pos, pos, found);
+        int best = -1;
+        for (int index : found)
+        {
+            if (best == -1 || originalIndexes[index] > originalIndexes[best])
+                best = index;
+        }
+        return best == -1 ? null : items.get(best);
+    }
+
+    /**
+     * Gets the item with the lowest start position which is strictly after the given
+     * position.  If there is no such item, wraps around to the item with the lowest start
+     * position overall.  Where several items share that start position, the latest in the
+     * original list is returned.  Returns null only if the index is empty.
+     */
+    public T getNextStartingAfter(int pos)
+    {
+        if (items.isEmpty())
+            return null;
+
+        // Binary search for first item with start > pos:
+        int low = 0;
+        int high = items.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= pos)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        int first = low < items.size() ? low : 0;
+        // Skip to the last item with the same start:
+        int last = first;
+        while (last + 1 < items.size() && starts[last + 1] == starts[first])
+        {
+            last += 1;
+        }
+        return items.get(last);
+    }
+
+    public boolean isEmpty()
+    {
+        return items.isEmpty();
+    }
+
+    private void collectOverlapping(int from, int to, int low, int high, List<Integer> found)
+    {
+        if (from >= to)
+            return;
+        int mid = (from + to) >>> 1;
+        // Nothing in this subtree reaches far enough:
+        if (maxEnds[mid] < low)
+            return;
+        collectOverlapping(from, mid, low, high, found);
+        // Everything from here onwards starts too late:
+        if (starts[mid] > high)
+            return;
+        if (ends[mid] >= low)
+            found.add(mid);
+        collectOverlapping(mid + 1, to, low, high, found);
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2011,2014,2015,2016,2017,2018,2019,2020,2021,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2011,2014,2015,2016,2017,2018,2019,2020,2021,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -30,11 +30,13 @@ import bluej.editor.flow.MultilineStringTracker.TextBlockRelation;
 import bluej.parser.Token;
 import bluej.parser.Token.TokenType;
 import bluej.parser.entity.EntityResolver;
+import bluej.parser.entity.MemberTables;
 import bluej.parser.nodes.NodeStructureListener;
 import bluej.parser.nodes.NodeTree;
 import bluej.parser.nodes.NodeTree.NodeAndPosition;
 import bluej.parser.nodes.ParsedCUNode;
 import bluej.parser.nodes.ParsedNode;
+import bluej.parser.nodes.ParsedTypeNode;
 import bluej.parser.nodes.ReparseableDocument;
 import bluej.prefmgr.PrefMgr;
 import bluej.utility.Debug;
@@ -90,6 +92,17 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
     private static final int RIGHT_SCOPE_MARGIN = 4;
     private static final int CURVED_CORNER_SIZE = 4;
     private static final int PARAGRAPH_MARGIN = 0; //24;
+    // Scope backgrounds are only calculated for the rendered lines plus this many lines either side;
+    // the rest are calculated by renderedLines() as they scroll into view.
+    private static final int SCOPE_CALCULATION_MARGIN = 50;
+    private static final double SCOPE_CORNER_RADIUS = 5.0;
+    private static final CornerRadii RADII_STARTS_AND_ENDS = new CornerRadii(SCOPE_CORNER_RADIUS, false);
+    private static final CornerRadii RADII_STARTS = new CornerRadii(SCOPE_CORNER_RADIUS, SCOPE_CORNER_RADIUS, 0.0, 0.0, false);
+    private static final CornerRadii RADII_ENDS = new CornerRadii(0.0, 0.0, SCOPE_CORNER_RADIUS, SCOPE_CORNER_RADIUS, false);
+    private static final Insets INSETS_STARTS_AND_ENDS = new Insets(1);
+    private static final Insets INSETS_STARTS = new Insets(1, 1, 0, 1);
+    private static final Insets INSETS_ENDS = new Insets(0, 1, 1, 1);
+    private static final Insets INSETS_MIDDLE = new Insets(0, 1, 0, 1);
     
     // See comments in getImageFor for more info.
     // 1 means draw edge, 2 means draw filling
@@ -186,6 +199,12 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
     
     private final LiveScopeBackgrounds scopeBackgrounds; 
 
+    /**
+     * Interned background fills, so that every scope box with the same colour and shape
+     * shares the same BackgroundFill.  Cleared when the colours are reset.
+     */
+    private final Map<ScopeFillKey, BackgroundFill> scopeFills = new HashMap<>();
+
     /**
       * Are we in the middle of an update which comes from the document stream of changes?
       * If so, we must not ask for character bounds because the offset calculations
@@ -246,6 +265,25 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
             scopeBackgrounds.remove(line);
             sourceInfo.remove(line);
         }
+
+        /**
+         * Checks whether the given line is already displaying backgrounds
+         * for exactly the given nested scope information.
+         */
+        public boolean isShowing(Integer line, List<SingleNestedScope> info)
+        {
+            return scopeBackgrounds.containsKey(line) && info.equals(sourceInfo.get(line));
+        }
+
+        /**
+         * Discards all scopes for lines outside the given range (inclusive).  They will be
+         * recalculated if they are rendered again.
+         */
+        public void retainLines(int firstLineIncl, int lastLineIncl)
+        {
+            scopeBackgrounds.keySet().removeIf(l -> l < firstLineIncl || l > lastLineIncl);
+            sourceInfo.keySet().removeIf(l -> l < firstLineIncl || l > lastLineIncl);
+        }
         
         @Override
         @OnThread(value = Tag.FXPlatform, ignoreParent = true)
@@ -389,6 +427,8 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
         if (rootNode == null)
         {
             rootNode = new ParsedCUNode(parentResolver);
+            // The types in the new tree may replace those which names previously resolved to:
+            MemberTables.invalidateAll();
             reparseRecordTree = new NodeTree<ReparseRecord>();
             //if (parentResolver != null || force) {
             //rootNode.setParentResolver(parentResolver);
@@ -559,6 +599,16 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
         // display is null during testing or when used from Stride -- just skip updating the scopes in that case:
         if (display == null)
             return;
+
+        // Lines far from the viewport are left alone; they get calculated when they are rendered.
+        // When printing, all lines are needed:
+        if (!isPrinting())
+        {
+            firstLineIncl = Math.max(firstLineIncl, latestRenderStartIncl - SCOPE_CALCULATION_MARGIN);
+            lastLineIncl = Math.min(lastLineIncl, latestRenderEndIncl + SCOPE_CALCULATION_MARGIN);
+            if (firstLineIncl > lastLineIncl)
+                return;
+        }
         
         recalcScopeMarkers((int) display.getTextDisplayWidth(),
                 //(widthProperty == null || widthProperty.get() == 0) ? 200 :
@@ -1950,6 +2000,7 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
      */
     void resetColors()
     {
+        scopeFills.clear();
         BK = scopeColors.scopeBackgroundColorProperty().get();
         C1 = getReducedColor(scopeColors.scopeClassOuterColorProperty());
         C2 = getReducedColor(scopeColors.scopeClassColorProperty());
@@ -2017,6 +2068,59 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
             this.fillColor = fillColor;
             this.edgeColor = edgeColor;
         }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SingleNestedScope that = (SingleNestedScope) o;
+            // Node is compared by identity, as the scope derives from that exact node:
+            return lhsFrom == that.lhsFrom && lhs == that.lhs && rhs == that.rhs
+                && starts == that.starts && ends == that.ends
+                && fillColor.equals(that.fillColor) && edgeColor.equals(that.edgeColor);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(System.identityHashCode(lhsFrom), lhs, rhs, starts, ends, fillColor, edgeColor);
+        }
+    }
+
+    /**
+     * The key for an interned scope BackgroundFill: a colour, plus the shape of the scope box
+     * (whether it starts and/or ends on the line) and whether it is the edge or the body fill.
+     */
+    private static class ScopeFillKey
+    {
+        private final Color color;
+        private final boolean starts;
+        private final boolean ends;
+        private final boolean edge;
+
+        public ScopeFillKey(Color color, boolean starts, boolean ends, boolean edge)
+        {
+            this.color = color;
+            this.starts = starts;
+            this.ends = ends;
+            this.edge = edge;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ScopeFillKey that = (ScopeFillKey) o;
+            return starts == that.starts && ends == that.ends && edge == that.edge && color.equals(that.color);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(color, starts, ends, edge);
+        }
     }
 
     /**
@@ -2067,36 +2171,16 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
     private void applyPendingScopeBackgrounds()
     {
         pendingScopeBackgrounds.forEach((line, info) -> {
+            // If nothing has changed on the line, keep the existing background items:
+            if (scopeBackgrounds.isShowing(line, info))
+                return;
             scopeBackgrounds.removeAllScopesForLine(line);
             scopeBackgrounds.storeSource(line, info);
             for (SingleNestedScope nestedScope : info)
             {
-                // Draw outer:
-                CornerRadii radii = null;
-                Insets bodyInsets = null;
-                double singleRadius = 5.0;
-                if (nestedScope.starts && nestedScope.ends)
-                {
-                    radii = new CornerRadii(singleRadius, false);
-                    bodyInsets = new Insets(1);
-                }
-                else if (nestedScope.starts)
-                {
-                    radii = new CornerRadii(singleRadius, singleRadius, 0.0, 0.0, false);
-                    bodyInsets = new Insets(1, 1, 0, 1);
-                }
-                else if (nestedScope.ends)
-                {
-                    radii = new CornerRadii(0.0, 0.0, singleRadius, singleRadius, false);
-                    bodyInsets = new Insets(0, 1, 1, 1);
-                }
-                else
-                {
-                    bodyInsets = new Insets(0, 1, 0, 1);
-                }
                 BackgroundItem rectangle = new BackgroundItem(nestedScope.lhs, nestedScope.rhs - nestedScope.lhs,
-                    new BackgroundFill(nestedScope.edgeColor, radii, null),
-                    new BackgroundFill(nestedScope.fillColor, radii, bodyInsets)
+                    getScopeFill(nestedScope.edgeColor, nestedScope.starts, nestedScope.ends, true),
+                    getScopeFill(nestedScope.fillColor, nestedScope.starts, nestedScope.ends, false)
                 );
                 scopeBackgrounds.addScopeBox(line, rectangle);
             }
@@ -2105,10 +2189,53 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
 
         if (display != null)
         {
+            if (!isPrinting())
+            {
+                // Don't hang on to backgrounds for lines which are a long way off-screen:
+                scopeBackgrounds.retainLines(latestRenderStartIncl - 2 * SCOPE_CALCULATION_MARGIN,
+                    latestRenderEndIncl + 2 * SCOPE_CALCULATION_MARGIN);
+            }
             display.applyScopeBackgrounds(scopeBackgrounds.scopeBackgrounds);
         }
     }
 
+    /**
+     * Gets the (shared) background fill for a scope box with the given colour and shape.
+     * 
+     * @param color The colour of the fill
+     * @param starts Whether the scope starts on this line (top corners are rounded)
+     * @param ends Whether the scope ends on this line (bottom corners are rounded)
+     * @param edge True for the outer edge fill, false for the inset body fill
+     */
+    private BackgroundFill getScopeFill(Color color, boolean starts, boolean ends, boolean edge)
+    {
+        return scopeFills.computeIfAbsent(new ScopeFillKey(color, starts, ends, edge), k -> {
+            CornerRadii radii;
+            Insets bodyInsets;
+            if (starts && ends)
+            {
+                radii = RADII_STARTS_AND_ENDS;
+                bodyInsets = INSETS_STARTS_AND_ENDS;
+            }
+            else if (starts)
+            {
+                radii = RADII_STARTS;
+                bodyInsets = INSETS_STARTS;
+            }
+            else if (ends)
+            {
+                radii = RADII_ENDS;
+                bodyInsets = INSETS_ENDS;
+            }
+            else
+            {
+                radii = null;
+                bodyInsets = INSETS_MIDDLE;
+            }
+            return new BackgroundFill(color, radii, edge ? null : bodyInsets);
+        });
+    }
+
     /**
      * Run an item from the re-parse queue, if there are any. Return true if
      * a queued re-parse was processed or false if the queue was empty.
@@ -2155,6 +2282,7 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
                     //Debug.message("Reparsing: " + ppos + " " + pos);
                     SyntaxEvent mse = new SyntaxEvent(-1, -1, false, false);
                     pn.reparse(this, ppos, pos, maxParse, mse);
+                    rootNode.invalidateMemberTables(pos);
                     // Dump tree (for debugging):
                     //Debug.message("Dumping tree:");
                     //dumpTree(parsedNode.getChildren(0), "");
@@ -2340,6 +2468,10 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
         
         int newAfterStartIncl = latestRenderEndIncl + 1;
         int newAfterEndIncl = toLineIndexIncl;
+
+        // Must update these first, as recalculateScopes only calculates lines near the rendered range:
+        latestRenderStartIncl = fromLineIndexIncl;
+        latestRenderEndIncl = toLineIndexIncl;
         
         if (newBeforeStartIncl <= newBeforeEndIncl || newAfterStartIncl <= newAfterEndIncl)
         {
@@ -2361,8 +2493,6 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
                 display.requestLayout();
             }
         }
-        latestRenderStartIncl = fromLineIndexIncl;
-        latestRenderEndIncl = toLineIndexIncl;
     }
 
     private void scheduleReparseRunner()
@@ -2418,6 +2548,7 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
         SyntaxEvent mse = new SyntaxEvent(offset, length, true, false);
         if (rootNode != null) {
             rootNode.textInserted(this, 0, offset, length, mse);
+            rootNode.invalidateMemberTables(offset);
         }
         fireChangedUpdate(mse);
         recordEvent(mse);
@@ -2497,6 +2628,7 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
         SyntaxEvent mse = new SyntaxEvent(offset, length, false, true);
         if (rootNode != null) {
             rootNode.textRemoved(this, 0, offset, length, mse);
+            rootNode.invalidateMemberTables(offset);
         }
         fireChangedUpdate(mse);
         recordEvent(mse);
@@ -2727,9 +2859,11 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
     
     
         @Override
+        @OnThread(value = Tag.FXPlatform, ignoreParent = true)
         public void nodeAdded(NodeAndPosition<ParsedNode> node)
         {
             addedNodes.add(node);
+            invalidateMemberTables(node.getNode());
         }
     
         @OnThread(value = Tag.FXPlatform, ignoreParent = true)
@@ -2737,6 +2871,26 @@ public class JavaSyntaxView implements ReparseableDocument, LineDisplayListener
         {
             removedNodes.add(node);
             changedNodes.remove(node.getNode());
+            invalidateMemberTables(node.getNode());
+        }
+
+        /**
+         * A node has been added or removed; invalidate the member tables of the types
+         * containing it. If the node is itself a type, names may now resolve differently,
+         * so invalidate the tables of all types.
+         */
+        @OnThread(Tag.FXPlatform)
+        private void invalidateMemberTables(ParsedNode node)
+        {
+            if (node instanceof ParsedTypeNode) {
+                MemberTables.invalidateAll();
+                return;
+            }
+            for (ParsedNode parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+                if (parent instanceof ParsedTypeNode) {
+                    ((ParsedTypeNode) parent).invalidateMemberTables();
+                }
+            }
         }
     
         @OnThread(value = Tag.FXPlatform, ignoreParent = true)
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2020,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2020,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -66,6 +66,13 @@ public class SlowDocument implements Document
         return content;
     }
 
+    @Override
+    public CharSequence getContentSnapshot()
+    {
+        // Strings are immutable, so no need to copy:
+        return content;
+    }
+
     @Override
     public int getLength()
     {
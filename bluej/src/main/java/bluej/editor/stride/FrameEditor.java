@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2014,2015,2016,2017,2018,2019,2020,2021,2022 Michael Kölling and John Rosenberg
+ Copyright (C) 2014,2015,2016,2017,2018,2019,2020,2021,2022,2026 Michael Kölling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -498,6 +498,10 @@ public class FrameEditor implements Editor
             @OnThread(Tag.FXPlatform)
             public void reloadFile() { FrameEditor.this.reloadFile(); }
 
+            @Override
+            @OnThread(Tag.FXPlatform)
+            public void fileChangedOnDisk() { FrameEditor.this.fileChangedOnDisk(); }
+
             @Override
             @OnThread(Tag.FXPlatform)
             public void refresh() { FrameEditor.this.refresh(); }
@@ -821,6 +825,12 @@ public class FrameEditor implements Editor
         // TODO Auto-generated method stub
     }
 
+    @Override
+    public void fileChangedOnDisk()
+    {
+        // We don't keep track of disk modification time, so nothing to do.
+    }
+
     @Override
     public void refresh()
     {
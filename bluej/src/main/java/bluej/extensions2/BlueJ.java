@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2012,2013,2014,2016,2018,2019,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2012,2013,2014,2016,2018,2019,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -893,4 +893,20 @@ public final class BlueJ
     {
         PrefMgr.setScopeHighlightStrength(Math.min(Math.max(ScopeHighlightingPrefDisplay.MIN, strength), ScopeHighlightingPrefDisplay.MAX));
     }
+
+    /**
+     * Sets whether events are delivered to this extension's listeners synchronously.
+     * By default, events are queued and delivered (in order) shortly after they occur,
+     * so that a listener which takes a while does not hold up BlueJ; an extension
+     * whose listeners must run before BlueJ carries on can ask for synchronous
+     * delivery instead.  Either way, listeners are called on the JavaFX thread.
+     *
+     * @since Extension API 3.4 (BlueJ 5.2.1)
+     *
+     * @param synchronous true to deliver each event as soon as it occurs, false to queue events.
+     */
+    public void setSynchronousEventDelivery(boolean synchronous)
+    {
+        myWrapper.setSynchronousEvents(synchronous);
+    }
 }
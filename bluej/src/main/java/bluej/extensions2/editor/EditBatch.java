@@ -0,0 +1,179 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.extensions2.editor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A set of replacements to make to the text of a Java editor all at once, created by
+ * {@link JavaEditor#newEditBatch()}.  When applied, the replacements are made as a
+ * single edit: they are undone together, document listeners are notified once, and
+ * the source is re-parsed once.  This is much quicker than calling
+ * {@link JavaEditor#setText} for each replacement when there are many of them (for
+ * example, when reformatting or instrumenting code).
+ *
+ * All locations and offsets refer to the text as it is before the batch is applied,
+ * so there is no need to adjust them for the effect of earlier replacements in the
+ * batch.  Replaced ranges must not overlap, although several insertions may be made
+ * at the same location (they are inserted in the order they were added).  The text
+ * must not be changed between creating and applying the batch.
+ *
+ * Note that the edit covers the text from the first to the last replacement, so any
+ * positions tracked by the editor in between (such as breakpoints) may move.
+ *
+ * @since Extension API 3.4 (BlueJ 5.2.1)
+ */
+public final class EditBatch
+{
+    /**
+     * A single replacement, in terms of offsets in the original text.
+     */
+    static class Replacement
+    {
+        final int start;
+        final int end;
+        final String text;
+
+        Replacement(int start, int end, String text)
+        {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    private final JavaEditor editor;
+    private final List<Replacement> replacements = new ArrayList<>();
+    private boolean applied = false;
+
+    /**
+     * Constructor must not be public.
+     * An extension can get a batch by calling {@link JavaEditor#newEditBatch()}.
+     */
+    EditBatch(JavaEditor editor)
+    {
+        this.editor = editor;
+    }
+
+    /**
+     * Adds a replacement of the text between begin and end with the given text.
+     * If begin and end refer to the same location, the text is inserted.
+     *
+     * @param  begin    the beginning location of the text to replace.
+     * @param  end      the end location of the text to replace.
+     * @param  newText  the new text.
+     * @return          This batch, so that calls can be chained.
+     * @throws  IllegalArgumentException  if either location does not exist in the text.
+     * @throws  IllegalStateException  if the batch has already been applied.
+     */
+    public EditBatch replace(TextLocation begin, TextLocation end, String newText)
+    {
+        return replace(editor.getOffsetFromTextLocation(begin), editor.getOffsetFromTextLocation(end), newText);
+    }
+
+    /**
+     * Adds a replacement of the text between the given offsets with the given text.
+     * If the offsets are equal, the text is inserted.
+     *
+     * @param  startOffset  the offset of the start of the text to replace.
+     * @param  endOffset    the offset of the end of the text to replace.
+     * @param  newText      the new text.
+     * @return              This batch, so that calls can be chained.
+     * @throws  IllegalArgumentException  if the offsets are not in the text, or end before they start.
+     * @throws  IllegalStateException  if the batch has already been applied.
+     */
+    public EditBatch replace(int startOffset, int endOffset, String newText)
+    {
+        if (applied) {
+            throw new IllegalStateException("Edit batch has already been applied");
+        }
+        if (startOffset < 0 || endOffset < startOffset || endOffset > editor.getTextLength()) {
+            throw new IllegalArgumentException("Invalid range: " + startOffset + " to " + endOffset);
+        }
+        replacements.add(new Replacement(startOffset, endOffset, newText));
+        return this;
+    }
+
+    /**
+     * Makes all the replacements in the batch, as a single edit.  A batch can only be
+     * applied once.
+     *
+     * @throws  IllegalArgumentException  if any of the replaced ranges overlap.
+     * @throws  IllegalStateException  if the batch has already been applied.
+     */
+    public void apply()
+    {
+        if (applied) {
+            throw new IllegalStateException("Edit batch has already been applied");
+        }
+        applied = true;
+        if (replacements.isEmpty()) {
+            return;
+        }
+
+        List<Replacement> sorted = sortAndCheck(replacements);
+        int regionStart = sorted.get(0).start;
+        int regionEnd = sorted.get(sorted.size() - 1).end;
+        String original = editor.getText(regionStart, regionEnd);
+        editor.replaceText(regionStart, regionEnd, merge(original, regionStart, sorted));
+    }
+
+    /**
+     * Sort replacements into order of position (keeping insertions at the same
+     * position in the order they were added), and check that they don't overlap.
+     */
+    static List<Replacement> sortAndCheck(List<Replacement> replacements)
+    {
+        List<Replacement> sorted = new ArrayList<>(replacements);
+        // List.sort is stable:
+        sorted.sort(Comparator.comparingInt(r -> r.start));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).start < sorted.get(i - 1).end) {
+                throw new IllegalArgumentException("Replacements overlap at offset " + sorted.get(i).start);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Apply sorted, non-overlapping replacements to a region of the original text.
+     *
+     * @param original  The original text of the region
+     * @param regionStart  The offset in the whole text of the start of the region
+     * @param sorted  The replacements, in terms of offsets in the whole text
+     * @return The new text of the region
+     */
+    static String merge(String original, int regionStart, List<Replacement> sorted)
+    {
+        StringBuilder result = new StringBuilder(original.length());
+        int copied = 0;
+        for (Replacement r : sorted) {
+            result.append(original, copied, r.start - regionStart);
+            result.append(r.text);
+            copied = r.end - regionStart;
+        }
+        result.append(original, copied, original.length());
+        return result.toString();
+    }
+}
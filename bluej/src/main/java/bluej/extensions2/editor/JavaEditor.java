@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2013,2014,2015,2018,2019,2021,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2013,2014,2015,2018,2019,2021,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -262,6 +262,53 @@ public class JavaEditor
     }
 
 
+    /**
+     * Returns a snapshot of the whole of the text in this editor.  The snapshot does not
+     * change if the text is later edited, and can be read from any thread.  Getting a
+     * snapshot and then reading from it is much quicker than many separate calls to
+     * {@link #getText(TextLocation, TextLocation)} or {@link #getLineLength(int)}.
+     *
+     * @return  A {@link TextSnapshot} object holding a copy of the text.
+     * @since Extension API 3.4 (BlueJ 5.2.1)
+     */
+    public TextSnapshot getTextSnapshot()
+    {
+        return new TextSnapshot(getText(0, bjEditor.getTextLength()));
+    }
+
+
+    /**
+     * Creates a new, empty, batch of replacements to make in the text of this editor.
+     * Once all the replacements have been added, calling {@link EditBatch#apply()} makes
+     * them as a single edit, with one undo entry and one notification to document
+     * listeners.
+     *
+     * @return  A new {@link EditBatch} for this editor.
+     * @since Extension API 3.4 (BlueJ 5.2.1)
+     */
+    public EditBatch newEditBatch()
+    {
+        return new EditBatch(this);
+    }
+
+
+    /**
+     * Returns the text between two offsets.  Used by {@link EditBatch}.
+     */
+    String getText(int startOffset, int endOffset)
+    {
+        return bjEditor.getText(bjEditor.getLineColumnFromOffset(startOffset), bjEditor.getLineColumnFromOffset(endOffset));
+    }
+
+
+    /**
+     * Replaces the text between two offsets.  Used by {@link EditBatch}.
+     */
+    void replaceText(int startOffset, int endOffset, String newText)
+    {
+        bjEditor.setText(bjEditor.getLineColumnFromOffset(startOffset), bjEditor.getLineColumnFromOffset(endOffset), newText);
+    }
+
     /**
      * Translates a text location into an offset into the text held by this editor.
      *
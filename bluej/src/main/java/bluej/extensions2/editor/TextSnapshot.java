@@ -0,0 +1,189 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.extensions2.editor;
+
+import java.util.Arrays;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * An unchanging copy of the text in a Java editor, as returned by {@link JavaEditor#getTextSnapshot()}.
+ * Reading a snapshot is much quicker than making many calls to the editor, and as it
+ * is not affected by later edits, it may be read on any thread.
+ *
+ * Lines are separated by a single newline character ('\n'). Line and column numbers
+ * start from zero, as in {@link TextLocation}.
+ *
+ * @since Extension API 3.4 (BlueJ 5.2.1)
+ */
+@OnThread(Tag.Any)
+public final class TextSnapshot implements CharSequence
+{
+    private final String text;
+    // The offset of the start of each line:
+    private final int[] lineStarts;
+
+    /**
+     * Constructor must not be public.
+     * An extension can get a snapshot by calling {@link JavaEditor#getTextSnapshot()}.
+     */
+    TextSnapshot(String text)
+    {
+        this.text = text;
+        int[] starts = new int[16];
+        int count = 1;
+        for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1)) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = i + 1;
+        }
+        lineStarts = Arrays.copyOf(starts, count);
+    }
+
+    @Override
+    public int length()
+    {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return text.subSequence(start, end);
+    }
+
+    /**
+     * Returns the whole text.
+     */
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+
+    /**
+     * Returns the number of lines in the text.  This is always at least one.
+     */
+    public int getLineCount()
+    {
+        return lineStarts.length;
+    }
+
+    /**
+     * Returns the offset in the text of the start of the given line.
+     *
+     * @param  line  a line number, starting from zero.
+     * @throws  IndexOutOfBoundsException  if the line does not exist.
+     */
+    public int getLineStart(int line)
+    {
+        return lineStarts[line];
+    }
+
+    /**
+     * Returns the length of the given line, including its terminating newline (if any),
+     * as {@link JavaEditor#getLineLength(int)} does.
+     *
+     * @param  line  a line number, starting from zero.
+     * @return       The length of the line, <code>-1</code> if the line is invalid.
+     */
+    public int getLineLength(int line)
+    {
+        if (line < 0 || line >= lineStarts.length) {
+            return -1;
+        }
+        return getLineEnd(line) + (line == lineStarts.length - 1 ? 0 : 1) - lineStarts[line];
+    }
+
+    /**
+     * Returns the text of the given line, without its terminating newline.
+     *
+     * @param  line  a line number, starting from zero.
+     * @throws  IndexOutOfBoundsException  if the line does not exist.
+     */
+    public String getLine(int line)
+    {
+        return text.substring(lineStarts[line], getLineEnd(line));
+    }
+
+    /**
+     * Translates an offset in the text into a TextLocation.
+     *
+     * @param  offset  an offset in the text, from 0 to length() inclusive.
+     * @return         The corresponding location, <code>null</code> if the offset is invalid.
+     */
+    public TextLocation getTextLocationFromOffset(int offset)
+    {
+        if (offset < 0 || offset > text.length()) {
+            return null;
+        }
+        int line = Arrays.binarySearch(lineStarts, offset);
+        if (line < 0) {
+            // Not at a line start; get the line before the insertion point:
+            line = -line - 2;
+        }
+        return new TextLocation(line, offset - lineStarts[line]);
+    }
+
+    /**
+     * Translates a TextLocation into an offset in the text.
+     *
+     * @param  location  a location in the text.
+     * @return           The offset of the location.
+     * @throws  IllegalArgumentException  if the location does not exist in the text.
+     */
+    public int getOffsetFromTextLocation(TextLocation location)
+    {
+        int line = location.getLine();
+        if (line < 0 || line >= lineStarts.length || location.getColumn() < 0
+                || location.getColumn() > getLineEnd(line) - lineStarts[line]) {
+            throw new IllegalArgumentException("Location " + location + " is not in the text");
+        }
+        return lineStarts[line] + location.getColumn();
+    }
+
+    /**
+     * Returns the text which lies between the two locations.
+     *
+     * @throws  IllegalArgumentException  if either location does not exist in the text.
+     */
+    public String getText(TextLocation begin, TextLocation end)
+    {
+        return text.substring(getOffsetFromTextLocation(begin), getOffsetFromTextLocation(end));
+    }
+
+    /**
+     * Get the offset of the end of a line (that is, of its newline, or the end of the text).
+     */
+    private int getLineEnd(int line)
+    {
+        return line == lineStarts.length - 1 ? text.length() : lineStarts[line + 1] - 1;
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2012,2013,2014,2016,2018,2019,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2012,2013,2014,2016,2018,2019,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -23,9 +23,11 @@ package bluej.extmgr;
 
 import bluej.Config;
 import bluej.extensions2.*;
+import bluej.extensions2.event.ClassEvent;
 import bluej.extensions2.event.ExtensionEvent;
 import bluej.pkgmgr.Project;
 import bluej.utility.Debug;
+import bluej.utility.javafx.JavaFXUtil;
 import javafx.scene.control.MenuItem;
 import javafx.scene.layout.Pane;
 import threadchecker.OnThread;
@@ -36,6 +38,7 @@ import java.io.InputStream;
 import java.lang.ClassNotFoundException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -75,6 +78,24 @@ public class ExtensionWrapper
     private String  extensionStatusString;
     private Project project;
 
+    // The most events which may be waiting for delivery; beyond this, the extension is
+    // switched to synchronous delivery, so that it holds BlueJ up rather than losing events:
+    private static final int MAX_PENDING_EVENTS = 1000;
+    // A listener taking longer than this to handle an event is logged:
+    private static final long SLOW_EVENT_MILLIS = 200;
+
+    // Events waiting to be delivered to the extension, oldest first:
+    private final ArrayDeque<ExtensionEvent> pendingEvents = new ArrayDeque<>();
+    private boolean deliveryScheduled = false;
+    // Whether events are delivered as soon as they occur, because the extension asked for it
+    // or because it could not keep up with queued events:
+    private boolean synchronousEvents = false;
+
+    // Statistics about event delivery, for finding slow extensions:
+    private int eventsDelivered = 0;
+    private long totalDeliveryNanos = 0;
+    private long maxDeliveryNanos = 0;
+
     /**
      * Construct a new ExtensionWrapper for the given jar file.
      * 
@@ -262,6 +283,10 @@ public class ExtensionWrapper
      */
     void terminate()
     {
+        if (eventsDelivered > 0) {
+            Debug.log("Extension " + getExtensionClassName() + " " + getEventStatistics());
+        }
+        pendingEvents.clear();
         safeTerminate();
 
         // Needed to signal to the revalidate (below) that this instance is no longer here.            
@@ -405,10 +430,111 @@ public class ExtensionWrapper
      * otherwise an error in the extension will render BlueJ unusable.
      */
 
+    /**
+     * Queue an event for delivery to the extension's listeners.  Queued events are
+     * delivered in order, one per FX thread task, so that a slow listener doesn't
+     * hold up whatever raised the event, or the delivery of events to other extensions.
+     * If a class's state changes again before the previous change has been delivered,
+     * with no other event in between, only the latest change is delivered.
+     *
+     * <p>If the extension has asked for synchronous delivery, the event is delivered
+     * immediately instead.  The same happens, from then on, if the extension falls too
+     * far behind with queued events.
+     */
+    public void queueEvent(ExtensionEvent event)
+    {
+        if (!isValid()) {
+            return;
+        }
+        if (synchronousEvents) {
+            deliverEventNow(event);
+            return;
+        }
+
+        if (event instanceof ClassEvent classEvent && classEvent.getEventType() == ClassEvent.EventType.STATE_CHANGED
+                && pendingEvents.peekLast() instanceof ClassEvent pending
+                && pending.getEventType() == ClassEvent.EventType.STATE_CHANGED
+                && pending.getBClass() == classEvent.getBClass()) {
+            pendingEvents.removeLast();
+        }
+        if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+            Debug.message("Extension " + getExtensionClassName() + " is not keeping up with events;"
+                    + " delivering them synchronously from now on");
+            synchronousEvents = true;
+            deliverEventNow(event);
+            return;
+        }
+        pendingEvents.addLast(event);
+
+        if (!deliveryScheduled) {
+            deliveryScheduled = true;
+            JavaFXUtil.runAfterCurrent(this::deliverNextEvent);
+        }
+    }
+
+    /**
+     * Deliver an event to the extension's listeners immediately, after first delivering
+     * any events which are still queued (so that the extension sees events in order).
+     * This is for events which the extension must see before BlueJ carries on.
+     */
+    public void deliverEventNow(ExtensionEvent event)
+    {
+        while (!pendingEvents.isEmpty()) {
+            deliverEvent(pendingEvents.removeFirst());
+        }
+        deliverEvent(event);
+    }
+
+    /**
+     * Ask for events to be delivered as soon as they occur (true), or queued (false, the default).
+     */
+    public void setSynchronousEvents(boolean synchronous)
+    {
+        synchronousEvents = synchronous;
+    }
+
+    private void deliverNextEvent()
+    {
+        if (!pendingEvents.isEmpty()) {
+            deliverEvent(pendingEvents.removeFirst());
+        }
+        if (pendingEvents.isEmpty()) {
+            deliveryScheduled = false;
+        }
+        else {
+            JavaFXUtil.runAfterCurrent(this::deliverNextEvent);
+        }
+    }
+
+    private void deliverEvent(ExtensionEvent event)
+    {
+        long start = System.nanoTime();
+        safeEventOccurred(event);
+        long elapsed = System.nanoTime() - start;
+
+        eventsDelivered += 1;
+        totalDeliveryNanos += elapsed;
+        maxDeliveryNanos = Math.max(maxDeliveryNanos, elapsed);
+        if (elapsed > SLOW_EVENT_MILLIS * 1_000_000L) {
+            Debug.message("Extension " + getExtensionClassName() + " took " + (elapsed / 1_000_000L)
+                    + "ms to handle " + event.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Get a summary of how long the extension's listeners have taken to handle events.
+     */
+    public String getEventStatistics()
+    {
+        long averageMicros = eventsDelivered == 0 ? 0 : totalDeliveryNanos / eventsDelivered / 1000;
+        return "handled " + eventsDelivered + " events, average " + averageMicros + "us, maximum "
+                + (maxDeliveryNanos / 1000) + "us" + (synchronousEvents ? ", delivered synchronously" : "");
+    }
+
     /**
      * Informs any registered listeners that an event has occurred.
      */
-    public void safeEventOccurred(ExtensionEvent event)
+    private void safeEventOccurred(ExtensionEvent event)
     {
         if (!isValid()) {
             return;
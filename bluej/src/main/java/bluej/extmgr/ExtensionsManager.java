@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2012,2013,2016,2019,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2012,2013,2016,2019,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -263,7 +263,7 @@ public class ExtensionsManager
     public void packageClosing(Package pkg)
     {
         // Before removing the extension, signal that this package is closing
-        delegateEvent(new PackageEvent(PackageEvent.EventType.PACKAGE_CLOSING, pkg));
+        delegateEventNow(new PackageEvent(PackageEvent.EventType.PACKAGE_CLOSING, pkg));
 
         // Let's assume we are NOT going to delete the extension...
         boolean invalidateExtension = false;
@@ -376,14 +376,36 @@ public class ExtensionsManager
     }
 
     /**
-     * Delegates an event to all known extensions.
+     * Delegates an event to all known extensions. The event is queued for each
+     * extension, to be delivered shortly afterwards (see ExtensionWrapper.queueEvent).
      */
     public void delegateEvent(ExtensionEvent event)
     {
-        synchronized(extensions) {            
-            for (ExtensionWrapper wrapper : extensions) {
-                wrapper.safeEventOccurred(event);
-            }
+        for (ExtensionWrapper wrapper : getExtensionsCopy()) {
+            wrapper.queueEvent(event);
+        }
+    }
+
+    /**
+     * Delegates an event to all known extensions, returning once they have all handled
+     * it. This is for events which extensions must see before BlueJ carries on, for
+     * example because the objects the event refers to are about to become invalid.
+     */
+    public void delegateEventNow(ExtensionEvent event)
+    {
+        for (ExtensionWrapper wrapper : getExtensionsCopy()) {
+            wrapper.deliverEventNow(event);
+        }
+    }
+
+    /**
+     * Get a copy of the list of extensions, so that it can be iterated over without
+     * holding the lock while calling into extensions.
+     */
+    private List<ExtensionWrapper> getExtensionsCopy()
+    {
+        synchronized(extensions) {
+            return new ArrayList<>(extensions);
         }
     }
 
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -32,4 +32,13 @@ public interface LogHistoryListener
      * Some log/history information is available, during execution of a log command.
      */
     public void logInfoAvailable(HistoryInfo logInfo);
+    
+    /**
+     * A page of log/history information has been delivered, and there is more available.
+     * Executing the log command again will deliver the next page. If this is not called
+     * before the command completes, all available information has been delivered.
+     */
+    public default void moreLogInfoAvailable()
+    {
+    }
 }
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2012,2016,2018  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2010,2012,2016,2018,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -104,7 +104,8 @@ public interface Repository
     
     /**
      * Get the history of the repository - all commits, including file, date,
-     * revision, user, and comment.
+     * revision, user, and comment. The history may be delivered a page at a time,
+     * newest first; see LogHistoryListener.moreLogInfoAvailable().
      */
     public TeamworkCommand getLogHistory(LogHistoryListener listener);
     
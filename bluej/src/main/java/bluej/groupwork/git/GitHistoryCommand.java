@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2016  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2016,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -27,24 +27,49 @@ import bluej.groupwork.TeamworkCommandError;
 import bluej.groupwork.TeamworkCommandResult;
 import bluej.utility.Debug;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import threadchecker.OnThread;
+import threadchecker.Tag;
 
 /**
- * A Git history command.
+ * A Git history command. The history is delivered a page at a time, newest commit
+ * first: each execution of the command delivers the next page to the listener, and
+ * calls the listener's moreLogInfoAvailable() method if there are further pages.
+ * The repository is kept open between pages, until the last page has been delivered
+ * or the command is cancelled.
  *
  * @author Fabio Heday
  */
 public class GitHistoryCommand extends GitCommand
 {
+    private static final int PAGE_SIZE = 50;
+
+    //Jgit returns the date by seconds after epoch; this formats it in the local time zone.
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd hh:mm:ss")
+            .withZone(ZoneId.systemDefault());
 
     private final LogHistoryListener listener;
 
+    // Held while a page is being read, and while closing:
+    private final ReentrantLock walkLock = new ReentrantLock();
+    private Git repo;
+    private RevWalk walk;
+    private RevCommit nextCommit; // the first commit of the next page, if any
+    private boolean finished;
+
     public GitHistoryCommand(GitRepository repository, LogHistoryListener listener)
     {
         super(repository);
@@ -54,38 +79,107 @@ public class GitHistoryCommand extends GitCommand
     @Override
     public TeamworkCommandResult getResult()
     {
-        try (Git repo = Git.open(this.getRepository().getProjectPath())) {
-            Iterable<RevCommit> logs = repo.log().call();
-            logs.forEach((RevCommit rev) -> {
-                ArrayList<String> files = new ArrayList<>();
-                //every commit generates a revision with the commiter information
-                //e.g.: name, e-mail, date and time of commit
-                //to Access the commited files, we need to walk through the
-                //the subtree.
-                try (TreeWalk treeWalk = new TreeWalk(repo.getRepository())){
-                    treeWalk.addTree(rev.getTree());
-                    boolean hasNext = treeWalk.next();
-                    while (hasNext) {
-                        files.add(treeWalk.getPathString());
-                        hasNext = treeWalk.next();
-                    }
-                } catch (IOException ex) {
-                    Debug.reportError(ex.getMessage());
+        walkLock.lock();
+        try {
+            if (walk == null && !finished) {
+                repo = Git.open(this.getRepository().getProjectPath());
+                walk = new RevWalk(repo.getRepository());
+                walk.sort(RevSort.COMMIT_TIME_DESC);
+                ObjectId head = repo.getRepository().resolve("HEAD");
+                if (head != null) {
+                    walk.markStart(walk.parseCommit(head));
+                    nextCommit = walk.next();
                 }
+            }
 
-                //Jgit returns the date by seconds after epoch, but Java works in
-                //milliseconds. conversion is needed.
-                Date date = new Date(rev.getCommitTime() * 1000L);
-                String dateString = new SimpleDateFormat("yyyy/MM/dd hh:mm:ss").format(date);
-
-                HistoryInfo info = new HistoryInfo(files.toArray(new String[files.size()]), "", dateString, rev.getAuthorIdent().getName(), rev.getFullMessage());
+            for (int i = 0; i < PAGE_SIZE && nextCommit != null && !isCancelled(); i++) {
+                RevCommit rev = nextCommit;
+                //every commit generates a revision with the commiter information
+                //e.g.: name, e-mail, date and time of commit
+                String dateString = DATE_FORMAT.format(Instant.ofEpochSecond(rev.getCommitTime()));
+                HistoryInfo info = new HistoryInfo(getChangedFiles(rev), "", dateString, rev.getAuthorIdent().getName(), rev.getFullMessage());
                 listener.logInfoAvailable(info);
-            });
+                nextCommit = walk.next();
+            }
 
-        } catch (GitAPIException | IOException ex) {
+            if (nextCommit == null || isCancelled()) {
+                close();
+            }
+            else {
+                listener.moreLogInfoAvailable();
+            }
+        } catch (IOException ex) {
+            close();
             return new TeamworkCommandError(ex.getMessage(), ex.getLocalizedMessage());
         }
+        finally {
+            walkLock.unlock();
+        }
+        // If cancelled while the page was being read, the walk may not have been closed:
+        if (isCancelled()) {
+            cancel();
+        }
         return new TeamworkCommandResult();
     }
 
+    @Override
+    @OnThread(Tag.Any)
+    public void cancel()
+    {
+        super.cancel();
+        // If a page is being read, the reader will close the walk when it finishes:
+        if (walkLock.tryLock()) {
+            try {
+                close();
+            }
+            finally {
+                walkLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the files changed by a commit, i.e. those which differ from its first parent
+     * (or all files, for the initial commit). Only subtrees which differ are examined.
+     */
+    @OnThread(Tag.Worker)
+    private String[] getChangedFiles(RevCommit rev)
+    {
+        List<String> files = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            if (rev.getParentCount() > 0) {
+                treeWalk.addTree(walk.parseCommit(rev.getParent(0)).getTree());
+            }
+            else {
+                treeWalk.addTree(new EmptyTreeIterator());
+            }
+            treeWalk.addTree(rev.getTree());
+            while (treeWalk.next()) {
+                files.add(treeWalk.getPathString());
+            }
+        } catch (IOException ex) {
+            Debug.reportError(ex.getMessage());
+        }
+        return files.toArray(new String[files.size()]);
+    }
+
+    /**
+     * Release the repository. Must be called with walkLock held.
+     */
+    @OnThread(Tag.Any)
+    private void close()
+    {
+        finished = true;
+        nextCommit = null;
+        if (walk != null) {
+            walk.close();
+            walk = null;
+        }
+        if (repo != null) {
+            repo.close();
+            repo = null;
+        }
+    }
 }
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2015,2016,2017,2019,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2015,2016,2017,2019,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -62,6 +62,9 @@ public class GitRepository implements Repository
     private final String yourName;
     private final String yourEmail;
     private final String branch;
+    
+    // Information from the last status check, to speed up the next:
+    private final GitStatusCache statusCache = new GitStatusCache();
 
     /**
      * Create a Git repository when all fields are known. Usually when cloning a
@@ -233,4 +236,9 @@ public class GitRepository implements Repository
     public String getBranch(){
         return branch;
     }
+    
+    GitStatusCache getStatusCache()
+    {
+        return statusCache;
+    }
 }
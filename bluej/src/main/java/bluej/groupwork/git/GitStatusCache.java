@@ -0,0 +1,331 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.groupwork.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.FS;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+import static bluej.groupwork.git.GitUtilities.findForkPoint;
+import static bluej.groupwork.git.GitUtilities.getDiffs;
+
+/**
+ * Information kept between one status check of a Git repository and the next, so
+ * that each check needn't start from scratch:
+ *
+ * <ul>
+ * <li>The content ids (hashes) of working tree files which JGit had to read to compare
+ * with the index (because their size or modification time differ from the index, even
+ * if their content doesn't).  Each is re-used until the file's size or modification
+ * time changes.  Since the id depends on how the file is filtered on its way into the
+ * repository, the ids are also discarded if the relevant configuration (such as
+ * core.autocrlf) changes, or if a .gitattributes file which applies to them changes.
+ * Ids of files which are no longer looked up (for instance because they have been
+ * deleted) are discarded after each check.
+ * <li>The fork point of the local and remote branches, and the differences from it to
+ * each of them, which are re-used until either branch moves.
+ * </ul>
+ */
+@OnThread(Tag.Worker)
+class GitStatusCache
+{
+    /**
+     * Files modified this recently aren't cached, since they might be modified again
+     * without the modification time changing.
+     */
+    private static final long RACY_MILLIS = 3000;
+
+    /** The content id of a file, and the size and modification time it had */
+    private static class ContentId
+    {
+        final long length;
+        final long lastModified;
+        final ObjectId id;
+
+        ContentId(long length, long lastModified, ObjectId id)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.id = id;
+        }
+    }
+
+    /** The differences between the local and remote branches */
+    static class RemoteDiffs
+    {
+        final ObjectId head;
+        final ObjectId remote;
+        final RevCommit forkPoint;
+        final List<DiffEntry> localDiffs;
+        final List<DiffEntry> remoteDiffs;
+
+        RemoteDiffs(ObjectId head, ObjectId remote, RevCommit forkPoint, List<DiffEntry> localDiffs, List<DiffEntry> remoteDiffs)
+        {
+            this.head = head;
+            this.remote = remote;
+            this.forkPoint = forkPoint;
+            this.localDiffs = localDiffs;
+            this.remoteDiffs = remoteDiffs;
+        }
+    }
+
+    // Keyed by path within the repository:
+    private final Map<String, ContentId> contentIds = new ConcurrentHashMap<>();
+    // The paths looked up in contentIds during the current check:
+    private final Set<String> lookedUp = ConcurrentHashMap.newKeySet();
+    // The configuration which affects content ids, at the last check:
+    private List<Object> configStamp;
+    // The size and modification time of the .gitattributes file in each directory
+    // (keyed by path within the repository, "" for the top level) at the last check,
+    // or an empty list if there was none:
+    private Map<String, List<Long>> attributesStamps = new HashMap<>();
+    private Map<String, List<Long>> newAttributesStamps;
+    private RemoteDiffs remoteDiffs;
+
+    @OnThread(Tag.Any)
+    GitStatusCache()
+    {
+    }
+
+    /**
+     * Get the status of the working tree of the given repository, using (and adding to)
+     * the cached content ids.
+     */
+    synchronized Status getStatus(Git repo) throws GitAPIException
+    {
+        Repository repository = repo.getRepository();
+        List<Object> stamp = makeConfigStamp(repository);
+        if (!stamp.equals(configStamp))
+        {
+            contentIds.clear();
+            configStamp = stamp;
+        }
+
+        lookedUp.clear();
+        newAttributesStamps = new HashMap<>();
+        checkAttributes("", repository.getWorkTree());
+        Status status = repo.status().setWorkingTreeIt(new CachingFileTreeIterator(repository, this)).call();
+        // The whole tree was walked, so any id not looked up belongs to a file which
+        // has gone, or which now matches the index:
+        contentIds.keySet().retainAll(lookedUp);
+        lookedUp.clear();
+        attributesStamps = newAttributesStamps;
+        newAttributesStamps = null;
+        return status;
+    }
+
+    /**
+     * Make a record of the configuration which affects the content id of a working
+     * tree file: the settings for line endings and clean filters, and the attributes
+     * files which apply to the whole repository.
+     */
+    private static List<Object> makeConfigStamp(Repository repository)
+    {
+        StoredConfig config = repository.getConfig();
+        List<Object> stamp = new ArrayList<>();
+        stamp.add(config.getString(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_AUTOCRLF));
+        stamp.add(config.getString(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_EOL));
+        for (String filter : config.getSubsections(ConfigConstants.CONFIG_FILTER_SECTION))
+        {
+            stamp.add(filter);
+            stamp.add(config.getString(ConfigConstants.CONFIG_FILTER_SECTION, filter, Constants.ATTR_FILTER_TYPE_CLEAN));
+        }
+        stamp.add(makeFileStamp(new File(repository.getDirectory(), Constants.INFO_ATTRIBUTES)));
+        String attributesFile = config.getString(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_ATTRIBUTESFILE);
+        if (attributesFile != null)
+        {
+            FS fs = repository.getFS();
+            // Resolved in the same way as JGit does:
+            File file = attributesFile.startsWith("~/")
+                    ? fs.resolve(fs.userHome(), attributesFile.substring(2))
+                    : fs.resolve(null, attributesFile);
+            stamp.add(file.getPath());
+            stamp.add(makeFileStamp(file));
+        }
+        return stamp;
+    }
+
+    private static List<Long> makeFileStamp(File file)
+    {
+        return file.isFile() ? List.of(file.length(), file.lastModified()) : List.of();
+    }
+
+    /**
+     * Check whether the .gitattributes file in a directory of the working tree has
+     * changed since the last check, and if so, discard the content ids of the files
+     * it applies to.  This is called before the directory's files are looked up.
+     *
+     * @param dirPath  the path of the directory within the repository ("" for the top level)
+     * @param dir  the directory
+     */
+    private void checkAttributes(String dirPath, File dir)
+    {
+        List<Long> stamp = makeFileStamp(new File(dir, Constants.DOT_GIT_ATTRIBUTES));
+        newAttributesStamps.put(dirPath, stamp);
+        List<Long> previous = attributesStamps.get(dirPath);
+        if (previous != null && !previous.equals(stamp))
+        {
+            if (dirPath.isEmpty())
+            {
+                contentIds.clear();
+            }
+            else
+            {
+                String prefix = dirPath + "/";
+                contentIds.keySet().removeIf(path -> path.startsWith(prefix));
+            }
+        }
+    }
+
+    /**
+     * Get the differences from the fork point of HEAD and the given remote branch,
+     * to each of them.
+     *
+     * @param repo  the repository
+     * @param remoteBranch  the name of the remote branch, e.g. "origin/main"
+     */
+    synchronized RemoteDiffs getRemoteDiffs(Git repo, String remoteBranch) throws IOException
+    {
+        Repository repository = repo.getRepository();
+        ObjectId head = repository.resolve("HEAD");
+        ObjectId remote = repository.resolve(remoteBranch);
+        if (head == null || remote == null)
+        {
+            // Nothing we can cache against; work it out as best we can:
+            RevCommit forkPoint = findForkPoint(repository, remoteBranch, "HEAD");
+            return new RemoteDiffs(head, remote, forkPoint, getDiffs(repo, "HEAD", forkPoint), getDiffs(repo, remoteBranch, forkPoint));
+        }
+
+        if (remoteDiffs == null || !head.equals(remoteDiffs.head) || !remote.equals(remoteDiffs.remote))
+        {
+            RevCommit forkPoint = findForkPoint(repository, remote.getName(), head.getName());
+            remoteDiffs = new RemoteDiffs(head, remote, forkPoint, getDiffs(repo, head.getName(), forkPoint),
+                    getDiffs(repo, remote.getName(), forkPoint));
+        }
+        return remoteDiffs;
+    }
+
+    /**
+     * A FileTreeIterator which looks up the content id of each file in a cache before
+     * reading the file to calculate it.
+     */
+    private static class CachingFileTreeIterator extends FileTreeIterator
+    {
+        private final GitStatusCache cache;
+        private final Map<String, ContentId> contentIds;
+
+        CachingFileTreeIterator(Repository repository, GitStatusCache cache)
+        {
+            super(repository);
+            this.cache = cache;
+            this.contentIds = cache.contentIds;
+        }
+
+        private CachingFileTreeIterator(CachingFileTreeIterator parent, File root, FS fs)
+        {
+            super(parent, root, fs, parent.fileModeStrategy);
+            this.cache = parent.cache;
+            this.contentIds = parent.contentIds;
+        }
+
+        @Override
+        public AbstractTreeIterator createSubtreeIterator(ObjectReader reader)
+        {
+            cache.checkAttributes(getEntryPathString(), getEntryFile());
+            return new CachingFileTreeIterator(this, getEntryFile(), fs);
+        }
+
+        @Override
+        public byte[] idBuffer()
+        {
+            FileMode mode = getEntryFileMode();
+            if (!FileMode.REGULAR_FILE.equals(mode) && !FileMode.EXECUTABLE_FILE.equals(mode))
+            {
+                return superIdBuffer();
+            }
+
+            String path = getEntryPathString();
+            long length = getEntryLength();
+            long lastModified = getEntryLastModified();
+            cache.lookedUp.add(path);
+            ContentId cached = contentIds.get(path);
+            if (cached != null && cached.length == length && cached.lastModified == lastModified)
+            {
+                byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+                cached.id.copyRawTo(id, 0);
+                return id;
+            }
+
+            byte[] id = superIdBuffer();
+            if (lastModified < System.currentTimeMillis() - RACY_MILLIS)
+            {
+                contentIds.put(path, new ContentId(length, lastModified, ObjectId.fromRaw(id)));
+            }
+            else
+            {
+                contentIds.remove(path);
+            }
+            return id;
+        }
+
+        @Override
+        public int idOffset()
+        {
+            return 0;
+        }
+
+        /**
+         * Get the id calculated by FileTreeIterator, in a buffer of its own starting at zero.
+         */
+        private byte[] superIdBuffer()
+        {
+            byte[] buffer = super.idBuffer();
+            int offset = super.idOffset();
+            return offset == 0 ? buffer : Arrays.copyOfRange(buffer, offset, offset + Constants.OBJECT_ID_LENGTH);
+        }
+    }
+}
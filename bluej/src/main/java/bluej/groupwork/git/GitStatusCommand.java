@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2015,2016,2017,2018,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2015,2016,2017,2018,2020,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -26,9 +26,7 @@ import bluej.groupwork.TeamStatusInfo;
 import bluej.groupwork.TeamStatusInfo.Status;
 import bluej.groupwork.TeamworkCommandError;
 import bluej.groupwork.TeamworkCommandResult;
-import static bluej.groupwork.git.GitUtilities.findForkPoint;
 import static bluej.groupwork.git.GitUtilities.getBehindCount;
-import static bluej.groupwork.git.GitUtilities.getDiffs;
 import static bluej.groupwork.git.GitUtilities.getFileNameFromDiff;
 import static bluej.groupwork.git.GitUtilities.isAheadOnly;
 import bluej.utility.Debug;
@@ -36,16 +34,15 @@ import bluej.utility.Debug;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
 import java.util.Map;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.errors.NoWorkTreeException;
-import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.lib.IndexDiff;
 
 import threadchecker.OnThread;
@@ -75,13 +72,15 @@ public class GitStatusCommand extends GitCommand
     public TeamworkCommandResult getResult()
     {
         boolean didFilesChange = true;
-        LinkedList<TeamStatusInfo> returnInfo = new LinkedList<>();
+        // Keyed by file, in the order found:
+        Map<File, TeamStatusInfo> returnInfo = new LinkedHashMap<>();
         File gitPath = this.getRepository().getProjectPath();
 
         try (Git repo = Git.open(this.getRepository().getProjectPath()))
         {
-            //check local status
-            org.eclipse.jgit.api.Status s = repo.status().call();
+            //check local status, re-using what we can from the last check
+            GitStatusCache statusCache = getRepository().getStatusCache();
+            org.eclipse.jgit.api.Status s = statusCache.getStatus(repo);
 
             // A file which has had changes merged as a result of a pull will be in a "unmerged"
             // state, and will appear in "uncommitted changes" as well as "conflicting" (with
@@ -90,8 +89,8 @@ public class GitStatusCommand extends GitCommand
             s.getMissing().stream()
                     .filter(p -> filter.accept(new File(gitPath, p)))
                     .forEach(item -> {
-                        TeamStatusInfo teamInfo = new TeamStatusInfo(new File(gitPath, item), "", null, Status.DELETED);
-                        returnInfo.add(teamInfo);
+                        File file = new File(gitPath, item);
+                        returnInfo.put(file, new TeamStatusInfo(file, "", null, Status.DELETED));
                     });
 
             // "removed" files have been staged for removal ("git rm")
@@ -100,40 +99,45 @@ public class GitStatusCommand extends GitCommand
                     .forEach(item -> {
                         // Note this status might get altered below, if the file has been re-created
                         // in the meantime:
-                        returnInfo.add(new TeamStatusInfo(new File(gitPath, item), "", null,
-                                Status.DELETED));
+                        File file = new File(gitPath, item);
+                        returnInfo.putIfAbsent(file, new TeamStatusInfo(file, "", null, Status.DELETED));
                     });
             
             s.getUncommittedChanges().stream()
                     .filter(p -> filter.accept(new File(gitPath, p)))
                     .forEach(item -> {
-                        TeamStatusInfo teamInfo = new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_COMMIT);
-                        TeamStatusInfo existingStatusInfo = getTeamStatusInfo(returnInfo, teamInfo.getFile());
-                        if (existingStatusInfo == null) {
-                            //add this new entry to the returnInfo.
-                            returnInfo.add(teamInfo);
-                        }
+                        File file = new File(gitPath, item);
+                        returnInfo.putIfAbsent(file, new TeamStatusInfo(file, "", null, Status.NEEDS_COMMIT));
                     });
 
             s.getUntracked().stream()
                     .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> returnInfo.add(new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_ADD)));
+                    .forEach(item -> {
+                        // This replaces any "removed" status, if the file has been re-created:
+                        File file = new File(gitPath, item);
+                        returnInfo.put(file, new TeamStatusInfo(file, "", null, Status.NEEDS_ADD));
+                    });
 
             s.getUntrackedFolders().stream()
                     .filter(p -> filter.accept(new File(gitPath, p)))
-                    .forEach(item -> returnInfo.add(new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_ADD)));
+                    .forEach(item -> {
+                        // This replaces any "removed" status, if the file has been re-created:
+                        File file = new File(gitPath, item);
+                        returnInfo.put(file, new TeamStatusInfo(file, "", null, Status.NEEDS_ADD));
+                    });
 
             Map<String, IndexDiff.StageState> conflictsMap = s.getConflictingStageState();
             s.getConflicting().stream()
                     .filter(p -> filter.accept(new File(gitPath, p)))
                     .forEach(item -> {
-                        TeamStatusInfo teamInfo = getTeamStatusInfo(returnInfo, new File(gitPath, item));
+                        File file = new File(gitPath, item);
+                        TeamStatusInfo teamInfo = returnInfo.get(file);
                         if (teamInfo == null)
                         {
                             Debug.message("Git unexpected status: file is "
                                     + "conflicting but not otherwise noted? (" + item + ")");
-                            teamInfo = new TeamStatusInfo(new File(gitPath, item), "", null, Status.NEEDS_MERGE);
-                            returnInfo.add(teamInfo);
+                            teamInfo = new TeamStatusInfo(file, "", null, Status.NEEDS_MERGE);
+                            returnInfo.put(file, teamInfo);
                         }
                         else
                         {
@@ -162,8 +166,6 @@ public class GitStatusCommand extends GitCommand
                     });
 
             // check for files to push to remote repository.
-            List<DiffEntry> listOfDiffsLocal, listOfDiffsRemote;
-
             if (includeRemote) {
                 //update information about remote repository.
                 GitFetchCommand fetchCommand = new GitFetchCommand(this.getRepository());
@@ -175,13 +177,10 @@ public class GitStatusCommand extends GitCommand
             }
 
             String defaultBranchName = repo.getRepository().getBranch();
-            RevCommit forkPoint = findForkPoint(repo.getRepository(), "origin/"+defaultBranchName, "HEAD");
-            
-            //find diffs between <default branch>/head and the forkpoint.
-            listOfDiffsLocal = getDiffs(repo, "HEAD", forkPoint);
-            //check for differences between forkpoint and remote repo head.
-            listOfDiffsRemote = getDiffs(repo, "origin/"+defaultBranchName, forkPoint);
-            updateRemoteStatus(gitPath, listOfDiffsLocal, listOfDiffsRemote, returnInfo);
+            // The diffs between the forkpoint and each of <default branch>/head and the
+            // remote repo head; these are only recalculated if either head has moved.
+            GitStatusCache.RemoteDiffs remoteDiffs = statusCache.getRemoteDiffs(repo, "origin/"+defaultBranchName);
+            updateRemoteStatus(gitPath, remoteDiffs.localDiffs, remoteDiffs.remoteDiffs, returnInfo);
             
             if (returnInfo.isEmpty()){
                 didFilesChange = false;
@@ -191,8 +190,7 @@ public class GitStatusCommand extends GitCommand
                 // Git does not show any add up-to-date file. We need to add them manually to returnInfo.
                 addUpToDateFiles(returnInfo, gitPath);
                 
-                while (!returnInfo.isEmpty()) {
-                    TeamStatusInfo teamInfo = returnInfo.removeFirst();
+                for (TeamStatusInfo teamInfo : returnInfo.values()) {
                     listener.gotStatus(teamInfo);
                 }
                 listener.statusComplete(new GitStatusHandle(getRepository(), didFilesChange && isAheadOnly(repo), didFilesChange && getBehindCount(repo) > 0));
@@ -211,10 +209,10 @@ public class GitStatusCommand extends GitCommand
      * Search a directory (recursively). For all files with no status currently recorded, add an
      * "unchanged" status entry.
      * 
-     * @param returnInfo  list of file status
+     * @param returnInfo  map of file status
      * @param path        path to search
      */
-    private void addUpToDateFiles(LinkedList<TeamStatusInfo> returnInfo, File path)
+    private void addUpToDateFiles(Map<File, TeamStatusInfo> returnInfo, File path)
     {
         if(!path.isDirectory())
             return;
@@ -225,58 +223,33 @@ public class GitStatusCommand extends GitCommand
                     addUpToDateFiles(returnInfo, item);
                 }
                 else {
-                    TeamStatusInfo itemStatus = getTeamStatusInfo(returnInfo, item);
-                    if (itemStatus == null) {
-                        //file does not exist in the list, therefore it is up-to-date.
-                        returnInfo.add(new TeamStatusInfo(item, "", null,
-                                Status.UP_TO_DATE, Status.UP_TO_DATE));
-                    }
+                    //if the file does not exist in the map, it is up-to-date.
+                    returnInfo.computeIfAbsent(item, f -> new TeamStatusInfo(f, "", null,
+                            Status.UP_TO_DATE, Status.UP_TO_DATE));
                 }
             }
         }
     }
 
-    /**
-     * checks if a file already has an entry on returnInfo
-     *
-     * @param returnInfo list of TeamStatusInfo to be checked
-     * @param file file to check
-     * @return null if there is no entry of that file. The entry if it exists.
-     */
-    private TeamStatusInfo getTeamStatusInfo(LinkedList<TeamStatusInfo> returnInfo, File file)
+    private void updateRemoteStatus(Map<File, TeamStatusInfo> returnInfo, File file, Status remoteStatus)
     {
-        try {
-            return returnInfo.stream().filter(entry -> entry.getFile().getPath().contains(file.getPath())).findFirst().get();
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-
-    private Optional<DiffEntry> getDiffFromList(List<DiffEntry> list, DiffEntry entry)
-    {
-        Optional<DiffEntry> result;
-        String entryFileName = getFileNameFromDiff(entry);
-        result = list.stream().filter(p -> getFileNameFromDiff(p).equals(entryFileName)).findFirst();
-        return result;
-    }
-
-    private void updateRemoteStatus(LinkedList<TeamStatusInfo> returnInfo, File file, Status remoteStatus)
-    {
-        TeamStatusInfo entry = getTeamStatusInfo(returnInfo, file);
+        TeamStatusInfo entry = returnInfo.get(file);
         if (entry != null) {
             entry.setRemoteStatus(remoteStatus);
         } else {
             //needs to create an entry.
             entry = new TeamStatusInfo(file, "", null, Status.UP_TO_DATE, remoteStatus);
-            returnInfo.add(entry);
+            returnInfo.put(file, entry);
         }
     }
 
-    private void updateRemoteStatus(File gitPath, List<DiffEntry> listOfDiffsLocal, List<DiffEntry> listOfDiffsRemote, LinkedList<TeamStatusInfo> returnInfo)
+    private void updateRemoteStatus(File gitPath, List<DiffEntry> listOfDiffsLocal, List<DiffEntry> listOfDiffsRemote, Map<File, TeamStatusInfo> returnInfo)
     {
+        Map<String, DiffEntry> localDiffsByName = new HashMap<>();
+        
         //first check local changes that does not appear in the remote list.
         for (DiffEntry localDiffItem : listOfDiffsLocal) {
+            localDiffsByName.putIfAbsent(getFileNameFromDiff(localDiffItem), localDiffItem);
             File file = new File(gitPath, getFileNameFromDiff(localDiffItem));
             switch (localDiffItem.getChangeType()) {
                 case MODIFY:
@@ -293,13 +266,14 @@ public class GitStatusCommand extends GitCommand
 
         //now check for changes between the remote and local.
         for (DiffEntry remoteDiffItem : listOfDiffsRemote) {
-            Optional<DiffEntry> localDiffItem = getDiffFromList(listOfDiffsLocal, remoteDiffItem);
-            File file = new File(gitPath, getFileNameFromDiff(remoteDiffItem));
+            String fileName = getFileNameFromDiff(remoteDiffItem);
+            DiffEntry localDiffItem = localDiffsByName.get(fileName);
+            File file = new File(gitPath, fileName);
             switch (remoteDiffItem.getChangeType()) {
                 case MODIFY:
-                    if (localDiffItem.isPresent()) {
-                        TeamStatusInfo entry = getTeamStatusInfo(returnInfo, file);
-                        switch (localDiffItem.get().getChangeType()) {
+                    if (localDiffItem != null) {
+                        TeamStatusInfo entry = returnInfo.get(file);
+                        switch (localDiffItem.getChangeType()) {
                             case MODIFY:
                                 if (entry == null){
                                     //this file was in need of a merge, however, since it does not appears 
@@ -322,8 +296,8 @@ public class GitStatusCommand extends GitCommand
                     }
                     break;
                 case DELETE:
-                    if (localDiffItem.isPresent()) {
-                        switch (localDiffItem.get().getChangeType()) {
+                    if (localDiffItem != null) {
+                        switch (localDiffItem.getChangeType()) {
                             case MODIFY:
                                 updateRemoteStatus(returnInfo, file, Status.CONFLICT_LMRD);
                                 break;
@@ -340,8 +314,8 @@ public class GitStatusCommand extends GitCommand
                     }
                     break;
                 case ADD:
-                    if (localDiffItem.isPresent()) {
-                        switch (localDiffItem.get().getChangeType()) {
+                    if (localDiffItem != null) {
+                        switch (localDiffItem.getChangeType()) {
                             case ADD:
                                 updateRemoteStatus(returnInfo, file, Status.CONFLICT_ADD);
                                 break;
@@ -350,7 +324,7 @@ public class GitStatusCommand extends GitCommand
                         updateRemoteStatus(returnInfo, file, Status.NEEDS_CHECKOUT);
                         if (!file.exists()){
                             //this file will be added, but does not exist in the local repository.
-                            TeamStatusInfo tsi = getTeamStatusInfo(returnInfo, file);
+                            TeamStatusInfo tsi = returnInfo.get(file);
                             tsi.setStatus(Status.NEEDS_CHECKOUT);
                         }
                     }
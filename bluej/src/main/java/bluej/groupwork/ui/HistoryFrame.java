@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2012,2014,2016,2017,2019  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2012,2014,2016,2017,2019,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -24,10 +24,7 @@ package bluej.groupwork.ui;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -64,7 +61,9 @@ import threadchecker.Tag;
 
 /**
  * A frame to display the commit history, including dates, users, revisions
- * and commit comments.
+ * and commit comments.  The history is fetched a page at a time (if the
+ * repository supports it), with the next page fetched when the end of the
+ * list is shown.
  *
  * @author Davin McCall
  * @author Amjad Altadmri
@@ -73,9 +72,13 @@ import threadchecker.Tag;
 public class HistoryFrame extends FXCustomizedDialog<Void>
 {
     private Project project;
-    private HistoryWorker worker;
+    private Repository repository;
+    private TeamworkCommand command;
+    private final PageCollector pageCollector = new PageCollector();
+    private HistoryWorker worker; // the worker fetching a page, if any
+    private boolean moreAvailable = true;
 
-    private List<HistoryInfo> historyInfoList;
+    private final List<HistoryInfo> historyInfoList = new ArrayList<>();
     private ObservableList<HistoryInfo> listModel = FXCollections.observableArrayList();
 
     private ListView<HistoryInfo> historyList = new ListView<>(listModel);
@@ -102,12 +105,24 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
     private Pane makeMainPane()
     {
         // History list
-        historyList.setCellFactory(param -> new HistoryCell());
+        historyList.setCellFactory(param -> new HistoryCell() {
+            @Override
+            public void updateItem(HistoryInfo info, boolean empty)
+            {
+                super.updateItem(info, empty);
+                // Showing the last entry fetches the next page:
+                if (!empty && getIndex() == listModel.size() - 1) {
+                    fetchNextPage();
+                }
+            }
+        });
         ScrollPane historyPane = new ScrollPane(historyList);
         historyPane.setVbarPolicy(ScrollBarPolicy.AS_NEEDED);
         historyPane.setFitToWidth(true);
         historyPane.setFitToHeight(true);
 
+        prepareFilterBox(fileFilterCombo, "team.history.allFiles");
+        prepareFilterBox(userFilterCombo, "team.history.allUsers");
         HBox filterBox = new HBox();
         filterBox.setAlignment(Pos.BASELINE_LEFT);
         filterBox.getChildren().addAll(new Label(Config.getString("team.history.filefilter") + " "), fileFilterCombo,
@@ -132,28 +147,85 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
         //close button
         getDialogPane().getButtonTypes().setAll(ButtonType.CLOSE);
         this.setOnCloseRequest(event -> {
-            if (worker != null) {
-                worker.abort();
+            activityBar.setRunning(false);
+            worker = null;
+            if (command != null) {
+                command.cancel();
+                command = null;
             }
         });
     }
 
     private void prepareData()
     {
-        Repository repository = project.getTeamSettingsController().trytoEstablishRepository(false);
+        repository = project.getTeamSettingsController().trytoEstablishRepository(false);
 
         if (repository != null) {
-            worker = new HistoryWorker(repository);
+            command = repository.getLogHistory(pageCollector);
+            fetchNextPage();
+        }
+    }
+
+    /**
+     * Start fetching the next page of history, unless there are no more pages, or
+     * a page is already being fetched.
+     */
+    private void fetchNextPage()
+    {
+        if (worker == null && command != null && moreAvailable) {
+            worker = new HistoryWorker(command);
             worker.start();
             activityBar.setRunning(true);
         }
     }
 
+    /**
+     * A page of history has been fetched; add it to the list (as far as it matches
+     * the filters) and to the filter boxes.
+     */
+    private void pageFetched(List<HistoryInfo> page, boolean morePages)
+    {
+        if (historyInfoList.isEmpty()) {
+            // Make the history list forget the preferred size that was forced
+            // upon it when we built the frame.
+            // TODO Maybe not needed in FX
+            historyList.setPrefSize(-1, -1);
+            DataCollector.teamHistoryProject(project, repository);
+        }
+
+        moreAvailable = morePages;
+        historyInfoList.addAll(page);
+        for (HistoryInfo info : page) {
+            insertSorted(userFilterCombo.getItems(), info.getUser());
+            for (String file : info.getFiles()) {
+                insertSorted(fileFilterCombo.getItems(), file);
+            }
+        }
+
+        List<HistoryInfo> matching = filter(page);
+        listModel.addAll(matching);
+        if (matching.isEmpty()) {
+            // Nothing new to show, so the end of the list can't be scrolled to:
+            fetchNextPage();
+        }
+    }
+
     /**
      * Filter the history info list according to the selected file and user
      * filters. The filtered list is then displayed.
      */
     private void refilter()
+    {
+        listModel.setAll(filter(historyInfoList));
+        if (listModel.isEmpty()) {
+            fetchNextPage();
+        }
+    }
+
+    /**
+     * Get the entries of the given list which match the selected file and user filters.
+     */
+    private List<HistoryInfo> filter(List<HistoryInfo> infos)
     {
         String user = null;
         if (userFilterCombo.getSelectionModel().getSelectedIndex() > 0) {
@@ -167,11 +239,11 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
 
         List<HistoryInfo> displayList;
         if (user == null && file == null) {
-            displayList = historyInfoList;
+            displayList = infos;
         }
         else {
             displayList = new ArrayList<>();
-            for (HistoryInfo info : historyInfoList) {
+            for (HistoryInfo info : infos) {
                 if (user != null && !info.getUser().equals(user)) {
                     continue;
                 }
@@ -183,7 +255,7 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
             }
         }
 
-        listModel.setAll(displayList);
+        return displayList;
     }
 
     /**
@@ -195,109 +267,107 @@ public class HistoryFrame extends FXCustomizedDialog<Void>
     }
 
     /**
-     * Reset the filter boxes (user filter and file filter), adding a complete list
-     * of all users and files.
+     * Set up a filter box (user filter or file filter) with just the item for
+     * no filtering; other items are added as history is fetched.
      */
-    private void resetFilterBoxes()
+    private void prepareFilterBox(ComboBox<String> filterCombo, String allLabel)
     {
-        SortedSet<String> files = new TreeSet<>();
-        SortedSet<String> users = new TreeSet<>();
+        filterCombo.getItems().add(Config.getString(allLabel));
+        filterCombo.getSelectionModel().selectFirst();
+        filterCombo.setOnAction(e -> refilter());
+    }
 
-        for (HistoryInfo info : historyInfoList) {
-            users.add(info.getUser());
-            Collections.addAll(files, info.getFiles());
+    /**
+     * Insert an item into the items of a filter box, keeping them in order after the
+     * first item, if it is not already present.
+     */
+    private static void insertSorted(List<String> items, String item)
+    {
+        int index = Collections.binarySearch(items.subList(1, items.size()), item);
+        if (index < 0) {
+            // Insertion point is (-index - 1) within the sub-list:
+            items.add(-index, item);
         }
-
-        fileFilterCombo.getItems().clear();
-        fileFilterCombo.getItems().add(Config.getString("team.history.allFiles"));
-        fileFilterCombo.getItems().addAll(files);
-        fileFilterCombo.getSelectionModel().selectFirst();
-        fileFilterCombo.setOnAction(e -> refilter());
-
-        userFilterCombo.getItems().clear();
-        userFilterCombo.getItems().add(Config.getString("team.history.allUsers"));
-        userFilterCombo.getItems().addAll(users);
-        userFilterCombo.getSelectionModel().selectFirst();
-        userFilterCombo.setOnAction(e -> refilter());
     }
 
     /**
-     * A worker class to fetch the required information from the repository
-     * in the background.
+     * Receives history information from the history command, on the worker thread,
+     * until the page is complete.
      */
-    private class HistoryWorker extends FXWorker implements LogHistoryListener
+    @OnThread(Tag.Any)
+    private static class PageCollector implements LogHistoryListener
     {
-        private List<HistoryInfo> responseList;
-        private Repository repository;
-        private TeamworkCommand command;
-        private TeamworkCommandResult response;
+        private final List<HistoryInfo> page = new ArrayList<>();
+        private boolean moreAvailable;
 
-        public HistoryWorker(Repository repository)
+        @Override
+        public synchronized void logInfoAvailable(HistoryInfo hInfo)
         {
-            this.responseList = new ArrayList<>();
-            command = repository.getLogHistory(this);
-            this.repository = repository;
+            page.add(hInfo);
         }
 
-        @OnThread(Tag.Worker)
-        public Object construct()
+        @Override
+        public synchronized void moreLogInfoAvailable()
         {
-            response = command.getResult();
-            return response;
+            moreAvailable = true;
         }
 
-        @OnThread(Tag.Any)
-        public void logInfoAvailable(HistoryInfo hInfo)
+        /**
+         * Get the history information received since the last call, and whether
+         * there is more to fetch after it.
+         */
+        public synchronized List<HistoryInfo> takePage()
         {
-            responseList.add(hInfo);
+            List<HistoryInfo> result = new ArrayList<>(page);
+            page.clear();
+            return result;
         }
 
-        public void finished()
+        public synchronized boolean takeMoreAvailable()
         {
-            if (command != null) {
-                activityBar.setRunning(false);
-                command = null; // marks the command as finished
-                if (response.isError()) {
-                    HistoryFrame.this.dialogThenHide(() -> TeamUtils.handleServerResponseFX(response, HistoryFrame.this.asWindow()));
-                }
-                else {
-                    responseList.sort(new DateCompare());
-
-                    // Make the history list forget the preferred size that was forced
-                    // upon it when we built the frame.
-                    // TODO Maybe not needed in FX
-                    historyList.setPrefSize(-1, -1);
+            boolean result = moreAvailable;
+            moreAvailable = false;
+            return result;
+        }
+    }
 
-                    listModel.setAll(responseList);
-                    historyInfoList = responseList;
+    /**
+     * A worker class to fetch a page of history from the repository
+     * in the background.
+     */
+    private class HistoryWorker extends FXWorker
+    {
+        private final TeamworkCommand command;
+        private TeamworkCommandResult response;
 
-                    resetFilterBoxes();
+        public HistoryWorker(TeamworkCommand command)
+        {
+            this.command = command;
+        }
 
-                    DataCollector.teamHistoryProject(project, repository);
-                }
-            }
+        @OnThread(Tag.Worker)
+        public Object construct()
+        {
+            response = command.getResult();
+            return response;
         }
 
-        public void abort()
+        public void finished()
         {
+            List<HistoryInfo> page = pageCollector.takePage();
+            boolean morePages = pageCollector.takeMoreAvailable();
+            if (worker != this) {
+                // The frame has been closed
+                return;
+            }
+            worker = null;
             activityBar.setRunning(false);
-            if (command != null) {
-                command.cancel();
-                command = null;
+            if (response.isError()) {
+                HistoryFrame.this.dialogThenHide(() -> TeamUtils.handleServerResponseFX(response, HistoryFrame.this.asWindow()));
+            }
+            else {
+                pageFetched(page, morePages);
             }
         }
     }
 }
-
-/**
- * A comparator to sort HistoryInfo objects by date.
- *
- * @author Davin McCall
- */
-class DateCompare implements Comparator<HistoryInfo>
-{
-    public int compare(HistoryInfo hi0, HistoryInfo hi1)
-    {
-        return hi1.getDate().compareTo(hi0.getDate());
-    }
-}
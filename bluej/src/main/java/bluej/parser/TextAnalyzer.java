@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2013,2014,2015,2016,2017,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2013,2014,2015,2016,2017,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -1157,6 +1157,14 @@ public class TextAnalyzer
         //          bounds
         // Mostly straightforward.
         
+        // If neither the target type nor its supertypes declare a method with the
+        // right name, there's no need to look through them:
+        GenTypeClass targetTypeClass = targetType.asClass();
+        if (targetTypeClass != null
+                && ! targetTypeClass.getReflective().getInheritedMembers().hasMethod(methodName)) {
+            return suitableMethods;
+        }
+        
         while (! targetTypes.isEmpty()) {
             GenTypeSolid topType = targetTypes.pop();
             GenTypeClass targetClass = topType.asClass();
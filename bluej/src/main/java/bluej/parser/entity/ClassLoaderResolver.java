@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2010  Michael Kolling and John Rosenberg 
+ Copyright (C) 2010,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,6 +21,9 @@
  */
 package bluej.parser.entity;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import bluej.debugger.gentype.Reflective;
 
 /**
@@ -31,20 +34,32 @@ import bluej.debugger.gentype.Reflective;
 public class ClassLoaderResolver implements EntityResolver
 {
     private ClassLoader classLoader;
+    // Results of previous lookups, including failed lookups (null value):
+    private Map<String,TypeEntity> resolvedClasses = new HashMap<String,TypeEntity>();
     
     public ClassLoaderResolver(ClassLoader classLoader)
     {
         this.classLoader = classLoader;
     }
     
-    public TypeEntity resolveQualifiedClass(String name)
+    public synchronized TypeEntity resolveQualifiedClass(String name)
+    {
+        TypeEntity rval = resolvedClasses.get(name);
+        if (rval == null && ! resolvedClasses.containsKey(name)) {
+            rval = loadQualifiedClass(name);
+            resolvedClasses.put(name, rval);
+        }
+        return rval;
+    }
+    
+    private TypeEntity loadQualifiedClass(String name)
     {
         try {
             // Try as a fully-qualified name 
             Class<?> cl = classLoader.loadClass(name);
             return new TypeEntity(cl);
         }
-        catch (Exception e) {}
+        catch (Exception | LinkageError e) {}
         
         return null;
     }
@@ -0,0 +1,119 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.parser.entity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bluej.debugger.gentype.FieldReflective;
+import bluej.debugger.gentype.GenTypeClass;
+import bluej.debugger.gentype.InheritedMembers;
+import bluej.debugger.gentype.MethodReflective;
+import bluej.debugger.gentype.Reflective;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The member tables (declared fields and methods, and supertypes) of a parsed type,
+ * as calculated by ParsedReflective. A set of tables is held by each ParsedTypeNode
+ * so that repeated lookups (e.g. during code completion) don't need to rebuild them.
+ * The tables also hold an index of the type's inherited members.
+ *
+ * <p>The tables of a type are invalidated when the type's source is edited. The
+ * tables also depend on how the types mentioned in the declaration resolve, which
+ * is affected by other changes (types being added, removed or renamed, or classes
+ * being compiled); rather than track those dependencies, all tables are stamped
+ * with a global generation number, which is incremented on such a change, and tables
+ * from an earlier generation are discarded. The inherited member index additionally
+ * depends on the tables of the parsed supertypes, and is recalculated if any of those
+ * have been invalidated.
+ *
+ * <p>Any of the tables may be null, meaning that it has not yet been calculated.
+ */
+@OnThread(value = Tag.FXPlatform, ignoreParent = true)
+public class MemberTables
+{
+    @OnThread(Tag.Any)
+    private static final AtomicInteger currentGeneration = new AtomicInteger();
+
+    private final int generation;
+    private boolean invalidated;
+
+    Map<String,FieldReflective> fields;
+    Map<String,Set<MethodReflective>> methods;
+    List<GenTypeClass> superTypes;
+    List<Reflective> superTypesR;
+    InheritedMembers inherited;
+    // The tables of the parsed supertypes from which the inherited members were taken:
+    List<MemberTables> inheritedFrom;
+
+    MemberTables()
+    {
+        generation = currentGeneration.get();
+    }
+
+    /**
+     * Check whether these tables are still valid, i.e. nothing has been invalidated
+     * since they were created.
+     */
+    boolean isCurrent()
+    {
+        return ! invalidated && generation == currentGeneration.get();
+    }
+
+    /**
+     * Check whether the inherited member index has been calculated, and is still valid.
+     */
+    boolean isInheritedCurrent()
+    {
+        if (inherited == null) {
+            return false;
+        }
+        for (MemberTables supertypeTables : inheritedFrom) {
+            if (! supertypeTables.isCurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invalidate these tables, because the type they belong to has been edited.
+     */
+    public void invalidate()
+    {
+        invalidated = true;
+    }
+
+    /**
+     * Invalidate all member tables. This should be called whenever the types which a
+     * name may resolve to change: when a type is added, removed or renamed, when an
+     * editor's parse tree is created, and when classes are compiled or modified.
+     */
+    @OnThread(Tag.Any)
+    public static void invalidateAll()
+    {
+        currentGeneration.incrementAndGet();
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2014,2015,2016,2018,2019,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2014,2015,2016,2018,2019,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -36,6 +36,7 @@ import bluej.debugger.gentype.ConstructorReflective;
 import bluej.debugger.gentype.FieldReflective;
 import bluej.debugger.gentype.GenTypeClass;
 import bluej.debugger.gentype.GenTypeDeclTpar;
+import bluej.debugger.gentype.InheritedMembers;
 import bluej.debugger.gentype.JavaType;
 import bluej.debugger.gentype.MethodReflective;
 import bluej.debugger.gentype.Reflective;
@@ -90,8 +91,32 @@ public class ParsedReflective extends Reflective
         return null;
     }
 
+    /**
+     * Get the member tables for this type, discarding any cached tables which are
+     * no longer current.
+     */
+    private MemberTables getMemberTables()
+    {
+        MemberTables tables = pnode.getMemberTables();
+        if (tables == null || ! tables.isCurrent()) {
+            tables = new MemberTables();
+            pnode.setMemberTables(tables);
+        }
+        return tables;
+    }
+
     @Override
     public List<GenTypeClass> getSuperTypes()
+    {
+        MemberTables tables = getMemberTables();
+        if (tables.superTypes == null) {
+            tables.superTypes = calculateSuperTypes();
+        }
+        // Callers may modify the returned list, so we must return a copy:
+        return new LinkedList<GenTypeClass>(tables.superTypes);
+    }
+
+    private List<GenTypeClass> calculateSuperTypes()
     {
         List<GenTypeClass> rval = new LinkedList<GenTypeClass>();
         
@@ -133,6 +158,16 @@ public class ParsedReflective extends Reflective
 
     @Override
     public List<Reflective> getSuperTypesR()
+    {
+        MemberTables tables = getMemberTables();
+        if (tables.superTypesR == null) {
+            tables.superTypesR = calculateSuperTypesR();
+        }
+        // Callers may modify the returned list, so we must return a copy:
+        return new ArrayList<Reflective>(tables.superTypesR);
+    }
+
+    private List<Reflective> calculateSuperTypesR()
     {
         List<Reflective> rlist = new ArrayList<Reflective>();
         List<JavaEntity> extendedTypes = pnode.getExtendedTypes();
@@ -240,6 +275,15 @@ public class ParsedReflective extends Reflective
     
     @Override
     public Map<String,FieldReflective> getDeclaredFields()
+    {
+        MemberTables tables = getMemberTables();
+        if (tables.fields == null) {
+            tables.fields = Collections.unmodifiableMap(calculateDeclaredFields());
+        }
+        return tables.fields;
+    }
+
+    private Map<String,FieldReflective> calculateDeclaredFields()
     {
         Map<String,Set<VariableDeclaration>> allfields = pnode.getInner().getFields();
         
@@ -269,6 +313,15 @@ public class ParsedReflective extends Reflective
     
     @Override
     public Map<String,Set<MethodReflective>> getDeclaredMethods()
+    {
+        MemberTables tables = getMemberTables();
+        if (tables.methods == null) {
+            tables.methods = Collections.unmodifiableMap(calculateDeclaredMethods());
+        }
+        return tables.methods;
+    }
+
+    private Map<String,Set<MethodReflective>> calculateDeclaredMethods()
     {
         // All record parameters automatically create a method of the same name,
         // with no arguments and a return type that matches the fields type:
@@ -330,6 +383,24 @@ public class ParsedReflective extends Reflective
         return rmap;
     }
 
+    @Override
+    public InheritedMembers getInheritedMembers()
+    {
+        MemberTables tables = getMemberTables();
+        if (! tables.isInheritedCurrent()) {
+            InheritedMembers inherited = InheritedMembers.calculate(this);
+            List<MemberTables> inheritedFrom = new ArrayList<MemberTables>();
+            for (Reflective r : inherited.getTypes()) {
+                if (r instanceof ParsedReflective && ! r.equals(this)) {
+                    inheritedFrom.add(((ParsedReflective) r).getMemberTables());
+                }
+            }
+            tables.inherited = inherited;
+            tables.inheritedFrom = inheritedFrom;
+        }
+        return tables.inherited;
+    }
+
     @Override
     public List<ConstructorReflective> getDeclaredConstructors()
     {
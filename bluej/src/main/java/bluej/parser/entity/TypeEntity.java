@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2010,2014  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2010,2014,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -23,7 +23,6 @@ package bluej.parser.entity;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import bluej.debugger.gentype.FieldReflective;
 import bluej.debugger.gentype.GenTypeClass;
@@ -93,24 +92,15 @@ public class TypeEntity extends PackageOrClass
         // subentity of a class could be a member type or field
         // Is it a field?
         
-        LinkedList<Reflective> stypes = new LinkedList<Reflective>();
-        Reflective ctypeRef = thisClass.getReflective();
-        stypes.add(ctypeRef);
-        
-        while (! stypes.isEmpty()) {
-            ctypeRef = stypes.poll();
-            Map<String,FieldReflective> m = ctypeRef.getDeclaredFields();
-            FieldReflective field = m.get(name);
-            if (field != null) {
-                boolean accessAllowed = JavaUtils.checkMemberAccess(ctypeRef,
-                        thisClass, accessor, field.getModifiers(), true);
-                if (accessAllowed) {
-                    thisClass = thisClass.mapToSuper(ctypeRef.getName());
-                    JavaType fieldType = field.getType().mapTparsToTypes(thisClass.getMap()).getUpperBound();
-                    return new ValueEntity(name, fieldType);
-                }
+        for (FieldReflective field : thisClass.getReflective().getInheritedMembers().getFields(name)) {
+            Reflective ctypeRef = field.getDeclaringType();
+            boolean accessAllowed = JavaUtils.checkMemberAccess(ctypeRef,
+                    thisClass, accessor, field.getModifiers(), true);
+            if (accessAllowed) {
+                thisClass = thisClass.mapToSuper(ctypeRef.getName());
+                JavaType fieldType = field.getType().mapTparsToTypes(thisClass.getMap()).getUpperBound();
+                return new ValueEntity(name, fieldType);
             }
-            stypes.addAll(ctypeRef.getSuperTypesR());
         }
 
         // Is it a member type?
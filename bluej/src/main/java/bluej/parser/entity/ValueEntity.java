@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2011,2014  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2011,2014,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,7 +21,6 @@
  */
 package bluej.parser.entity;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -88,24 +87,11 @@ public class ValueEntity extends JavaEntity
         GenTypeClass ctype = ubounds[0].asClass();
         
         if (ctype != null) {
-            Reflective ctypeRef = ctype.getReflective();
-            LinkedList<Reflective> stypes = new LinkedList<Reflective>();
-            stypes.add(ctypeRef);
+            List<FieldReflective> fields = ctype.getReflective().getInheritedMembers().getFields(name);
             
-            FieldReflective field = null;
-            
-            while (! stypes.isEmpty()) {
-                ctypeRef = stypes.poll();
-                Map<String,FieldReflective> fields = ctypeRef.getDeclaredFields();
-                field = fields.get(name);
-                if (field != null) {
-                    break;
-                }
-                stypes.addAll(ctypeRef.getSuperTypesR());
-            }
-            
-            if (field != null) {
-                ctype = ctype.mapToSuper(ctypeRef.getName());
+            if (! fields.isEmpty()) {
+                FieldReflective field = fields.get(0);
+                ctype = ctype.mapToSuper(field.getDeclaringType().getName());
                 if (JavaUtils.checkMemberAccess(ctype.getReflective(), type.asSolid(), accessor,
                         field.getModifiers(), false)) {
                     JavaType fieldType = field.getType();
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2010,2019  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2010,2019,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -25,6 +25,7 @@ import bluej.debugger.gentype.Reflective;
 import bluej.parser.ImportsCollection;
 import bluej.parser.entity.EntityResolver;
 import bluej.parser.entity.JavaEntity;
+import bluej.parser.entity.MemberTables;
 import bluej.parser.entity.PackageOrClass;
 import bluej.parser.entity.TypeEntity;
 import bluej.parser.nodes.NodeTree.NodeAndPosition;
@@ -54,6 +55,33 @@ public class ParsedCUNode extends IncrementalParsingNode
         this.parentResolver = parentResolver;
     }
 
+    /**
+     * Invalidate the cached member tables which may be affected by a change to the
+     * source at the given position: those of the types whose body contains the position.
+     * A change anywhere else (e.g. to an import, or a type's header) may affect how
+     * names resolve, and so invalidates the tables of all types.
+     */
+    public void invalidateMemberTables(int pos)
+    {
+        boolean inTypeBody = false;
+        NodeAndPosition<ParsedNode> nap = findNodeAt(pos, 0);
+        while (nap != null) {
+            ParsedNode node = nap.getNode();
+            if (node instanceof ParsedTypeNode) {
+                ((ParsedTypeNode) node).invalidateMemberTables();
+                inTypeBody = false;
+            }
+            else if (node instanceof TypeInnerNode) {
+                inTypeBody = true;
+            }
+            nap = node.findNodeAt(pos, nap.getPosition());
+        }
+        
+        if (! inTypeBody) {
+            MemberTables.invalidateAll();
+        }
+    }
+
     public ImportsCollection getImports()
     {
         return imports;
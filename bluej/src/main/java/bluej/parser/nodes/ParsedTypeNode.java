@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2011,2013,2014,2019,2022  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2011,2013,2014,2019,2022,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -26,6 +26,7 @@ import bluej.debugger.gentype.Reflective;
 import bluej.parser.ExpressionTypeInfo;
 import bluej.parser.JavaParser;
 import bluej.parser.entity.JavaEntity;
+import bluej.parser.entity.MemberTables;
 import bluej.parser.entity.PackageOrClass;
 import bluej.parser.entity.ParsedReflective;
 import bluej.parser.entity.TparEntity;
@@ -59,6 +60,7 @@ public class ParsedTypeNode extends IncrementalParsingNode
     private List<JavaEntity> implementedTypes;
     private int modifiers;
     private ParsedTypeNode containingClass;
+    private MemberTables memberTables;
     
     private int type; // one of JavaParser.TYPEDEF_CLASS, INTERFACE, ENUM, ANNOTATION
     
@@ -185,6 +187,8 @@ public class ParsedTypeNode extends IncrementalParsingNode
         String oldName = this.name;
         this.name = name;
         getParentNode().childChangedName(this, oldName);
+        // Names which resolved to the old name (or to another type with the new name) no longer do:
+        MemberTables.invalidateAll();
     }
     
     @Override
@@ -220,6 +224,33 @@ public class ParsedTypeNode extends IncrementalParsingNode
         return inner;
     }
     
+    /**
+     * Get the member tables cached for this type by ParsedReflective. May return null.
+     */
+    public MemberTables getMemberTables()
+    {
+        return memberTables;
+    }
+    
+    /**
+     * Set the member tables cached for this type.
+     */
+    public void setMemberTables(MemberTables memberTables)
+    {
+        this.memberTables = memberTables;
+    }
+
+    /**
+     * Discard the member tables cached for this type, because its source has changed.
+     */
+    public void invalidateMemberTables()
+    {
+        if (memberTables != null) {
+            memberTables.invalidate();
+            memberTables = null;
+        }
+    }
+    
     @Override
     protected void childRemoved(NodeAndPosition<ParsedNode> child,
             NodeStructureListener listener)
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2013,2014,2016,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2013,2014,2016,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,8 +21,14 @@
  */
 package bluej.parser.symtab;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import bluej.parser.SourceLocation;
+import bluej.parser.SourceSpan;
 import bluej.utility.JavaUtils;
 import bluej.utility.SortedProperties;
 
@@ -529,4 +535,167 @@ public final class ClassInfo
     {
         return hadParseError;
     }
+
+    /**
+     * Write this information to a stream, so that it can later be restored by
+     * {@link #readFrom} without parsing the source again.
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        out.writeBoolean(foundPublicClass);
+        writeString(out, name);
+        writeString(out, superclass);
+        writeStrings(out, implemented);
+        writeStrings(out, used);
+        writeStrings(out, permits);
+        out.writeInt(comments.size());
+        for (SavedComment c : comments) {
+            writeString(out, c.target);
+            writeString(out, c.comment);
+            writeString(out, c.paramnames);
+        }
+        writeStrings(out, typeParameterTexts);
+        writeSelection(out, typeParametersSelection);
+        writeSelection(out, extendsReplaceSelection);
+        writeSelection(out, superReplaceSelection);
+        writeSelection(out, extendsInsertSelection);
+        writeSelection(out, implementsInsertSelection);
+        out.writeInt(interfaceSelections == null ? -1 : interfaceSelections.size());
+        if (interfaceSelections != null) {
+            for (Selection s : interfaceSelections) {
+                writeSelection(out, s);
+            }
+        }
+        out.writeBoolean(isInterface);
+        out.writeBoolean(isAbstract);
+        out.writeBoolean(isUnitTest);
+        out.writeBoolean(isEnum);
+        out.writeBoolean(hadParseError);
+        out.writeBoolean(packageStatementExists);
+        writeSelection(out, packageStatementSelection);
+        writeSelection(out, packageNameSelection);
+        writeSelection(out, packageSemiSelection);
+        writeString(out, packageName);
+    }
+
+    /**
+     * Read information previously written by {@link #writeTo}.
+     */
+    public static ClassInfo readFrom(DataInputStream in) throws IOException
+    {
+        ClassInfo info = new ClassInfo();
+        info.foundPublicClass = in.readBoolean();
+        info.name = readString(in);
+        info.superclass = readString(in);
+        info.implemented = readStrings(in);
+        info.used = readStrings(in);
+        info.permits = readStrings(in);
+        int numComments = readSize(in);
+        for (int i = 0; i < numComments; i++) {
+            String target = readString(in);
+            if (target == null) {
+                throw new IOException("Missing comment target");
+            }
+            info.comments.add(info.new SavedComment(target, readString(in), readString(in)));
+        }
+        info.typeParameterTexts = readStrings(in);
+        info.typeParametersSelection = readSelection(in);
+        info.extendsReplaceSelection = readSelection(in);
+        info.superReplaceSelection = readSelection(in);
+        info.extendsInsertSelection = readSelection(in);
+        info.implementsInsertSelection = readSelection(in);
+        int numInterfaceSelections = in.readInt();
+        if (numInterfaceSelections >= 0) {
+            info.interfaceSelections = new ArrayList<>(numInterfaceSelections);
+            for (int i = 0; i < numInterfaceSelections; i++) {
+                info.interfaceSelections.add(readSelection(in));
+            }
+        }
+        info.isInterface = in.readBoolean();
+        info.isAbstract = in.readBoolean();
+        info.isUnitTest = in.readBoolean();
+        info.isEnum = in.readBoolean();
+        info.hadParseError = in.readBoolean();
+        info.packageStatementExists = in.readBoolean();
+        info.packageStatementSelection = readSelection(in);
+        info.packageNameSelection = readSelection(in);
+        info.packageSemiSelection = readSelection(in);
+        info.packageName = readString(in);
+        return info;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        // Not writeUTF, as comments may be longer than it allows:
+        if (s == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        else if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException
+    {
+        int size = readSize(in);
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static int readSize(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid size: " + size);
+        }
+        return size;
+    }
+
+    private static void writeSelection(DataOutputStream out, Selection s) throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeInt(s.getLine());
+            out.writeInt(s.getColumn());
+            out.writeInt(s.getEndLine());
+            out.writeInt(s.getEndColumn());
+        }
+    }
+
+    private static Selection readSelection(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        SourceLocation start = new SourceLocation(in.readInt(), in.readInt());
+        SourceLocation end = new SourceLocation(in.readInt(), in.readInt());
+        return new Selection(new SourceSpan(start, end));
+    }
 }
@@ -0,0 +1,461 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.pkgmgr;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import bluej.Boot;
+import bluej.Config;
+import bluej.classmgr.BPClassLoader;
+import bluej.parser.symtab.ClassInfo;
+import bluej.pkgmgr.target.CompiledClassInfo;
+import bluej.utility.Debug;
+import bluej.utility.Utility;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A persistent cache of the information about a package's classes which is needed
+ * when the package is opened: for a compiled class, what is found by loading it
+ * (see CompiledClassInfo), and for a class which is not compiled, what is found by
+ * parsing its source (a ClassInfo).  Each entry records a hash of the class file or
+ * source file it was obtained from, and is only used if the file is unchanged, so
+ * that a package which has not changed can be opened without loading or parsing
+ * any classes.
+ *
+ * <p>The information also depends on things outside the file: which other classes
+ * the package contains, and the libraries on the classpath.  These are summarised
+ * as a "stamp" when the cache is saved, and all the entries are ignored if the
+ * stamp no longer matches.  A compiled class's information also depends on its
+ * superclasses, so its entry is not used if a superclass in the package has changed,
+ * or if it has a superclass which is loaded from a directory rather than a library
+ * (for instance, from another package of the project).
+ *
+ * <p>Cache files are kept in the user configuration directory, one per package,
+ * rather than in the project, so that they are not shared or submitted along
+ * with it.  Only the entries for the classes currently in the package are saved,
+ * and the files for packages which no longer exist are deleted when a package is
+ * next opened (see pruneCacheFiles).
+ */
+class ClassInfoCache
+{
+    private static final int MAGIC = 0x424A4349; // "BJCI"
+    private static final int FORMAT_VERSION = 1;
+    private static final byte COMPILED = 0;
+    private static final byte SOURCE = 1;
+
+    // Whether pruneCacheFiles() has been run this session:
+    private static final AtomicBoolean cacheFilesPruned = new AtomicBoolean(false);
+
+    private final File packageDir;
+    private final File cacheFile;
+    private final String stamp;
+
+    // The entries read from the cache file:
+    private final Map<String, Entry> savedEntries = new HashMap<>();
+    // The entries for the classes currently in the package, which will be saved:
+    private final Map<String, Entry> currentEntries = new HashMap<>();
+    private boolean modified = false;
+
+    @OnThread(Tag.Any)
+    private static class Entry
+    {
+        private final byte[] digest;
+        private final Object info; // CompiledClassInfo or ClassInfo
+
+        private Entry(byte[] digest, Object info)
+        {
+            this.digest = digest;
+            this.info = info;
+        }
+    }
+
+    /**
+     * Create a cache for a package, and load the saved entries (if any).
+     *
+     * @param packageDir  The package's directory
+     * @param packageName  The package's qualified name
+     * @param classNames  The names of the classes in the package
+     * @param loader  The project class loader
+     */
+    ClassInfoCache(File packageDir, String packageName, Collection<String> classNames, BPClassLoader loader)
+    {
+        this.packageDir = packageDir.getAbsoluteFile();
+        // The name is only to help anyone looking in the directory; the full path is
+        // checked when loading, so a hash collision will just mean a cache miss:
+        this.cacheFile = new File(getCacheDir(),
+                this.packageDir.getName() + "-" + Integer.toHexString(this.packageDir.getPath().hashCode()) + ".bin");
+        this.stamp = makeStamp(packageName, classNames, loader);
+        load();
+        pruneCacheFiles();
+    }
+
+    private static File getCacheDir()
+    {
+        return new File(Config.getUserConfigDir(), "classinfo-cache");
+    }
+
+    /**
+     * Delete the cache files for packages whose directories no longer exist (because
+     * the project was deleted or moved), and those in an old format, so that they don't
+     * accumulate.  This is done in the background, the first time a package is opened
+     * in each session.
+     */
+    private static void pruneCacheFiles()
+    {
+        if (cacheFilesPruned.getAndSet(true)) {
+            return;
+        }
+
+        File cacheDir = getCacheDir();
+        Utility.runBackground(() -> {
+            File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(".bin"));
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (isObsolete(file)) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Check whether a cache file is in an old format, or is for a package which no
+     * longer exists.  Only the header is read.
+     */
+    @OnThread(Tag.Worker)
+    private static boolean isObsolete(File file)
+    {
+        try (InputStream is = Files.newInputStream(file.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC) {
+                // Not one of ours; leave it alone:
+                return false;
+            }
+            return in.readInt() != FORMAT_VERSION || !new File(in.readUTF()).isDirectory();
+        }
+        catch (IOException e) {
+            // Truncated or unreadable; it will be overwritten if its package is opened:
+            return false;
+        }
+    }
+
+    /**
+     * Summarise the things other than a class's own file which affect its information.
+     */
+    private static String makeStamp(String packageName, Collection<String> classNames, BPClassLoader loader)
+    {
+        List<String> parts = new ArrayList<>();
+        parts.add(Config.isGreenfoot() ? Boot.GREENFOOT_VERSION : Boot.BLUEJ_VERSION);
+        // Superclasses may come from the JDK:
+        parts.add(System.getProperty("java.version"));
+        parts.add(packageName);
+        classNames.stream().sorted().forEach(parts::add);
+        for (File entry : loader.getClassPathAsFiles()) {
+            // Directories (including the project itself) change whenever a file in
+            // them does, so for those we go by the path only:
+            parts.add(entry.isFile() ? entry.getPath() + ":" + entry.length() + ":" + entry.lastModified() : entry.getPath());
+        }
+        MessageDigest digest = newDigest();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void load()
+    {
+        if (!cacheFile.isFile()) {
+            return;
+        }
+
+        try (InputStream is = Files.newInputStream(cacheFile.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !packageDir.getPath().equals(in.readUTF()) || !stamp.equals(in.readUTF())) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte kind = in.readByte();
+                byte[] digest = new byte[in.readUnsignedByte()];
+                in.readFully(digest);
+                Object info = kind == COMPILED ? CompiledClassInfo.readFrom(in) : ClassInfo.readFrom(in);
+                savedEntries.put(name, new Entry(digest, info));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // Corrupt or truncated cache; we'll analyse the classes again and overwrite it:
+            Debug.message(e.getClass().getName() + " while reading class information cache " + cacheFile + ": " + e.getMessage());
+            savedEntries.clear();
+        }
+    }
+
+    /**
+     * Hash the contents of each of the given files (in parallel).
+     *
+     * @param files  The files, by class name
+     * @return The hashes, by class name. Files which could not be read are omitted.
+     */
+    static Map<String, byte[]> digestFiles(Map<String, File> files)
+    {
+        Map<String, byte[]> digests = new ConcurrentHashMap<>();
+        files.entrySet().parallelStream().forEach(e -> {
+            byte[] digest = digestFile(e.getValue());
+            if (digest != null) {
+                digests.put(e.getKey(), digest);
+            }
+        });
+        return digests;
+    }
+
+    @OnThread(Tag.Any)
+    private static byte[] digestFile(File file)
+    {
+        try {
+            return newDigest().digest(Files.readAllBytes(file.toPath()));
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    @OnThread(Tag.Any)
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256:
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the information for the given compiled classes.  Classes which don't have
+     * a valid cache entry are loaded and inspected, in parallel.
+     *
+     * @param classFiles  The class file for each class, by class name
+     * @param loader  The class loader to load classes with
+     * @return The information, by class name.  Classes which could not be loaded
+     *         are omitted.
+     */
+    Map<String, CompiledClassInfo> getCompiledInfo(Map<String, File> classFiles, ClassLoader loader)
+    {
+        Map<String, byte[]> digests = digestFiles(classFiles);
+        Map<String, CompiledClassInfo> result = new HashMap<>();
+        for (Map.Entry<String, byte[]> e : digests.entrySet()) {
+            Entry saved = savedEntries.get(e.getKey());
+            if (saved != null && saved.info instanceof CompiledClassInfo && Arrays.equals(saved.digest, e.getValue())) {
+                result.put(e.getKey(), (CompiledClassInfo) saved.info);
+            }
+        }
+
+        // A class's role depends on its superclasses (a subclass of TestCase is a JUnit 3
+        // test class), so an entry is only used if any superclasses in this package
+        // were unchanged too, and any superclass outside the package is covered by the
+        // stamp (that is, it comes from a library or the JDK):
+        List<String> stale = new ArrayList<>();
+        Map<String, Boolean> inLibrary = new HashMap<>();
+        for (String name : result.keySet()) {
+            String superclass = result.get(name).getSuperclass();
+            for (int depth = 0; superclass != null && classFiles.containsKey(superclass) && depth < classFiles.size(); depth++) {
+                if (!result.containsKey(superclass)) {
+                    break;
+                }
+                superclass = result.get(superclass).getSuperclass();
+            }
+            if (superclass != null && (classFiles.containsKey(superclass)
+                    || !inLibrary.computeIfAbsent(superclass, c -> isLibraryClass(loader, c)))) {
+                stale.add(name);
+            }
+        }
+        result.keySet().removeAll(stale);
+        for (String name : result.keySet()) {
+            currentEntries.put(name, savedEntries.get(name));
+        }
+
+        Map<String, CompiledClassInfo> inspected = new ConcurrentHashMap<>();
+        classFiles.keySet().stream().filter(name -> !result.containsKey(name)).toList().parallelStream().forEach(name -> {
+            Class<?> cl = loadClass(loader, name);
+            if (cl != null) {
+                inspected.put(name, CompiledClassInfo.of(cl));
+            }
+        });
+        for (Map.Entry<String, CompiledClassInfo> e : inspected.entrySet()) {
+            byte[] digest = digests.get(e.getKey());
+            if (digest != null) {
+                currentEntries.put(e.getKey(), new Entry(digest, e.getValue()));
+                modified = true;
+            }
+        }
+        result.putAll(inspected);
+        return result;
+    }
+
+    /**
+     * Check whether a class is loaded from a library jar or the JDK, whose changes are
+     * covered by the stamp, rather than from a directory.
+     */
+    private static boolean isLibraryClass(ClassLoader loader, String className)
+    {
+        if (className.equals("java.lang.Object")) {
+            return true;
+        }
+        URL url = loader.getResource(className.replace('.', '/') + ".class");
+        return url != null && !url.getProtocol().equals("file");
+    }
+
+    /**
+     * Loads a class, in the same way as Project.loadClass but on any thread.
+     */
+    @OnThread(Tag.Any)
+    private static Class<?> loadClass(ClassLoader loader, String className)
+    {
+        try {
+            return loader.loadClass(className);
+        }
+        catch (ClassNotFoundException | SecurityException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the information from parsing the source of the given class, if it is in the cache.
+     *
+     * @param name  The class name
+     * @param digest  The hash of the source file, as returned by digestFiles
+     * @return The information, or null if there is no valid cache entry
+     */
+    ClassInfo getSourceInfo(String name, byte[] digest)
+    {
+        Entry saved = savedEntries.get(name);
+        if (saved != null && saved.info instanceof ClassInfo && Arrays.equals(saved.digest, digest)) {
+            currentEntries.put(name, saved);
+            return (ClassInfo) saved.info;
+        }
+        return null;
+    }
+
+    /**
+     * Record the information from parsing the source of the given class.
+     *
+     * @param name  The class name
+     * @param digest  The hash of the source file that was parsed, as returned by digestFiles
+     * @param info  The information from parsing the source
+     */
+    void putSourceInfo(String name, byte[] digest, ClassInfo info)
+    {
+        currentEntries.put(name, new Entry(digest, info));
+        modified = true;
+    }
+
+    /**
+     * Save the cache, if it has changed. The file is written in the background;
+     * failure to save is reported but otherwise ignored.
+     */
+    void save()
+    {
+        if (!modified && currentEntries.size() == savedEntries.size()) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(packageDir.getPath());
+            out.writeUTF(stamp);
+            out.writeInt(currentEntries.size());
+            for (Map.Entry<String, Entry> e : currentEntries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                if (entry.info instanceof CompiledClassInfo) {
+                    out.writeByte(COMPILED);
+                    writeDigest(out, entry.digest);
+                    ((CompiledClassInfo) entry.info).writeTo(out);
+                }
+                else {
+                    out.writeByte(SOURCE);
+                    writeDigest(out, entry.digest);
+                    ((ClassInfo) entry.info).writeTo(out);
+                }
+            }
+        }
+        catch (IOException e) {
+            // Not possible when writing to a byte array:
+            Debug.reportError(e);
+            return;
+        }
+
+        File file = cacheFile;
+        byte[] contents = bytes.toByteArray();
+        Utility.runBackground(() -> {
+            File tempFile = null;
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+                Files.write(tempFile.toPath(), contents);
+                // Replace in one step so that a concurrent reader never sees a partial file:
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                Debug.reportError("Could not save class information cache " + file, e);
+                if (tempFile != null) {
+                    tempFile.delete();
+                }
+            }
+        });
+    }
+
+    private static void writeDigest(DataOutputStream out, byte[] digest) throws IOException
+    {
+        out.writeByte(digest.length);
+        out.write(digest);
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2023 Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2023,2026 Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -38,6 +38,7 @@ import bluej.views.CallableView;
 import com.google.common.collect.Sets;
 import javafx.application.Platform;
 
+import bluej.classmgr.BPClassLoader;
 import bluej.compiler.CompileInputFile;
 import bluej.compiler.CompileReason;
 import bluej.compiler.CompileType;
@@ -208,6 +209,11 @@ public final class Package
     @OnThread(value = Tag.FXPlatform)
     private final List<Dependency> extendsArrows = new ArrayList<>();
 
+    // Targets whose uses arrows need to be laid out again, because they (or targets
+    // they have arrows to or from) have moved or been resized:
+    @OnThread(value = Tag.FXPlatform)
+    private final Set<DependentTarget> arrowLayoutInvalid = Collections.newSetFromMap(new IdentityHashMap<>());
+
     /** True if we currently have a compile queued up waiting for debugger to become idle */
     @OnThread(Tag.FXPlatform)
     private boolean waitingForIdleToCompile = false;
@@ -990,6 +996,11 @@ public final class Package
                 }
             }
 
+            // With incremental compilation, dependents are only invalidated (transitively,
+            // as here) if compiling the out-of-date classes changes their ABI:
+            if (ClassFileAbi.isIncrementalCompilationEnabled()) {
+                invalidated.clear();
+            }
             while (! invalidated.isEmpty()) {
                 ClassTarget ct = invalidated.removeFirst();
                 for (Dependency dependent : ct.dependentsAsList()) {
@@ -1004,22 +1015,51 @@ public final class Package
                 }
             }
 
-            // Update class roles
+            // Update class roles. Loading and inspecting compiled classes is done in
+            // parallel, and both that and parsing the source of other classes are skipped
+            // for classes whose files haven't changed since the information was cached:
+            Map<String, File> classFiles = new HashMap<>();
+            Map<String, File> sourceFiles = new HashMap<>();
+            for (Target target : targetsCopy) {
+                if (target instanceof ClassTarget) {
+                    ClassTarget ct = (ClassTarget) target;
+                    if (ct.isCompiled()) {
+                        classFiles.put(ct.getQualifiedName(), ct.getClassFile());
+                    }
+                    else {
+                        sourceFiles.put(ct.getQualifiedName(), ct.getJavaSourceFile());
+                    }
+                }
+            }
+            BPClassLoader loader = getProject().getClassLoader();
+            ClassInfoCache infoCache = new ClassInfoCache(getPath(), getQualifiedName(), getAllClassnames(), loader);
+            Map<String, CompiledClassInfo> compiledInfo = infoCache.getCompiledInfo(classFiles, loader);
+            Map<String, byte[]> sourceDigests = ClassInfoCache.digestFiles(sourceFiles);
+
             for (Target target : targetsCopy) {
 
                 if (target instanceof ClassTarget) {
                     ClassTarget ct = (ClassTarget) target;
                     if (ct.isCompiled()) {
-                        Class<?> cl = loadClass(ct.getQualifiedName());
-                        ct.determineRole(cl);
-                        ct.analyseDependencies(cl);
-                        ct.analyseTypeParams(cl);
-                        if (cl == null) {
+                        CompiledClassInfo info = compiledInfo.get(ct.getQualifiedName());
+                        if (info != null) {
+                            ct.analyseCompiledClass(info);
+                        }
+                        else {
+                            ct.determineRole(null);
                             ct.setState(State.NEEDS_COMPILE);
                         }
                     }
                     else {
-                        ct.analyseSource();
+                        byte[] digest = sourceDigests.get(ct.getQualifiedName());
+                        ClassInfo cachedInfo = digest == null ? null : infoCache.getSourceInfo(ct.getQualifiedName(), digest);
+                        if (cachedInfo != null) {
+                            ct.getSourceInfo().setInfo(cachedInfo);
+                        }
+                        ClassInfo info = ct.analyseSource();
+                        if (cachedInfo == null && info != null && digest != null) {
+                            infoCache.putSourceInfo(ct.getQualifiedName(), digest, info);
+                        }
                         try {
                             if ( !ct.getSourceType().equals(SourceType.Stride))
                                 ct.enforcePackage(getQualifiedName());
@@ -1030,6 +1070,7 @@ public final class Package
                     }
                 }
             }
+            infoCache.save();
 
             // our associations are based on name so we mustn't deal with
             // them until all classes/packages have been loaded
@@ -1206,6 +1247,72 @@ public final class Package
             ed.graphChanged();
     }
 
+    /**
+     * Notification that files in the package directory have been created, changed
+     * or deleted, by BlueJ or by another program.  This is an incremental version
+     * of reload(): new source files and sub-directories are added as targets, the
+     * source of changed classes is re-analysed (or reloaded, in an open editor with
+     * no unsaved changes), and classes whose class file is deleted or older than
+     * their source are marked as needing compilation.  As with reload(), targets are
+     * not removed when their files are deleted.
+     *
+     * @param fileNames  The names of the changed files within the package directory
+     */
+    public void filesChangedOnDisk(Set<String> fileNames)
+    {
+        String javaSuffix = "." + SourceType.Java.toString().toLowerCase();
+        String strideSuffix = "." + SourceType.Stride.toString().toLowerCase();
+        boolean graphChanged = false;
+
+        for (String fileName : fileNames) {
+            boolean isSource = fileName.endsWith(javaSuffix) || fileName.endsWith(strideSuffix);
+            boolean isClass = fileName.endsWith(".class");
+            if (!isSource && !isClass) {
+                File file = new File(getPath(), fileName);
+                if (JavaNames.isIdentifier(fileName) && getTarget(fileName) == null
+                        && new SubPackageFilter().accept(file)) {
+                    Target newtarget = addPackage(fileName);
+                    if (getEditor() != null) {
+                        getEditor().findSpaceForVertex(newtarget);
+                    }
+                    graphChanged = true;
+                }
+                continue;
+            }
+
+            String targetName = fileName.substring(0, fileName.lastIndexOf('.'));
+            // Ignore inner classes and our own temporary files:
+            if (!JavaNames.isIdentifier(targetName) || targetName.indexOf('$') != -1
+                    || targetName.startsWith(Invoker.SHELLNAME)) {
+                continue;
+            }
+
+            Target target = getTarget(targetName);
+            if (target == null && isSource && new File(getPath(), fileName).isFile()) {
+                ClassTarget ct = addClass(targetName);
+                if (getEditor() != null) {
+                    getEditor().findSpaceForVertex(ct);
+                }
+                ct.analyseSource();
+                graphChanged = true;
+            }
+            else if (target instanceof ClassTarget) {
+                ClassTarget ct = (ClassTarget) target;
+                if (isSource) {
+                    ct.sourceFileChangedOnDisk();
+                }
+                if (ct.isCompiled() && (!ct.getClassFile().exists() || !ct.upToDate())) {
+                    ct.setState(State.NEEDS_COMPILE);
+                }
+            }
+        }
+
+        PackageEditor ed = getEditor();
+        if (graphChanged && ed != null) {
+            ed.graphChanged();
+        }
+    }
+
     /**
      * ReRead the pkg file and update the position of the targets in the graph
      * @throws IOException
@@ -1489,8 +1596,7 @@ public final class Package
             {
                 if (type.keepClasses())
                 {
-                    project.removeClassLoader();
-                    project.newRemoteClassLoaderLeavingBreakpoints();
+                    project.prepareForCompile();
                 }
                 ArrayList<FXCompileObserver> observers = new ArrayList<>(compileObservers);
                 if (compObserver != null)
@@ -1591,8 +1697,7 @@ public final class Package
         if (ct != null || assocTarget != null) {
             if (type.keepClasses())
             {
-                project.removeClassLoader();
-                project.newRemoteClassLoaderLeavingBreakpoints();
+                project.prepareForCompile();
             }
 
             if (ct != null) {
@@ -1668,8 +1773,7 @@ public final class Package
             }
             if (!compileTargets.isEmpty())
             {
-                project.removeClassLoader();
-                project.newRemoteClassLoader();
+                project.prepareForCompile();
 
                 doCompile(compileTargets, new PackageCompileObserver(compileObservers), CompileReason.REBUILD, CompileType.EXPLICIT_USER_COMPILE);
             }
@@ -1744,6 +1848,11 @@ public final class Package
             for (ClassTarget ct : toCompile) {
                 ct.setQueued(false);
             }
+            if (type.keepClasses())
+            {
+                // Nothing was compiled, but the classes may have been prepared for it:
+                project.classesRecompiled(null, false);
+            }
         }
     }
 
@@ -1764,6 +1873,12 @@ public final class Package
             JobQueue.getJobQueue().addJob(srcFiles.toArray(new CompileInputFile[0]), observer, project.getClassLoader(), project.getProjectDir(),
                 ! PrefMgr.getFlag(PrefMgr.SHOW_UNCHECKED), project.getProjectCharset(), reason, type);
         }
+        else if (type.keepClasses())
+        {
+            // There will be no compilation to bring the classes in the debug VM up to
+            // date (see Project.prepareForCompile), so do it now:
+            project.classesRecompiled(null, false);
+        }
     }
 
     /**
@@ -2019,6 +2134,37 @@ public final class Package
         }
     }
 
+    /**
+     * Mark the uses arrows into and out of the given target as needing to be laid
+     * out again.  This is done when layOutArrows() is next called (which happens
+     * before the diagram is repainted), once for each target however many times
+     * it has been marked.
+     */
+    @OnThread(Tag.FXPlatform)
+    public void invalidateArrowLayout(DependentTarget target)
+    {
+        arrowLayoutInvalid.add(target);
+    }
+
+    /**
+     * Lay out the uses arrows of the targets marked by invalidateArrowLayout()
+     * since this was last called.
+     */
+    @OnThread(Tag.FXPlatform)
+    public void layOutArrows()
+    {
+        if (arrowLayoutInvalid.isEmpty())
+            return;
+
+        List<DependentTarget> invalid = new ArrayList<>(arrowLayoutInvalid);
+        arrowLayoutInvalid.clear();
+        for (DependentTarget dt : invalid)
+        {
+            dt.recalcInUses();
+            dt.recalcOutUses();
+        }
+    }
+
     /**
      * Lay out the arrows between targets.
      */
@@ -2606,7 +2752,7 @@ public final class Package
             this.chainedObservers = new ArrayList<>(chainedObservers);
         }
 
-        private void markAsCompiling(CompileInputFile[] sources, int compilationSequence)
+        private void markAsCompiling(CompileInputFile[] sources, int compilationSequence, CompileType type)
         {
             for (int i = 0; i < sources.length; i++) {
                 String fileName = sources[i].getJavaCompileInputFile().getPath();
@@ -2617,7 +2763,7 @@ public final class Package
 
                     if (t instanceof ClassTarget) {
                         ClassTarget ct = (ClassTarget) t;
-                        ct.markCompiling(compilationSequence);
+                        ct.markCompiling(compilationSequence, type);
                     }
                 }
             }
@@ -2657,7 +2803,7 @@ public final class Package
             }
 
             // Change view of source classes.
-            markAsCompiling(sources, compilationSequence);
+            markAsCompiling(sources, compilationSequence, type);
 
             for (FXCompileObserver chainedObserver : chainedObservers)
             {
@@ -2713,21 +2859,35 @@ public final class Package
         {
             List<ClassTarget> targetsToAnalyse = new ArrayList<>();
             List<ClassTarget> readyToCompileList = new ArrayList<>();
+            List<ClassTarget> abiChangedList = new ArrayList<>();
+            List<ClassTarget> compiledTargets = new ArrayList<>();
+            boolean allTargetsFound = true;
             for (int i = 0; i < sources.length; i++) {
                 String filename = sources[i].getJavaCompileInputFile().getPath();
 
                 String fullName = getProject().convertPathToPackageName(filename);
-                if (fullName == null) {
-                    continue;
-                }
-
-                ClassTarget t = (ClassTarget) targets.get(JavaNames.getBase(fullName));
+                ClassTarget t = fullName == null ? null : (ClassTarget) targets.get(JavaNames.getBase(fullName));
 
                 if (t == null) {
+                    allTargetsFound = false;
                     continue;
                 }
 
                 t.markCompiled(successful, type);
+                compiledTargets.add(t);
+            }
+
+            // Bring the classes in the debug VM up to date before anything is loaded from them:
+            if (type.keepClasses())
+            {
+                project.classesRecompiled(allTargetsFound ? compiledTargets : null, successful);
+            }
+
+            for (ClassTarget t : compiledTargets) {
+                if (t.isAbiChangedByLastCompile())
+                {
+                    abiChangedList.add(t);
+                }
                 if (t.getState() == State.COMPILED)
                 {
                     targetsToAnalyse.add(t);
@@ -2786,6 +2946,12 @@ public final class Package
                 classTarget.analyseAfterCompile();
             }
 
+            // With incremental compilation, dependents of classes whose ABI has changed
+            // have not yet been invalidated, so do so now, before the end of the compilation
+            // is reported; they are recompiled (below) in a compilation of their own:
+            boolean dependentsInvalidated = ClassFileAbi.isIncrementalCompilationEnabled()
+                    && type.keepClasses() && invalidateDependents(abiChangedList, sources);
+
             if (type.keepClasses())
             {
                 setStatus(compileDone);
@@ -2801,6 +2967,52 @@ public final class Package
             {
                 chainedObserver.endCompile(sources, successful, type, compilationSequence);
             }
+
+            if (dependentsInvalidated)
+            {
+                compileOnceIdle(null, type == CompileType.EXPLICIT_USER_COMPILE ? CompileReason.USER : CompileReason.MODIFIED, type);
+            }
+        }
+
+        /**
+         * Invalidate the dependents of the given classes (whose ABI has changed), and their
+         * dependents in turn, except for those which were compiled alongside them, so that
+         * they will be recompiled when the package is next compiled.  The whole chain is
+         * invalidated, as with non-incremental compilation, because the dependency graph does
+         * not record every use (e.g. a call to a method of a type which is only returned by a
+         * method of another class), so a class can be affected by a change to a class it does
+         * not directly depend on.
+         *
+         * @return true if any dependents were invalidated.
+         */
+        private boolean invalidateDependents(List<ClassTarget> abiChangedList, CompileInputFile[] sources)
+        {
+            Set<File> compiledSources = new HashSet<>();
+            for (CompileInputFile source : sources)
+            {
+                compiledSources.add(source.getJavaCompileInputFile());
+            }
+
+            boolean invalidated = false;
+            Set<ClassTarget> visited = new HashSet<>(abiChangedList);
+            LinkedList<ClassTarget> toVisit = new LinkedList<>(abiChangedList);
+            while (!toVisit.isEmpty())
+            {
+                for (DependentTarget d : toVisit.removeFirst().dependents())
+                {
+                    if (d instanceof ClassTarget dependent && dependent.hasSourceCode() && visited.add(dependent))
+                    {
+                        toVisit.add(dependent);
+                        if (dependent.isCompiled() && !dependent.isQueued()
+                                && !compiledSources.contains(dependent.getJavaSourceFile()))
+                        {
+                            dependent.markModified();
+                            invalidated = true;
+                        }
+                    }
+                }
+            }
+            return invalidated;
         }
     }
 
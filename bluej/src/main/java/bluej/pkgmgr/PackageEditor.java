@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2012,2013,2014,2016,2017,2018,2019,2020,2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2012,2013,2014,2016,2017,2018,2019,2020,2021,2022,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -38,11 +38,12 @@ import bluej.pkgmgr.target.Target;
 import bluej.testmgr.record.InvokerRecord;
 import bluej.utility.DialogManager;
 import bluej.utility.Utility;
+import bluej.utility.javafx.FXPlatformRunnable;
 import bluej.utility.javafx.JavaFXUtil;
-import bluej.utility.javafx.ResizableCanvas;
 import bluej.views.CallableView;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Node;
@@ -51,6 +52,8 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
@@ -104,10 +107,23 @@ public final class PackageEditor extends StackPane
     private final Pane selectionLayer = new Pane();
     // The label to show a massage to create or add a class
     protected Label noClassesExistedMessage;
-    // The layer at the back where we draw the arrows:
-    private final Canvas arrowLayer = new ResizableCanvas();
+    // The layer at the back where we draw the arrows.  This only covers the part
+    // of the diagram visible in the scroll pane (see actualRepaint):
+    private final Canvas arrowLayer = new Canvas();
     // Boolean remembering whether we've already scheduled a repaint.
     private boolean aboutToRepaint = false;
+    // The scroll pane we are shown in (null if not known), and the actions to remove
+    // our listeners from it:
+    private ScrollPane scrollPane;
+    private final List<FXPlatformRunnable> scrollPaneListenerRemovers = new ArrayList<>();
+    // If true, the whole diagram is painted, not just the visible part:
+    private boolean paintingAll = false;
+    // The area of the diagram covered by the arrow layer when last painted (null if
+    // not yet painted), and the arrows which were painted in it, keyed by dependency:
+    private Rectangle2D paintedArea;
+    private Map<Object, ArrowInfo> paintedArrows = new IdentityHashMap<>();
+    // The key for the extends arrow being created, in paintedArrows:
+    private static final Object NEW_EXTENDS_KEY = new Object();
     // The ContextMenu that is currently being shown on screen (null if not visible)
     @OnThread(Tag.FXPlatform)
     private ContextMenu showingContextMenu;
@@ -156,6 +172,8 @@ public final class PackageEditor extends StackPane
         this.overlay = overlay;
 
         this.selectionController.addSelectionListener(sel -> pmf.notifySelectionChanged(sel));
+        // Selected targets are always shown, so that they can take focus:
+        this.selectionController.addSelectionListener(sel -> sel.forEach(t -> t.setCulled(false)));
         JavaFXUtil.addStyleClass(this, "class-diagram");
         // Both class layers have transparent background to see through to lower layers:
         frontClassLayer.setBackground(null);
@@ -164,8 +182,10 @@ public final class PackageEditor extends StackPane
         // in order to click on the back layer:
         frontClassLayer.setPickOnBounds(false);
 
-        JavaFXUtil.addChangeListenerPlatform(arrowLayer.widthProperty(), s -> repaint());
-        JavaFXUtil.addChangeListenerPlatform(arrowLayer.heightProperty(), s -> repaint());
+        // The arrow layer is sized and positioned by actualRepaint:
+        arrowLayer.setManaged(false);
+        JavaFXUtil.addChangeListenerPlatform(widthProperty(), s -> repaint());
+        JavaFXUtil.addChangeListenerPlatform(heightProperty(), s -> repaint());
         // The mouse events occur on us not on the selection layer.
         // We don't want the display getting in the way of mouse events:
         selectionLayer.setMouseTransparent(true);
@@ -439,6 +459,9 @@ public final class PackageEditor extends StackPane
     private static final int ARROW_SIZE = 18; // pixels
     private static final double ARROW_ANGLE = Math.PI / 6; // radians
     private static final double DASHES[] = {5.0f, 2.0f};
+    // Targets within this distance of the visible area are not hidden, to save
+    // showing and hiding them repeatedly when scrolling a little way:
+    private static final int CULL_MARGIN = 100;
 
     /**
      * Schedules a repaint.  The repaint is done with a runLater,
@@ -455,6 +478,39 @@ public final class PackageEditor extends StackPane
         }
     }
 
+    /**
+     * Set the scroll pane which we are shown in (or null when we are removed from it).
+     * Only the part of the diagram which is visible in the scroll pane is painted, so
+     * we repaint when it scrolls.
+     */
+    public void setScrollPane(ScrollPane scrollPane)
+    {
+        scrollPaneListenerRemovers.forEach(FXPlatformRunnable::run);
+        scrollPaneListenerRemovers.clear();
+        this.scrollPane = scrollPane;
+        if (scrollPane != null)
+        {
+            scrollPaneListenerRemovers.add(JavaFXUtil.addChangeListenerPlatform(scrollPane.hvalueProperty(), s -> repaint()));
+            scrollPaneListenerRemovers.add(JavaFXUtil.addChangeListenerPlatform(scrollPane.vvalueProperty(), s -> repaint()));
+            scrollPaneListenerRemovers.add(JavaFXUtil.addChangeListenerPlatform(scrollPane.widthProperty(), s -> repaint()));
+            scrollPaneListenerRemovers.add(JavaFXUtil.addChangeListenerPlatform(scrollPane.heightProperty(), s -> repaint()));
+        }
+        repaint();
+    }
+
+    /**
+     * Take a snapshot of the whole diagram, including the parts not visible in
+     * the scroll pane.
+     */
+    public void snapshotAll(WritableImage image)
+    {
+        paintingAll = true;
+        actualRepaint();
+        snapshot(null, image);
+        paintingAll = false;
+        repaint();
+    }
+
     /** Records that the mouse is now hovering over the given target */
     public void setMouseIn(Target target)
     {
@@ -533,12 +589,25 @@ public final class PackageEditor extends StackPane
         return selectionController.getSelection();
     }
 
+    /**
+     * The details needed to draw a dependency arrow.  Instances are compared (with
+     * equals) to see whether an arrow needs to be redrawn.
+     */
+    @OnThread(Tag.FXPlatform)
+    private static interface ArrowInfo
+    {
+        /** Get a rectangle which contains everything drawn for the arrow */
+        public Rectangle2D getBounds();
+
+        public void draw(GraphicsContext g);
+    }
+
     /**
      * A class caching the vital details needed to draw an extends dependency line,
      * which could be either real and finished, or in-progress of being created.
      */
     @OnThread(Tag.FXPlatform)
-    private static class ExtendsDepInfo
+    private static class ExtendsDepInfo implements ArrowInfo
     {
         private final Dependency.Line line;
         private final boolean selected;
@@ -591,41 +660,23 @@ public final class PackageEditor extends StackPane
             selected = false;
             creating = true;
         }
-    }
-
-    /**
-     * Does the actual repaint of the arrowLayer (do not call directly;
-     * see repaint method).
-     */
-    private void actualRepaint()
-    {
-        aboutToRepaint = false;
-        List<Dependency> extendsDeps = isShowExtends() ? new ArrayList<>(pkg.getExtendsArrows()) : Collections.emptyList();;
-        List<UsesDependency> usesDeps = isShowUses() ? new ArrayList<>(pkg.getUsesArrows()) : Collections.emptyList();
 
-        List<ExtendsDepInfo> extendsLines = new ArrayList<>(Utility.mapList(extendsDeps, ExtendsDepInfo::new));
-        if (extendsSubClass != null)
+        @Override
+        public Rectangle2D getBounds()
         {
-            if (extendsSuperClassHover != null)
-            {
-                extendsLines.add(new ExtendsDepInfo(extendsSubClass, extendsSuperClassHover));
-            }
-            else
-            {
-                Point2D p = arrowLayer.sceneToLocal(newExtendsDestX, newExtendsDestY);
-                extendsLines.add(new ExtendsDepInfo(extendsSubClass, p.getX(), p.getY()));
-            }
+            // The arrow head extends up to ARROW_SIZE from the end point, plus the line width:
+            double minX = Math.min(line.from.getX(), line.to.getX()) - ARROW_SIZE - 2;
+            double minY = Math.min(line.from.getY(), line.to.getY()) - ARROW_SIZE - 2;
+            double maxX = Math.max(line.from.getX(), line.to.getX()) + ARROW_SIZE + 2;
+            double maxY = Math.max(line.from.getY(), line.to.getY()) + ARROW_SIZE + 2;
+            return new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
         }
-        
-        
-        GraphicsContext g = arrowLayer.getGraphicsContext2D();
-        g.clearRect(0, 0, arrowLayer.getWidth(), arrowLayer.getHeight());
 
-        for (ExtendsDepInfo d : extendsLines)
+        @Override
+        public void draw(GraphicsContext g)
         {
-            g.setStroke(d.creating ? Color.BLUE : Color.BLACK);
-            g.setLineWidth(d.selected ? 3.0 : 1.0);
-            Dependency.Line line = d.line;
+            g.setStroke(creating ? Color.BLUE : Color.BLACK);
+            g.setLineWidth(selected ? 3.0 : 1.0);
             double fromY = line.from.getY();
             double fromX = line.from.getX();
             double toY = line.to.getY();
@@ -644,7 +695,7 @@ public final class PackageEditor extends StackPane
                     toY - (ARROW_SIZE * Math.sin(angle - ARROW_ANGLE))};
             g.setLineDashes();
             g.strokePolygon(xPoints, yPoints, 3);
-            if (d.type==Dependency.Type.IMPLEMENTS)
+            if (type==Dependency.Type.IMPLEMENTS)
             {
                 g.setLineDashes(DASHES);
             }
@@ -655,50 +706,95 @@ public final class PackageEditor extends StackPane
             g.strokeLine(fromX, fromY, arrowJoinX, arrowJoinY);
         }
 
-        for (UsesDependency d : usesDeps)
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof ExtendsDepInfo))
+                return false;
+            ExtendsDepInfo other = (ExtendsDepInfo) o;
+            return line.from.equals(other.line.from) && line.to.equals(other.line.to)
+                    && selected == other.selected && creating == other.creating && type == other.type;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(line.from, line.to, selected, creating, type);
+        }
+    }
+
+    /**
+     * A class caching the details needed to draw a uses dependency line.
+     */
+    @OnThread(Tag.FXPlatform)
+    private static class UsesDepInfo implements ArrowInfo
+    {
+        // These should all be rounded to the nearest integer+0.5 value:
+        private final double srcX, srcY, dstX, dstY;
+        private final boolean startTop, endLeft;
+
+        public UsesDepInfo(UsesDependency d)
+        {
+            srcX = d.getSourceX();
+            srcY = d.getSourceY();
+            dstX = d.getDestX();
+            dstY = d.getDestY();
+            startTop = d.isStartTop();
+            endLeft = d.isEndLeft();
+        }
+
+        @Override
+        public Rectangle2D getBounds()
+        {
+            // All the corners are within 15 pixels of the end points (or between them),
+            // and the arrow head is within 10:
+            double minX = Math.min(srcX, dstX) - 20;
+            double minY = Math.min(srcY, dstY) - 20;
+            double maxX = Math.max(srcX, dstX) + 20;
+            double maxY = Math.max(srcY, dstY) + 20;
+            return new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+        }
+
+        @Override
+        public void draw(GraphicsContext g)
         {
-            // Special case - don't draw a dependency line between a Foo class and the FooTest class:
-            if (d.to instanceof DependentTarget && ((DependentTarget)d.to).getAssociation() == d.from)
-                continue;
-            
             g.setLineWidth(1.0);
             g.setLineDashes(DASHES);
-            // These should all be rounded to the nearest integer+0.5 value:
-            double src_x = d.getSourceX();
-            double src_y = d.getSourceY();
-            double dst_x = d.getDestX();
-            double dst_y = d.getDestY();
+            double src_x = srcX;
+            double src_y = srcY;
+            double dst_x = dstX;
+            double dst_y = dstY;
 
             g.setStroke(Color.BLACK);
             // Draw the end arrow
-            int delta_x = d.isEndLeft() ? -10 : 10;
+            int delta_x = endLeft ? -10 : 10;
 
             g.strokeLine(dst_x, dst_y, dst_x + delta_x, dst_y + 4);
             g.strokeLine(dst_x, dst_y, dst_x + delta_x, dst_y - 4);
             g.setLineDashes(DASHES);
 
             // Draw the start
-            double corner_y = src_y + (d.isStartTop() ? -15 : 15);
+            double corner_y = src_y + (startTop ? -15 : 15);
             g.strokeLine(src_x, corner_y, src_x, src_y);
             src_y = corner_y;
 
             // Draw the last line segment
-            double corner_x = dst_x + (d.isEndLeft() ? -15 : 15);
+            double corner_x = dst_x + (endLeft ? -15 : 15);
             g.strokeLine(corner_x, dst_y, dst_x, dst_y);
             dst_x = corner_x;
 
             // if arrow vertical corner, draw first segment up to corner
-            if ((src_y != dst_y) && (d.isStartTop() == (src_y < dst_y))) {
-                corner_x = Utility.roundHalf(((src_x + dst_x) / 2) + (d.isEndLeft() ? 15 : -15));
-                corner_x = (d.isEndLeft() ? Math.min(dst_x, corner_x) : Math.max(dst_x, corner_x));
+            if ((src_y != dst_y) && (startTop == (src_y < dst_y))) {
+                corner_x = Utility.roundHalf(((src_x + dst_x) / 2) + (endLeft ? 15 : -15));
+                corner_x = (endLeft ? Math.min(dst_x, corner_x) : Math.max(dst_x, corner_x));
                 g.strokeLine(src_x, src_y, corner_x, src_y);
                 src_x = corner_x;
             }
 
             // if arrow horiz. corner, draw first segment up to corner
-            if ((src_x != dst_x) && (d.isEndLeft() == (src_x > dst_x))) {
-                corner_y = Utility.roundHalf(((src_y + dst_y) / 2) + (d.isStartTop() ? 15 : -15));
-                corner_y = (d.isStartTop() ? Math.min(src_y, corner_y) : Math.max(src_y, corner_y));
+            if ((src_x != dst_x) && (endLeft == (src_x > dst_x))) {
+                corner_y = Utility.roundHalf(((src_y + dst_y) / 2) + (startTop ? 15 : -15));
+                corner_y = (startTop ? Math.min(src_y, corner_y) : Math.max(src_y, corner_y));
                 g.strokeLine(dst_x, corner_y, dst_x, dst_y);
                 dst_y = corner_y;
             }
@@ -707,6 +803,187 @@ public final class PackageEditor extends StackPane
             g.strokeLine(src_x, src_y, src_x, dst_y);
             g.strokeLine(src_x, dst_y, dst_x, dst_y);
         }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof UsesDepInfo))
+                return false;
+            UsesDepInfo other = (UsesDepInfo) o;
+            return srcX == other.srcX && srcY == other.srcY && dstX == other.dstX && dstY == other.dstY
+                    && startTop == other.startTop && endLeft == other.endLeft;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(srcX, srcY, dstX, dstY, startTop, endLeft);
+        }
+    }
+
+    /**
+     * Does the actual repaint of the arrowLayer (do not call directly;
+     * see repaint method).
+     *
+     * Only the part of the diagram visible in the scroll pane is painted: the arrow
+     * layer covers just that area, arrows outside it aren't drawn, and targets outside
+     * it are hidden.  If the area hasn't changed since the last repaint, only the region
+     * around arrows which have changed (appeared, disappeared or moved) is redrawn.
+     */
+    private void actualRepaint()
+    {
+        aboutToRepaint = false;
+        // Lay out the arrows of any targets which have moved since the last repaint:
+        pkg.layOutArrows();
+
+        Rectangle2D area = getPaintArea();
+        // Before we have been laid out, we can't tell what's visible:
+        if (area.getWidth() > 0 && area.getHeight() > 0)
+            cullTargets(area);
+
+        // Find the arrows in the area, in the order they are drawn:
+        List<ArrowInfo> arrows = new ArrayList<>();
+        Map<Object, ArrowInfo> arrowsByKey = new IdentityHashMap<>();
+        if (isShowExtends())
+        {
+            for (Dependency d : pkg.getExtendsArrows())
+            {
+                addArrow(arrows, arrowsByKey, d, new ExtendsDepInfo(d), area);
+            }
+        }
+        if (extendsSubClass != null)
+        {
+            if (extendsSuperClassHover != null)
+            {
+                addArrow(arrows, arrowsByKey, NEW_EXTENDS_KEY, new ExtendsDepInfo(extendsSubClass, extendsSuperClassHover), area);
+            }
+            else
+            {
+                Point2D p = sceneToLocal(newExtendsDestX, newExtendsDestY);
+                addArrow(arrows, arrowsByKey, NEW_EXTENDS_KEY, new ExtendsDepInfo(extendsSubClass, p.getX(), p.getY()), area);
+            }
+        }
+        if (isShowUses())
+        {
+            for (UsesDependency d : pkg.getUsesArrows())
+            {
+                // Special case - don't draw a dependency line between a Foo class and the FooTest class:
+                if (d.to instanceof DependentTarget && ((DependentTarget)d.to).getAssociation() == d.from)
+                    continue;
+                addArrow(arrows, arrowsByKey, d, new UsesDepInfo(d), area);
+            }
+        }
+
+        // Work out which region needs redrawing:
+        Rectangle2D dirty = null;
+        if (!area.equals(paintedArea))
+        {
+            arrowLayer.relocate(area.getMinX(), area.getMinY());
+            arrowLayer.setWidth(area.getWidth());
+            arrowLayer.setHeight(area.getHeight());
+            dirty = area;
+        }
+        else
+        {
+            for (Map.Entry<Object, ArrowInfo> e : arrowsByKey.entrySet())
+            {
+                ArrowInfo old = paintedArrows.get(e.getKey());
+                if (!e.getValue().equals(old))
+                {
+                    dirty = union(dirty, e.getValue().getBounds());
+                    if (old != null)
+                        dirty = union(dirty, old.getBounds());
+                }
+            }
+            for (Map.Entry<Object, ArrowInfo> e : paintedArrows.entrySet())
+            {
+                if (!arrowsByKey.containsKey(e.getKey()))
+                    dirty = union(dirty, e.getValue().getBounds());
+            }
+        }
+        paintedArea = area;
+        paintedArrows = arrowsByKey;
+        if (dirty == null)
+            return;
+
+        // Round out to whole pixels, so that no pixel is partly cleared:
+        double dirtyX = Math.floor(dirty.getMinX());
+        double dirtyY = Math.floor(dirty.getMinY());
+        Rectangle2D redraw = new Rectangle2D(dirtyX, dirtyY,
+                Math.ceil(dirty.getMaxX()) - dirtyX, Math.ceil(dirty.getMaxY()) - dirtyY);
+
+        GraphicsContext g = arrowLayer.getGraphicsContext2D();
+        g.save();
+        // We draw in diagram co-ordinates; the area is at whole pixels, so lines stay sharp:
+        g.translate(-area.getMinX(), -area.getMinY());
+        g.beginPath();
+        g.rect(redraw.getMinX(), redraw.getMinY(), redraw.getWidth(), redraw.getHeight());
+        g.clip();
+        g.clearRect(redraw.getMinX(), redraw.getMinY(), redraw.getWidth(), redraw.getHeight());
+        for (ArrowInfo arrow : arrows)
+        {
+            if (arrow.getBounds().intersects(redraw))
+                arrow.draw(g);
+        }
+        g.restore();
+    }
+
+    /**
+     * Add an arrow to those to be painted, if it is within the painted area.
+     */
+    private static void addArrow(List<ArrowInfo> arrows, Map<Object, ArrowInfo> arrowsByKey, Object key, ArrowInfo arrow, Rectangle2D area)
+    {
+        if (arrow.getBounds().intersects(area))
+        {
+            arrows.add(arrow);
+            arrowsByKey.put(key, arrow);
+        }
+    }
+
+    private static Rectangle2D union(Rectangle2D a, Rectangle2D b)
+    {
+        if (a == null)
+            return b;
+        double minX = Math.min(a.getMinX(), b.getMinX());
+        double minY = Math.min(a.getMinY(), b.getMinY());
+        return new Rectangle2D(minX, minY, Math.max(a.getMaxX(), b.getMaxX()) - minX, Math.max(a.getMaxY(), b.getMaxY()) - minY);
+    }
+
+    /**
+     * Get the area of the diagram to paint, in our co-ordinates: the part visible in
+     * the scroll pane, rounded out to whole pixels (or the whole diagram, if we don't
+     * know the scroll pane, or are painting everything).
+     */
+    private Rectangle2D getPaintArea()
+    {
+        double minX = 0, minY = 0, maxX = getWidth(), maxY = getHeight();
+        if (scrollPane != null && !paintingAll && getScene() != null && scrollPane.getScene() == getScene())
+        {
+            Bounds visible = sceneToLocal(scrollPane.localToScene(scrollPane.getLayoutBounds()));
+            minX = Math.max(minX, visible.getMinX());
+            minY = Math.max(minY, visible.getMinY());
+            maxX = Math.min(maxX, visible.getMaxX());
+            maxY = Math.min(maxY, visible.getMaxY());
+        }
+        minX = Math.floor(minX);
+        minY = Math.floor(minY);
+        return new Rectangle2D(minX, minY, Math.max(0, Math.ceil(maxX) - minX), Math.max(0, Math.ceil(maxY) - minY));
+    }
+
+    /**
+     * Hide the targets which are well outside the given area, so that they don't need
+     * to be rendered, and show those within it.  Selected and focused targets are always
+     * shown.
+     */
+    private void cullTargets(Rectangle2D area)
+    {
+        Rectangle2D shown = new Rectangle2D(area.getMinX() - CULL_MARGIN, area.getMinY() - CULL_MARGIN,
+                area.getWidth() + 2 * CULL_MARGIN, area.getHeight() + 2 * CULL_MARGIN);
+        for (Target t : pkg.getVertices())
+        {
+            boolean inArea = shown.intersects(t.getX(), t.getY(), t.getWidth(), t.getHeight());
+            t.setCulled(!inArea && !t.isSelected() && !t.isFocused());
+        }
     }
 
 
@@ -769,6 +1046,8 @@ public final class PackageEditor extends StackPane
     @OnThread(Tag.FXPlatform)
     public synchronized Collection<Dependency> getVisibleEdges()
     {
+        // Make sure arrow positions are up to date, for hit-testing:
+        pkg.layOutArrows();
         List<Dependency> deps = new ArrayList<>();
 
         if (isShowUses())
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2022,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -937,6 +937,7 @@ public class PkgMgrFrame
             this.editor = new PackageEditor(this, aPkg, showUsesProperty, showInheritsProperty, topOverlay);
 
             pkgEditorScrollPane.setContent(editor);
+            editor.setScrollPane(pkgEditorScrollPane);
             editor.setOnDragOver(event -> {
                 Dragboard db = event.getDragboard();
                 if (db.hasFiles())
@@ -1133,6 +1134,7 @@ public class PkgMgrFrame
             // Take a copy because we're about to null it:
             PackageEditor oldEd = editor;
             oldEd.removeEventFilter(javafx.scene.input.MouseEvent.MOUSE_PRESSED, editorMousePressed);
+            oldEd.setScrollPane(null);
             pkgEditorScrollPane.setContent(null);
 
             // Disassociate from the project team actions, so that we don't inadvertently disable the
@@ -2402,26 +2404,25 @@ public class PkgMgrFrame
 
         List<ClassTarget> l = getPackage().getTestTargets();
 
-        // Find the number of tests
+        // Find the number of tests, and the classes which have tests to run
         int numTests = 0;
-        ListIterator<ClassTarget> i = l.listIterator();
-        while (i.hasNext()) {
-            ClassTarget ct = i.next();
+        List<String> testClassNames = new ArrayList<>();
+        for (ClassTarget ct : l) {
             if (ct.isCompiled() && ! ct.isAbstract()) {
                 UnitTestClassRole utcr = (UnitTestClassRole) ct.getRole();
-                numTests += utcr.getTestCount(ct);
-            }
-            else {
-                i.remove();
+                int classTests = utcr.getTestCount(ct);
+                if (classTests > 0) {
+                    numTests += classTests;
+                    testClassNames.add(ct.getQualifiedName());
+                }
             }
         }
 
-        Iterator<ClassTarget> it = l.iterator();
         int numTestsFinal = numTests;
         Project projFinal = getProject();
         TestDisplayFrame.getTestDisplay().startMultipleTests(projFinal, numTestsFinal);
 
-        TestRunnerThread trt = new TestRunnerThread(this, it);
+        TestRunnerThread trt = new TestRunnerThread(this, testClassNames);
         trt.start();
     }
     
@@ -3426,7 +3427,8 @@ public class PkgMgrFrame
         // so we thread hop to take a screenshot and print that;
         JavaFXUtil.runPlatformLater(() -> {
             WritableImage snapshotImage = new WritableImage((int)editor.getWidth(), (int)editor.getHeight());
-            this.editor.snapshot(null, snapshotImage);
+            // Includes the parts of the diagram not currently scrolled into view:
+            this.editor.snapshotAll(snapshotImage);
 
             // We want to print landscape so we need to rotate the snapshow.
             // No amount of rotate transforms during snapshot or on ImageView seem to produce
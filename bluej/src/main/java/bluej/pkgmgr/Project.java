@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -29,6 +29,7 @@ import bluej.classmgr.ClassMgrPrefPanel;
 import bluej.collect.DataCollector;
 import bluej.compiler.CompileReason;
 import bluej.compiler.CompileType;
+import bluej.compiler.JobQueue;
 import bluej.debugger.*;
 import bluej.debugmgr.ExecControls;
 import bluej.debugmgr.ExpressionInformation;
@@ -51,7 +52,9 @@ import bluej.groupwork.ui.StatusFrame;
 import bluej.groupwork.ui.TeamSettingsDialog;
 import bluej.groupwork.ui.UpdateFilesFrame;
 import bluej.parser.entity.EntityResolver;
+import bluej.parser.entity.MemberTables;
 import bluej.pkgmgr.target.ClassTarget;
+import bluej.pkgmgr.target.DependentTarget.State;
 import bluej.pkgmgr.target.Target;
 import bluej.prefmgr.PrefMgr;
 import bluej.terminal.Terminal;
@@ -92,6 +95,7 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 
@@ -113,6 +117,7 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
     /** Property specifying location of JDK source */
     private static final String JDK_SOURCE_PATH_PROPERTY = "bluej.jdk.source";
     private static final String PROJECT_CHARSET_PROP = "project.charset";
+    private static final String HOTSWAP_PROPERTY = "bluej.vm.hotswap";
     public static final String RUN_ON_THREAD_PROP = "project.invoke.thread";
     /**
      * Collection of all open projects. The canonical name of the project
@@ -134,6 +139,8 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
        The unnamed package ie root package of the package tree
        can be obtained by retrieving "" from this collection */
     private Map<String, Package> packages;
+    /** watches the directories of the open packages for changes (null if not supported) */
+    private ProjectWatcher watcher;
     /** the debugger for this project */
     @OnThread(Tag.Any)
     private final Debugger debugger;
@@ -161,6 +168,11 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
     @OnThread(value = Tag.Any, requireSynchronized = true)
     private boolean inTestMode = false;
     private BPClassLoader currentClassLoader;
+    // Shared by all users, so that it can remember which classes have been loaded:
+    private final ProjectEntityResolver entityResolver = new ProjectEntityResolver(this);
+    // Whether reloading the classes in the debug VM has been put off until compilation
+    // ends, in case they can be redefined instead (see prepareForCompile):
+    private boolean classReloadDeferred = false;
     private List<URL> libraryUrls;
     // the TeamSettingsController for this project
     private TeamSettingsController teamSettingsController = null;
@@ -316,6 +328,10 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
         Properties props = unnamedPackage.getLastSavedProperties();
         loadProjectProperties(props);
         packages.put("", unnamedPackage);
+        watcher = ProjectWatcher.start(this);
+        if (watcher != null) {
+            watcher.watchDirectory(unnamedPackage.getPath());
+        }
 
         shelfStorage = new FrameShelfStorage(this.projectDir);
         createNewFXTabbedEditor();
@@ -622,11 +638,18 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
             project.statusFrame.close();
         }
 
+        if (project.watcher != null) {
+            project.watcher.close();
+            project.watcher = null;
+        }
+
         project.removeAllInspectors();
         project.getDebugger().removeDebuggerListener(project);
         project.getDebugger().close(false);
 
         projects.remove(project.getProjectDir());
+        // Don't keep the project's jars open:
+        JobQueue.getJobQueue().releaseCompiler();
     }
 
     /**
@@ -1248,6 +1271,9 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
                     pkg = new Package(this, JavaNames.getBase(qualifiedName),
                             parent);
                     packages.put(qualifiedName, pkg);
+                    if (watcher != null) {
+                        watcher.watchDirectory(pkg.getPath());
+                    }
                     pkg.loadTargets();
                 } else { // parent package does not exist. How can it not exist ?
                     pkg = null;
@@ -1385,6 +1411,9 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
             Package pkg = new Package(this, JavaNames.getBase(qualifiedName),
                     parent);
             packages.put(qualifiedName, pkg);
+            if (watcher != null) {
+                watcher.watchDirectory(pkg.getPath());
+            }
             pkg.loadTargets();
         } catch (IOException exc) {
             return NEW_PACKAGE_BAD_NAME;
@@ -1502,6 +1531,34 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
         packages.values().forEach(Package::reload);
     }
 
+    /**
+     * Notification from the project watcher that files in package directories have
+     * been created, changed or deleted (by BlueJ itself, or by another program).
+     *
+     * @param changes  The names of the changed files, by package directory
+     * @param overflow  True if some changes may have been missed, in which case all
+     *                  packages are reloaded.
+     */
+    void filesChangedOnDisk(Map<File, Set<String>> changes, boolean overflow)
+    {
+        if (watcher == null) {
+            // The project has been closed
+            return;
+        }
+
+        for (Package pkg : new ArrayList<>(packages.values())) {
+            if (overflow) {
+                pkg.reload();
+            }
+            else {
+                Set<String> fileNames = changes.get(pkg.getPath());
+                if (fileNames != null) {
+                    pkg.filesChangedOnDisk(fileNames);
+                }
+            }
+        }
+    }
+
     /**
      * Make all open package editors clear their selection
      */
@@ -1683,6 +1740,106 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
         }
 
         currentClassLoader = null;
+        classReloadDeferred = false;
+    }
+
+    /**
+     * Prepare for compiling classes (keeping the class files).  The classes loaded in the
+     * debug VM are about to become out of date, so they must be reloaded, which clears the
+     * object benches.  If possible, though, the reload is put off until compilation ends:
+     * if only the code inside methods has changed, the loaded classes can be redefined
+     * instead, keeping the objects (see classesRecompiled).
+     */
+    public void prepareForCompile()
+    {
+        if (Config.getPropBoolean(HOTSWAP_PROPERTY, true) && !Config.isGreenfoot()
+                && currentClassLoader != null && getDebugger().getStatus() == Debugger.IDLE)
+        {
+            classReloadDeferred = true;
+        }
+        else
+        {
+            removeClassLoader();
+            newRemoteClassLoaderLeavingBreakpoints();
+        }
+    }
+
+    /**
+     * Classes have been compiled (keeping the class files), having called prepareForCompile
+     * beforehand.  If reloading the classes was put off, redefine them in the debug VM if
+     * only their method code has changed, or reload them otherwise.
+     *
+     * @param targets  The classes which were compiled, or null if not all of the compiled
+     *                 sources belong to a class target.
+     * @param successful  Whether the compilation was successful.
+     */
+    public void classesRecompiled(List<ClassTarget> targets, boolean successful)
+    {
+        if (!classReloadDeferred)
+        {
+            return;
+        }
+
+        classReloadDeferred = false;
+        if (successful && targets != null && getDebugger().getStatus() == Debugger.IDLE
+                && redefineClasses(targets))
+        {
+            // The comments shown for the classes' members may have changed:
+            View.removeAll(currentClassLoader);
+            return;
+        }
+
+        removeClassLoader();
+        newRemoteClassLoaderLeavingBreakpoints();
+    }
+
+    /**
+     * Check whether the classes in the debug VM are out of date: a compilation is in
+     * progress, and reloading or redefining its classes has been put off until it ends
+     * (see prepareForCompile).  User code should not be run until then.
+     */
+    public boolean isClassReloadDeferred()
+    {
+        return classReloadDeferred;
+    }
+
+    /**
+     * Redefine the given classes in the debug VM, if their shape is unchanged by the last
+     * compilation.  Returns true if successful.
+     */
+    private boolean redefineClasses(List<ClassTarget> targets)
+    {
+        Map<String, byte[]> classFiles = new HashMap<>();
+        try
+        {
+            for (ClassTarget target : targets)
+            {
+                if (target.getState() != State.COMPILED || target.isShapeChangedByLastCompile())
+                {
+                    return false;
+                }
+                String packageName = target.getPackage().getQualifiedName();
+                String prefix = packageName.isEmpty() ? "" : packageName + ".";
+                for (File classFile : target.getAllClassFiles())
+                {
+                    String fileName = classFile.getName();
+                    String className = prefix + fileName.substring(0, fileName.length() - ".class".length());
+                    classFiles.put(className, Files.readAllBytes(classFile.toPath()));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+
+        if (!getDebugger().redefineClasses(classFiles))
+        {
+            return false;
+        }
+        // Breakpoints in the redefined classes have been removed, so set them again:
+        targets.forEach(ClassTarget::reInitBreakpoints);
+        return true;
     }
 
     /**
@@ -1853,6 +2010,8 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
         // as parent.
         currentClassLoader = new BPClassLoader( newUrls,
                 Boot.getInstance().getBootClassLoader());
+        // Types may now resolve to the newly compiled classes:
+        MemberTables.invalidateAll();
 
         return currentClassLoader;
     }
@@ -1888,7 +2047,7 @@ public class Project implements DebuggerListener, DebuggerThreadListener, Inspec
      */
     public EntityResolver getEntityResolver()
     {
-        return new ProjectEntityResolver(this);
+        return entityResolver;
     }
 
     /**
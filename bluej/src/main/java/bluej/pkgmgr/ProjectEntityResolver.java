@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2010,2014  Michael Kolling and John Rosenberg 
+ Copyright (C) 2010,2014,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -24,6 +24,7 @@ package bluej.pkgmgr;
 import threadchecker.OnThread;
 import threadchecker.Tag;
 import bluej.debugger.gentype.Reflective;
+import bluej.parser.entity.ClassLoaderResolver;
 import bluej.parser.entity.EntityResolver;
 import bluej.parser.entity.JavaEntity;
 import bluej.parser.entity.PackageEntity;
@@ -41,6 +42,9 @@ import bluej.pkgmgr.target.Target;
 public class ProjectEntityResolver implements EntityResolver
 {
     private Project project;
+    // Resolves (and remembers) classes loaded by the project's current class loader:
+    private ClassLoaderResolver loaderResolver;
+    private ClassLoader resolverLoader;
     
     /**
      * Construct a ProjectEntityResolver for the given project.
@@ -50,6 +54,22 @@ public class ProjectEntityResolver implements EntityResolver
         this.project = project;
     }
     
+    /**
+     * Get a resolver for classes loaded by the project class loader. The resolver
+     * remembers the classes it has found (or not found), so it is replaced when the
+     * project class loader is. (Javadoc may be resolved from a worker thread, hence
+     * the synchronization.)
+     */
+    private synchronized ClassLoaderResolver getLoaderResolver()
+    {
+        ClassLoader loader = project.getClassLoader();
+        if (loader != resolverLoader) {
+            loaderResolver = new ClassLoaderResolver(loader);
+            resolverLoader = loader;
+        }
+        return loaderResolver;
+    }
+    
     public JavaEntity getValueEntity(String name, Reflective querySource)
     {
         return resolvePackageOrClass(name, querySource);
@@ -58,9 +78,9 @@ public class ProjectEntityResolver implements EntityResolver
     public PackageOrClass resolvePackageOrClass(String name, Reflective querySource)
     {
         // Try in java.lang
-        Class<?> cl = project.loadClass("java.lang." + name);
-        if (cl != null) {
-            return new TypeEntity(cl);
+        TypeEntity langType = getLoaderResolver().resolveQualifiedClass("java.lang." + name);
+        if (langType != null) {
+            return langType;
         }
         
         // Have to assume it's a package
@@ -85,12 +105,7 @@ public class ProjectEntityResolver implements EntityResolver
         }
 
         // Try as a class which might be external to the project 
-        Class<?> cl = project.loadClass(name);
-        if (cl != null) {
-            return new TypeEntity(cl);
-        }
-        
-        return null;
+        return getLoaderResolver().resolveQualifiedClass(name);
     }
 
 }
@@ -0,0 +1,183 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.pkgmgr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import bluej.utility.Debug;
+import javafx.application.Platform;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * Watches the directories of a project's open packages for files being created,
+ * changed or deleted, so that changes made outside BlueJ (by a version control
+ * checkout, another editor, a build tool, etc) are picked up without rescanning
+ * the project.
+ *
+ * <p>Events are collected on a background thread, and are passed to the project on
+ * the FX thread once no more have arrived for a short while, so that a burst of
+ * changes (such as a checkout) is handled in one go.
+ */
+@OnThread(Tag.Any)
+class ProjectWatcher
+{
+    // How long to wait for things to go quiet before passing on changes:
+    private static final long QUIET_MILLIS = 300;
+    // The longest to hold on to changes while they keep arriving:
+    private static final long MAX_DELAY_MILLIS = 2000;
+
+    private final Project project;
+    private final WatchService watchService;
+    private final Map<WatchKey, File> watchedDirs = new ConcurrentHashMap<>();
+
+    // The names of changed files, by directory; guarded by this.
+    private Map<File, Set<String>> pendingChanges = new HashMap<>();
+    // Whether some events were lost (so that everything should be rechecked); guarded by this.
+    private boolean pendingOverflow = false;
+
+    private ProjectWatcher(Project project, WatchService watchService)
+    {
+        this.project = project;
+        this.watchService = watchService;
+    }
+
+    /**
+     * Create a watcher for a project, and start its background thread.
+     *
+     * @return The watcher, or null if the file system doesn't support watching.
+     */
+    static ProjectWatcher start(Project project)
+    {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            Debug.message("Cannot watch project for changes: " + e.getMessage());
+            return null;
+        }
+
+        ProjectWatcher watcher = new ProjectWatcher(project, watchService);
+        Thread thread = new Thread("Project watcher") {
+            @Override
+            @OnThread(Tag.Worker)
+            public void run()
+            {
+                watcher.processEvents();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return watcher;
+    }
+
+    /**
+     * Start watching a package directory. Watching stops of its own accord if the
+     * directory is deleted.
+     */
+    void watchDirectory(File dir)
+    {
+        try {
+            WatchKey key = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirs.put(key, dir);
+        }
+        catch (IOException | ClosedWatchServiceException e) {
+            Debug.message("Cannot watch " + dir + " for changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop watching (and stop the background thread).
+     */
+    void close()
+    {
+        try {
+            watchService.close();
+        }
+        catch (IOException e) {
+            Debug.reportError(e);
+        }
+    }
+
+    @OnThread(Tag.Worker)
+    private void processEvents()
+    {
+        try {
+            while (true) {
+                collect(watchService.take());
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+                WatchKey key;
+                while (System.currentTimeMillis() < deadline
+                        && (key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key);
+                }
+                deliver();
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            // We have been closed
+        }
+    }
+
+    @OnThread(Tag.Worker)
+    private synchronized void collect(WatchKey key)
+    {
+        File dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                pendingOverflow = true;
+            }
+            else if (dir != null) {
+                pendingChanges.computeIfAbsent(dir, d -> new HashSet<>()).add(((Path) event.context()).toString());
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    @OnThread(Tag.Worker)
+    private synchronized void deliver()
+    {
+        Map<File, Set<String>> changes = pendingChanges;
+        boolean overflow = pendingOverflow;
+        pendingChanges = new HashMap<>();
+        pendingOverflow = false;
+        Platform.runLater(() -> project.filesChangedOnDisk(changes, overflow));
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2014,2016  Michael Kolling and John Rosenberg 
+ Copyright (C) 1999-2009,2014,2016,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -66,6 +66,16 @@ public final class SourceInfo
         return info;
     }
 
+    /**
+     * Set the information for the source, as previously obtained by parsing the
+     * same source (for instance, from a cache).  It will be used until the source
+     * is modified.
+     */
+    public void setInfo(ClassInfo info)
+    {
+        this.info = info;
+    }
+
     /**
      * Similar to getInfo, but do not parse if info is not available.
      * Instead, return null, if we got no info.
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2012,2014,2016,2018,2019,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2012,2014,2016,2018,2019,2021,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -26,20 +26,12 @@ import bluej.collect.DataCollector;
 import bluej.debugger.DebuggerTestResult;
 import bluej.debugger.jdi.TestResultsWithRunTime;
 import bluej.pkgmgr.target.ClassTarget;
-import bluej.pkgmgr.target.role.UnitTestClassRole;
 import bluej.testmgr.TestDisplayFrame;
-import bluej.utility.Debug;
 import javafx.application.Platform;
 import threadchecker.OnThread;
 import threadchecker.Tag;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Provide a thread class for running unit tests.
@@ -48,14 +40,18 @@ import java.util.concurrent.ExecutionException;
  * This class provides the means to do this.
  * 
  * There are two primary modes of operation: run a single test (methodname != null),
- * and run all tests for a series of ClassTargets.
+ * and run all tests for a series of test classes.  In the latter case the test classes
+ * are all run together, in a single test run in the debug VM, and each result is
+ * shown as soon as its test finishes.
  * 
  * @author Davin McCall
  */
 public class TestRunnerThread extends Thread
 {
-    @OnThread(Tag.Worker)
-    private final Iterator<ClassTarget> testIterator;
+    // The test classes to run, when running all tests; null to run a single test.
+    private final List<String> testClassNames;
+    // The class of the single test to run, if running a single test.
+    private final ClassTarget testTarget;
     private final PkgMgrFrame pmf;
 
     private final String methodName; // Name of the test method; null to run all tests.
@@ -64,16 +60,19 @@ public class TestRunnerThread extends Thread
     private final Project project;
 
     /**
-     * Construct a test runner thread for running multiple tests.
+     * Construct a test runner thread for running all the tests in several test classes.
+     * 
+     * @param testClassNames  the fully qualified names of the test classes
      */
     @OnThread(Tag.FXPlatform)
-    public TestRunnerThread(PkgMgrFrame pmf, Iterator<ClassTarget> i)
+    public TestRunnerThread(PkgMgrFrame pmf, List<String> testClassNames)
     {
         super("Test Runner");
         this.pmf = pmf;
         this.project = pmf.getProject();
         this.methodName = null;
-        testIterator = i;
+        this.testClassNames = testClassNames;
+        this.testTarget = null;
         state = 0;
     }
     
@@ -85,9 +84,8 @@ public class TestRunnerThread extends Thread
     {
         this.pmf = pmf;
         this.project = pmf.getProject();
-        List<ClassTarget> l = new ArrayList<ClassTarget>(1);
-        l.add(ct);
-        testIterator = l.iterator();
+        this.testClassNames = null;
+        this.testTarget = ct;
         this.methodName = methodName;
         state = 0;
     }
@@ -95,47 +93,14 @@ public class TestRunnerThread extends Thread
     @OnThread(value = Tag.Worker, ignoreParent = true)
     public void run()
     {
-        while (testIterator.hasNext()) 
+        if (methodName == null)
         {
-
-            ClassTarget ct = testIterator.next();
-
-            List<String> allMethods;
-            if (methodName == null)
-            {
-                // Run all tests for a target, so find out what they are:
-                CompletableFuture<List<String>> methodsFuture = new CompletableFuture<>();
-                Platform.runLater(() -> startTestFindMethods(ct, methodsFuture));
-                try
-                {
-                    allMethods = methodsFuture.get();
-                }
-                catch (InterruptedException | ExecutionException e)
-                {
-                    Debug.reportError(e);
-                    allMethods = Collections.emptyList();
-                }
-            }
-            else 
-            {
-                // Run only a single test.
-                allMethods = Arrays.asList(methodName);
-            }
-
-            // State 1 has given us the tests we need to run. Now run them:
-            // With JUnit 5, a method does not always match to 1 test (parameterized),
-            // so we should not rely on this to assume there are no more than 1 result for 1 single method of test.
-            if (allMethods.size() > 0)
-            {
-                TestResultsWithRunTime lastResults = project.getDebugger().runTestMethod(ct.getQualifiedName(), (allMethods.size() == 1) ? methodName : null);
-                // Add all test results to the test display frame:
-                for (DebuggerTestResult result : lastResults.getResults())
-                {
-                    Platform.runLater(() -> showNextResult(result));
-                }
-                Platform.runLater(() -> TestDisplayFrame.getTestDisplay()
-                        .updateTotalTimeMs(lastResults.getTotalRunTime()));
-            }
+            runAllTests();
+        }
+        else
+        {
+            // Run only a single test.
+            showResults(project.getDebugger().runTestMethod(testTarget.getQualifiedName(), methodName));
         }
 
         // Finally, tell the PkgMgrFrame that we're done:
@@ -145,6 +110,39 @@ public class TestRunnerThread extends Thread
         });
     }
 
+    /**
+     * Run all tests in all the test classes.  The test classes are all run together,
+     * in a single test run in the debug VM, rather than one at a time.
+     */
+    @OnThread(Tag.Worker)
+    private void runAllTests()
+    {
+        if (!testClassNames.isEmpty())
+        {
+            // Show each result as its test finishes, rather than waiting for them all:
+            TestResultsWithRunTime results = project.getDebugger().runTestClasses(testClassNames,
+                    result -> Platform.runLater(() -> showNextResult(result)));
+            showResults(results);
+        }
+    }
+
+    /**
+     * Add the given test results to the test display frame.
+     */
+    @OnThread(Tag.Worker)
+    private void showResults(TestResultsWithRunTime results)
+    {
+        // With JUnit 5, a method does not always match to 1 test (parameterized),
+        // so there may be several results even for a single method.
+        Platform.runLater(() -> {
+            for (DebuggerTestResult result : results.getResults())
+            {
+                showNextResult(result);
+            }
+            TestDisplayFrame.getTestDisplay().updateTotalTimeMs(results.getTotalRunTime());
+        });
+    }
+
     @OnThread(Tag.FXPlatform)
     private void showNextResult(DebuggerTestResult lastResult)
     {
@@ -157,24 +155,4 @@ public class TestRunnerThread extends Thread
 
         DataCollector.testResult(pmf.getPackage(), lastResult);
     }
-
-    @OnThread(Tag.FXPlatform)
-    private void startTestFindMethods(ClassTarget ct, CompletableFuture<List<String>> methodsFuture)
-    {
-        // State 1 is where we confirm that we really do have an executable unit
-        // test class, and we delegate to the unit test role to gives us some
-        // test methods to executed.
-        if (ct.isCompiled() && ct.isUnitTest() && ! ct.isAbstract()) {
-            UnitTestClassRole utcr = (UnitTestClassRole) ct.getRole();
-
-            List<String> allMethods = utcr.startRunTest(pmf, ct, TestRunnerThread.this);
-            if (allMethods == null)
-                methodsFuture.complete(Collections.emptyList());
-            else
-                methodsFuture.complete(allMethods);
-        }
-        else {
-            methodsFuture.complete(Collections.emptyList());
-        }
-    }
 }
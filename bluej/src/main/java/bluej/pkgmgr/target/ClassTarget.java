@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2022,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -26,10 +26,12 @@ import bluej.Config;
 import bluej.collect.DataCollector;
 import bluej.collect.DiagnosticWithShown;
 import bluej.collect.StrideEditReason;
+import bluej.compiler.ClassFileAbi;
 import bluej.compiler.CompileInputFile;
 import bluej.compiler.CompileReason;
 import bluej.compiler.CompileType;
 import bluej.compiler.Diagnostic;
+import bluej.compiler.JobQueue;
 import bluej.debugger.*;
 import bluej.debugger.gentype.Reflective;
 import bluej.debugmgr.objectbench.InvokeListener;
@@ -45,6 +47,7 @@ import bluej.extmgr.ExtensionsManager;
 import bluej.extmgr.ExtensionsMenuManager;
 import bluej.parser.ParseFailure;
 import bluej.parser.entity.EntityResolver;
+import bluej.parser.entity.MemberTables;
 import bluej.parser.entity.PackageResolver;
 import bluej.parser.entity.ParsedReflective;
 import bluej.parser.nodes.ParsedCUNode;
@@ -101,8 +104,6 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.TypeVariable;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.time.Instant;
@@ -174,6 +175,21 @@ public class ClassTarget extends DependentTarget
     // Whether the current compilation is invalid due to edits since compilation began
     private boolean compilationInvalid = false;
 
+    // For incremental compilation: the ABI hash (see ClassFileAbi) of the class files which
+    // our dependents were compiled against, if known (haveAbiBaseline).  Null if there
+    // were no readable class files:
+    private byte[] abiBaseline;
+    private boolean haveAbiBaseline = false;
+    // Whether the last compilation changed the ABI, and so dependents need recompiling:
+    private boolean abiChangedByLastCompile = false;
+    // The shape hash (see ClassFileAbi) of the class files which were last compiled
+    // successfully, and so may be loaded in the debug VM (if known: haveShapeBaseline):
+    private byte[] shapeBaseline;
+    private boolean haveShapeBaseline = false;
+    // Whether the last compilation changed the shape, so that the classes cannot be
+    // redefined in the debug VM:
+    private boolean shapeChangedByLastCompile = true;
+
     private SourceType sourceAvailable;
     // Part of keeping track of number of editors opened, for Greenfoot phone home:
     private boolean hasBeenOpened = false;
@@ -475,6 +491,11 @@ public class ClassTarget extends DependentTarget
             String qualifiedName = getQualifiedName();
             Project proj = getPackage().getProject();
             proj.removeInspectorInstance(qualifiedName);
+            if ((newState == State.COMPILED) != isCompiled())
+            {
+                // The type will now resolve to the loaded class, or to the parsed source:
+                MemberTables.invalidateAll();
+            }
             
             super.setState(newState);
 
@@ -497,11 +518,26 @@ public class ClassTarget extends DependentTarget
      * @param compilationSequence   compilation sequence identifier which can be used to associate
      *                              related compilation events.
      */
-    public void markCompiling(int compilationSequence)
+    public void markCompiling(int compilationSequence, CompileType compileType)
     {
         // The results of compilation will be invalid if the editor contents have not been saved:
         compilationInvalid = (editor != null) ? editor.isModified() : false; 
         
+        // Remember the ABI that our dependents were compiled against, before the class files
+        // are overwritten.  If we already know it (because an earlier compilation was
+        // invalidated, and so never became the baseline) we must keep the earlier value:
+        if (compileType.keepClasses() && !haveAbiBaseline)
+        {
+            abiBaseline = ClassFileAbi.calculate(getAbiClassFiles());
+            haveAbiBaseline = true;
+        }
+        // Likewise the shape of the classes that the debug VM may have loaded:
+        if (compileType.keepClasses() && !haveShapeBaseline)
+        {
+            shapeBaseline = ClassFileAbi.calculateShape(getAllClassFiles());
+            haveShapeBaseline = true;
+        }
+        
         if (getState() == State.HAS_ERROR)
         {
             setState(State.NEEDS_COMPILE);
@@ -576,6 +612,7 @@ public class ClassTarget extends DependentTarget
      * @param cl class to test
      */
     @SuppressWarnings("unchecked")
+    @OnThread(Tag.Any)
     public static boolean isJunit4TestClass(Class<?> cl)
     {
         ClassLoader clLoader = cl.getClassLoader();
@@ -634,6 +671,7 @@ public class ClassTarget extends DependentTarget
      * @param cl class to test
      */
     @SuppressWarnings("unchecked")
+    @OnThread(Tag.Any)
     public static boolean isJunit5TestClass(Class<?> cl)
     {
         ClassLoader clLoader = cl.getClassLoader();
@@ -705,52 +743,7 @@ public class ClassTarget extends DependentTarget
     public void determineRole(Class<?> cl)
     {
         if (cl != null) {
-            isAbstract = Modifier.isAbstract(cl.getModifiers());
-            
-            ClassLoader clLoader = cl.getClassLoader();
-            Class<?> junitClass = null;
-            // It shouldn't ever be the case that the class is on the bootstrap
-            // class path (and was loaded by the bootstrap class loader), unless
-            // someone has done something rather strange - but it has happened;
-            // see bug # 1017.
-
-            if (clLoader != null) {
-                try {
-                    junitClass = clLoader.loadClass("junit.framework.TestCase");
-                }
-                catch (ClassNotFoundException cnfe) { Debug.reportError(cnfe); }
-                catch (LinkageError le) { Debug.reportError(le); }
-            }
-            
-            if (junitClass == null) {
-                junitClass = junit.framework.TestCase.class;
-            }
-
-            // As cl is non-null, it is the definitive information
-            // source ie. if it thinks its an applet who are we to argue
-            // with it.
-            if (junitClass.isAssignableFrom(cl))
-            {
-                setRole(new UnitTestClassRole(UnitTestFramework.JUnit3));
-            }
-            else if (Modifier.isInterface(cl.getModifiers())) {
-                setRole(new InterfaceClassRole());
-            }
-            else if (JavaUtils.getJavaUtils().isEnum(cl)) {
-                setRole(new EnumClassRole());
-            }
-            else if (isAbstract) {
-                setRole(new AbstractClassRole());
-            }
-            else if (isJunit4TestClass(cl)) {
-                setRole(new UnitTestClassRole(UnitTestFramework.JUnit4));
-            }
-            else if (isJunit5TestClass(cl)) {
-                setRole(new UnitTestClassRole(UnitTestFramework.JUnit5));
-            }
-            else {
-                setRole(new StdClassRole());
-            }
+            determineCompiledRole(CompiledClassInfo.of(cl));
         }
         else {
             isAbstract = false;
@@ -786,6 +779,50 @@ public class ClassTarget extends DependentTarget
         }
     }
 
+    /**
+     * Set our role from the information about the compiled class. As the class
+     * is compiled, this is the definitive information source.
+     */
+    private void determineCompiledRole(CompiledClassInfo info)
+    {
+        isAbstract = info.isAbstract();
+        switch (info.getKind()) {
+            case JUNIT3:
+                setRole(new UnitTestClassRole(UnitTestFramework.JUnit3));
+                break;
+            case INTERFACE:
+                setRole(new InterfaceClassRole());
+                break;
+            case ENUM:
+                setRole(new EnumClassRole());
+                break;
+            case ABSTRACT:
+                setRole(new AbstractClassRole());
+                break;
+            case JUNIT4:
+                setRole(new UnitTestClassRole(UnitTestFramework.JUnit4));
+                break;
+            case JUNIT5:
+                setRole(new UnitTestClassRole(UnitTestFramework.JUnit5));
+                break;
+            default:
+                setRole(new StdClassRole());
+        }
+    }
+
+    /**
+     * Update the role, inheritance dependencies and type parameters from information
+     * about the compiled class. This is equivalent to calling determineRole,
+     * analyseDependencies and analyseTypeParams with the class itself, but the
+     * information may have been gathered on another thread, or read from a cache.
+     */
+    public void analyseCompiledClass(CompiledClassInfo info)
+    {
+        determineCompiledRole(info);
+        analyseDependencies(info);
+        analyseTypeParams(info);
+    }
+
     /**
      * Load existing information about this class target
      * 
@@ -923,6 +960,26 @@ public class ClassTarget extends DependentTarget
         }
     }
     
+    /**
+     * Notification that the source file has been changed on disk, possibly by another
+     * program. An open editor is asked to reload the file (which it will only do
+     * without asking if it has no unsaved changes); otherwise the source is analysed
+     * again.
+     */
+    public void sourceFileChangedOnDisk()
+    {
+        calcSourceAvailable();
+        if (sourceAvailable != SourceType.NONE) {
+            if (editor != null) {
+                editor.fileChangedOnDisk();
+            }
+            else {
+                sourceInfo.setSourceModified();
+                analyseSource();
+            }
+        }
+    }
+
     /**
      * Check if the compiled class and the source are up to date.
      * (Specifically, check if recompilation is not needed. This will
@@ -994,18 +1051,7 @@ public class ClassTarget extends DependentTarget
      */
     private void invalidateInclDependents(ArrayList<ClassTarget> alreadyInvalidated)
     {
-        // Mark any current compilation as stale:
-        compilationInvalid = true;
-        
-        if (hasSourceCode())
-        {
-            setState(State.NEEDS_COMPILE);
-            if (editor != null)
-            {
-                // Need to run later because we might be notified mid-edit event:
-                JavaFXUtil.runAfterCurrent(() -> editor.removeErrorHighlights());
-            }
-        }
+        invalidateSelf();
         
         alreadyInvalidated.add(this);
         
@@ -1022,6 +1068,30 @@ public class ClassTarget extends DependentTarget
         }
     }
 
+    /**
+     * Mark this class (but not its dependents) as modified.
+     */
+    private void invalidateSelf()
+    {
+        // Mark any current compilation as stale:
+        compilationInvalid = true;
+        if (isQueued())
+        {
+            // No point finishing an error check whose results will be ignored:
+            JobQueue.getJobQueue().cancelErrorChecks(getJavaSourceFile());
+        }
+        
+        if (hasSourceCode())
+        {
+            setState(State.NEEDS_COMPILE);
+            if (editor != null)
+            {
+                // Need to run later because we might be notified mid-edit event:
+                JavaFXUtil.runAfterCurrent(() -> editor.removeErrorHighlights());
+            }
+        }
+    }
+
     /**
      * Verify whether this class target is an interface class
      * 
@@ -1133,6 +1203,8 @@ public class ClassTarget extends DependentTarget
      */
     public void markCompiled(boolean successful, CompileType compileType)
     {
+        abiChangedByLastCompile = false;
+        shapeChangedByLastCompile = true;
         if (compilationInvalid)
         {
             // We pass "classesKept" as false since the generated classes are invalid now:
@@ -1154,6 +1226,22 @@ public class ClassTarget extends DependentTarget
             if (newCompiledState)
             {
                 setState(State.COMPILED);
+
+                byte[] newAbi = ClassFileAbi.calculate(getAbiClassFiles());
+                abiChangedByLastCompile = !haveAbiBaseline || abiBaseline == null || newAbi == null
+                        || !Arrays.equals(abiBaseline, newAbi);
+                // Our dependents will be recompiled against the new class files if need be,
+                // so the new ABI becomes the baseline:
+                abiBaseline = newAbi;
+                haveAbiBaseline = newAbi != null;
+
+                byte[] newShape = ClassFileAbi.calculateShape(getAllClassFiles());
+                shapeChangedByLastCompile = !haveShapeBaseline || shapeBaseline == null || newShape == null
+                        || !Arrays.equals(shapeBaseline, newShape);
+                // The debug VM will either redefine or reload the classes, so either way
+                // the new shape becomes the baseline:
+                shapeBaseline = newShape;
+                haveShapeBaseline = newShape != null;
             }
         }
 
@@ -1225,6 +1313,73 @@ public class ClassTarget extends DependentTarget
         return new File(docFilename);
     }
     
+    /**
+     * Get a list of all .class files generated from this class's source: the class file
+     * itself and those for inner classes.
+     */
+    public List<File> getAllClassFiles()
+    {
+        List<File> classFiles = new ArrayList<>();
+        classFiles.add(getClassFile());
+        File[] innerClassFiles = getInnerClassFiles();
+        if (innerClassFiles != null)
+        {
+            classFiles.addAll(Arrays.asList(innerClassFiles));
+        }
+        return classFiles;
+    }
+
+    /**
+     * Get the class files whose ABI our dependents may rely on: our own, and those of our
+     * supertypes within this package (transitively).  Our dependents can use inherited
+     * members, so a change to a supertype changes our ABI even if our own class files
+     * are unchanged.
+     */
+    private List<File> getAbiClassFiles()
+    {
+        List<File> classFiles = new ArrayList<>();
+        Set<ClassTarget> visited = new HashSet<>();
+        LinkedList<ClassTarget> toVisit = new LinkedList<>();
+        toVisit.add(this);
+        while (!toVisit.isEmpty())
+        {
+            ClassTarget ct = toVisit.removeFirst();
+            if (visited.add(ct))
+            {
+                classFiles.addAll(ct.getAllClassFiles());
+                for (Dependency parent : ct.getParents())
+                {
+                    if (parent.getTo() instanceof ClassTarget superType)
+                    {
+                        toVisit.add(superType);
+                    }
+                }
+            }
+        }
+        return classFiles;
+    }
+
+    /**
+     * Check whether the last compilation of this class (as reported to markCompiled) changed
+     * anything which dependent classes may have used, meaning they must be recompiled.
+     * Only used with incremental compilation; see ClassFileAbi.isIncrementalCompilationEnabled().
+     */
+    public boolean isAbiChangedByLastCompile()
+    {
+        return abiChangedByLastCompile;
+    }
+
+    /**
+     * Check whether the last compilation of this class (as reported to markCompiled) changed
+     * anything other than the code of its methods (or was not successful).  If not, the
+     * classes already loaded in the debug VM can be redefined with the new class files,
+     * rather than being reloaded.
+     */
+    public boolean isShapeChangedByLastCompile()
+    {
+        return shapeChangedByLastCompile;
+    }
+
     /**
      * Get a list of .class files for inner classes.
      */
@@ -1421,7 +1576,16 @@ public class ClassTarget extends DependentTarget
     @Override
     public void modificationEvent(Editor editor)
     {
-        invalidate();
+        if (ClassFileAbi.isIncrementalCompilationEnabled())
+        {
+            // Dependents are only invalidated once we have been compiled, if our
+            // ABI has changed (see Package's compile observer):
+            invalidateSelf();
+        }
+        else
+        {
+            invalidate();
+        }
                 
         removeBreakpoints();
         if (getPackage().getProject().getDebugger() != null)
@@ -1557,9 +1721,12 @@ public class ClassTarget extends DependentTarget
     {
         Class<?> cl = getPackage().loadClass(getQualifiedName());
 
-        determineRole(cl);
-        analyseDependencies(cl);
-        analyseTypeParams(cl);
+        if (cl != null) {
+            analyseCompiledClass(CompiledClassInfo.of(cl));
+        }
+        else {
+            determineRole(null);
+        }
     }
 
     /**
@@ -1867,48 +2034,47 @@ public class ClassTarget extends DependentTarget
     public void analyseDependencies(Class<?> cl)
     {
         if (cl != null) {
-            removeInheritDependencies();
+            analyseDependencies(CompiledClassInfo.of(cl));
+        }
+    }
 
-            Class<?> superClass = cl.getSuperclass();
-            if (superClass != null) {
-                setSuperClass(superClass.getName());
-            }
+    private void analyseDependencies(CompiledClassInfo info)
+    {
+        removeInheritDependencies();
 
-            Class<?> [] interfaces = cl.getInterfaces();
-            for (int i = 0; i < interfaces.length; i++) {
-                addInterface(interfaces[i].getName());
-            }
+        if (info.getSuperclass() != null) {
+            setSuperClass(info.getSuperclass());
+        }
+
+        for (String interfaceName : info.getInterfaces()) {
+            addInterface(interfaceName);
         }
     }
     
     /**
      * Analyse the type parameters from the compiled class and update the display name.
      */
-    public <T> void analyseTypeParams(Class<T> cl)
+    public void analyseTypeParams(Class<?> cl)
     {
         if (cl != null) {
-            String oldTypeParams = typeParameters;
-            TypeVariable<Class<T>> [] tvars = cl.getTypeParameters();
-            if (tvars.length == 0) {
-                typeParameters = "";
-            }
-            else
-            {
-                boolean isFirst = true;
-                typeParameters = "<";
-                for (TypeVariable<?> tvar : tvars) {
-                    if (! isFirst) {
-                        typeParameters += ",";
-                    }
-                    isFirst = false;
-                    typeParameters += tvar.getName();
-                }
-                typeParameters += ">";
-            }
-            
-            if (! typeParameters.equals(oldTypeParams)) {
-                updateDisplayName();
-            }
+            analyseTypeParams(CompiledClassInfo.of(cl));
+        }
+    }
+
+    private void analyseTypeParams(CompiledClassInfo info)
+    {
+        String oldTypeParams = typeParameters;
+        List<String> tvars = info.getTypeParameters();
+        if (tvars.isEmpty()) {
+            typeParameters = "";
+        }
+        else
+        {
+            typeParameters = "<" + String.join(",", tvars) + ">";
+        }
+
+        if (! typeParameters.equals(oldTypeParams)) {
+            updateDisplayName();
         }
     }
     
@@ -2301,10 +2467,16 @@ public class ClassTarget extends DependentTarget
     {
         if (vis != this.visible) {
             this.visible = vis;
-            pane.setVisible(vis);
+            updatePaneVisible();
         }
     }
 
+    @Override
+    protected void updatePaneVisible()
+    {
+        pane.setVisible(visible && !isCulled());
+    }
+
     @OnThread(Tag.FXPlatform)
     @Override
     protected void redraw()
@@ -2426,9 +2598,9 @@ public class ClassTarget extends DependentTarget
         Package pkg = getPackage();
         pkg.removeTarget(this);
 
-        // Inform all listeners about the class removed
+        // Inform all listeners about the class removed (now, as the class is going)
         ClassEvent event = new ClassEvent(getPackage(), getBClass());
-        ExtensionsManager.getInstance().delegateEvent(event);
+        ExtensionsManager.getInstance().delegateEventNow(event);
         
         // We must remove after the above, because it might involve saving, 
         // and thus recording edits to the file
@@ -2585,7 +2757,7 @@ public class ClassTarget extends DependentTarget
     }
     
     @Override
-    public void recordJavaEdit(String latest, boolean includeOneLineEdits)
+    public void recordJavaEdit(CharSequence latest, boolean includeOneLineEdits)
     {
         DataCollector.editJava(getPackage(), getJavaSourceFile(), latest, includeOneLineEdits);
     }
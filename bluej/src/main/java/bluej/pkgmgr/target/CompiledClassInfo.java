@@ -0,0 +1,223 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.pkgmgr.target;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import bluej.utility.Debug;
+import bluej.utility.JavaUtils;
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * The information about a compiled class which a ClassTarget needs when its package
+ * is opened: what role it should have, what it extends and implements, and its type
+ * parameters.
+ *
+ * <p>Unlike the Class itself, this can be gathered on any thread (so that a package's
+ * classes can be inspected in parallel), and written to and read back from a stream
+ * (so that it can be cached between sessions).
+ */
+@OnThread(Tag.Any)
+public final class CompiledClassInfo
+{
+    /**
+     * The kind of class, which determines the role of its ClassTarget.
+     */
+    public static enum Kind
+    {
+        JUNIT3, JUNIT4, JUNIT5, INTERFACE, ENUM, ABSTRACT, STANDARD
+    }
+
+    private final Kind kind;
+    private final boolean isAbstract;
+    private final String superclass;
+    private final List<String> interfaces;
+    private final List<String> typeParameters;
+
+    private CompiledClassInfo(Kind kind, boolean isAbstract, String superclass,
+            List<String> interfaces, List<String> typeParameters)
+    {
+        this.kind = kind;
+        this.isAbstract = isAbstract;
+        this.superclass = superclass;
+        this.interfaces = Collections.unmodifiableList(interfaces);
+        this.typeParameters = Collections.unmodifiableList(typeParameters);
+    }
+
+    /**
+     * Gather the information about a compiled class.
+     */
+    public static CompiledClassInfo of(Class<?> cl)
+    {
+        boolean isAbstract = Modifier.isAbstract(cl.getModifiers());
+
+        ClassLoader clLoader = cl.getClassLoader();
+        Class<?> junitClass = null;
+        // It shouldn't ever be the case that the class is on the bootstrap
+        // class path (and was loaded by the bootstrap class loader), unless
+        // someone has done something rather strange - but it has happened;
+        // see bug # 1017.
+
+        if (clLoader != null) {
+            try {
+                junitClass = clLoader.loadClass("junit.framework.TestCase");
+            }
+            catch (ClassNotFoundException cnfe) { Debug.reportError(cnfe); }
+            catch (LinkageError le) { Debug.reportError(le); }
+        }
+
+        if (junitClass == null) {
+            junitClass = junit.framework.TestCase.class;
+        }
+
+        Kind kind;
+        if (junitClass.isAssignableFrom(cl)) {
+            kind = Kind.JUNIT3;
+        }
+        else if (Modifier.isInterface(cl.getModifiers())) {
+            kind = Kind.INTERFACE;
+        }
+        else if (JavaUtils.getJavaUtils().isEnum(cl)) {
+            kind = Kind.ENUM;
+        }
+        else if (isAbstract) {
+            kind = Kind.ABSTRACT;
+        }
+        else if (ClassTarget.isJunit4TestClass(cl)) {
+            kind = Kind.JUNIT4;
+        }
+        else if (ClassTarget.isJunit5TestClass(cl)) {
+            kind = Kind.JUNIT5;
+        }
+        else {
+            kind = Kind.STANDARD;
+        }
+
+        Class<?> superClass = cl.getSuperclass();
+        List<String> interfaces = new ArrayList<>();
+        for (Class<?> iface : cl.getInterfaces()) {
+            interfaces.add(iface.getName());
+        }
+        List<String> typeParameters = new ArrayList<>();
+        for (TypeVariable<?> tvar : cl.getTypeParameters()) {
+            typeParameters.add(tvar.getName());
+        }
+
+        return new CompiledClassInfo(kind, isAbstract, superClass == null ? null : superClass.getName(),
+                interfaces, typeParameters);
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public boolean isAbstract()
+    {
+        return isAbstract;
+    }
+
+    /**
+     * Get the fully-qualified name of the superclass, or null if there is none
+     * (i.e. this is an interface, or java.lang.Object).
+     */
+    public String getSuperclass()
+    {
+        return superclass;
+    }
+
+    /**
+     * Get the fully-qualified names of the directly implemented interfaces.
+     */
+    public List<String> getInterfaces()
+    {
+        return interfaces;
+    }
+
+    /**
+     * Get the names of the type parameters (without bounds).
+     */
+    public List<String> getTypeParameters()
+    {
+        return typeParameters;
+    }
+
+    /**
+     * Write this information to a stream; it can be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        out.writeByte(kind.ordinal());
+        out.writeBoolean(isAbstract);
+        out.writeBoolean(superclass != null);
+        if (superclass != null) {
+            out.writeUTF(superclass);
+        }
+        writeList(out, interfaces);
+        writeList(out, typeParameters);
+    }
+
+    /**
+     * Read information previously written by {@link #writeTo}.
+     */
+    public static CompiledClassInfo readFrom(DataInputStream in) throws IOException
+    {
+        int kindIndex = in.readByte();
+        if (kindIndex < 0 || kindIndex >= Kind.values().length) {
+            throw new IOException("Invalid class kind: " + kindIndex);
+        }
+        boolean isAbstract = in.readBoolean();
+        String superclass = in.readBoolean() ? in.readUTF() : null;
+        List<String> interfaces = readList(in);
+        List<String> typeParameters = readList(in);
+        return new CompiledClassInfo(Kind.values()[kindIndex], isAbstract, superclass, interfaces, typeParameters);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException
+    {
+        out.writeInt(list.size());
+        for (String s : list) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid list size: " + size);
+        }
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(in.readUTF());
+        }
+        return list;
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2012,2016,2017,2019,2020,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2012,2016,2017,2019,2020,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -464,18 +464,19 @@ public abstract class DependentTarget extends EditableTarget
     @OnThread(Tag.FXPlatform)
     public synchronized void recalcDependentPositions() 
     {
-        // Recalculate arrows
-        recalcInUses();
-        recalcOutUses();
-
-        // Recalculate neighbours' arrows
-        for(Iterator<UsesDependency> it = inUses.iterator(); it.hasNext(); ) {
-            Dependency d = it.next();
-            d.getFrom().recalcOutUses();
-        }
-        for(Iterator<UsesDependency> it = outUses.iterator(); it.hasNext(); ) {
-            Dependency d = it.next();
-            d.getTo().recalcInUses();
+        // Mark our arrows and our neighbours' arrows to be recalculated before the
+        // next repaint, so that moving many targets at once (or one target many
+        // times) only recalculates each target once:
+        Package pkg = getPackage();
+        if (pkg != null) {
+            pkg.invalidateArrowLayout(this);
+            for (UsesDependency d : inUses) {
+                pkg.invalidateArrowLayout(d.getFrom());
+            }
+            for (UsesDependency d : outUses) {
+                pkg.invalidateArrowLayout(d.getTo());
+            }
+            pkg.repaint();
         }
 
         updateAssociatePosition();
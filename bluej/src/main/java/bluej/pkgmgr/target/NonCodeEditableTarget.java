@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2017,2020,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2017,2020,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -60,7 +60,7 @@ public abstract class NonCodeEditableTarget extends EditableTarget
     public void setProperty(String key, String value) { }
 
     @Override
-    public void recordJavaEdit(String javaSource, boolean includeOneLineEdits) { }
+    public void recordJavaEdit(CharSequence javaSource, boolean includeOneLineEdits) { }
 
     @Override
     public void recordStrideEdit(String javaSource, String strideSource, StrideEditReason reason) { }
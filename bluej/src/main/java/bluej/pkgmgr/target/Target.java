@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2013,2016,2017,2018,2020,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2013,2016,2017,2018,2020,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -118,6 +118,9 @@ public abstract class Target
     // The graphical item in the class diagram
     @OnThread(Tag.FXPlatform)
     protected BorderPane pane = JavaFXUtil.initFX(BorderPane::new);
+    // Is the target outside the visible part of the class diagram (so its pane is hidden)?
+    @OnThread(Tag.FXPlatform)
+    private boolean culled = false;
     // Is the target directly resizable?  Readmes and test classes are not.
     @OnThread(Tag.FX)
     private boolean resizable = true;
@@ -867,9 +870,41 @@ public abstract class Target
     @OnThread(Tag.FXPlatform)
     public void requestFocus()
     {
+        // A hidden node can't take focus:
+        setCulled(false);
         pane.requestFocus();
     }
 
+    /**
+     * Set whether the target is outside the visible part of the class diagram.  If so,
+     * its pane is hidden so that it isn't rendered (it remains in the layout).
+     */
+    @OnThread(Tag.FXPlatform)
+    public void setCulled(boolean culled)
+    {
+        if (culled != this.culled)
+        {
+            this.culled = culled;
+            updatePaneVisible();
+        }
+    }
+
+    @OnThread(Tag.FXPlatform)
+    protected boolean isCulled()
+    {
+        return culled;
+    }
+
+    /**
+     * Show or hide our pane according to whether we are culled.  Subclasses which
+     * can be hidden for other reasons should override this.
+     */
+    @OnThread(Tag.FXPlatform)
+    protected void updatePaneVisible()
+    {
+        pane.setVisible(!culled);
+    }
+
     @OnThread(Tag.FXPlatform)
     public void setCreatingExtends(boolean drawingExtends)
     {
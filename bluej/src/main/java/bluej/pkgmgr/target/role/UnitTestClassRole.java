@@ -360,34 +360,6 @@ public class UnitTestClassRole extends ClassRole
         new TestRunnerThread(pmf, ct, param).start();
     }
     
-    /**
-     * Set up a test run. This just involves going through the methods in the class
-     * and creating a list of those which are test methods.
-     * 
-     * @param pmf   The package manager frame
-     * @param ct    The class target
-     * @param trt   The test runner thread
-     * @return The list of test methods in the class, or null if we could not find out
-     */
-    public List<String> startRunTest(PkgMgrFrame pmf, ClassTarget ct, TestRunnerThread trt)
-    {
-        Class<?> cl = pmf.getPackage().loadClass(ct.getQualifiedName());
-
-        if (cl == null)
-            return null;
-
-        // Test the whole class:
-        List<String> testMethods = Arrays.stream(cl.getMethods())
-            .filter(this::isJUnitTestMethod)
-            .map(Method::getName)
-            .sorted()
-            .collect(Collectors.toList());
-
-        Project proj = pmf.getProject();
-        TestDisplayFrame.getTestDisplay().startTest(proj, testMethods.size());
-        return testMethods;
-    }
-
     /**
      * Get the count of test methods in the test class.
      * This only counts the methods per name: if a JUnit 5 test
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2016,2017,2018,2019,2021,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2016,2017,2018,2019,2021,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -38,6 +38,7 @@ import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -55,8 +56,12 @@ import javafx.embed.swing.JFXPanel;
 import javafx.stage.Stage;
 
 import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.platform.engine.DiscoverySelector;
 import org.junit.platform.engine.TestExecutionResult;
 import org.junit.platform.engine.TestExecutionResult.Status;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
 import org.junit.platform.launcher.TestIdentifier;
@@ -109,10 +114,21 @@ public class ExecServer
     // from ExecServer (which exists in BlueJ) to Greenfoot code.
     private static Consumer<Runnable> customThreadRunner;
     public static String classToRun;
+    // Class files to define before running a shell class, as encoded by encodeClasses (may be null):
+    public static String classesToDefine;
     public static String methodToRun;
     public static String [] parameterTypes;
     public static Object [] arguments;
-    public static int execAction = -1;   // EXEC_SHELL, TEST_SETUP or TEST_RUN
+    // Arguments given as the text of a literal value, to be converted to the parameter type
+    // (used where the corresponding element of arguments is null; may itself be null):
+    public static String [] literalArguments;
+    // The object on which to invoke methodToRun (null for a static method):
+    public static Object invocationTarget;
+    // The test classes to run together, for TEST_RUN_CLASSES:
+    public static String [] classesToRun;
+    // Whether to run test classes in parallel, for TEST_RUN_CLASSES:
+    public static boolean parallelTests;
+    public static int execAction = -1;   // EXEC_SHELL, TEST_SETUP, TEST_RUN etc
     
     public static Object methodReturn;
     public static Class<?> executedClass;
@@ -121,9 +137,14 @@ public class ExecServer
     // These constant values must match the variable names declared above
     public static final String RUN_ON_THREAD_NAME = "threadToRunOn";
     public static final String CLASS_TO_RUN_NAME = "classToRun";
+    public static final String CLASSES_TO_DEFINE_NAME = "classesToDefine";
     public static final String METHOD_TO_RUN_NAME = "methodToRun";
     public static final String PARAMETER_TYPES_NAME = "parameterTypes";
     public static final String ARGUMENTS_NAME = "arguments";
+    public static final String LITERAL_ARGUMENTS_NAME = "literalArguments";
+    public static final String INVOCATION_TARGET_NAME = "invocationTarget";
+    public static final String CLASSES_TO_RUN_NAME = "classesToRun";
+    public static final String PARALLEL_TESTS_NAME = "parallelTests";
     public static final String EXEC_ACTION_NAME = "execAction";
     public static final String METHOD_RETURN_NAME = "methodReturn";
     public static final String EXCEPTION_NAME = "exception";
@@ -140,6 +161,9 @@ public class ExecServer
     public static final int INSTANTIATE_CLASS_ARGS = 7; // use constructor
         // with specified parameter types and arguments
     public static final int LAUNCH_FX_APP = 8;
+    public static final int INVOKE_METHOD = 9; // invoke a method
+        // with specified target, parameter types and arguments
+    public static final int TEST_RUN_CLASSES = 10; // run all tests in several classes
 
     // Parameter for worker thread actions
     public static int workerAction = EXIT_VM;
@@ -331,6 +355,18 @@ public class ExecServer
         // <<READING-REQUEST BREAKPOINT!>
     }
 
+    /**
+     * This method is called each time a test finishes while running several test
+     * classes (see runTestClasses), on the thread which ran the test.  The details are
+     * in the same form as each test's part of the array returned by runTestMethod.
+     * A breakpoint is set here so that the debugger can show each result as soon as
+     * it is available, rather than waiting for the whole test run to finish.
+     */
+    public static void testFinished(Object[] testDetails)
+    {
+        // <TEST-FINISHED BREAKPOINT!>
+    }
+
     /**
      * Add the object to our list of open windows
      *
@@ -409,7 +445,7 @@ public class ExecServer
             System.err.println("ExecServer.newLoader() Malformed URL=" + splits[index]);
         }
 
-        currentLoader = new URLClassLoader(urls);
+        currentLoader = new UserClassLoader(urls);
         
         synchronized (objectMaps) {
             objectMaps.clear();
@@ -651,12 +687,22 @@ public class ExecServer
      */
     private static class TestRecorder implements TestExecutionListener
     {
-        private final List<Object[]> testDetails = new ArrayList<>();
+        // Synchronized, as tests may finish on several threads if run in parallel:
+        private final List<Object[]> testDetails = Collections.synchronizedList(new ArrayList<>());
+        // Whether to report each test as it finishes, via testFinished():
+        private final boolean reportEachTest;
+        private TestPlan testPlan;
         private long executionStartTime;
         private long executionRunTime = -1;
 
+        public TestRecorder(boolean reportEachTest)
+        {
+            this.reportEachTest = reportEachTest;
+        }
+
         public void testPlanExecutionStarted(TestPlan testPlan)
         {
+            this.testPlan = testPlan;
             executionStartTime = System.currentTimeMillis();
         }
 
@@ -675,7 +721,7 @@ public class ExecServer
             // Retrieved tests (not container)
             if (testIdentifier.isTest())
             {
-                Object[] r = new Object[9];
+                Object[] r = new Object[10];
                 // The name of the method: we remove anything added by JUnit after the arguments brackets
                 // as for Junit 5 the framework may add the index of the test iteration
                 // if any argument value is available, we put it into the brackets
@@ -688,6 +734,7 @@ public class ExecServer
                         (testIdentifier.getLegacyReportingName() + "()");
                 // The display name of the test for that method, if none we set it to an empty String
                 r[1] = (testIdentifier.getDisplayName() != null) ? testIdentifier.getDisplayName() : "";
+                r[9] = getTestClassName(testIdentifier);
 
                 // Check if the test was successful or not
                 if (testExecutionResult.getStatus() == Status.SUCCESSFUL)
@@ -733,7 +780,32 @@ public class ExecServer
                     }
                 }
                 testDetails.add(r);
+                if (reportEachTest)
+                {
+                    testFinished(r);
+                }
+            }
+        }
+
+        /**
+         * Get the name of the class containing a test, from the test or from the
+         * nearest enclosing container which has a class or method as its source.
+         */
+        private String getTestClassName(TestIdentifier testIdentifier)
+        {
+            for (Optional<TestIdentifier> id = Optional.of(testIdentifier); id.isPresent(); id = id.flatMap(testPlan::getParent))
+            {
+                Optional<TestSource> source = id.get().getSource();
+                if (source.isPresent() && source.get() instanceof MethodSource methodSource)
+                {
+                    return methodSource.getClassName();
+                }
+                if (source.isPresent() && source.get() instanceof ClassSource classSource)
+                {
+                    return classSource.getClassName();
+                }
             }
+            return "";
         }
     }
 
@@ -741,9 +813,9 @@ public class ExecServer
      * Execute a JUnit test on a single test method or all test methods in a test class
      * and return the result.<p>
      *
-     * The array returned in case of failure/error has a length of [1 + 9*(number of methods tested)].<br>
+     * The array returned in case of failure/error has a length of [1 + 10*(number of methods tested)].<br>
      * The first item of the array contains the runtime of executing all tests in milliseconds expressed  
-     * as a decimal integer, then each test has eight consecutive items in the array which 
+     * as a decimal integer, then each test has ten consecutive items in the array which 
      * contains:<br>
      *  [0] = the method name<br>
      *  [1] = the method display name (for JUnit 5, empty for other frameworks) <br>
@@ -754,21 +826,49 @@ public class ExecServer
      *  [6] = the name of the method in which the exception/failure occurred, blank if success<br>
      *  [7] = the line number where the exception/failure occurred (a string), blank if success<br>
      *  [8] = "failure" or "error" or "success" (string)<br>
+     *  [9] = the name of the test class (or "" if unknown)<br>
      *      
-     * @return an array of length [1 + 9*(number of tests run)]
+     * @return an array of length [1 + 10*(number of tests run)]
      */
     private static Object[] runTestMethod(String className, String methodName)
     {
-        LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
-                .selectors((methodName != null) ? selectMethod(className + "#" +  methodName) : selectClass(className))
-                .configurationParameter("junit.jupiter.extensions.autodetection.enabled", "true") //required to use our extension
-                .build();
+        return runTests(List.of((methodName != null) ? selectMethod(className + "#" +  methodName) : selectClass(className)), false, false);
+    }
+
+    /**
+     * Execute all the JUnit tests in the given test classes, in a single test run, and
+     * return the results in the same form as runTestMethod.  If parallel is true, the
+     * classes may be run concurrently (but the tests in each class are run in turn).
+     * Each test is also reported via testFinished() as soon as it finishes.
+     */
+    private static Object[] runTestClasses(String[] classNames, boolean parallel)
+    {
+        List<DiscoverySelector> selectors = new ArrayList<>();
+        for (String className : classNames)
+        {
+            selectors.add(selectClass(className));
+        }
+        return runTests(selectors, parallel, true);
+    }
+
+    private static Object[] runTests(List<? extends DiscoverySelector> selectors, boolean parallel, boolean reportEachTest)
+    {
+        LauncherDiscoveryRequestBuilder requestBuilder = LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectors)
+                .configurationParameter("junit.jupiter.extensions.autodetection.enabled", "true"); //required to use our extension
+        if (parallel)
+        {
+            requestBuilder.configurationParameter("junit.jupiter.execution.parallel.enabled", "true")
+                .configurationParameter("junit.jupiter.execution.parallel.mode.default", "same_thread")
+                .configurationParameter("junit.jupiter.execution.parallel.mode.classes.default", "concurrent");
+        }
+        LauncherDiscoveryRequest request = requestBuilder.build();
 
         // Load the implementation of InvocationInterceptor with Java ServiceLoader.
         ServiceLoader.load(InvocationInterceptor.class);
 
         Launcher launcher = LauncherFactory.create();
-        TestRecorder recorder = new TestRecorder();
+        TestRecorder recorder = new TestRecorder(reportEachTest);
         launcher.registerTestExecutionListeners(recorder);
         launcher.execute(request);
         return Stream.concat(Stream.of(String.valueOf(recorder.getExecutionRunTime())),
@@ -823,6 +923,127 @@ public class ExecServer
         catch(IOException ioe) { }
     }
 
+    /**
+     * Load the classes named by parameterTypes, which may include primitive types.
+     */
+    private static Class<?>[] loadParameterClasses() throws ClassNotFoundException
+    {
+        Class<?> [] paramClasses = new Class[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            paramClasses[i] = switch (parameterTypes[i]) {
+                case "boolean" -> boolean.class;
+                case "byte" -> byte.class;
+                case "char" -> char.class;
+                case "short" -> short.class;
+                case "int" -> int.class;
+                case "long" -> long.class;
+                case "float" -> float.class;
+                case "double" -> double.class;
+                default -> Class.forName(parameterTypes[i], false, currentLoader);
+            };
+        }
+        return paramClasses;
+    }
+    
+    /**
+     * Get the arguments for a constructor or method call with the given parameter
+     * types. Each argument is taken from the arguments array or, where that has a
+     * null element, converted from the literal value in literalArguments (if any).
+     * The arrays are cleared so that they don't keep the arguments alive.
+     */
+    private static Object[] getArguments(Class<?>[] paramClasses)
+    {
+        Object [] args = new Object[paramClasses.length];
+        for (int i = 0; i < args.length; i++) {
+            if (arguments != null && arguments[i] != null) {
+                args[i] = arguments[i];
+            }
+            else if (literalArguments != null && literalArguments[i] != null) {
+                args[i] = convertLiteral(literalArguments[i], paramClasses[i]);
+            }
+        }
+        arguments = null;
+        literalArguments = null;
+        return args;
+    }
+    
+    /**
+     * Convert the value of a literal (a number, boolean, character or string, already
+     * checked for validity by the debugger) to an argument for the given parameter type.
+     */
+    private static Object convertLiteral(String value, Class<?> paramClass)
+    {
+        if (paramClass == boolean.class || paramClass == Boolean.class) {
+            return Boolean.valueOf(value);
+        }
+        else if (paramClass == char.class || paramClass == Character.class) {
+            return value.charAt(0);
+        }
+        else if (paramClass == byte.class || paramClass == Byte.class) {
+            return Byte.valueOf(value);
+        }
+        else if (paramClass == short.class || paramClass == Short.class) {
+            return Short.valueOf(value);
+        }
+        else if (paramClass == int.class || paramClass == Integer.class) {
+            return Integer.valueOf(value);
+        }
+        else if (paramClass == long.class || paramClass == Long.class) {
+            return Long.valueOf(value);
+        }
+        else if (paramClass == float.class || paramClass == Float.class) {
+            return Float.valueOf(value);
+        }
+        else if (paramClass == double.class || paramClass == Double.class) {
+            return Double.valueOf(value);
+        }
+        else {
+            return value;
+        }
+    }
+    
+    /**
+     * Wrap the result of a method call in the same way that a shell class wraps
+     * the result of an expression (see Shell.makeObj), so that the debugger can
+     * inspect it as field 0 of the wrapper. Returns null for a void method.
+     */
+    private static Object wrapResult(Class<?> returnType, Object result)
+    {
+        if (returnType == void.class) {
+            return null;
+        }
+        else if (returnType == boolean.class) {
+            return Shell.makeObj(((Boolean) result).booleanValue());
+        }
+        else if (returnType == byte.class) {
+            return Shell.makeObj(((Byte) result).byteValue());
+        }
+        else if (returnType == char.class) {
+            return Shell.makeObj(((Character) result).charValue());
+        }
+        else if (returnType == short.class) {
+            return Shell.makeObj(((Short) result).shortValue());
+        }
+        else if (returnType == int.class) {
+            return Shell.makeObj(((Integer) result).intValue());
+        }
+        else if (returnType == long.class) {
+            return Shell.makeObj(((Long) result).longValue());
+        }
+        else if (returnType == float.class) {
+            return Shell.makeObj(((Float) result).floatValue());
+        }
+        else if (returnType == double.class) {
+            return Shell.makeObj(((Double) result).doubleValue());
+        }
+        else if (returnType == String.class) {
+            return Shell.makeObj((String) result);
+        }
+        else {
+            return Shell.makeObj(result);
+        }
+    }
+
     private static interface RunnableThrows
     {
         public void run() throws Throwable;
@@ -863,20 +1084,31 @@ public class ExecServer
                             executedClass = null;
                             
                             clearInputBuffer();
-                            Class<?> c = currentLoader.loadClass(classToRun);
-                            executedClass = c;
-                            // Class c = cloader.loadClass(classToRun);
-                            Method m = c.getMethod("run", new Class[0]);
-                            runOnTargetThread(() -> {
-                                try
-                                {
-                                    methodReturn = m.invoke(null, new Object[0]);
-                                }
-                                catch (InvocationTargetException ite)
-                                {
-                                    throw ite.getCause();
+                            if (classesToDefine != null) {
+                                ((UserClassLoader) currentLoader).addClasses(decodeClasses(classesToDefine));
+                                classesToDefine = null;
+                            }
+                            try {
+                                Class<?> c = currentLoader.loadClass(classToRun);
+                                executedClass = c;
+                                // Class c = cloader.loadClass(classToRun);
+                                Method m = c.getMethod("run", new Class[0]);
+                                runOnTargetThread(() -> {
+                                    try
+                                    {
+                                        methodReturn = m.invoke(null, new Object[0]);
+                                    }
+                                    catch (InvocationTargetException ite)
+                                    {
+                                        throw ite.getCause();
+                                    }
+                                });
+                            }
+                            finally {
+                                if (currentLoader instanceof UserClassLoader userLoader) {
+                                    userLoader.definePendingClasses();
                                 }
-                            });
+                            }
                             break;
                         }
                         case INSTANTIATE_CLASS:
@@ -903,18 +1135,36 @@ public class ExecServer
                             // types and arguments
                             clearInputBuffer();
                             Class<?> c = currentLoader.loadClass(classToRun);
-                            Class<?> [] paramClasses = new Class[parameterTypes.length];
-                            for (int i = 0; i < parameterTypes.length; i++) {
-                                if (classLoader == null)
-                                    classLoader = currentLoader;
-                                
-                                paramClasses[i] = Class.forName(parameterTypes[i], false, currentLoader);
-                            }
+                            Class<?> [] paramClasses = loadParameterClasses();
+                            Object [] args = getArguments(paramClasses);
                             Constructor<?> cons = c.getDeclaredConstructor(paramClasses);
                             cons.setAccessible(true);
                             runOnTargetThread(() -> {
                                 try {
-                                    methodReturn = cons.newInstance(arguments);
+                                    methodReturn = cons.newInstance(args);
+                                }
+                                catch (InvocationTargetException ite) {
+                                    throw ite.getCause();
+                                }
+                            });
+                            break;
+                        }
+                        case INVOKE_METHOD:
+                        {
+                            // Invoke a method directly, without a shell class. The
+                            // result is wrapped in the same way that a shell class
+                            // would wrap it.
+                            clearInputBuffer();
+                            Class<?> c = currentLoader.loadClass(classToRun);
+                            Class<?> [] paramClasses = loadParameterClasses();
+                            Object [] args = getArguments(paramClasses);
+                            Object target = invocationTarget;
+                            invocationTarget = null;
+                            Method m = c.getDeclaredMethod(methodToRun, paramClasses);
+                            m.trySetAccessible();
+                            runOnTargetThread(() -> {
+                                try {
+                                    methodReturn = wrapResult(m.getReturnType(), m.invoke(target, args));
                                 }
                                 catch (InvocationTargetException ite) {
                                     throw ite.getCause();
@@ -950,6 +1200,13 @@ public class ExecServer
                         case TEST_RUN:
                             methodReturn = runTestMethod(classToRun, methodToRun);
                             break;
+                        case TEST_RUN_CLASSES:
+                        {
+                            String [] classNames = classesToRun;
+                            classesToRun = null;
+                            methodReturn = runTestClasses(classNames, parallelTests);
+                            break;
+                        }
                         case DISPOSE_WINDOWS:
                             disposeWindows();
                             break;
@@ -1048,12 +1305,28 @@ public class ExecServer
         for(i = 0; i < stackTrace.length; i++) {
             if(stackTrace[i].getClassName().startsWith("__SHELL"))
                 break;
+            if(stackTrace[i].getClassName().startsWith("bluej.runtime.ExecServer")) {
+                // Called directly rather than from a shell class; remove the
+                // reflection frames as well:
+                while(i > 0 && isReflectionFrame(stackTrace[i - 1]))
+                    i--;
+                break;
+            }
         }
         StackTraceElement [] newStackTrace = new StackTraceElement[i];
         System.arraycopy(stackTrace, 0, newStackTrace, 0, i);
         t.setStackTrace(newStackTrace);
         t.printStackTrace();
     }
+
+    /**
+     * Check whether a stack frame is part of the reflection machinery used to invoke user code.
+     */
+    private static boolean isReflectionFrame(StackTraceElement frame)
+    {
+        String className = frame.getClassName();
+        return className.startsWith("jdk.internal.reflect.") || className.startsWith("java.lang.reflect.");
+    }
     
 
     /**
@@ -1112,6 +1385,104 @@ public class ExecServer
         return currentLoader;
     }
 
+    /**
+     * Encode class files as a single string, so that they can be passed to the remote VM
+     * (via the classesToDefine field) as a single value.  Each class is written as its
+     * name, a newline, the length of the class file, a newline, and then the bytes of the
+     * class file, each as a single character.
+     * 
+     * @param classes  A map from binary class name to class file
+     */
+    @OnThread(Tag.Any)
+    public static String encodeClasses(Map<String, byte[]> classes)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            sb.append(entry.getKey()).append('\n').append(entry.getValue().length).append('\n');
+            sb.append(new String(entry.getValue(), StandardCharsets.ISO_8859_1));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode class files encoded by encodeClasses.
+     */
+    private static Map<String, byte[]> decodeClasses(String encoded)
+    {
+        Map<String, byte[]> classes = new HashMap<>();
+        int pos = 0;
+        while (pos < encoded.length()) {
+            int nameEnd = encoded.indexOf('\n', pos);
+            int lengthEnd = encoded.indexOf('\n', nameEnd + 1);
+            int length = Integer.parseInt(encoded.substring(nameEnd + 1, lengthEnd));
+            String bytes = encoded.substring(lengthEnd + 1, lengthEnd + 1 + length);
+            classes.put(encoded.substring(pos, nameEnd), bytes.getBytes(StandardCharsets.ISO_8859_1));
+            pos = lengthEnd + 1 + length;
+        }
+        return classes;
+    }
+
+    /**
+     * The class loader for user classes.  As well as loading classes from the project's
+     * class path, it can be given class files directly; these are shell classes, which are
+     * compiled in memory and never written to disk.  Defining shell classes in this loader
+     * (rather than a child loader) means they are in the same runtime package as the
+     * user's classes, and so can access their package-private members.
+     */
+    private static class UserClassLoader extends URLClassLoader
+    {
+        // Classes which we have been given but which have not yet been loaded:
+        private final Map<String, byte[]> pendingClasses = new HashMap<>();
+
+        public UserClassLoader(URL[] urls)
+        {
+            super(urls);
+        }
+
+        public synchronized void addClasses(Map<String, byte[]> classes)
+        {
+            pendingClasses.putAll(classes);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException
+        {
+            byte[] bytes;
+            synchronized (this) {
+                bytes = pendingClasses.remove(name);
+            }
+            if (bytes != null) {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+            return super.findClass(name);
+        }
+
+        /**
+         * Define any classes we have been given which have not yet been loaded, so that
+         * we need no longer keep their class files.  Called once a shell class has run;
+         * its other classes have usually been loaded by then, but not (for instance) an
+         * anonymous class which is only used by an object that the shell returned.
+         */
+        public void definePendingClasses()
+        {
+            List<String> names;
+            synchronized (this) {
+                names = new ArrayList<>(pendingClasses.keySet());
+            }
+            for (String name : names) {
+                try {
+                    loadClass(name);
+                }
+                catch (ClassNotFoundException | LinkageError e) {
+                    // It would have failed to load later anyway
+                }
+            }
+            synchronized (this) {
+                pendingClasses.clear();
+            }
+        }
+    }
+
     // A preloader for FX, only used to find out the reference of the Application instance.
     public static class FXPreloader extends Preloader
     {
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2021  Michael Kolling and John Rosenberg
+ Copyright (C) 2021,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -50,6 +50,14 @@ class ContentLine implements Iterable<StyledSegment>
         this.cachedText = segments.stream().map(s -> s.getText()).collect(Collectors.joining());
     }
 
+    /**
+     * Makes a copy of this line, which is not affected by later appends to this line.
+     */
+    public ContentLine copy()
+    {
+        return new ContentLine(segments);
+    }
+
     /**
      * Appends the given styled segment to the end of this content line.
      */
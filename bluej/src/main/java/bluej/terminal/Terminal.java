@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2013,2014,2015,2016,2017,2018,2019,2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2013,2014,2015,2016,2017,2018,2019,2021,2022,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -48,6 +48,8 @@ import bluej.utility.FileUtility;
 import bluej.utility.JavaNames;
 import bluej.utility.Utility;
 import bluej.utility.javafx.JavaFXUtil;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
@@ -84,10 +86,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -138,12 +136,14 @@ public final class Terminal
             Config.getPropBooleanProperty(UNLIMITEDBUFFERINGCALLPROPNAME);
     private boolean newMethodCall = true;
     private boolean errorShown = false;
+    // The number of lines of the error pane scanned for stack traces:
+    private int errorLinesScanned = 0;
     private final InputBuffer buffer;
     private final BooleanProperty showingProperty = new SimpleBooleanProperty(false);
 
     @OnThread(Tag.Any) private final Reader in = new TerminalReader();
-    @OnThread(Tag.Any) private final Writer out = new TerminalWriter(false);
-    @OnThread(Tag.Any) private final Writer err = new TerminalWriter(true);
+    @OnThread(Tag.Any) private final TerminalWriter out = new TerminalWriter(false);
+    @OnThread(Tag.Any) private final TerminalWriter err = new TerminalWriter(true);
 
     private Stage window;
 
@@ -302,6 +302,7 @@ public final class Terminal
             buffer.notifyReaders();
         }
         this.input.clear();
+        flushPendingOutput();
         writeToPane(text, inputString, STDOUT_INPUT);
     }
 
@@ -377,8 +378,14 @@ public final class Terminal
             try
             {
                 FileWriter writer = new FileWriter(fileName);
-                String output = String.join(System.lineSeparator(), text.getLines());
-                writer.write(output);
+                // Write a line at a time, as older lines may need to be read back from disk:
+                List<String> lines = text.getLines();
+                for (int i = 0; i < lines.size(); i++)
+                {
+                    if (i > 0)
+                        writer.write(System.lineSeparator());
+                    writer.write(lines.get(i));
+                }
                 writer.close();
             }
             catch (IOException ex)
@@ -398,7 +405,10 @@ public final class Terminal
         }
         else if (job.showPrintDialog(window))
         {
-            List<List<TextLine.StyledSegment>> lines = text.getStyledLines();
+            // Take a snapshot, as the printing is done on another thread.  Lines are only
+            // fetched from it (and read back from disk, if need be) as they are printed:
+            TerminalScrollback.Snapshot snapshot = text.snapshot();
+            List<List<TextLine.StyledSegment>> lines = Lists.transform(snapshot, ImmutableList::copyOf);
                         
             BorderPane root = new BorderPane();
             Scene scene = new Scene(root);
@@ -425,7 +435,14 @@ public final class Terminal
                 @OnThread(value = Tag.FX, ignoreParent = true)
                 public void run()
                 {
-                    FlowEditor.printPages(job, root, n -> {}, lineContainer, lineDisplay, lines, false, printProgressDialog.getWithinFileUpdater());
+                    try
+                    {
+                        FlowEditor.printPages(job, root, n -> {}, lineContainer, lineDisplay, lines, false, printProgressDialog.getWithinFileUpdater());
+                    }
+                    finally
+                    {
+                        snapshot.close();
+                    }
                     job.endJob();
                     printProgressDialog.finished();
                 }
@@ -501,6 +518,7 @@ public final class Terminal
      */
     private void methodCall(String callString)
     {
+        flushPendingOutput();
         newMethodCall = false;
         if(clearOnMethodCall.get()) {
             clear();
@@ -521,6 +539,7 @@ public final class Terminal
 
     private void constructorCall(InvokerRecord ir)
     {
+        flushPendingOutput();
         newMethodCall = false;
         if(clearOnMethodCall.get()) {
             clear();
@@ -534,6 +553,7 @@ public final class Terminal
     
     private void methodResult(ExecutionEvent event)
     {
+        flushPendingOutput();
         if (recordMethodCalls.get()) {
             String result = null;
             String resultType = event.getResult();
@@ -575,12 +595,16 @@ public final class Terminal
 
     /**
      * Looks through the contents of the terminal for lines
-     * that look like they are part of a stack trace.
+     * that look like they are part of a stack trace.  Only lines added since the
+     * last scan (and the previous last line, which may have been added to) are scanned.
      */
     private void scanForStackTrace()
     {
         try {
             List<String> allLines = errorText.getLines();
+            // If the content has been cleared or trimmed, start again:
+            int firstLine = errorLinesScanned <= allLines.size() ? Math.max(0, errorLinesScanned - 1) : 0;
+            errorLinesScanned = allLines.size();
 
             Pattern fileAndLine = java.util.regex.Pattern.compile("at (\\S+)\\((\\S+)\\.java:(\\d+)\\)");
             Pattern noSource = java.util.regex.Pattern.compile("at \\S+\\((Native Method|Unknown Source)\\)");
@@ -588,7 +612,7 @@ public final class Terminal
             // Matches things like:
             // at greenfoot.localdebugger.LocalDebugger$QueuedExecution.run(LocalDebugger.java:267)
             //    ^--------------------group 1----------------------------^ ^--group 2--^      ^3^
-            for (int i = 0; i < allLines.size(); i++)
+            for (int i = firstLine; i < allLines.size(); i++)
             {
                 String line = allLines.get(i);
                 Matcher m = fileAndLine.matcher(line);
@@ -845,6 +869,9 @@ public final class Terminal
     public void cleanup()
     {
         BlueJEvent.removeListener(this);
+        text.close();
+        if (errorText != null)
+            errorText.close();
     }
 
     /**
@@ -875,15 +902,41 @@ public final class Terminal
         public void close() { }
     }
 
+    /**
+     * Append any output which has been written by the program but not yet displayed.
+     * This is done before the terminal itself writes anything (e.g. a recorded method
+     * call, or echoed input), so that the output appears in the order it was produced.
+     */
+    private void flushPendingOutput()
+    {
+        out.drain();
+        err.drain();
+    }
+
     /**
      * A writer which writes to the terminal. It can be flagged for error output.
      * The idea is that error output could be presented differently from standard
      * output.
+     *
+     * Written text is collected in a buffer, and appended to the terminal on the FX
+     * thread in one go, so that a program producing a lot of output in small pieces
+     * causes one update per pulse rather than one per write. The writing thread
+     * only waits if the buffer is full, so that gushing output is still limited to
+     * the speed at which the terminal can display it and the UI remains responsive.
      */
     @OnThread(Tag.Any)
     private class TerminalWriter extends Writer
     {
-        private boolean isErrorOut;
+        // The maximum number of characters waiting to be displayed before writes block:
+        private static final int BUFFER_CAPACITY = 64 * 1024;
+        // The longest we'll wait for space in the buffer, in case something goes wrong:
+        private static final long FULL_TIMEOUT_MILLIS = 2000;
+
+        private final boolean isErrorOut;
+        // Text not yet appended to the terminal; guarded by this writer's monitor:
+        private final StringBuilder pending = new StringBuilder();
+        // Whether a drain of the pending text has been scheduled on the FX thread:
+        private boolean drainScheduled = false;
         
         TerminalWriter(boolean isError)
         {
@@ -893,39 +946,69 @@ public final class Terminal
 
         public void write(final char[] cbuf, final int off, final int len)
         {
-            try {
-                // We use a wait so that terminal output is limited to
-                // the processing speed of the event queue. This means the UI
-                // will still respond to user input even if the output is really
-                // gushing.
-                CompletableFuture<Boolean> written = new CompletableFuture<>();
-                Platform.runLater(() -> {
-                    try
+            synchronized (this)
+            {
+                long deadline = System.currentTimeMillis() + FULL_TIMEOUT_MILLIS;
+                try
+                {
+                    // Always allow a write into an empty buffer, however large:
+                    while (pending.length() != 0 && pending.length() + len > BUFFER_CAPACITY)
                     {
-                        String s = new String(cbuf, off, len);
-                        if (isErrorOut)
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
                         {
-                            showErrorPane();
-                            writeToPane(errorText, s, STDERR_NORMAL);
+                            break;
                         }
-                        else
-                            writeToPane(text, s, STDOUT_OUTPUT);
-                    }
-                    catch (Throwable t)
-                    {
-                        Debug.reportError(t);
-                    }
-                    finally
-                    {
-                        written.complete(true);
+                        wait(remaining);
                     }
-                });
-                // Timeout in case something goes wrong with the printing:
-                written.get(2000, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException ie)
+                {
+                    Debug.reportError(ie);
+                }
+
+                pending.append(cbuf, off, len);
+                if (drainScheduled)
+                {
+                    return;
+                }
+                drainScheduled = true;
+            }
+            Platform.runLater(this::drain);
+        }
+
+        /**
+         * Append all pending text to the terminal.
+         */
+        @OnThread(Tag.FXPlatform)
+        void drain()
+        {
+            String s;
+            synchronized (this)
+            {
+                drainScheduled = false;
+                if (pending.length() == 0)
+                {
+                    return;
+                }
+                s = pending.toString();
+                pending.setLength(0);
+                notifyAll();
+            }
+
+            try
+            {
+                if (isErrorOut)
+                {
+                    showErrorPane();
+                    writeToPane(errorText, s, STDERR_NORMAL);
+                }
+                else
+                    writeToPane(text, s, STDOUT_OUTPUT);
             }
-            catch (InterruptedException | ExecutionException | TimeoutException ie)
+            catch (Throwable t)
             {
-                Debug.reportError(ie);
+                Debug.reportError(t);
             }
         }
 
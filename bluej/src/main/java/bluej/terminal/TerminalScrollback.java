@@ -0,0 +1,674 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.terminal;
+
+import bluej.editor.base.TextLine.StyledSegment;
+import bluej.utility.Debug;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The lines of content of a terminal text pane.
+ *
+ * The most recent lines are held in memory.  Once there are many lines (which happens
+ * with unlimited buffering, or in the error pane, which is never trimmed), the oldest
+ * lines are compressed in fixed-size segments and written to a temporary spill file.
+ * A segment is read back from its part of the file when its lines are needed (to
+ * display them, or to save the terminal contents), and the last few segments read
+ * are kept decoded.  A snapshot of the lines can also be taken (see snapshot()), for
+ * reading them from another thread, e.g. to print them.  For spilled lines only the length of each line is kept in
+ * memory, which is enough to calculate positions and scroll extents.
+ *
+ * Lines with custom style data (i.e. stack trace links) cannot be written out, so these,
+ * and any spilled lines which are restyled, are kept in memory alongside their segment.
+ *
+ * There is always at least one line: the line currently being appended to.
+ */
+class TerminalScrollback
+{
+    // The number of lines in each spilled segment:
+    private static final int SEGMENT_LINES = 4096;
+    // The number of recent lines which are always kept in memory:
+    private static final int MIN_MEMORY_LINES = 8192;
+    // The number of segments to keep decoded:
+    private static final int DECODED_SEGMENTS = 4;
+
+    private final int segmentLines;
+    private final int minMemoryLines;
+
+    // The older lines, in order:
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    // The total number of lines in the segments:
+    private int segmentLineCount = 0;
+    // The recent lines, which follow those in the segments:
+    private final ArrayList<ContentLine> recent = new ArrayList<>();
+    // Recently decoded segments, least recently used first:
+    private final LinkedHashMap<Segment, List<ContentLine>> decoded = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Segment, List<ContentLine>> eldest)
+        {
+            return size() > DECODED_SEGMENTS;
+        }
+    };
+
+    // The spill file, and a channel open on it; both null until the first spill:
+    private File spillFile;
+    private FileChannel spillChannel;
+    // Set if writing to the spill file fails, after which we keep everything in memory:
+    private boolean spillFailed = false;
+    // The number of snapshots not yet closed.  While there are any, the spill file is not
+    // truncated, as the snapshots may still read segments from it:
+    private final AtomicInteger openSnapshots = new AtomicInteger();
+
+    // The text of the longest line, or null if it needs to be recalculated:
+    private String longestLine = "";
+
+    public TerminalScrollback()
+    {
+        this(SEGMENT_LINES, MIN_MEMORY_LINES);
+    }
+
+    /**
+     * Create an empty scrollback, spilling segments of the given number of lines
+     * once there are more than the given number of lines in memory.
+     */
+    TerminalScrollback(int segmentLines, int minMemoryLines)
+    {
+        this.segmentLines = segmentLines;
+        this.minMemoryLines = minMemoryLines;
+        recent.add(new ContentLine(new ArrayList<>()));
+    }
+
+    /**
+     * Gets the number of lines (always at least one).
+     */
+    public int getLineCount()
+    {
+        return segmentLineCount + recent.size();
+    }
+
+    /**
+     * Gets the line with the given index.  The result should not be modified; use
+     * replaceLine to change the styling of a line.
+     */
+    public ContentLine getLine(int lineIndex)
+    {
+        if (lineIndex >= segmentLineCount)
+        {
+            return recent.get(lineIndex - segmentLineCount);
+        }
+        for (Segment segment : segments)
+        {
+            if (lineIndex < segment.lineLengths.length)
+            {
+                ContentLine retained = segment.retained.get(lineIndex);
+                return retained != null ? retained : decode(segment).get(lineIndex);
+            }
+            lineIndex -= segment.lineLengths.length;
+        }
+        throw new IndexOutOfBoundsException("Line " + lineIndex + " of " + getLineCount());
+    }
+
+    /**
+     * Gets the length of the line with the given index, without reading it back
+     * if it has been spilled.
+     */
+    public int getLineLength(int lineIndex)
+    {
+        if (lineIndex >= segmentLineCount)
+        {
+            return recent.get(lineIndex - segmentLineCount).getText().length();
+        }
+        for (Segment segment : segments)
+        {
+            if (lineIndex < segment.lineLengths.length)
+            {
+                return segment.lineLengths[lineIndex];
+            }
+            lineIndex -= segment.lineLengths.length;
+        }
+        throw new IndexOutOfBoundsException("Line " + lineIndex + " of " + getLineCount());
+    }
+
+    /**
+     * Gets the total length of all the lines before the given line.
+     */
+    public int getLineStart(int lineIndex)
+    {
+        int start = 0;
+        int remaining = lineIndex;
+        for (Segment segment : segments)
+        {
+            if (remaining < segment.lineLengths.length)
+            {
+                for (int i = 0; i < remaining; i++)
+                {
+                    start += segment.lineLengths[i];
+                }
+                return start;
+            }
+            start += segment.charCount;
+            remaining -= segment.lineLengths.length;
+        }
+        for (int i = 0; i < remaining; i++)
+        {
+            start += recent.get(i).getText().length();
+        }
+        return start;
+    }
+
+    /**
+     * Gets the text of the longest line.
+     */
+    public String getLongestLine()
+    {
+        if (longestLine == null)
+        {
+            int longestIndex = 0;
+            int longestLength = -1;
+            int lineIndex = 0;
+            for (Segment segment : segments)
+            {
+                for (int length : segment.lineLengths)
+                {
+                    if (length > longestLength)
+                    {
+                        longestIndex = lineIndex;
+                        longestLength = length;
+                    }
+                    lineIndex += 1;
+                }
+            }
+            for (ContentLine line : recent)
+            {
+                if (line.getText().length() > longestLength)
+                {
+                    longestIndex = lineIndex;
+                    longestLength = line.getText().length();
+                }
+                lineIndex += 1;
+            }
+            longestLine = getLine(longestIndex).getText();
+        }
+        return longestLine;
+    }
+
+    /**
+     * Appends the given segment (which should not contain a newline) to the last line.
+     */
+    public void appendToLastLine(StyledSegment segment)
+    {
+        ContentLine last = recent.get(recent.size() - 1);
+        last.append(segment);
+        if (longestLine != null && last.getText().length() > longestLine.length())
+        {
+            longestLine = last.getText();
+        }
+    }
+
+    /**
+     * Starts a new, empty, last line.
+     */
+    public void newLine()
+    {
+        recent.add(new ContentLine(new ArrayList<>()));
+        if (!spillFailed && recent.size() >= minMemoryLines + segmentLines)
+        {
+            spill();
+        }
+    }
+
+    /**
+     * Replaces the line with the given index by a line with the same text but
+     * different styling.
+     */
+    public void replaceLine(int lineIndex, ContentLine line)
+    {
+        if (lineIndex >= segmentLineCount)
+        {
+            recent.set(lineIndex - segmentLineCount, line);
+            return;
+        }
+        for (Segment segment : segments)
+        {
+            if (lineIndex < segment.lineLengths.length)
+            {
+                segment.retained.put(lineIndex, line);
+                return;
+            }
+            lineIndex -= segment.lineLengths.length;
+        }
+        throw new IndexOutOfBoundsException("Line " + lineIndex + " of " + getLineCount());
+    }
+
+    /**
+     * Removes the given number of lines from the start.  At least one line
+     * always remains.
+     */
+    public void removeFirstLines(int count)
+    {
+        count = Math.min(count, getLineCount() - 1);
+        while (count > 0 && !segments.isEmpty())
+        {
+            Segment first = segments.get(0);
+            int firstLineCount = first.lineLengths.length;
+            if (firstLineCount > count)
+            {
+                // Keep the rest of the segment, in memory:
+                List<ContentLine> rest = new ArrayList<>(firstLineCount - count);
+                for (int i = count; i < firstLineCount; i++)
+                {
+                    rest.add(getLine(i));
+                }
+                segments.set(0, new Segment(rest));
+                segmentLineCount -= count;
+                count = 0;
+            }
+            else
+            {
+                segments.remove(0);
+                segmentLineCount -= firstLineCount;
+                count -= firstLineCount;
+            }
+            decoded.remove(first);
+        }
+        recent.subList(0, count).clear();
+        if (segments.isEmpty())
+        {
+            truncateSpillFile();
+        }
+        longestLine = null;
+    }
+
+    /**
+     * Removes all content, leaving a single empty line.
+     */
+    public void clear()
+    {
+        segments.clear();
+        segmentLineCount = 0;
+        decoded.clear();
+        recent.clear();
+        recent.add(new ContentLine(new ArrayList<>()));
+        longestLine = "";
+        truncateSpillFile();
+    }
+
+    /**
+     * Removes all content, and deletes the spill file (if any).  The scrollback can
+     * still be used afterwards, in which case a new spill file will be created if needed.
+     */
+    public void close()
+    {
+        clear();
+        if (spillChannel != null)
+        {
+            try
+            {
+                spillChannel.close();
+            }
+            catch (IOException e)
+            {
+                Debug.reportError(e);
+            }
+            spillFile.delete();
+            spillChannel = null;
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current lines, which can be read from another thread while
+     * this scrollback continues to change.  Spilled lines are only read back from the spill
+     * file when they are fetched from the snapshot.  The snapshot should be closed once it
+     * is no longer needed.
+     */
+    public Snapshot snapshot()
+    {
+        openSnapshots.incrementAndGet();
+        return new Snapshot();
+    }
+
+    /**
+     * Writes the oldest in-memory lines to the spill file as a new segment.
+     */
+    private void spill()
+    {
+        List<ContentLine> lines = recent.subList(0, segmentLines);
+        try
+        {
+            if (spillChannel == null)
+            {
+                spillFile = File.createTempFile("bluej-terminal", ".spill");
+                spillFile.deleteOnExit();
+                spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            byte[] bytes = encode(lines);
+            long offset = spillChannel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+            {
+                spillChannel.write(buffer, offset + buffer.position());
+            }
+
+            Segment segment = new Segment(offset, bytes.length, lines);
+            segments.add(segment);
+            segmentLineCount += lines.size();
+            lines.clear();
+        }
+        catch (IOException e)
+        {
+            Debug.reportError("Could not write terminal output to disk; keeping it all in memory", e);
+            spillFailed = true;
+        }
+    }
+
+    /**
+     * Gets the lines of the given segment, reading them back from the spill file
+     * if necessary.  If they cannot be read, blank lines are substituted.
+     */
+    private List<ContentLine> decode(Segment segment)
+    {
+        if (segment.lines != null)
+        {
+            return segment.lines;
+        }
+        List<ContentLine> lines = decoded.get(segment);
+        if (lines != null)
+        {
+            return lines;
+        }
+
+        lines = read(spillChannel, segment);
+        decoded.put(segment, lines);
+        return lines;
+    }
+
+    /**
+     * Reads the lines of the given spilled segment from the spill file.  If they cannot
+     * be read, blank lines are substituted.  This may be called from any thread, since
+     * it reads from a position in the file rather than changing the channel's position.
+     */
+    private static List<ContentLine> read(FileChannel channel, Segment segment)
+    {
+        List<ContentLine> lines = new ArrayList<>(segment.lineLengths.length);
+        try
+        {
+            byte[] bytes = new byte[segment.byteLength];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, segment.offset + buffer.position()) < 0)
+                {
+                    throw new EOFException("Terminal spill file is truncated");
+                }
+            }
+            // Share the style lists, as there will be few distinct ones:
+            HashMap<List<String>, List<String>> styles = new HashMap<>();
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes))))
+            {
+                for (int i = 0; i < segment.lineLengths.length; i++)
+                {
+                    int segmentCount = in.readInt();
+                    List<StyledSegment> styledSegments = new ArrayList<>(segmentCount);
+                    for (int j = 0; j < segmentCount; j++)
+                    {
+                        String[] cssClasses = new String[in.readInt()];
+                        for (int k = 0; k < cssClasses.length; k++)
+                        {
+                            cssClasses[k] = readString(in);
+                        }
+                        List<String> style = styles.computeIfAbsent(List.of(cssClasses), s -> s);
+                        styledSegments.add(new StyledSegment(style, readString(in)));
+                    }
+                    lines.add(new ContentLine(styledSegments));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            Debug.reportError("Could not read terminal output back from disk", e);
+            lines.clear();
+            for (int i = 0; i < segment.lineLengths.length; i++)
+            {
+                lines.add(new ContentLine(new ArrayList<>()));
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] encode(List<ContentLine> lines) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes)))
+        {
+            List<StyledSegment> styledSegments = new ArrayList<>();
+            for (ContentLine line : lines)
+            {
+                styledSegments.clear();
+                for (StyledSegment segment : line)
+                {
+                    if (!segment.getText().isEmpty())
+                    {
+                        styledSegments.add(segment);
+                    }
+                }
+                out.writeInt(styledSegments.size());
+                for (StyledSegment segment : styledSegments)
+                {
+                    out.writeInt(segment.getStyleClasses().size());
+                    for (String cssClass : segment.getStyleClasses())
+                    {
+                        writeString(out, cssClass);
+                    }
+                    writeString(out, segment.getText());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private void truncateSpillFile()
+    {
+        // If there are open snapshots, the spill file is left to grow until the next time:
+        if (spillChannel != null && openSnapshots.get() == 0)
+        {
+            try
+            {
+                spillChannel.truncate(0);
+            }
+            catch (IOException e)
+            {
+                Debug.reportError(e);
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * The lines of the scrollback at the time the snapshot was taken; see snapshot().
+     * The lines should not be modified.
+     */
+    class Snapshot extends AbstractList<ContentLine> implements AutoCloseable
+    {
+        private final FileChannel channel = spillChannel;
+        private final List<Segment> segments = new ArrayList<>(TerminalScrollback.this.segments);
+        // The lines retained in memory for each segment, as the segments' own maps may change:
+        private final List<Map<Integer, ContentLine>> retained = new ArrayList<>();
+        private final List<ContentLine> recent = new ArrayList<>(TerminalScrollback.this.recent);
+        private final int segmentLineCount = TerminalScrollback.this.segmentLineCount;
+        // The last spilled segment read back, and its lines:
+        private Segment lastRead;
+        private List<ContentLine> lastReadLines;
+        private boolean closed = false;
+
+        private Snapshot()
+        {
+            for (Segment segment : segments)
+            {
+                retained.add(new HashMap<>(segment.retained));
+            }
+            // The last line is the only one which is appended to:
+            recent.set(recent.size() - 1, recent.get(recent.size() - 1).copy());
+        }
+
+        @Override
+        public ContentLine get(int lineIndex)
+        {
+            if (lineIndex >= segmentLineCount)
+            {
+                return recent.get(lineIndex - segmentLineCount);
+            }
+            for (int i = 0; i < segments.size(); i++)
+            {
+                Segment segment = segments.get(i);
+                if (lineIndex < segment.lineLengths.length)
+                {
+                    ContentLine line = retained.get(i).get(lineIndex);
+                    if (line != null)
+                    {
+                        return line;
+                    }
+                    if (segment.lines != null)
+                    {
+                        return segment.lines.get(lineIndex);
+                    }
+                    if (segment != lastRead)
+                    {
+                        lastReadLines = read(channel, segment);
+                        lastRead = segment;
+                    }
+                    return lastReadLines.get(lineIndex);
+                }
+                lineIndex -= segment.lineLengths.length;
+            }
+            throw new IndexOutOfBoundsException("Line " + lineIndex + " of " + size());
+        }
+
+        @Override
+        public int size()
+        {
+            return segmentLineCount + recent.size();
+        }
+
+        @Override
+        public void close()
+        {
+            if (!closed)
+            {
+                closed = true;
+                openSnapshots.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A run of older lines.  Usually these are in the spill file, but the remainder of
+     * a partly-removed segment is held in memory instead.
+     */
+    private static class Segment
+    {
+        // The location of the compressed lines in the spill file (if not in memory):
+        private final long offset;
+        private final int byteLength;
+        // The lines, if held in memory rather than in the spill file:
+        private final List<ContentLine> lines;
+        private final int[] lineLengths;
+        private final int charCount;
+        // Lines which must be kept in memory, by index within the segment:
+        private final HashMap<Integer, ContentLine> retained = new HashMap<>();
+
+        // A segment which has been written to the spill file
+        private Segment(long offset, int byteLength, List<ContentLine> spilledLines)
+        {
+            this.offset = offset;
+            this.byteLength = byteLength;
+            this.lines = null;
+            this.lineLengths = new int[spilledLines.size()];
+            int count = 0;
+            for (int i = 0; i < lineLengths.length; i++)
+            {
+                ContentLine line = spilledLines.get(i);
+                lineLengths[i] = line.getText().length();
+                count += lineLengths[i];
+                for (StyledSegment segment : line)
+                {
+                    if (segment.getCustomData() != null)
+                    {
+                        retained.put(i, line);
+                        break;
+                    }
+                }
+            }
+            this.charCount = count;
+        }
+
+        // A segment held in memory
+        private Segment(List<ContentLine> lines)
+        {
+            this.offset = -1;
+            this.byteLength = 0;
+            this.lines = lines;
+            this.lineLengths = new int[lines.size()];
+            int count = 0;
+            for (int i = 0; i < lineLengths.length; i++)
+            {
+                lineLengths[i] = lines.get(i).getText().length();
+                count += lineLengths[i];
+            }
+            this.charCount = count;
+        }
+    }
+}
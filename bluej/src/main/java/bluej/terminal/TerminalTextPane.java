@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 2021,2022,2023,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -28,7 +28,6 @@ import bluej.editor.base.TextLine.StyledSegment;
 import bluej.utility.javafx.FXPlatformRunnable;
 import bluej.utility.javafx.JavaFXUtil;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import javafx.scene.Cursor;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.input.Clipboard;
@@ -38,12 +37,10 @@ import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.ScrollEvent;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * A non-editable text pane that is used for the terminal text panes (stdout and stderr).  The requirements
@@ -55,8 +52,8 @@ import java.util.stream.Collectors;
  */
 public abstract class TerminalTextPane extends BaseEditorPane
 {
-    // One list entry per line of content.  Will always be at least one entry:
-    private final ArrayList<ContentLine> content = new ArrayList<>();
+    // The lines of content.  Will always be at least one line:
+    private final TerminalScrollback content = new TerminalScrollback();
     // Listeners to call when the content of the pane changes
     private final ArrayList<FXPlatformRunnable> contentListeners = new ArrayList<>();
     
@@ -107,7 +104,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
             case ENTER:
             case SPACE:
             {
-                Object customData = content.get(caretPos.getLine()).getCustomStyleDataAtColumn(caretPos.getColumn());
+                Object customData = content.getLine(caretPos.getLine()).getCustomStyleDataAtColumn(caretPos.getColumn());
                 if (customData != null && customData instanceof ExceptionSourceLocation)
                 {
                     ((ExceptionSourceLocation)customData).showInEditor();
@@ -229,7 +226,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
         // The text lines themselves are mouse-transparent.  So rather than use CSS styles,
         // we must change the cursor ourselves for the whole panel based on where the mouse is:
         getCaretPositionForMouseEvent(e).ifPresent(p -> {
-            Object styleData = content.get(p.getLine()).getCustomStyleDataAtColumn(p.getColumn());
+            Object styleData = content.getLine(p.getLine()).getCustomStyleDataAtColumn(p.getColumn());
             // Checks non-null and sanity check for the type too:
             if (styleData != null && styleData instanceof ExceptionSourceLocation)
             {
@@ -271,7 +268,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
         {
             // If it was a click, and on a hyperlinked stack trace, follow the link:
             getCaretPositionForMouseEvent(e).ifPresent(p -> {
-                Object styleData = content.get(p.getLine()).getCustomStyleDataAtColumn(p.getColumn());
+                Object styleData = content.getLine(p.getLine()).getCustomStyleDataAtColumn(p.getColumn());
                 // Checks non-null and sanity check for the type too:
                 if (styleData != null && styleData instanceof ExceptionSourceLocation)
                 {
@@ -284,7 +281,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
     @Override
     protected Pos makePosition(int line, int column)
     {
-        return new Pos(content.stream().limit(line).mapToInt(l -> l.getText().length()).sum() + column, line, column);
+        return new Pos(content.getLineStart(line) + column, line, column);
     }
 
     @Override
@@ -304,11 +301,12 @@ public abstract class TerminalTextPane extends BaseEditorPane
      */
     public void trimToMostRecentNLines(int numLines)
     {
-        if (content.size() > numLines)
+        if (content.getLineCount() > numLines)
         {
-            // Important to take a copy, as content will be blanked during the set:
-            int linesToSubtract = content.size() - numLines;
-            setContent(new ArrayList<>(content.subList(linesToSubtract, content.size())));
+            int linesToSubtract = content.getLineCount() - numLines;
+            content.removeFirstLines(linesToSubtract);
+            refreshDisplay();
+            contentChanged();
             // Adjust caret and anchor positions upwards by the trimmed lines:
             int newCaretLine = Math.max(0, caretPos.getLine() - linesToSubtract);
             caretPos = makePosition(
@@ -322,15 +320,6 @@ public abstract class TerminalTextPane extends BaseEditorPane
         }
     }
 
-    // Helper to set content and call listeners:
-    private void setContent(List<ContentLine> lines)
-    {
-        content.clear();
-        content.addAll(lines);
-        refreshDisplay();
-        contentChanged();
-    }
-
     // Helper to call all the content listeners:
     private void contentChanged()
     {
@@ -349,50 +338,101 @@ public abstract class TerminalTextPane extends BaseEditorPane
     public void clear()
     {
         // Reset cursor and anchor to only remaining valid position:
-        // Important to do this before setContent because that may use the caret position
+        // Important to do this before refreshing because that may use the caret position
         // while updating the display:
         caretPos = new Pos(0, 0, 0);
         anchorPos = new Pos(0, 0, 0);
-        setContent(Collections.singletonList(new ContentLine(new ArrayList<>())));
+        content.clear();
+        refreshDisplay();
+        contentChanged();
     }
 
     /**
-     * Get the text content of the pane as a list of lines.
+     * Clear the content of the pane, and release any resources (i.e. disk space) held for it.
+     * The pane can still be used afterwards.
+     */
+    public void close()
+    {
+        clear();
+        content.close();
+    }
+
+    /**
+     * Get the text content of the pane as a list of lines.  The list is a view which fetches
+     * each line as it is requested (older lines may need to be read back from disk), so should
+     * not be used after the content changes.
      * @return The list of lines, without any newline characters.
      */
     public List<String> getLines()
     {
-        return content.stream().map(line -> line.getText()).collect(Collectors.toList());
+        return new AbstractList<String>()
+        {
+            @Override
+            public String get(int index)
+            {
+                return content.getLine(index).getText();
+            }
+
+            @Override
+            public int size()
+            {
+                return content.getLineCount();
+            }
+        };
     }
 
     @Override
     protected int getLineLength(int lineIndex)
     {
-        return content.get(lineIndex).getText().length();
+        return content.getLineLength(lineIndex);
     }
 
     @Override
     protected String getLineContentAtCaret()
     {
-        return content.get(caretPos.line).getText();
+        return content.getLine(caretPos.line).getText();
     }
 
     @Override
     protected String getLongestLineInWholeDocument()
     {
-        return content.stream().map(l -> l.getText()).max(Comparator.comparing(String::length)).orElse("");
+        return content.getLongestLine();
     }
 
     @Override
     protected int getLineCount()
     {
-        return content.size();
+        return content.getLineCount();
     }
 
-    // Returns a copy, to avoid sharing.
+    // Use an AbstractList rather than copy all the lines, so that only the lines which
+    // are displayed are fetched.  Each line is a copy, to avoid sharing.
     public List<List<StyledSegment>> getStyledLines()
     {
-        return content.stream().map(line -> ImmutableList.copyOf(line)).collect(Collectors.toList());
+        return new AbstractList<List<StyledSegment>>()
+        {
+            @Override
+            public List<StyledSegment> get(int index)
+            {
+                return ImmutableList.copyOf(content.getLine(index));
+            }
+
+            @Override
+            public int size()
+            {
+                return content.getLineCount();
+            }
+        };
+    }
+
+    /**
+     * Takes a snapshot of the lines (see TerminalScrollback.snapshot()), which can be read
+     * from another thread while the terminal continues to change.  It should be closed
+     * once finished with.
+     */
+    TerminalScrollback.Snapshot snapshot()
+    {
+        return content.snapshot();
     }
 
     @Override
@@ -421,15 +461,15 @@ public abstract class TerminalTextPane extends BaseEditorPane
             if (newlineIndex == -1)
             {
                 // No newline, just append it:
-                content.get(content.size() - 1).append(new StyledSegment(styledSegment.getStyleClasses(), remainder));
+                content.appendToLastLine(new StyledSegment(styledSegment.getStyleClasses(), remainder));
                 remainder = "";
             }
             else
             {
                 // Chop '\r' before '\n', if it is present:
                 String beforeNewline = remainder.substring(0, newlineIndex > 0 && remainder.charAt(newlineIndex - 1) == '\r' ? newlineIndex - 1 : newlineIndex);
-                content.get(content.size() - 1).append(new StyledSegment(styledSegment.getStyleClasses(), beforeNewline));
-                content.add(new ContentLine(new ArrayList<>()));
+                content.appendToLastLine(new StyledSegment(styledSegment.getStyleClasses(), beforeNewline));
+                content.newLine();
                 remainder = remainder.substring(newlineIndex + 1);
             }
         }
@@ -442,7 +482,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
      */
     public void scrollToEnd()
     {
-        lineDisplay.ensureLineVisible(content.size() - 1, getLineContainerHeight(), getLineCount());
+        lineDisplay.ensureLineVisible(content.getLineCount() - 1, getLineContainerHeight(), getLineCount());
         updateRender(false);
     }
 
@@ -458,7 +498,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
      */
     public void setStyleForLineSegment(int lineIndex, int start, int end, List<String> cssClasses, Object customData)
     {
-        Iterable<StyledSegment> origLine = content.get(lineIndex);
+        Iterable<StyledSegment> origLine = content.getLine(lineIndex);
         ArrayList<StyledSegment> result = new ArrayList<>();
         // We need to find the right segment and replace it:
         int charsToSkip = start;
@@ -495,7 +535,7 @@ public abstract class TerminalTextPane extends BaseEditorPane
                     charsToSkip -= segmentLength;
             }
         }
-        content.set(lineIndex, new ContentLine(result));
+        content.replaceLine(lineIndex, new ContentLine(result));
         // We don't call contentChanged here, because although the styles have changed, the text content has not
     }
 
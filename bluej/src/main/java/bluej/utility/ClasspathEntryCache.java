@@ -0,0 +1,227 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import threadchecker.OnThread;
+import threadchecker.Tag;
+
+/**
+ * A binary cache of the names of the classes found in a single classpath entry (a jar
+ * file, or the JDK's modules file), used by ImportScanner to avoid re-scanning entries
+ * which have not changed since they were last scanned.
+ *
+ * The cache file records the path, size and modification time of the entry, and is
+ * ignored if any of these no longer match (or if the BlueJ version has changed).
+ * Following this header is a string table of package names, and then each class
+ * as an index into the package table plus the class name within the package
+ * (which may include '$' for inner classes).  The file is read in one go, and any
+ * count or length in it which does not fit in the rest of the file is treated as a
+ * corrupt cache.
+ */
+@OnThread(Tag.Worker)
+class ClasspathEntryCache
+{
+    private static final int MAGIC = 0x424A4943; // "BJIC"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File entry;
+    private final File cacheFile;
+    private final String version;
+
+    /**
+     * Create a cache for the given classpath entry.
+     *
+     * @param entry  The classpath entry (a file, not a directory)
+     * @param cacheDir  The directory in which to keep cache files
+     * @param version  The version of the running software; caches from other versions are ignored
+     */
+    public ClasspathEntryCache(File entry, File cacheDir, String version)
+    {
+        this.entry = entry.getAbsoluteFile();
+        this.version = version;
+        // The name is only to help anyone looking in the directory; the full path is
+        // checked when loading, so a hash collision will just cause a re-scan:
+        this.cacheFile = new File(cacheDir, entry.getName() + "-"
+                + Integer.toHexString(this.entry.getPath().hashCode()) + ".bin");
+    }
+
+    /**
+     * Loads the fully-qualified names of the classes in the entry from the cache.
+     *
+     * @return The class names, or null if there is no valid cache for the entry as it
+     *         is now.
+     */
+    public List<String> load()
+    {
+        if (!cacheFile.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            // The file is not memory-mapped, as it could then not be replaced (on Windows)
+            // until the mapping was garbage collected:
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || !version.equals(readString(buffer))
+                    || !entry.getPath().equals(readString(buffer))
+                    || buffer.getLong() != entry.length()
+                    || buffer.getLong() != entry.lastModified())
+            {
+                return null;
+            }
+
+            // Each package is at least a length, and each class an index and a length:
+            String[] packages = new String[readCount(buffer, 4)];
+            for (int i = 0; i < packages.length; i++)
+            {
+                packages[i] = readString(buffer);
+            }
+
+            int classCount = readCount(buffer, 8);
+            List<String> classNames = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++)
+            {
+                String pkg = packages[buffer.getInt()];
+                String name = readString(buffer);
+                classNames.add(pkg.isEmpty() ? name : pkg + "." + name);
+            }
+            return classNames;
+        }
+        catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e)
+        {
+            // Corrupt or truncated cache; we'll re-scan and overwrite it:
+            Debug.message(e.getClass().getName() + " while reading import cache " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the given fully-qualified class names as the cache for the entry.
+     * Failure to save is reported but otherwise ignored.
+     */
+    public void save(Collection<String> classNames)
+    {
+        Map<String, Integer> packageIndexes = new HashMap<>();
+        List<String> packages = new ArrayList<>();
+        for (String className : classNames)
+        {
+            packageIndexes.computeIfAbsent(packageOf(className), p -> {
+                packages.add(p);
+                return packages.size() - 1;
+            });
+        }
+
+        File tempFile = null;
+        try
+        {
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            // Another project may be saving the same entry at the same time, so use a unique name:
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+            try (OutputStream os = Files.newOutputStream(tempFile.toPath());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os)))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, version);
+                writeString(out, entry.getPath());
+                out.writeLong(entry.length());
+                out.writeLong(entry.lastModified());
+
+                out.writeInt(packages.size());
+                for (String pkg : packages)
+                {
+                    writeString(out, pkg);
+                }
+
+                out.writeInt(classNames.size());
+                for (String className : classNames)
+                {
+                    String pkg = packageOf(className);
+                    out.writeInt(packageIndexes.get(pkg));
+                    writeString(out, pkg.isEmpty() ? className : className.substring(pkg.length() + 1));
+                }
+            }
+            // Replace in one step so that a concurrent reader never sees a partial file:
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            Debug.reportError("Could not save import cache " + cacheFile, e);
+            if (tempFile != null)
+            {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static String packageOf(String className)
+    {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot == -1 ? "" : className.substring(0, lastDot);
+    }
+
+    /**
+     * Read a count of items, each taking at least the given number of bytes, checking
+     * that they could fit in the rest of the buffer.
+     */
+    private static int readCount(ByteBuffer buffer, int minBytesEach) throws IOException
+    {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minBytesEach)
+        {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException
+    {
+        byte[] bytes = new byte[readCount(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2014,2015,2016,2017,2019,2020,2021  Michael Kolling and John Rosenberg
+ Copyright (C) 2014,2015,2016,2017,2019,2020,2021,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -309,13 +309,15 @@ public class ImportScanner
     }
 
     /**
-     * Gets a list of ClassGraph items which can be used to find available classes.
+     * Gets the ClassGraph used to find available user classes, that is, classes
+     * from user code libraries (e.g. JUnit, other configured BlueJ libraries)
+     * and the project itself.
      * 
-     * Because of the way ClassGraph works, one item is not enough for all classes;
-     * we use one for system classes and one for user classes.
+     * Because of the way ClassGraph works, this cannot also be used to find
+     * system classes; see getSystemClassGraph().
      */
     @OnThread(Tag.Worker)
-    private List<ClassGraph> getClassloaderConfig()
+    private ClassGraph getUserClassGraph()
     {
         // When you override the class loaders in ClassGraph's config, it no longer
         // loads the JDK classes.  So we have one ClassGraph for user code libraries
@@ -338,27 +340,49 @@ public class ImportScanner
         cl.add(new URLClassLoader(Boot.getInstance().getRuntimeUserClassPath()));
 
         // We hide bluej.* classes as users shouldn't be accessing them:
-        ClassGraph userClassGraph = new ClassGraph()
+        return new ClassGraph()
                 .overrideClassLoaders(cl.toArray(new ClassLoader[0]))
-                .rejectPackages("bluej.*");
-        
+                .rejectPackages("bluej.*")
+                .enableClassInfo();
+    }
+
+    /**
+     * Gets a ClassGraph which scans only the given classpath entries, applying the
+     * same restrictions as getUserClassGraph().
+     */
+    @OnThread(Tag.Worker)
+    private static ClassGraph getUserClassGraph(List<File> entries)
+    {
+        return new ClassGraph()
+                .overrideClasspath(entries)
+                .rejectPackages("bluej.*")
+                .enableClassInfo();
+    }
+
+    /**
+     * Gets the ClassGraph used to find system classes.
+     */
+    @OnThread(Tag.Worker)
+    private static ClassGraph getSystemClassGraph()
+    {
         // We have a separate class graph for system libraries (java.*, javafx.*), from which
         // we only take public packages, thus avoiding all the com.sun classes and so on:
         // This has to be separate because enableSystemPackages() doesn't work alongside 
         // overrideClassLoaders():
-        ClassGraph systemClassGraph = new ClassGraph()
+        return new ClassGraph()
             .enableSystemJarsAndModules()
-            .acceptPackages("java.*", "javax.*", "javafx.*");
-
-        return List.of(
-            userClassGraph.enableClassInfo(),
-            systemClassGraph.enableClassInfo()
-        );
+            .acceptPackages("java.*", "javax.*", "javafx.*")
+            .enableClassInfo();
     }
 
     /**
      * Gets a package-tree structure which includes all packages and class-names
      * on the current class-path (by scanning all JARs and class-files on the path).
+     * 
+     * The class names in each JAR file, and in the system modules, are cached on disk
+     * (see ClasspathEntryCache), so only those which have changed since they were
+     * last seen need to be scanned; these are scanned in parallel.  Directories
+     * (such as the project directory) are always scanned.
      *
      * @return A package-tree structure with all class names present, but not any further
      * details about the classes.
@@ -366,33 +390,96 @@ public class ImportScanner
     @OnThread(Tag.Worker)
     private RootPackageInfo findAllTypes()
     {
-        List<ClassGraph> classGraphs = getClassloaderConfig();
         RootPackageInfo r = new RootPackageInfo();
         
-        if (classGraphs != null)
+        // Special case -- ClassGraph library (deliberately) doesn't return Object in its list
+        // so we must add it ourselves to avoid problems like "Unknown type: Object" messages.
+        r.addClass("java.lang.Object");
+        final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        List<File> jars = new ArrayList<>();
+        List<File> directories = new ArrayList<>();
+        try
         {
-            // Special case -- ClassGraph library (deliberately) doesn't return Object in its list
-            // so we must add it ourselves to avoid problems like "Unknown type: Object" messages.
-            r.addClass("java.lang.Object");
-            final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
-            for (ClassGraph classGraph : classGraphs)
+            for (File entry : getUserClassGraph().getClasspathFiles())
             {
-                try (ScanResult result = classGraph.scan(threads))
-                {
-                    for (ClassInfo c : result.getAllClasses())
-                    {
-                        r.addClass(c.getName());
-                    }
-                }
-                catch (Throwable t)
-                {
-                    Debug.reportError(t);
-                }
+                (entry.isFile() ? jars : directories).add(entry);
             }
         }
+        catch (Throwable t)
+        {
+            Debug.reportError(t);
+        }
+
+        // Each JAR is scanned single-threaded, but several at once:
+        List<List<String>> jarClassNames = jars.parallelStream()
+                .map(jar -> getClassNames(jar, getUserClassGraph(List.of(jar)), 1))
+                .collect(Collectors.toList());
+        jarClassNames.forEach(names -> names.forEach(r::addClass));
+
+        if (!directories.isEmpty())
+        {
+            List<String> names = scanClassNames(getUserClassGraph(directories), threads);
+            if (names != null)
+            {
+                names.forEach(r::addClass);
+            }
+        }
+
+        // The system classes all come from the runtime image, so we can use that to
+        // tell if they have changed:
+        File modules = new File(System.getProperty("java.home"), "lib" + File.separator + "modules");
+        List<String> systemNames = modules.isFile()
+                ? getClassNames(modules, getSystemClassGraph(), threads)
+                : scanClassNames(getSystemClassGraph(), threads);
+        if (systemNames != null)
+        {
+            systemNames.forEach(r::addClass);
+        }
+
         return r;
     }
 
+    /**
+     * Gets the names of the classes in the given classpath entry, from the cache if it
+     * is up to date, otherwise by scanning the entry using the given ClassGraph (and
+     * then updating the cache).  Returns an empty list if the scan fails.
+     */
+    @OnThread(Tag.Worker)
+    private static List<String> getClassNames(File entry, ClassGraph classGraph, int threads)
+    {
+        ClasspathEntryCache cache = new ClasspathEntryCache(entry, getImportCacheDir(), getVersion());
+        List<String> names = cache.load();
+        if (names == null)
+        {
+            names = scanClassNames(classGraph, threads);
+            if (names == null)
+            {
+                return Collections.emptyList();
+            }
+            cache.save(names);
+        }
+        return names;
+    }
+
+    /**
+     * Scans using the given ClassGraph, and returns the names of all classes found,
+     * or null if the scan failed.
+     */
+    @OnThread(Tag.Worker)
+    private static List<String> scanClassNames(ClassGraph classGraph, int threads)
+    {
+        try (ScanResult result = classGraph.scan(threads))
+        {
+            return result.getAllClasses().stream().map(ClassInfo::getName).collect(Collectors.toList());
+        }
+        catch (Throwable t)
+        {
+            Debug.reportError(t);
+            return null;
+        }
+    }
+
     /**
      * Starts scanning for available importable types from the classpath.
      * Will operate in a background thread.
@@ -450,6 +537,12 @@ public class ImportScanner
         return new File(Config.getUserConfigDir(), "import-cache.xml");
     }
 
+    /** Directory for the per-classpath-entry caches of class names */
+    private static File getImportCacheDir()
+    {
+        return new File(Config.getUserConfigDir(), "import-cache");
+    }
+
     /**
      * Loads cached (java.**) imports into the given root package, if possible.
      */
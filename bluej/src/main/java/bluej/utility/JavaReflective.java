@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2013,2014,2015,2016,2018,2019,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2013,2014,2015,2016,2018,2019,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -38,6 +38,7 @@ import bluej.debugger.gentype.ConstructorReflective;
 import bluej.debugger.gentype.FieldReflective;
 import bluej.debugger.gentype.GenTypeClass;
 import bluej.debugger.gentype.GenTypeDeclTpar;
+import bluej.debugger.gentype.InheritedMembers;
 import bluej.debugger.gentype.JavaPrimitiveType;
 import bluej.debugger.gentype.JavaType;
 import bluej.debugger.gentype.MethodReflective;
@@ -54,6 +55,31 @@ public class JavaReflective extends Reflective
 {
     private Class<?> c;
     
+    // The declared fields and methods of each class, calculated on first request.  A class
+    // cannot change once loaded (recompiled classes are loaded afresh by a new class loader),
+    // so these never need to be invalidated:
+    private static final ClassValue<Map<String,FieldReflective>> declaredFields = new ClassValue<>() {
+        @Override
+        protected Map<String,FieldReflective> computeValue(Class<?> type)
+        {
+            return Collections.unmodifiableMap(new JavaReflective(type).calculateDeclaredFields());
+        }
+    };
+    private static final ClassValue<Map<String,Set<MethodReflective>>> declaredMethods = new ClassValue<>() {
+        @Override
+        protected Map<String,Set<MethodReflective>> computeValue(Class<?> type)
+        {
+            return Collections.unmodifiableMap(new JavaReflective(type).calculateDeclaredMethods());
+        }
+    };
+    private static final ClassValue<InheritedMembers> inheritedMembers = new ClassValue<>() {
+        @Override
+        protected InheritedMembers computeValue(Class<?> type)
+        {
+            return InheritedMembers.calculate(new JavaReflective(type));
+        }
+    };
+    
     @Override
     public int hashCode()
     {
@@ -261,6 +287,11 @@ public class JavaReflective extends Reflective
     
     @Override
     public Map<String,FieldReflective> getDeclaredFields()
+    {
+        return declaredFields.get(c);
+    }
+    
+    private Map<String,FieldReflective> calculateDeclaredFields()
     {
         try {
             Field [] fields = c.getDeclaredFields();
@@ -293,6 +324,18 @@ public class JavaReflective extends Reflective
     
     @Override
     public Map<String,Set<MethodReflective>> getDeclaredMethods()
+    {
+        return declaredMethods.get(c);
+    }
+
+    @Override
+    public InheritedMembers getInheritedMembers()
+    {
+        // The supertypes of a loaded class are also loaded classes, so these never change either:
+        return inheritedMembers.get(c);
+    }
+    
+    private Map<String,Set<MethodReflective>> calculateDeclaredMethods()
     {
         try {
             Method [] methods = c.getDeclaredMethods();
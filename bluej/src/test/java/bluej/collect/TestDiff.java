@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2014  Michael Kolling and John Rosenberg 
+ Copyright (C) 2014,2026  Michael Kolling and John Rosenberg 
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -33,8 +33,6 @@ import java.util.Arrays;
 import java.util.Collection;
 
 import junit.framework.TestCase;
-import difflib.DiffUtils;
-import difflib.Patch;
 
 public class TestDiff extends TestCase
 {
@@ -53,9 +51,8 @@ public class TestDiff extends TestCase
     
     private void assertDiffRoundTrip(String[] orig, String[] mod) throws IOException, InterruptedException
     {
-        // Get the diff using our library:
-        Patch patch = DiffUtils.diff(Arrays.asList(orig), Arrays.asList(mod));
-        String diff = DataCollectorImpl.makeDiff(patch);
+        // Get the diff using our code:
+        String diff = DataCollectorImpl.makeDiff(Arrays.asList(orig), Arrays.asList(mod));
         // Now send it on a round trip with the system diff.
         
         //   Make temp file and fill it with original:
@@ -117,6 +114,26 @@ public class TestDiff extends TestCase
 "}"});
     }
     
+    public void testReplaceAndDelete() throws IOException, InterruptedException
+    {
+        assertDiffRoundTrip(new String[] {
+"class Foo",
+"{",
+"  public int x;",
+"  public int y;",
+"",
+"  public int z;",
+"}"}, new String[] {
+"class Bar",
+"{",
+"  public int y;",
+"  private int z;",
+"  private int w;",
+"}"});
+        assertDiffRoundTrip(new String[] {"a", "b"}, new String[0]);
+        assertDiffRoundTrip(new String[0], new String[] {"a", "b"});
+    }
+    
     // This test can take a little while -- 75 seconds on my machine
     /*
     public void testBruteForceDiffs() throws IOException, InterruptedException
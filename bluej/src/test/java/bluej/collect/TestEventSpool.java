@@ -0,0 +1,195 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the spool of Blackbox events waiting to be sent, the on-disk file
+ * versions, and posting spooled events to a local stand-in for the server.
+ */
+public class TestEventSpool
+{
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory("spooltest").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            Arrays.stream(files).forEach(File::delete);
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testSpoolSurvivesReopening()
+    {
+        File file = new File(dir, "events.spool");
+        EventSpool spool = EventSpool.open(file);
+        assertTrue(spool.isEmpty());
+        spool.append(List.of(new byte[] {1, 2, 3}, new byte[] {4}));
+        spool.append(List.of(new byte[] {5, 6}));
+        assertArrayEquals(new byte[] {1, 2, 3}, spool.peek());
+        spool.removeFirst();
+        spool.close();
+
+        spool = EventSpool.open(file);
+        assertArrayEquals(new byte[] {4}, spool.peek());
+        spool.removeFirst();
+        assertArrayEquals(new byte[] {5, 6}, spool.peek());
+        spool.removeFirst();
+        assertTrue(spool.isEmpty());
+        assertNull(spool.peek());
+        spool.close();
+
+        // Once everything is sent, the file is back to just its header:
+        assertEquals(16, file.length());
+    }
+
+    @Test
+    public void testTruncatedRecordIsDiscarded() throws IOException
+    {
+        File file = new File(dir, "events.spool");
+        EventSpool spool = EventSpool.open(file);
+        spool.append(List.of(new byte[] {1, 2, 3}, new byte[] {4, 5, 6}));
+        spool.close();
+        // As if we crashed part-way through writing the second record:
+        try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND))
+        {
+            out.write(new byte[] {0, 0, 0, 9, 1});
+        }
+
+        spool = EventSpool.open(file);
+        assertArrayEquals(new byte[] {1, 2, 3}, spool.peek());
+        spool.removeFirst();
+        assertArrayEquals(new byte[] {4, 5, 6}, spool.peek());
+        spool.removeFirst();
+        assertNull(spool.peek());
+        assertTrue(spool.isEmpty());
+        spool.close();
+    }
+
+    @Test
+    public void testFileBaselines()
+    {
+        FileBaselines baselines = new FileBaselines(dir);
+        List<FileKey> keys = new ArrayList<>();
+        // More than are cached in memory, so some must be read back from disk:
+        for (int i = 0; i < 20; i++)
+        {
+            FileKey key = new FileKey(dir, "File" + i + ".java");
+            keys.add(key);
+            baselines.put(key, List.of("class File" + i, "{", "", "}"));
+        }
+        baselines.put(keys.get(3), List.of());
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals(i == 3 ? List.of() : List.of("class File" + i, "{", "", "}"), baselines.get(keys.get(i)));
+        }
+        baselines.remove(keys.get(0));
+        assertFalse(baselines.containsKey(keys.get(0)));
+        assertNull(baselines.get(keys.get(0)));
+        assertEquals(19, baselines.size());
+    }
+
+    @Test
+    public void testPostToServer() throws IOException
+    {
+        List<byte[]> received = new ArrayList<>();
+        List<String> contentTypes = new ArrayList<>();
+        List<String> statuses = new ArrayList<>(List.of("Created", "500", "Invalid"));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/master_events", exchange -> {
+            try (InputStream in = exchange.getRequestBody())
+            {
+                received.add(in.readAllBytes());
+            }
+            contentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+            String status = statuses.remove(0);
+            if (status.equals("500"))
+            {
+                exchange.sendResponseHeaders(500, -1);
+            }
+            else
+            {
+                exchange.getResponseHeaders().add("X-Status", status);
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        DefaultHttpClient client = new DefaultHttpClient();
+        try
+        {
+            String url = "http://localhost:" + server.getAddress().getPort() + "/master_events";
+            MultipartEntity mpe = new MultipartEntity();
+            mpe.addPart("event[name]", CollectUtility.toBody("bluej_start"));
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            mpe.writeTo(expected);
+            byte[] record = DataSubmitter.encode(mpe);
+
+            assertEquals(DataSubmitter.PostResult.SENT, DataSubmitter.postRecord(client, url, record));
+            assertArrayEquals(expected.toByteArray(), received.get(0));
+            assertEquals(mpe.getContentType().getValue(), contentTypes.get(0));
+
+            assertEquals(DataSubmitter.PostResult.RETRY, DataSubmitter.postRecord(client, url, record));
+            assertEquals(DataSubmitter.PostResult.REJECTED, DataSubmitter.postRecord(client, url, record));
+            assertEquals(DataSubmitter.PostResult.CORRUPT, DataSubmitter.postRecord(client, url, new byte[] {1, 2}));
+        }
+        finally
+        {
+            client.getConnectionManager().shutdown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.collect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for LineDiff which check the hunks directly, rather than by applying the
+ * formatted diff with the system's patch (as TestDiff does).
+ */
+public class TestLineDiff extends TestCase
+{
+    private static List<String> lines(String... lines)
+    {
+        return Arrays.asList(lines);
+    }
+
+    /**
+     * Check the hunks found between two versions.  Each expected hunk is given as four
+     * numbers: original start and size, then revised start and size.
+     */
+    private void assertHunks(List<String> original, List<String> revised, int... expected)
+    {
+        List<LineDiff.Hunk> hunks = LineDiff.diff(original, revised);
+        assertEquals("Number of hunks", expected.length / 4, hunks.size());
+        for (int i = 0; i < hunks.size(); i++)
+        {
+            LineDiff.Hunk hunk = hunks.get(i);
+            assertEquals("Hunk " + i + " original start", expected[i * 4], hunk.originalStart);
+            assertEquals("Hunk " + i + " original size", expected[i * 4 + 1], hunk.originalSize);
+            assertEquals("Hunk " + i + " revised start", expected[i * 4 + 2], hunk.revisedStart);
+            assertEquals("Hunk " + i + " revised size", expected[i * 4 + 3], hunk.revisedSize);
+        }
+    }
+
+    private void assertFormat(List<String> original, List<String> revised, String expected)
+    {
+        assertEquals(expected, LineDiff.format(original, revised, LineDiff.diff(original, revised)));
+    }
+
+    public void testSame()
+    {
+        assertHunks(lines(), lines());
+        assertHunks(lines("a", "b", "c"), lines("a", "b", "c"));
+        assertFormat(lines("a", "b", "c"), lines("a", "b", "c"), "");
+    }
+
+    public void testInsertAtStart()
+    {
+        assertHunks(lines("a", "b"), lines("x", "y", "a", "b"), 0, 0, 0, 2);
+        assertFormat(lines("a", "b"), lines("x", "a", "b"), "@@ -0,0 +0,1 @@\n+x\n");
+        assertHunks(lines(), lines("x", "y"), 0, 0, 0, 2);
+    }
+
+    public void testInsertAtEnd()
+    {
+        assertHunks(lines("a", "b"), lines("a", "b", "x", "y"), 2, 0, 2, 2);
+        assertFormat(lines("a", "b"), lines("a", "b", "x"), "@@ -2,0 +2,1 @@\n+x\n");
+    }
+
+    public void testDeleteAtStart()
+    {
+        assertHunks(lines("a", "b", "c"), lines("c"), 0, 2, 0, 0);
+        assertFormat(lines("a", "b", "c"), lines("b", "c"), "@@ -1,1 +1,0 @@\n-a\n");
+        assertHunks(lines("a", "b"), lines(), 0, 2, 0, 0);
+    }
+
+    public void testDeleteAtEnd()
+    {
+        assertHunks(lines("a", "b", "c"), lines("a"), 1, 2, 1, 0);
+        assertFormat(lines("a", "b", "c"), lines("a", "b"), "@@ -3,1 +3,0 @@\n-c\n");
+    }
+
+    public void testReplace()
+    {
+        assertHunks(lines("a", "b", "c"), lines("a", "x", "y", "c"), 1, 1, 1, 2);
+        assertFormat(lines("a", "b", "c"), lines("a", "x", "c"), "@@ -2,1 +2,1 @@\n-b\n+x\n");
+        assertHunks(lines("a"), lines("x"), 0, 1, 0, 1);
+    }
+
+    public void testSeveralHunks()
+    {
+        // A deletion, then an insertion, separated by unchanged lines:
+        assertHunks(lines("a", "b", "c", "d", "e"), lines("a", "c", "d", "x", "e"),
+                1, 1, 1, 0,
+                4, 0, 3, 1);
+        assertFormat(lines("a", "b", "c", "d", "e"), lines("a", "c", "d", "x", "e"),
+                "@@ -2,1 +2,0 @@\n-b\n@@ -4,0 +3,1 @@\n+x\n");
+    }
+
+    public void testMinimal()
+    {
+        // The example from Myers' paper, with an edit distance of 5:
+        assertMinimal(lines("a", "b", "c", "a", "b", "b", "a"), lines("c", "b", "a", "b", "a", "c"));
+        // A moved block should be a deletion and an insertion of that block only:
+        assertHunks(lines("m", "a", "b", "c", "d"), lines("a", "b", "c", "d", "m"),
+                0, 1, 0, 0,
+                5, 0, 4, 1);
+        // Repeated lines, which give many equally short paths:
+        assertMinimal(lines("}", "", "}", "", "}"), lines("}", "}", "", "}"));
+    }
+
+    public void testAllSmallFiles()
+    {
+        // Every pair of files of up to five lines made from two different lines:
+        List<List<String>> files = new ArrayList<>();
+        files.add(lines());
+        for (int start = 0; start < files.size(); start++)
+        {
+            List<String> file = files.get(start);
+            if (file.size() < 5)
+            {
+                for (String line : new String[] {"a", "b"})
+                {
+                    List<String> longer = new ArrayList<>(file);
+                    longer.add(line);
+                    files.add(longer);
+                }
+            }
+        }
+
+        for (List<String> original : files)
+        {
+            for (List<String> revised : files)
+            {
+                assertMinimal(original, revised);
+            }
+        }
+    }
+
+    /**
+     * Check that the hunks found turn the original into the revised version, are in
+     * order without touching each other, and make as few changes as possible.
+     */
+    private void assertMinimal(List<String> original, List<String> revised)
+    {
+        String what = original + " -> " + revised;
+        List<LineDiff.Hunk> hunks = LineDiff.diff(original, revised);
+        List<String> result = new ArrayList<>();
+        int originalPos = 0;
+        int revisedPos = 0;
+        int changes = 0;
+        for (LineDiff.Hunk hunk : hunks)
+        {
+            assertTrue("Hunk not empty: " + what, hunk.originalSize + hunk.revisedSize > 0);
+            // Hunks must be separated by at least one unchanged line (except the first, at the start):
+            assertTrue("Hunks in order: " + what, hunk.originalStart > originalPos || (originalPos == 0 && hunk.originalStart == 0));
+            assertEquals("Unchanged lines before hunk: " + what, hunk.originalStart - originalPos, hunk.revisedStart - revisedPos);
+            result.addAll(original.subList(originalPos, hunk.originalStart));
+            result.addAll(revised.subList(hunk.revisedStart, hunk.revisedStart + hunk.revisedSize));
+            originalPos = hunk.originalStart + hunk.originalSize;
+            revisedPos = hunk.revisedStart + hunk.revisedSize;
+            changes += hunk.originalSize + hunk.revisedSize;
+        }
+        assertEquals("Unchanged lines at end: " + what, original.size() - originalPos, revised.size() - revisedPos);
+        result.addAll(original.subList(originalPos, original.size()));
+
+        assertEquals("Result of applying hunks: " + what, revised, result);
+        int common = longestCommonSubsequence(original, revised);
+        assertEquals("Number of changed lines: " + what, original.size() + revised.size() - 2 * common, changes);
+    }
+
+    private static int longestCommonSubsequence(List<String> a, List<String> b)
+    {
+        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--)
+        {
+            for (int j = b.size() - 1; j >= 0; j--)
+            {
+                lengths[i][j] = a.get(i).equals(b.get(j))
+                    ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        return lengths[0][0];
+    }
+}
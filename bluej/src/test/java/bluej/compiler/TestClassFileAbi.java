@@ -0,0 +1,137 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.compiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks which changes to a class affect its ABI and shape hashes.
+ */
+public class TestClassFileAbi
+{
+    private static final String BASE = "public class A { public static final int K = 1; "
+            + "public static final String S = \"x\"; int f; public int m() { return 1; } "
+            + "private void p() { } class In { } }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] abiOf(String source) throws IOException
+    {
+        byte[] abi = ClassFileAbi.calculate(compile(source));
+        assertNotNull(abi);
+        return abi;
+    }
+
+    private byte[] shapeOf(String source) throws IOException
+    {
+        byte[] shape = ClassFileAbi.calculateShape(compile(source));
+        assertNotNull(shape);
+        return shape;
+    }
+
+    private List<File> compile(String source) throws IOException
+    {
+        File dir = folder.newFolder();
+        File srcFile = new File(dir, "A.java");
+        Files.writeString(srcFile.toPath(), source);
+        int result = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-g", "-d", dir.getPath(), srcFile.getPath());
+        assertEquals(0, result);
+        List<File> classFiles = new ArrayList<>();
+        for (File f : dir.listFiles())
+        {
+            if (f.getName().endsWith(".class"))
+                classFiles.add(f);
+        }
+        return classFiles;
+    }
+
+    @Test
+    public void testUnchanged() throws IOException
+    {
+        byte[] base = abiOf(BASE);
+        // Method bodies, lambdas and anonymous classes don't matter:
+        assertArrayEquals(base, abiOf(BASE.replace("return 1;", "Runnable r = () -> { }; Object o = new Object() { }; return 2;")));
+        // Nor do private members:
+        assertArrayEquals(base, abiOf(BASE.replace("private void p() { }", "private int p(int x) { return x; }")));
+        // Nor does member order:
+        assertArrayEquals(base, abiOf("public class A { class In { } int f; public int m() { return 1; } "
+                + "public static final String S = \"x\"; private void p() { } public static final int K = 1; }"));
+    }
+
+    @Test
+    public void testChanged() throws IOException
+    {
+        byte[] base = abiOf(BASE);
+        assertFalse(Arrays.equals(base, abiOf(BASE.replace("K = 1", "K = 2"))));
+        assertFalse(Arrays.equals(base, abiOf(BASE.replace("\"x\"", "\"y\""))));
+        assertFalse(Arrays.equals(base, abiOf(BASE.replace("public int m()", "public long m()"))));
+        assertFalse(Arrays.equals(base, abiOf(BASE.replace("int f;", "int f; int g;"))));
+        assertFalse(Arrays.equals(base, abiOf(BASE.replace("class In", "private class In"))));
+        assertFalse(Arrays.equals(base, abiOf(BASE.replace("public class A", "public class A implements Runnable").replace("private void p()", "public void run()"))));
+    }
+
+    @Test
+    public void testShapeUnchanged() throws IOException
+    {
+        byte[] base = shapeOf(BASE);
+        // Only method bodies may change:
+        assertArrayEquals(base, shapeOf(BASE.replace("return 1;", "int x = f * 2; return x;")));
+        assertArrayEquals(base, shapeOf(BASE.replace("private void p() { }", "private void p() { f++; }")));
+    }
+
+    @Test
+    public void testShapeChanged() throws IOException
+    {
+        byte[] base = shapeOf(BASE);
+        // Changes which leave the ABI alone may still change the shape:
+        assertFalse(Arrays.equals(base, shapeOf(BASE.replace("private void p() { }", "private void p() { } private void q() { }"))));
+        assertFalse(Arrays.equals(base, shapeOf(BASE.replace("return 1;", "Runnable r = () -> { }; return 1;"))));
+        assertFalse(Arrays.equals(base, shapeOf(BASE.replace("return 1;", "Object o = new Object() { }; return 1;"))));
+        assertFalse(Arrays.equals(base, shapeOf(BASE.replace("private void p()", "@Deprecated private void p()"))));
+        assertFalse(Arrays.equals(base, shapeOf(BASE.replace("int f;", "private int f;"))));
+        assertFalse(Arrays.equals(base, shapeOf(BASE.replace("int f;", "int f; int g;"))));
+    }
+
+    @Test
+    public void testMissingFile()
+    {
+        assertNull(ClassFileAbi.calculate(List.of(new File(folder.getRoot(), "Missing.class"))));
+        assertNull(ClassFileAbi.calculateShape(List.of(new File(folder.getRoot(), "Missing.class"))));
+    }
+}
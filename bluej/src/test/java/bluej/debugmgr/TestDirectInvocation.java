@@ -0,0 +1,129 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.debugmgr;
+
+import bluej.views.ConstructorView;
+import bluej.views.View;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that literal arguments are only passed directly when the compiler would
+ * accept them for the parameter type, and that their values are converted as the
+ * compiler would convert them.
+ */
+public class TestDirectInvocation
+{
+    public static class Box<T>
+    {
+        public Box(T value) { }
+    }
+
+    public static class Label
+    {
+        public Label(String text) { }
+    }
+
+    private static ConstructorView getConstructor(Class<?> cl)
+    {
+        return View.getView(cl).getConstructors()[0];
+    }
+
+    @Test
+    public void testIntegers()
+    {
+        assertEquals("5", DirectInvocation.getLiteralValue("5", int.class));
+        assertEquals("-2147483648", DirectInvocation.getLiteralValue("-2147483648", int.class));
+        assertNull(DirectInvocation.getLiteralValue("2147483648", int.class));
+        assertEquals("5", DirectInvocation.getLiteralValue("5", Integer.class));
+        assertEquals("5", DirectInvocation.getLiteralValue("5", long.class));
+        assertEquals("5.0", DirectInvocation.getLiteralValue("5", double.class));
+        // No narrowing of constants, or boxing to a different type, in a method call:
+        assertNull(DirectInvocation.getLiteralValue("5", byte.class));
+        assertNull(DirectInvocation.getLiteralValue("5", Long.class));
+        assertNull(DirectInvocation.getLiteralValue("5", Object.class));
+        // Octal, hex and expressions are left to the compiler:
+        assertNull(DirectInvocation.getLiteralValue("012", int.class));
+        assertNull(DirectInvocation.getLiteralValue("0x12", int.class));
+        assertNull(DirectInvocation.getLiteralValue("1+2", int.class));
+
+        assertEquals("3000000000", DirectInvocation.getLiteralValue("3000000000L", long.class));
+        assertEquals("3000000000", DirectInvocation.getLiteralValue("3000000000L", Long.class));
+        assertNull(DirectInvocation.getLiteralValue("3L", int.class));
+        assertNull(DirectInvocation.getLiteralValue("3000000000", long.class));
+    }
+
+    @Test
+    public void testFloatingPoint()
+    {
+        assertEquals("1.5", DirectInvocation.getLiteralValue("1.5", double.class));
+        assertEquals("1.5", DirectInvocation.getLiteralValue("1.5", Double.class));
+        assertEquals("-0.5", DirectInvocation.getLiteralValue("-.5", double.class));
+        assertEquals("1000.0", DirectInvocation.getLiteralValue("1e3", double.class));
+        assertEquals("1.5", DirectInvocation.getLiteralValue("1.5f", float.class));
+        assertEquals("1.5", DirectInvocation.getLiteralValue("1.5F", Float.class));
+        // A float widened to double keeps the float's value:
+        assertEquals(Double.toString((double) 0.1f), DirectInvocation.getLiteralValue("0.1f", double.class));
+        assertNull(DirectInvocation.getLiteralValue("1.5", float.class));
+        assertNull(DirectInvocation.getLiteralValue("1.5", int.class));
+        assertNull(DirectInvocation.getLiteralValue("1.5f", Double.class));
+        assertNull(DirectInvocation.getLiteralValue("1e400", double.class));
+        assertNull(DirectInvocation.getLiteralValue("1e-400", double.class));
+        assertEquals("0.0", DirectInvocation.getLiteralValue("0.0", double.class));
+    }
+
+    @Test
+    public void testOtherLiterals()
+    {
+        assertEquals("true", DirectInvocation.getLiteralValue("true", boolean.class));
+        assertEquals("false", DirectInvocation.getLiteralValue("false", Boolean.class));
+        assertNull(DirectInvocation.getLiteralValue("true", Object.class));
+
+        assertEquals("x", DirectInvocation.getLiteralValue("'x'", char.class));
+        assertEquals("\n", DirectInvocation.getLiteralValue("'\\n'", Character.class));
+        assertEquals("'", DirectInvocation.getLiteralValue("'\\''", char.class));
+        assertNull(DirectInvocation.getLiteralValue("'x'", int.class));
+        assertNull(DirectInvocation.getLiteralValue("'xy'", char.class));
+
+        assertEquals("a\tb", DirectInvocation.getLiteralValue("\"a\\tb\"", String.class));
+        assertEquals("q\"", DirectInvocation.getLiteralValue("\"q\\\"\"", Object.class));
+        assertEquals("", DirectInvocation.getLiteralValue("\"\"", CharSequence.class));
+        assertNull(DirectInvocation.getLiteralValue("\"a\" + \"b\"", String.class));
+        assertNull(DirectInvocation.getLiteralValue("\"a\\\"", String.class));
+        assertNull(DirectInvocation.getLiteralValue("\"\\u0041\"", String.class));
+        assertNull(DirectInvocation.getLiteralValue("\"a\"", Integer.class));
+    }
+
+    @Test
+    public void testGenericParameters()
+    {
+        assertNotNull(DirectInvocation.prepare(getConstructor(Label.class), new String[] {"\"hi\""}, null, null, null));
+        assertNotNull(DirectInvocation.prepare(getConstructor(Label.class), new String[] {"null"}, null, null, null));
+        // The erasure of T is Object, but for a Box<Integer>, the compiler would reject
+        // a String, so the check is left to the compiler:
+        assertNull(DirectInvocation.prepare(getConstructor(Box.class), new String[] {"\"hi\""}, null, null, null));
+        assertNull(DirectInvocation.prepare(getConstructor(Box.class), new String[] {"null"}, null, null, null));
+    }
+}
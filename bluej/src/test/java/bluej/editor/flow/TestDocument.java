@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 2019,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 2019,2022,2026  Michael Kolling and John Rosenberg
 
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -132,6 +132,7 @@ public class TestDocument
             {
                 document.replaceText(start, end, newContent);
                 assertEquals(curContent, document.getFullContent());
+                assertEquals(curContent, document.getContentSnapshot().toString());
             }
             // What is the position if we kept on typing?
             lastInsert = start + newContent.length();
@@ -382,6 +383,7 @@ public class TestDocument
             {
                 document.replaceText(start, end, newContent);
                 assertEquals(curContent, document.getFullContent());
+                assertEquals(curContent, document.getContentSnapshot().toString());
             }
             // What is the position if we kept on typing?
             lastInsert = start + newContent.length();
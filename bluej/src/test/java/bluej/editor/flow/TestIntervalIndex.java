@@ -0,0 +1,91 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.editor.flow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks IntervalIndex against a simple linear scan of the same items.
+ */
+public class TestIntervalIndex
+{
+    @Test
+    public void testAgainstLinearScan()
+    {
+        for (int attempt = 0; attempt < 200; attempt++)
+        {
+            List<int[]> intervals = new ArrayList<>();
+            int count = ThreadLocalRandom.current().nextInt(60);
+            for (int i = 0; i < count; i++)
+            {
+                int start = ThreadLocalRandom.current().nextInt(500);
+                intervals.add(new int[] {start, start + ThreadLocalRandom.current().nextInt(40)});
+            }
+            IntervalIndex<int[]> index = new IntervalIndex<>(intervals, r -> r[0], r -> r[1]);
+
+            for (int query = 0; query < 100; query++)
+            {
+                int low = ThreadLocalRandom.current().nextInt(-10, 560);
+                int high = low + ThreadLocalRandom.current().nextInt(30);
+
+                List<int[]> overlapping = intervals.stream().filter(r -> r[0] <= high && r[1] >= low).collect(Collectors.toList());
+                List<int[]> expected = new ArrayList<>(overlapping);
+                expected.sort(Comparator.comparingInt(r -> r[0]));
+                assertEquals(expected, index.getOverlapping(low, high));
+                assertSame(overlapping.isEmpty() ? null : overlapping.get(0), index.getFirstOverlapping(low, high));
+
+                List<int[]> containing = intervals.stream().filter(r -> r[0] <= low && low <= r[1]).collect(Collectors.toList());
+                assertSame(containing.isEmpty() ? null : containing.get(containing.size() - 1), index.getLastContaining(low));
+
+                assertSame(linearNext(intervals, low), index.getNextStartingAfter(low));
+            }
+        }
+    }
+
+    // The original linear search from FlowErrorManager.getNextErrorPos:
+    private static int[] linearNext(List<int[]> intervals, int from)
+    {
+        int lowestDist = Integer.MIN_VALUE;
+        int[] next = null;
+        for (int[] r : intervals)
+        {
+            final int dist = r[0] - from;
+            if (next == null
+                    || (lowestDist <= 0 && (dist > 0 || dist <= lowestDist))
+                    || (lowestDist > 0 && dist > 0 && dist <= lowestDist))
+            {
+                next = r;
+                lowestDist = dist;
+            }
+        }
+        return next;
+    }
+}
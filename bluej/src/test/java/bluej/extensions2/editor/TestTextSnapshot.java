@@ -0,0 +1,98 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.extensions2.editor;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the line index of TextSnapshot, and for the merging of replacements
+ * in an EditBatch.
+ */
+public class TestTextSnapshot
+{
+    @Test
+    public void testLines()
+    {
+        TextSnapshot snapshot = new TextSnapshot("ab\n\ncde\n");
+        assertEquals(4, snapshot.getLineCount());
+        assertEquals("ab", snapshot.getLine(0));
+        assertEquals("", snapshot.getLine(1));
+        assertEquals("cde", snapshot.getLine(2));
+        assertEquals("", snapshot.getLine(3));
+        assertEquals(3, snapshot.getLineLength(0));
+        assertEquals(4, snapshot.getLineLength(2));
+        assertEquals(0, snapshot.getLineLength(3));
+        assertEquals(-1, snapshot.getLineLength(4));
+        assertEquals(4, snapshot.getLineStart(2));
+
+        assertEquals(1, new TextSnapshot("").getLineCount());
+    }
+
+    @Test
+    public void testLocations()
+    {
+        TextSnapshot snapshot = new TextSnapshot("ab\n\ncde");
+        assertLocation(0, 2, snapshot.getTextLocationFromOffset(2));
+        assertLocation(1, 0, snapshot.getTextLocationFromOffset(3));
+        assertLocation(2, 3, snapshot.getTextLocationFromOffset(7));
+        assertNull(snapshot.getTextLocationFromOffset(8));
+        assertEquals(5, snapshot.getOffsetFromTextLocation(new TextLocation(2, 1)));
+        assertEquals("b\n\nc", snapshot.getText(new TextLocation(0, 1), new TextLocation(2, 1)));
+    }
+
+    private static void assertLocation(int line, int column, TextLocation location)
+    {
+        assertEquals(line, location.getLine());
+        assertEquals(column, location.getColumn());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLocation()
+    {
+        new TextSnapshot("ab\ncd").getOffsetFromTextLocation(new TextLocation(0, 3));
+    }
+
+    @Test
+    public void testMerge()
+    {
+        String text = "0123456789";
+        List<EditBatch.Replacement> sorted = EditBatch.sortAndCheck(List.of(
+                new EditBatch.Replacement(7, 8, "x"),
+                new EditBatch.Replacement(2, 4, ""),
+                new EditBatch.Replacement(5, 5, "a"),
+                new EditBatch.Replacement(5, 5, "b")));
+        assertEquals("4ab56x", EditBatch.merge(text.substring(2, 8), 2, sorted));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlap()
+    {
+        EditBatch.sortAndCheck(List.of(
+                new EditBatch.Replacement(2, 5, "x"),
+                new EditBatch.Replacement(4, 6, "y")));
+    }
+}
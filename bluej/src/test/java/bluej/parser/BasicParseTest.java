@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2013,2014,2016,2019,2022  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2013,2014,2016,2019,2022,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -21,6 +21,10 @@
  */
 package bluej.parser;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
@@ -1053,4 +1057,54 @@ public class BasicParseTest
         assertNotNull(info);
         assertTrue(info.hadParseError());
     }
+
+    /**
+     * Check that the information from parsing a file is the same after it has been
+     * written to a stream and read back, as is done to cache it.
+     */
+    @Test
+    public void testClassInfoWriteAndRead()
+        throws Exception
+    {
+        for (String fileName : new String[] {"AffinedTransformer.dat", "multi_interface.dat", "15_generic.dat"}) {
+            ClassInfo info = InfoParser.parse(getFile(fileName), new ClassLoaderResolver(this.getClass().getClassLoader()));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                info.writeTo(out);
+            }
+            ClassInfo read = ClassInfo.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+            assertEquals(info.getName(), read.getName());
+            assertEquals(info.getSuperclass(), read.getSuperclass());
+            assertEquals(info.getPackage(), read.getPackage());
+            assertEquals(info.getImplements(), read.getImplements());
+            assertEquals(info.getUsed(), read.getUsed());
+            assertEquals(info.getPermits(), read.getPermits());
+            assertEquals(info.getTypeParameterTexts(), read.getTypeParameterTexts());
+            assertEquals(info.getComments(), read.getComments());
+            assertEquals(info.hasTypeParameter(), read.hasTypeParameter());
+            assertEquals(info.isInterface(), read.isInterface());
+            assertEquals(info.isAbstract(), read.isAbstract());
+            assertEquals(info.isEnum(), read.isEnum());
+            assertEquals(info.isUnitTest(), read.isUnitTest());
+            assertEquals(info.hadParseError(), read.hadParseError());
+            assertEquals(info.hasPackageStatement(), read.hasPackageStatement());
+            assertSameSelection(info.getPackageNameSelection(), read.getPackageNameSelection());
+            assertSameSelection(info.getExtendsInsertSelection(), read.getExtendsInsertSelection());
+            assertSameSelection(info.getImplementsInsertSelection(), read.getImplementsInsertSelection());
+            assertSameSelection(info.getSuperReplaceSelection(), read.getSuperReplaceSelection());
+            assertEquals(info.hasInterfaceSelections(), read.hasInterfaceSelections());
+            if (info.hasInterfaceSelections()) {
+                assertEquals(info.getInterfaceSelections().size(), read.getInterfaceSelections().size());
+                for (int i = 0; i < info.getInterfaceSelections().size(); i++) {
+                    assertSameSelection(info.getInterfaceSelections().get(i), read.getInterfaceSelections().get(i));
+                }
+            }
+        }
+    }
+
+    private static void assertSameSelection(Selection expected, Selection actual)
+    {
+        assertEquals(expected == null ? null : expected.getLocation(), actual == null ? null : actual.getLocation());
+    }
 }
@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2014,2015,2016,2017,2019,2020  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2014,2015,2016,2017,2019,2020,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -24,7 +24,9 @@ package bluej.parser;
 import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
@@ -37,6 +39,7 @@ import bluej.debugger.gentype.GenTypeSolid;
 import bluej.debugger.gentype.JavaType;
 import bluej.debugger.gentype.MethodReflective;
 import bluej.debugger.gentype.Reflective;
+import bluej.editor.fixes.CompletionIndex;
 import bluej.parser.entity.ClassLoaderResolver;
 import bluej.parser.entity.EntityResolver;
 import bluej.parser.entity.JavaEntity;
@@ -46,6 +49,7 @@ import bluej.parser.lexer.LocatableToken;
 import bluej.parser.nodes.ParsedCUNode;
 import bluej.pkgmgr.JavadocResolver;
 import bluej.utility.JavaReflective;
+import bluej.utility.Utility;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -628,6 +632,211 @@ public class CompletionTest
         assertFalse(suggests.isStatic());
     }
 
+    /**
+     * Check that CompletionIndex finds the same completions (direct and similar) as a
+     * scan of every choice, for the members (including inherited and static members)
+     * available on a small class hierarchy.
+     */
+    @Test
+    public void testCompletionIndexMatchesScan() throws Exception
+    {
+        String aClassSrc = "class A {\n" +
+            "  public static int instanceCount;\n" +
+            "  public static A makeDefaultA() { return null; }\n" +
+            "  protected String itemName;\n" +
+            "  public int getItemCount() { return 0; }\n" +
+            "  public void setItemName(String n) { }\n" +
+            "}\n";
+        String bClassSrc = "class B extends A {\n" +
+            "  private int item_total;\n" +
+            "  public static void resetAll() { }\n" +
+            "  public boolean isEmpty() { return true; }\n" +
+            "  public void m() {\n" +
+            "    this.\n" +
+            "  }\n" +
+            "}\n";
+
+        ParsedCUNode aNode = cuForSource(aClassSrc, "");
+        resolver.addCompilationUnit("", aNode);
+        TestableDocument doc = new TestableDocument();
+        doc.insertString(0, bClassSrc);
+        ParsedCUNode bNode = cuForSource(bClassSrc, "");
+        resolver.addCompilationUnit("", bNode);
+
+        int pos = bClassSrc.indexOf("this.") + 5;
+        ExpressionTypeInfo suggests = bNode.getExpressionType(pos, doc);
+        assertNotNull(suggests);
+        AssistContent[] assists = ParseUtils.getPossibleCompletions(suggests, new JavadocResolver() {
+            @Override
+            public void getJavadoc(Reflective declType, Collection<? extends ConstructorOrMethodReflective> method)
+            {
+            }
+
+            @Override
+            public String getJavadoc(String moduleName, String typeName)
+            {
+                throw new RuntimeException("Not implemented in test stub.");
+            }
+
+            @Override
+            public boolean getJavadocAsync(ConstructorOrMethodReflective method,
+                    AsyncCallback callback, Executor executor)
+            {
+                throw new RuntimeException("Not implemented in test stub.");
+            }
+        }, null, bNode.getContainingMethodOrClassNode(pos));
+        assertNotNull(assists);
+
+        List<String> choices = new ArrayList<>();
+        for (AssistContent assist : assists)
+        {
+            choices.add(assist.getName());
+        }
+        // Inherited (from A and from Object), static and declared members should all be there:
+        for (String expected : new String[] {"instanceCount", "makeDefaultA", "itemName", "getItemCount",
+                "setItemName", "item_total", "resetAll", "isEmpty", "hashCode", "toString"})
+        {
+            assertTrue(expected, choices.contains(expected));
+        }
+
+        // Every prefix of every choice, plus some typos and partial words:
+        List<String> prefixes = new ArrayList<>(List.of("itme", "getitme", "cuont", "nmae", "reset", "xyz", "Count", "hashcdoe"));
+        for (String choice : choices)
+        {
+            for (int i = 1; i <= choice.length(); i++)
+            {
+                prefixes.add(choice.substring(0, i));
+            }
+            if (choice.length() > 3)
+            {
+                // Drop the second character, and swap the third and fourth:
+                prefixes.add(choice.charAt(0) + choice.substring(2));
+                prefixes.add(choice.substring(0, 2) + choice.charAt(3) + choice.charAt(2) + choice.substring(4));
+            }
+        }
+
+        for (boolean allowSimilar : new boolean[] {false, true})
+        {
+            // One index which is queried afresh each time, and one which is narrowed as the user types:
+            CompletionIndex incrementalIndex = new CompletionIndex(choices);
+            for (String prefix : prefixes)
+            {
+                Map<Integer, Integer> expected = scanForCompletions(choices, prefix, allowSimilar);
+                CompletionIndex freshIndex = new CompletionIndex(choices);
+                freshIndex.narrow(prefix, allowSimilar);
+                assertEquals(prefix, expected, indexCompletions(freshIndex, prefix, allowSimilar));
+                incrementalIndex.narrow(prefix, allowSimilar);
+                assertEquals(prefix, expected, indexCompletions(incrementalIndex, prefix, allowSimilar));
+            }
+        }
+    }
+
+    /**
+     * Find completions by examining every choice, as SuggestionList did before it used
+     * CompletionIndex.  Returns a map from choice index to the offset of the best match:
+     * -1 for a direct match, otherwise the offset of the similar match.
+     */
+    private static Map<Integer, Integer> scanForCompletions(List<String> choices, String prefix, boolean allowSimilar)
+    {
+        Map<Integer, Integer> r = new HashMap<>();
+        for (int i = 0; i < choices.size(); i++)
+        {
+            String sugg = choices.get(i);
+            if (sugg.toLowerCase().startsWith(prefix.toLowerCase()))
+            {
+                r.put(i, -1);
+            }
+            else if (allowSimilar)
+            {
+                int bestOffset = -1;
+                int bestDistance = Integer.MAX_VALUE;
+                for (int j : CompletionIndex.splitIdentLower(sugg))
+                {
+                    int distance = scanDistance(prefix, sugg, j);
+                    if (isClose(distance, j, prefix.length()) && isBetter(j, distance, bestOffset, bestDistance))
+                    {
+                        bestOffset = j;
+                        bestDistance = distance;
+                    }
+                }
+                if (bestOffset != -1)
+                {
+                    r.put(i, bestOffset);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Find completions using the given index, which has been narrowed to the given prefix.
+     * The result is in the same form as scanForCompletions.
+     */
+    private static Map<Integer, Integer> indexCompletions(CompletionIndex index, String prefix, boolean allowSimilar)
+    {
+        Map<Integer, Integer> r = new HashMap<>();
+        for (int i : index.getDirectMatches())
+        {
+            r.put(i, -1);
+        }
+        if (!allowSimilar)
+        {
+            assertEquals(0, index.getSimilarCandidates().length);
+        }
+        for (int i : index.getSimilarCandidates())
+        {
+            assertFalse(r.containsKey(i));
+            int bestOffset = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int j : index.getWordStarts(i))
+            {
+                int distance = index.distanceTo(i, j);
+                if (isClose(distance, j, prefix.length()) && isBetter(j, distance, bestOffset, bestDistance))
+                {
+                    bestOffset = j;
+                    bestDistance = distance;
+                }
+            }
+            if (bestOffset != -1)
+            {
+                r.put(i, bestOffset);
+            }
+        }
+        return r;
+    }
+
+    private static int scanDistance(String prefix, String candidate, int offset)
+    {
+        prefix = prefix.toLowerCase();
+        String partialLower = candidate.substring(offset, Math.min(candidate.length(), offset + prefix.length())).toLowerCase();
+        String partialLowerShort = candidate.substring(offset, Math.min(candidate.length(), offset + Math.max(1, prefix.length() - 1))).toLowerCase();
+        String partialLowerLong = candidate.substring(offset, Math.min(candidate.length(), offset + 1 + prefix.length())).toLowerCase();
+        return Math.min(Utility.editDistance(partialLower, prefix),
+            Math.min(Utility.editDistance(partialLowerShort, prefix), Utility.editDistance(partialLowerLong, prefix)));
+    }
+
+    // As SuggestionList.EligibleDetail.close():
+    private static boolean isClose(int distance, int offset, int length)
+    {
+        if (distance == 0)
+            return offset == 0 || length >= 2;
+        if (distance == 1)
+            return length >= 3;
+        if (distance == 2)
+            return length >= 10;
+        return false;
+    }
+
+    // As SuggestionList.EligibleDetail.compareTo(), keeping the earliest of equal matches:
+    private static boolean isBetter(int offset, int distance, int bestOffset, int bestDistance)
+    {
+        if (bestOffset == -1)
+            return true;
+        if ((offset == 0) != (bestOffset == 0))
+            return offset == 0;
+        return distance < bestDistance;
+    }
+
     @Test
     public void testTparCompletion() throws Exception
     {
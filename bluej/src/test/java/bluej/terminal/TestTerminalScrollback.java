@@ -0,0 +1,161 @@
+/*
+ This file is part of the BlueJ program.
+ Copyright (C) 2026  Michael Kolling and John Rosenberg
+
+ This program is free software; you can redistribute it and/or
+ modify it under the terms of the GNU General Public License
+ as published by the Free Software Foundation; either version 2
+ of the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+
+ This file is subject to the Classpath exception as provided in the
+ LICENSE.txt file that accompanied this code.
+ */
+package bluej.terminal;
+
+import bluej.editor.base.TextLine.StyledSegment;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that terminal content reads back the same once older lines have been
+ * spilled to disk, and after lines are removed from the start.
+ */
+public class TestTerminalScrollback
+{
+    private static final List<String> STYLE = List.of("terminal-output");
+    private static final List<String> OTHER_STYLE = List.of("terminal-method-record");
+
+    // Small segments, so that a few lines are enough to spill:
+    private final TerminalScrollback scrollback = new TerminalScrollback(4, 5);
+
+    @After
+    public void close()
+    {
+        scrollback.close();
+    }
+
+    private void appendLines(int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            scrollback.appendToLastLine(new StyledSegment(STYLE, "Line "));
+            scrollback.appendToLastLine(new StyledSegment(OTHER_STYLE, Integer.toString(i)));
+            scrollback.newLine();
+        }
+    }
+
+    private void checkLines(int from, int to)
+    {
+        assertEquals(to - from + 1, scrollback.getLineCount());
+        int start = 0;
+        for (int i = from; i < to; i++)
+        {
+            int lineIndex = i - from;
+            String expected = "Line " + i;
+            assertEquals(expected, scrollback.getLine(lineIndex).getText());
+            assertEquals(expected.length(), scrollback.getLineLength(lineIndex));
+            assertEquals(start, scrollback.getLineStart(lineIndex));
+            start += expected.length();
+
+            List<StyledSegment> segments = new ArrayList<>();
+            scrollback.getLine(lineIndex).forEach(segments::add);
+            assertEquals(List.of(new StyledSegment(STYLE, "Line "), new StyledSegment(OTHER_STYLE, Integer.toString(i))), segments);
+        }
+        assertEquals("", scrollback.getLine(to - from).getText());
+    }
+
+    @Test
+    public void testSpill()
+    {
+        appendLines(0, 100);
+        checkLines(0, 100);
+        assertEquals("Line 10", scrollback.getLongestLine());
+        // Read back out of order, so that segments drop out of the decoded cache:
+        for (int i = 99; i >= 0; i -= 7)
+        {
+            assertEquals("Line " + i, scrollback.getLine(i).getText());
+        }
+    }
+
+    @Test
+    public void testRemoveFirstLines()
+    {
+        appendLines(0, 100);
+        // Part way through a segment:
+        scrollback.removeFirstLines(6);
+        checkLines(6, 100);
+        appendLines(100, 120);
+        checkLines(6, 120);
+        scrollback.removeFirstLines(110);
+        checkLines(116, 120);
+        assertEquals("Line 116", scrollback.getLongestLine());
+        scrollback.removeFirstLines(100);
+        assertEquals(1, scrollback.getLineCount());
+    }
+
+    @Test
+    public void testRestyleAndCustomData()
+    {
+        Object link = new Object();
+        scrollback.appendToLastLine(new StyledSegment(STYLE, "at Foo.bar(Foo.java:1)", link));
+        scrollback.newLine();
+        appendLines(1, 50);
+        // The line with custom data is kept as it was:
+        assertSame(link, scrollback.getLine(0).getCustomStyleDataAtColumn(3));
+
+        ContentLine restyled = new ContentLine(List.of(new StyledSegment(OTHER_STYLE, "Line 2")));
+        scrollback.replaceLine(2, restyled);
+        assertSame(restyled, scrollback.getLine(2));
+        assertEquals("Line 3", scrollback.getLine(3).getText());
+    }
+
+    @Test
+    public void testClear()
+    {
+        appendLines(0, 50);
+        scrollback.clear();
+        assertEquals(1, scrollback.getLineCount());
+        assertEquals("", scrollback.getLongestLine());
+        appendLines(0, 50);
+        checkLines(0, 50);
+    }
+
+    @Test
+    public void testSnapshot()
+    {
+        appendLines(0, 50);
+        scrollback.appendToLastLine(new StyledSegment(STYLE, "Partial"));
+        try (TerminalScrollback.Snapshot snapshot = scrollback.snapshot())
+        {
+            // Changes after the snapshot is taken, including ones which would otherwise
+            // truncate the spill file and write new segments over the old ones:
+            scrollback.appendToLastLine(new StyledSegment(STYLE, " more"));
+            scrollback.replaceLine(1, new ContentLine(List.of(new StyledSegment(OTHER_STYLE, "Restyled"))));
+            scrollback.clear();
+            appendLines(100, 150);
+
+            assertEquals(51, snapshot.size());
+            for (int i = 49; i >= 0; i -= 3)
+            {
+                assertEquals("Line " + i, snapshot.get(i).getText());
+            }
+            assertEquals("Partial", snapshot.get(50).getText());
+        }
+        checkLines(100, 150);
+    }
+}
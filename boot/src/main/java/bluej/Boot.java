@@ -1,6 +1,6 @@
 /*
  This file is part of the BlueJ program. 
- Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2022,2023  Michael Kolling and John Rosenberg
+ Copyright (C) 1999-2009,2010,2011,2012,2013,2014,2015,2016,2017,2018,2019,2020,2021,2022,2023,2026  Michael Kolling and John Rosenberg
  
  This program is free software; you can redistribute it and/or 
  modify it under the terms of the GNU General Public License 
@@ -76,7 +76,7 @@ public class Boot
         "javafx-*.jar",
         "junit-*.jar", "hamcrest-*.jar", "opentest4j-*.jar", "bluej.jar",
         "classgraph-*.jar",
-        "diffutils-*.jar", "commons-logging*.jar",
+        "commons-logging*.jar",
         JLAYER_MP3_JAR, "opencsv-*.jar", "xom-*.jar",
         "lang-stride.jar",
         "nsmenufx-*.jar", "wellbehavedfx-*.jar",